@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * Replaces the framework's build information when running benchmarks on the JVM. The framework
+ * version reads it from native system properties and {@code dalvik.system.VMRuntime} during class
+ * initialization. The SDK version is that of the framework the benchmarks are compiled against, and
+ * most other values are {@link #UNKNOWN}.
+ */
+public class Build {
+
+  public static final String UNKNOWN = "unknown";
+
+  public static final String ID = UNKNOWN;
+  public static final String DISPLAY = UNKNOWN;
+  public static final String PRODUCT = UNKNOWN;
+  public static final String DEVICE = UNKNOWN;
+  public static final String BOARD = UNKNOWN;
+  public static final String CPU_ABI = UNKNOWN;
+  public static final String CPU_ABI2 = UNKNOWN;
+  public static final String MANUFACTURER = UNKNOWN;
+  public static final String BRAND = UNKNOWN;
+  public static final String MODEL = UNKNOWN;
+  public static final String BOOTLOADER = UNKNOWN;
+  public static final String RADIO = UNKNOWN;
+  public static final String HARDWARE = UNKNOWN;
+  public static final String SERIAL = UNKNOWN;
+  public static final String[] SUPPORTED_ABIS = new String[0];
+  public static final String[] SUPPORTED_32_BIT_ABIS = new String[0];
+  public static final String[] SUPPORTED_64_BIT_ABIS = new String[0];
+  public static final String TYPE = UNKNOWN;
+  public static final String TAGS = UNKNOWN;
+  public static final String FINGERPRINT = UNKNOWN;
+  public static final long TIME = 0;
+  public static final String USER = UNKNOWN;
+  public static final String HOST = UNKNOWN;
+  public static final boolean IS_DEBUGGABLE = false;
+
+  /**
+   * Version information.
+   */
+  public static class VERSION {
+
+    public static final String INCREMENTAL = UNKNOWN;
+    public static final String RELEASE = "6.0";
+    public static final String BASE_OS = "";
+    public static final String SECURITY_PATCH = "";
+    public static final String SDK = "23";
+    public static final int SDK_INT = 23;
+    public static final int PREVIEW_SDK_INT = 0;
+    public static final String CODENAME = "REL";
+    public static final String[] ACTIVE_CODENAMES = new String[0];
+    public static final int RESOURCES_SDK_INT = SDK_INT;
+
+  }
+
+  public static String getRadioVersion() {
+    return null;
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * Replaces the framework's native clock when running benchmarks on the JVM. Uptime and elapsed
+ * real time are both measured by {@link System#nanoTime()}, since the JVM has no notion of the
+ * device sleeping.
+ */
+public final class SystemClock {
+
+  private SystemClock() {}
+
+  public static void sleep(long ms) {
+    long endMs = uptimeMillis() + ms;
+    boolean interrupted = false;
+    long remainingMs = ms;
+    while (remainingMs > 0) {
+      try {
+        Thread.sleep(remainingMs);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+      remainingMs = endMs - uptimeMillis();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static long uptimeMillis() {
+    return System.nanoTime() / 1000000;
+  }
+
+  public static long elapsedRealtime() {
+    return System.nanoTime() / 1000000;
+  }
+
+  public static long elapsedRealtimeNanos() {
+    return System.nanoTime();
+  }
+
+  public static long currentThreadTimeMillis() {
+    return System.nanoTime() / 1000000;
+  }
+
+  public static long currentThreadTimeMicro() {
+    return System.nanoTime() / 1000;
+  }
+
+  public static long currentTimeMicro() {
+    return System.currentTimeMillis() * 1000;
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.internal.util;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Replaces the framework's array utilities when running benchmarks on the JVM. The framework
+ * version copies primitive arrays using overloads of {@link System#arraycopy} that only exist on
+ * Android. Only the methods used by {@code android.util.SparseArray} and
+ * {@code android.util.SparseBooleanArray} are provided.
+ */
+public final class GrowingArrayUtils {
+
+  private GrowingArrayUtils() {}
+
+  public static <T> T[] append(T[] array, int currentSize, T element) {
+    if (currentSize + 1 > array.length) {
+      array = Arrays.copyOf(array, growSize(currentSize));
+    }
+    array[currentSize] = element;
+    return array;
+  }
+
+  public static int[] append(int[] array, int currentSize, int element) {
+    if (currentSize + 1 > array.length) {
+      array = Arrays.copyOf(array, growSize(currentSize));
+    }
+    array[currentSize] = element;
+    return array;
+  }
+
+  public static boolean[] append(boolean[] array, int currentSize, boolean element) {
+    if (currentSize + 1 > array.length) {
+      array = Arrays.copyOf(array, growSize(currentSize));
+    }
+    array[currentSize] = element;
+    return array;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> T[] insert(T[] array, int currentSize, int index, T element) {
+    if (currentSize + 1 <= array.length) {
+      System.arraycopy(array, index, array, index + 1, currentSize - index);
+      array[index] = element;
+      return array;
+    }
+    T[] newArray = (T[]) Array.newInstance(array.getClass().getComponentType(),
+        growSize(currentSize));
+    System.arraycopy(array, 0, newArray, 0, index);
+    newArray[index] = element;
+    System.arraycopy(array, index, newArray, index + 1, array.length - index);
+    return newArray;
+  }
+
+  public static int[] insert(int[] array, int currentSize, int index, int element) {
+    if (currentSize + 1 <= array.length) {
+      System.arraycopy(array, index, array, index + 1, currentSize - index);
+      array[index] = element;
+      return array;
+    }
+    int[] newArray = new int[growSize(currentSize)];
+    System.arraycopy(array, 0, newArray, 0, index);
+    newArray[index] = element;
+    System.arraycopy(array, index, newArray, index + 1, array.length - index);
+    return newArray;
+  }
+
+  public static boolean[] insert(boolean[] array, int currentSize, int index, boolean element) {
+    if (currentSize + 1 <= array.length) {
+      System.arraycopy(array, index, array, index + 1, currentSize - index);
+      array[index] = element;
+      return array;
+    }
+    boolean[] newArray = new boolean[growSize(currentSize)];
+    System.arraycopy(array, 0, newArray, 0, index);
+    newArray[index] = element;
+    System.arraycopy(array, index, newArray, index + 1, array.length - index);
+    return newArray;
+  }
+
+  public static int growSize(int currentSize) {
+    return currentSize <= 4 ? 8 : currentSize * 2;
+  }
+
+}
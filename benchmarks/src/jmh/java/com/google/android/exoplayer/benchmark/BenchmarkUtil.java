@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.util.Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Utility methods for benchmarks.
+ */
+/* package */ final class BenchmarkUtil {
+
+  private BenchmarkUtil() {}
+
+  /**
+   * Reads a test asset, which the build places on the benchmark classpath.
+   *
+   * @param fileName The path of the asset, relative to the assets directory.
+   * @return The content of the asset.
+   * @throws IOException If the asset could not be read.
+   */
+  public static byte[] getAsset(String fileName) throws IOException {
+    InputStream inputStream = BenchmarkUtil.class.getClassLoader().getResourceAsStream(fileName);
+    if (inputStream == null) {
+      throw new IOException("Asset not found: " + fileName);
+    }
+    try {
+      return Util.toByteArray(inputStream);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+}
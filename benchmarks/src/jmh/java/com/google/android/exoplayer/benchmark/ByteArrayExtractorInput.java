@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+
+import java.io.EOFException;
+
+/**
+ * An {@link ExtractorInput} that reads from a byte array and can be rewound, so that benchmarks
+ * can read the same data repeatedly without allocating.
+ */
+/* package */ final class ByteArrayExtractorInput implements ExtractorInput {
+
+  private final byte[] data;
+
+  private int position;
+  private int peekPosition;
+
+  public ByteArrayExtractorInput(byte[] data) {
+    this.data = data;
+  }
+
+  /**
+   * Sets the read and peek positions to the start of the data.
+   */
+  public void rewind() {
+    position = 0;
+    peekPosition = 0;
+  }
+
+  @Override
+  public int read(byte[] target, int offset, int length) {
+    if (position == data.length) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    length = Math.min(length, data.length - position);
+    System.arraycopy(data, position, target, offset, length);
+    position += length;
+    peekPosition = position;
+    return length;
+  }
+
+  @Override
+  public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+      throws EOFException {
+    if (!checkLength(position, length, allowEndOfInput)) {
+      return false;
+    }
+    System.arraycopy(data, position, target, offset, length);
+    position += length;
+    peekPosition = position;
+    return true;
+  }
+
+  @Override
+  public void readFully(byte[] target, int offset, int length) throws EOFException {
+    readFully(target, offset, length, false);
+  }
+
+  @Override
+  public int skip(int length) {
+    if (position == data.length) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    length = Math.min(length, data.length - position);
+    position += length;
+    peekPosition = position;
+    return length;
+  }
+
+  @Override
+  public boolean skipFully(int length, boolean allowEndOfInput) throws EOFException {
+    if (!checkLength(position, length, allowEndOfInput)) {
+      return false;
+    }
+    position += length;
+    peekPosition = position;
+    return true;
+  }
+
+  @Override
+  public void skipFully(int length) throws EOFException {
+    skipFully(length, false);
+  }
+
+  @Override
+  public boolean peekFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+      throws EOFException {
+    if (!checkLength(peekPosition, length, allowEndOfInput)) {
+      return false;
+    }
+    System.arraycopy(data, peekPosition, target, offset, length);
+    peekPosition += length;
+    return true;
+  }
+
+  @Override
+  public void peekFully(byte[] target, int offset, int length) throws EOFException {
+    peekFully(target, offset, length, false);
+  }
+
+  @Override
+  public boolean advancePeekPosition(int length, boolean allowEndOfInput) throws EOFException {
+    if (!checkLength(peekPosition, length, allowEndOfInput)) {
+      return false;
+    }
+    peekPosition += length;
+    return true;
+  }
+
+  @Override
+  public void advancePeekPosition(int length) throws EOFException {
+    advancePeekPosition(length, false);
+  }
+
+  @Override
+  public void resetPeekPosition() {
+    peekPosition = position;
+  }
+
+  @Override
+  public long getPeekPosition() {
+    return peekPosition;
+  }
+
+  @Override
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public long getLength() {
+    return data.length;
+  }
+
+  private boolean checkLength(int position, int length, boolean allowEndOfInput)
+      throws EOFException {
+    if (allowEndOfInput && position == data.length) {
+      return false;
+    }
+    if (position + length > data.length) {
+      throw new EOFException();
+    }
+    return true;
+  }
+
+}
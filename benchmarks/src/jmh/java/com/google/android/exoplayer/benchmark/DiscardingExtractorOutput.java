@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * An {@link ExtractorOutput} that copies sample data into a fixed scratch buffer and discards it,
+ * so that extractor benchmarks measure the extractor rather than the sample queues.
+ */
+/* package */ final class DiscardingExtractorOutput implements ExtractorOutput, TrackOutput {
+
+  private static final int SCRATCH_LENGTH = 64 * 1024;
+
+  private final byte[] scratch;
+
+  private int sampleCount;
+
+  public DiscardingExtractorOutput() {
+    scratch = new byte[SCRATCH_LENGTH];
+  }
+
+  /**
+   * Returns the number of samples output since the last call to this method, and resets the count.
+   */
+  public int getAndResetSampleCount() {
+    int sampleCount = this.sampleCount;
+    this.sampleCount = 0;
+    return sampleCount;
+  }
+
+  // ExtractorOutput implementation.
+
+  @Override
+  public TrackOutput track(int trackId) {
+    return this;
+  }
+
+  @Override
+  public void endTracks() {
+    // Do nothing.
+  }
+
+  @Override
+  public void seekMap(SeekMap seekMap) {
+    // Do nothing.
+  }
+
+  @Override
+  public void drmInitData(DrmInitData drmInitData) {
+    // Do nothing.
+  }
+
+  // TrackOutput implementation.
+
+  @Override
+  public void format(MediaFormat format) {
+    // Do nothing.
+  }
+
+  @Override
+  public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+      throws IOException, InterruptedException {
+    int bytesRead = input.read(scratch, 0, Math.min(length, SCRATCH_LENGTH));
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      if (allowEndOfInput) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      throw new EOFException();
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public void sampleData(ParsableByteArray data, int length) {
+    while (length > 0) {
+      int bytesToRead = Math.min(length, SCRATCH_LENGTH);
+      data.readBytes(scratch, 0, bytesToRead);
+      length -= bytesToRead;
+    }
+  }
+
+  @Override
+  public void sampleMetadata(long timeUs, int flags, int size, int offset, byte[] encryptionKey) {
+    sampleCount++;
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the extractors, reading synthetic streams from memory.
+ * <p>
+ * Each operation extracts a complete stream, from sniffing to the end of input. The bytes counter
+ * reports the extraction rate in MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ExtractorBenchmark {
+
+  private static final int DURATION_SECONDS = 10;
+
+  @Param({"ts", "fmp4", "mp4", "webm", "mp3", "ogg"})
+  public String format;
+
+  private byte[] data;
+  private DiscardingExtractorOutput output;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    data = buildStream(format);
+    output = new DiscardingExtractorOutput();
+    // Fail fast if the extractor doesn't recognize the synthetic stream.
+    extract(createExtractor(format), data, output);
+    if (output.getAndResetSampleCount() == 0) {
+      throw new IllegalStateException("No samples extracted: " + format);
+    }
+  }
+
+  @Benchmark
+  public int extract(ByteCounter counter) throws IOException, InterruptedException {
+    extract(createExtractor(format), data, output);
+    counter.bytes += data.length;
+    return output.getAndResetSampleCount();
+  }
+
+  /**
+   * Extracts a complete stream in the same way as {@code ExtractorSampleSource}.
+   */
+  /* package */ static void extract(Extractor extractor, byte[] data,
+      DiscardingExtractorOutput output) throws IOException, InterruptedException {
+    DataSource dataSource = new ByteArrayDataSource(data);
+    ExtractorInput input = open(dataSource, 0);
+    if (!extractor.sniff(input)) {
+      throw new IllegalStateException("Extractor did not recognize the stream");
+    }
+    input.resetPeekPosition();
+    extractor.init(output);
+    PositionHolder positionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        dataSource.close();
+        input = open(dataSource, positionHolder.position);
+      }
+    }
+    dataSource.close();
+  }
+
+  private static ExtractorInput open(DataSource dataSource, long position) throws IOException {
+    long length = dataSource.open(new DataSpec(null, position, C.LENGTH_UNBOUNDED, null));
+    return new DefaultExtractorInput(dataSource, position, position + length);
+  }
+
+  private static byte[] buildStream(String format) {
+    switch (format) {
+      case "ts":
+        return SyntheticMedia.buildTs(DURATION_SECONDS);
+      case "fmp4":
+        return SyntheticMedia.buildFragmentedMp4(DURATION_SECONDS);
+      case "mp4":
+        return SyntheticMedia.buildMp4(DURATION_SECONDS);
+      case "webm":
+        return SyntheticMedia.buildWebm(DURATION_SECONDS);
+      case "mp3":
+        return SyntheticMedia.buildMp3(DURATION_SECONDS);
+      case "ogg":
+        return SyntheticMedia.buildOggFlac(DURATION_SECONDS);
+      default:
+        throw new IllegalArgumentException(format);
+    }
+  }
+
+  private static Extractor createExtractor(String format) {
+    switch (format) {
+      case "ts":
+        return new TsExtractor();
+      case "fmp4":
+        return new FragmentedMp4Extractor();
+      case "mp4":
+        return new Mp4Extractor();
+      case "webm":
+        return new WebmExtractor();
+      case "mp3":
+        return new Mp3Extractor();
+      case "ogg":
+        return new OggExtractor();
+      default:
+        throw new IllegalArgumentException(format);
+    }
+  }
+
+}
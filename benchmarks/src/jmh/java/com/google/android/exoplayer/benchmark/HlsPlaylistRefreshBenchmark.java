@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylistParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures refreshing a large live HLS media playlist, as done by the HLS chunk source once per
+ * target duration.
+ * <p>
+ * The refreshed playlist contains one more segment than the previously loaded playlist. For
+ * {@code event} playlists no segments are removed, as is the case for DVR playlists that grow for
+ * the duration of an event. For {@code sliding} playlists the oldest segment is removed. For
+ * {@code delta} playlists the oldest segment is removed, and the server skips all but the last few
+ * segments of the response if the previously loaded playlist is available. The {@code full} mode
+ * parses the refreshed playlist from scratch, and the {@code incremental} mode reuses the segments
+ * of the previously loaded playlist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HlsPlaylistRefreshBenchmark {
+
+  private static final String EVENT = "event";
+  private static final String SLIDING = "sliding";
+  private static final String DELTA = "delta";
+
+  private static final String FULL = "full";
+  private static final String INCREMENTAL = "incremental";
+
+  private static final String URL = "http://example.com/media.m3u8";
+  private static final int SEGMENT_COUNT = 3600;
+  private static final int DELTA_SEGMENT_COUNT = 6;
+
+  @Param({EVENT, SLIDING, DELTA})
+  public String playlistType;
+
+  @Param({FULL, INCREMENTAL})
+  public String mode;
+
+  private byte[] data;
+  private HlsPlaylistParser parser;
+  private HlsMediaPlaylist previousPlaylist;
+
+  @Setup
+  public void setUp() throws IOException {
+    parser = new HlsPlaylistParser();
+    byte[] previousData = buildPlaylist(0, SEGMENT_COUNT, 0).getBytes("UTF-8");
+    previousPlaylist = (HlsMediaPlaylist) parser.parse(URL,
+        new ByteArrayInputStream(previousData));
+    switch (playlistType) {
+      case EVENT:
+        data = buildPlaylist(0, SEGMENT_COUNT + 1, 0).getBytes("UTF-8");
+        break;
+      case SLIDING:
+        data = buildPlaylist(1, SEGMENT_COUNT, 0).getBytes("UTF-8");
+        break;
+      case DELTA:
+        // Without the previous playlist, the full playlist has to be requested.
+        int skippedSegmentCount = FULL.equals(mode) ? 0 : SEGMENT_COUNT - DELTA_SEGMENT_COUNT;
+        data = buildPlaylist(1, SEGMENT_COUNT, skippedSegmentCount).getBytes("UTF-8");
+        break;
+      default:
+        throw new IllegalArgumentException(playlistType);
+    }
+    if (FULL.equals(mode)) {
+      previousPlaylist = null;
+    }
+  }
+
+  @Benchmark
+  public HlsPlaylist refresh(ByteCounter counter) throws IOException {
+    counter.bytes += data.length;
+    return parser.parse(URL, new ByteArrayInputStream(data), previousPlaylist);
+  }
+
+  private static String buildPlaylist(int mediaSequence, int segmentCount,
+      int skippedSegmentCount) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:3\n")
+        .append("#EXT-X-TARGETDURATION:4\n")
+        .append("#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=24.0\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:").append(mediaSequence).append('\n');
+    if (skippedSegmentCount > 0) {
+      builder.append("#EXT-X-SKIP:SKIPPED-SEGMENTS=").append(skippedSegmentCount).append('\n');
+    }
+    for (int i = mediaSequence + skippedSegmentCount; i < mediaSequence + segmentCount; i++) {
+      builder.append("#EXTINF:").append(i % 2 == 0 ? "3.98663" : "4.01000").append(",\n")
+          .append("https://cdn.example.com/live/720p/segment").append(i).append(".ts\n");
+    }
+    return builder.toString();
+  }
+
+}
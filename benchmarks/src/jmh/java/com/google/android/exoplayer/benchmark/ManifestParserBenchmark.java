@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionParser;
+import com.google.android.exoplayer.hls.HlsPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylistParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the HLS playlist and DASH manifest parsers.
+ * <p>
+ * The synthetic inputs model long VOD presentations, which are the worst case for parsing time
+ * and for allocations on the playback path. The bytes counter reports the parsing rate in MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ManifestParserBenchmark {
+
+  private static final String HLS_MEDIA_PLAYLIST = "hls-media";
+  private static final String HLS_MASTER_PLAYLIST = "hls-master";
+  private static final String DASH_FIXTURE = "dash-fixture";
+  private static final String DASH_SEGMENT_TIMELINE = "dash-timeline";
+
+  private static final String URL = "http://example.com/manifest";
+  private static final int SEGMENT_COUNT = 1800;
+  private static final int VARIANT_COUNT = 8;
+
+  @Param({HLS_MEDIA_PLAYLIST, HLS_MASTER_PLAYLIST, DASH_FIXTURE, DASH_SEGMENT_TIMELINE})
+  public String input;
+
+  private byte[] data;
+  private HlsPlaylistParser hlsPlaylistParser;
+  private MediaPresentationDescriptionParser mpdParser;
+
+  @Setup
+  public void setUp() throws IOException {
+    hlsPlaylistParser = new HlsPlaylistParser();
+    mpdParser = new MediaPresentationDescriptionParser();
+    switch (input) {
+      case HLS_MEDIA_PLAYLIST:
+        data = buildHlsMediaPlaylist().getBytes("UTF-8");
+        break;
+      case HLS_MASTER_PLAYLIST:
+        data = buildHlsMasterPlaylist().getBytes("UTF-8");
+        break;
+      case DASH_FIXTURE:
+        data = BenchmarkUtil.getAsset("dash/sample_mpd_1");
+        break;
+      case DASH_SEGMENT_TIMELINE:
+        data = buildSegmentTimelineMpd().getBytes("UTF-8");
+        break;
+      default:
+        throw new IllegalArgumentException(input);
+    }
+  }
+
+  @Benchmark
+  public Object parse(ByteCounter counter) throws IOException {
+    counter.bytes += data.length;
+    switch (input) {
+      case HLS_MEDIA_PLAYLIST:
+      case HLS_MASTER_PLAYLIST:
+        return parseHls();
+      default:
+        return parseMpd();
+    }
+  }
+
+  private HlsPlaylist parseHls() throws IOException {
+    return hlsPlaylistParser.parse(URL, new ByteArrayInputStream(data));
+  }
+
+  private MediaPresentationDescription parseMpd() throws IOException {
+    return mpdParser.parse(URL, new ByteArrayInputStream(data));
+  }
+
+  private static String buildHlsMediaPlaylist() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:3\n")
+        .append("#EXT-X-TARGETDURATION:10\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:0\n")
+        .append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      builder.append("#EXTINF:").append(i % 2 == 0 ? "9.97663" : "10.01000").append(",\n")
+          .append("#EXT-X-BYTERANGE:").append(500000 + i).append('@').append(i * 510000L)
+          .append('\n')
+          .append("https://cdn.example.com/video/720p/segment").append(i / 100).append(".ts\n");
+    }
+    builder.append("#EXT-X-ENDLIST\n");
+    return builder.toString();
+  }
+
+  private static String buildHlsMasterPlaylist() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("#EXTM3U\n")
+        .append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",LANGUAGE=\"en\",NAME=\"English\",")
+        .append("DEFAULT=YES,AUTOSELECT=YES,URI=\"audio/en/prog_index.m3u8\"\n")
+        .append("#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"subs\",LANGUAGE=\"en\",NAME=\"English\",")
+        .append("DEFAULT=NO,AUTOSELECT=YES,URI=\"subs/en/prog_index.m3u8\"\n");
+    for (int i = 0; i < VARIANT_COUNT; i++) {
+      int height = 180 * (i + 1);
+      builder.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(400000 * (i + 1))
+          .append(",CODECS=\"avc1.64001f,mp4a.40.2\",RESOLUTION=").append(height * 16 / 9)
+          .append('x').append(height).append(",AUDIO=\"aac\",SUBTITLES=\"subs\"\n")
+          .append("video/").append(height).append("p/prog_index.m3u8\n");
+    }
+    return builder.toString();
+  }
+
+  private static String buildSegmentTimelineMpd() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"static\" ")
+        .append("mediaPresentationDuration=\"PT").append(SEGMENT_COUNT * 2).append("S\" ")
+        .append("minBufferTime=\"PT2S\" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n")
+        .append("  <Period id=\"0\" start=\"PT0S\">\n");
+    appendAdaptationSet(builder, "video/mp4", "avc1.64001f", 90000, 180180);
+    appendAdaptationSet(builder, "audio/mp4", "mp4a.40.2", 44100, 88064);
+    builder.append("  </Period>\n")
+        .append("</MPD>\n");
+    return builder.toString();
+  }
+
+  private static void appendAdaptationSet(StringBuilder builder, String mimeType, String codecs,
+      int timescale, int segmentDuration) {
+    builder.append("    <AdaptationSet mimeType=\"").append(mimeType).append("\">\n")
+        .append("      <SegmentTemplate timescale=\"").append(timescale).append("\" ")
+        .append("initialization=\"$RepresentationID$/init.mp4\" ")
+        .append("media=\"$RepresentationID$/$Time$.m4s\">\n")
+        .append("        <SegmentTimeline>\n");
+    long time = 0;
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      // Alternate segment durations, so that the timeline can't be expressed using repeats.
+      int duration = segmentDuration + (i % 2 == 0 ? 1 : -1);
+      builder.append("          <S t=\"").append(time).append("\" d=\"").append(duration)
+          .append("\"/>\n");
+      time += duration;
+    }
+    builder.append("        </SegmentTimeline>\n")
+        .append("      </SegmentTemplate>\n");
+    for (int i = 0; i < VARIANT_COUNT; i++) {
+      builder.append("      <Representation id=\"").append(mimeType.charAt(0)).append(i)
+          .append("\" codecs=\"").append(codecs).append("\" bandwidth=\"")
+          .append(400000 * (i + 1)).append("\"/>\n");
+    }
+    builder.append("    </AdaptationSet>\n");
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures refreshing a large multi-period live DASH manifest, as done by the manifest fetcher once
+ * per minimum update period.
+ * <p>
+ * The manifest has 50 periods, each with an adaptation set of 10 representations that share a
+ * segment timeline. The refreshed manifest has one more segment in the last period. The
+ * {@code full} mode parses the refreshed manifest from scratch, and the {@code incremental} mode
+ * passes the previously loaded manifest to the parser, so that the unchanged periods and their
+ * representations are reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MpdRefreshBenchmark {
+
+  private static final String FULL = "full";
+  private static final String INCREMENTAL = "incremental";
+
+  private static final String URL = "http://example.com/manifest.mpd";
+  private static final int PERIOD_COUNT = 50;
+  private static final int REPRESENTATION_COUNT = 10;
+  private static final int SEGMENT_COUNT = 30;
+  private static final int TIMESCALE = 90000;
+  private static final int SEGMENT_DURATION = 180000;
+
+  @Param({FULL, INCREMENTAL})
+  public String mode;
+
+  private byte[] data;
+  private MediaPresentationDescriptionParser parser;
+  private MediaPresentationDescription previousManifest;
+
+  @Setup
+  public void setUp() throws IOException {
+    parser = new MediaPresentationDescriptionParser();
+    byte[] previousData = buildMpd(SEGMENT_COUNT - 1).getBytes("UTF-8");
+    previousManifest = parser.parse(URL, new ByteArrayInputStream(previousData), null);
+    data = buildMpd(SEGMENT_COUNT).getBytes("UTF-8");
+    if (FULL.equals(mode)) {
+      previousManifest = null;
+    }
+  }
+
+  @Benchmark
+  public MediaPresentationDescription refresh(ByteCounter counter) throws IOException {
+    counter.bytes += data.length;
+    return parser.parse(URL, new ByteArrayInputStream(data), previousManifest);
+  }
+
+  private static String buildMpd(int lastPeriodSegmentCount) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"dynamic\" ")
+        .append("availabilityStartTime=\"2016-01-01T00:00:00Z\" minimumUpdatePeriod=\"PT2S\" ")
+        .append("timeShiftBufferDepth=\"PT1H\" minBufferTime=\"PT2S\" ")
+        .append("profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n");
+    long periodDurationSeconds = SEGMENT_COUNT * SEGMENT_DURATION / TIMESCALE;
+    for (int i = 0; i < PERIOD_COUNT; i++) {
+      int segmentCount = i == PERIOD_COUNT - 1 ? lastPeriodSegmentCount : SEGMENT_COUNT;
+      builder.append("  <Period id=\"p").append(i).append("\" start=\"PT")
+          .append(i * periodDurationSeconds).append("S\">\n")
+          .append("    <AdaptationSet id=\"0\" mimeType=\"video/mp4\" ")
+          .append("segmentAlignment=\"true\">\n")
+          .append("      <SegmentTemplate timescale=\"").append(TIMESCALE).append("\" ")
+          .append("initialization=\"p").append(i).append("/$RepresentationID$/init.mp4\" ")
+          .append("media=\"p").append(i).append("/$RepresentationID$/$Time$.m4s\">\n")
+          .append("        <SegmentTimeline>\n");
+      long time = 0;
+      for (int j = 0; j < segmentCount; j++) {
+        // Vary the durations slightly, as encoders typically do.
+        int duration = SEGMENT_DURATION + (j % 3 == 0 ? 3003 : -1501);
+        builder.append("          <S t=\"").append(time).append("\" d=\"").append(duration)
+            .append("\"/>\n");
+        time += duration;
+      }
+      builder.append("        </SegmentTimeline>\n")
+          .append("      </SegmentTemplate>\n");
+      for (int j = 0; j < REPRESENTATION_COUNT; j++) {
+        int height = 144 + 108 * j;
+        builder.append("      <Representation id=\"v").append(j)
+            .append("\" codecs=\"avc1.64001f\" width=\"").append(height * 16 / 9)
+            .append("\" height=\"").append(height).append("\" frameRate=\"30000/1001\" ")
+            .append("bandwidth=\"").append(300000 * (j + 1)).append("\"/>\n");
+      }
+      builder.append("    </AdaptationSet>\n")
+          .append("  </Period>\n");
+    }
+    builder.append("</MPD>\n");
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.extractor.DefaultTrackOutput;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link DefaultTrackOutput}, through which all extracted samples pass
+ * on their way from the loading thread to the playback thread.
+ * <p>
+ * {@link #appendAndRead} appends and then reads a batch of samples on a single thread.
+ * {@link #append} and {@link #read} run concurrently on separate threads, as loading and playback
+ * do, and never block, so that either side can finish an iteration while the other is waiting.
+ * The bytes counter reports the rate at which sample data is copied out of the queue in MB/s.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SampleQueueBenchmark {
+
+  private static final int ALLOCATION_SIZE = 64 * 1024;
+  private static final int BATCH_SIZE = 300;
+  private static final int MAX_QUEUED_SAMPLES = 1000;
+
+  @Param({"300", "4096", "65536"})
+  public int sampleSize;
+
+  private DefaultTrackOutput trackOutput;
+  private ParsableByteArray sampleData;
+  private SampleHolder sampleHolder;
+  private long nextTimeUs;
+
+  @Setup
+  public void setUp() {
+    trackOutput = new DefaultTrackOutput(new DefaultAllocator(ALLOCATION_SIZE));
+    sampleData = new ParsableByteArray(sampleSize);
+    sampleHolder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+    sampleHolder.ensureSpaceForWrite(sampleSize);
+  }
+
+  @Benchmark
+  public long appendAndRead(ByteCounter counter) {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      appendSample();
+    }
+    long timeUs = 0;
+    while (readSample(counter)) {
+      timeUs = sampleHolder.timeUs;
+    }
+    return timeUs;
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  public boolean append() {
+    if (trackOutput.getWriteIndex() - trackOutput.getReadIndex() >= MAX_QUEUED_SAMPLES) {
+      return false;
+    }
+    appendSample();
+    return true;
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  public boolean read(ByteCounter counter) {
+    return readSample(counter);
+  }
+
+  private void appendSample() {
+    sampleData.setPosition(0);
+    trackOutput.sampleData(sampleData, sampleSize);
+    trackOutput.sampleMetadata(nextTimeUs++, C.SAMPLE_FLAG_SYNC, sampleSize, 0, null);
+  }
+
+  private boolean readSample(ByteCounter counter) {
+    sampleHolder.clearData();
+    if (!trackOutput.getSample(sampleHolder)) {
+      return false;
+    }
+    counter.bytes += sampleHolder.size;
+    return true;
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import com.google.android.exoplayer.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures contention in {@link SimpleCache} when several loaders use it concurrently.
+ * <p>
+ * The cache is populated with a number of keys, each with a number of cached spans. Each thread
+ * repeatedly picks a random key, as concurrent loaders of different streams would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Threads(4)
+@Fork(1)
+public class SimpleCacheBenchmark {
+
+  private static final int KEY_COUNT = 16;
+  private static final int SPAN_COUNT = 64;
+  private static final int SPAN_LENGTH = 1024;
+
+  private String[] keys;
+  private File cacheDir;
+  private SimpleCache cache;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    cacheDir = File.createTempFile("SimpleCacheBenchmark", null);
+    cacheDir.delete();
+    cacheDir.mkdirs();
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    keys = new String[KEY_COUNT];
+    byte[] data = new byte[SPAN_LENGTH];
+    for (int i = 0; i < KEY_COUNT; i++) {
+      keys[i] = "key" + i;
+      for (int j = 0; j < SPAN_COUNT; j++) {
+        String key = keys[i];
+        long position = (long) j * SPAN_LENGTH;
+        CacheSpan holeSpan = cache.startReadWrite(key, position);
+        File file = cache.startFile(key, position, SPAN_LENGTH);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+          outputStream.write(data);
+        } finally {
+          outputStream.close();
+        }
+        cache.commitFile(file);
+        cache.releaseHoleSpan(holeSpan);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  /**
+   * Looks up a cached range, as {@code CacheDataSource} does before each read.
+   */
+  @Benchmark
+  public boolean isCached(ThreadState state) {
+    long position = state.random.nextInt(SPAN_COUNT) * (long) SPAN_LENGTH;
+    return cache.isCached(keys[state.random.nextInt(KEY_COUNT)], position, SPAN_LENGTH);
+  }
+
+  /**
+   * Starts a read of a cached span, which updates its last access timestamp.
+   */
+  @Benchmark
+  public CacheSpan startRead(ThreadState state) throws InterruptedException {
+    long position = state.random.nextInt(SPAN_COUNT) * (long) SPAN_LENGTH;
+    return cache.startReadWrite(keys[state.random.nextInt(KEY_COUNT)], position);
+  }
+
+  /**
+   * Locks and releases the hole at the end of a key's cached content, as a write that's abandoned
+   * before any data is written does.
+   */
+  @Benchmark
+  public CacheSpan startAndReleaseWrite(ThreadState state) throws InterruptedException {
+    CacheSpan holeSpan = cache.startReadWrite(keys[state.random.nextInt(KEY_COUNT)],
+        SPAN_COUNT * (long) SPAN_LENGTH);
+    cache.releaseHoleSpan(holeSpan);
+    return holeSpan;
+  }
+
+  /**
+   * Per-thread state.
+   */
+  @State(Scope.Thread)
+  public static class ThreadState {
+
+    public final Random random = new Random();
+
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.util.SlidingPercentile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link SlidingPercentile} with {@link ListSlidingPercentile}, the list based
+ * implementation that it replaced, when samples are added and the percentile is queried
+ * alternately, as is the case during bandwidth estimation.
+ * <p>
+ * Each operation adds a sample and queries the median. The window is filled during setup, so the
+ * measurements are of the steady state, in which {@link SlidingPercentile} should not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SlidingPercentileBenchmark {
+
+  private static final int INPUT_COUNT = 4096;
+  private static final int MAX_SAMPLE_WEIGHT = 50;
+
+  /**
+   * The maximum weight of the window. With samples weighted by the square root of their size, as
+   * in bandwidth estimation, 2000 corresponds to tens of samples.
+   */
+  @Param({"2000", "20000", "200000"})
+  public int maxWeight;
+
+  private int[] weights;
+  private float[] values;
+  private int inputIndex;
+
+  private SlidingPercentile slidingPercentile;
+  private ListSlidingPercentile listSlidingPercentile;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    weights = new int[INPUT_COUNT];
+    values = new float[INPUT_COUNT];
+    for (int i = 0; i < INPUT_COUNT; i++) {
+      weights[i] = 1 + random.nextInt(MAX_SAMPLE_WEIGHT);
+      values[i] = random.nextFloat() * 10000000;
+    }
+    slidingPercentile = new SlidingPercentile(maxWeight);
+    listSlidingPercentile = new ListSlidingPercentile(maxWeight);
+    // Fill the windows, so that samples are also removed during measurement.
+    int fillCount = 2 * maxWeight / MAX_SAMPLE_WEIGHT + 1;
+    for (int i = 0; i < fillCount; i++) {
+      int index = i % INPUT_COUNT;
+      slidingPercentile.addSample(weights[index], values[index]);
+      listSlidingPercentile.addSample(weights[index], values[index]);
+    }
+  }
+
+  @Benchmark
+  public float addAndQuery() {
+    int index = nextInputIndex();
+    slidingPercentile.addSample(weights[index], values[index]);
+    return slidingPercentile.getPercentile(0.5f);
+  }
+
+  @Benchmark
+  public float addAndQueryList() {
+    int index = nextInputIndex();
+    listSlidingPercentile.addSample(weights[index], values[index]);
+    return listSlidingPercentile.getPercentile(0.5f);
+  }
+
+  private int nextInputIndex() {
+    inputIndex = (inputIndex + 1) % INPUT_COUNT;
+    return inputIndex;
+  }
+
+}
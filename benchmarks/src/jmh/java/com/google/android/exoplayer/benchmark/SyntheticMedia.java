@@ -0,0 +1,646 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Builds synthetic media streams for benchmarking extractors.
+ * <p>
+ * Each stream contains a 1280x720, 30 fps video track with a keyframe every second, and an audio
+ * track where the container supports one. Sample payloads are filler bytes, so the streams
+ * exercise the extractors' parsing and sample output paths but can't be decoded.
+ */
+/* package */ final class SyntheticMedia {
+
+  private static final int VIDEO_FRAME_RATE = 30;
+  private static final int VIDEO_KEYFRAME_SIZE = 24 * 1024;
+  private static final int VIDEO_FRAME_SIZE = 4 * 1024;
+
+  private static final int AUDIO_SAMPLE_RATE = 44100;
+  private static final int AAC_FRAME_SAMPLE_COUNT = 1024;
+  private static final int AAC_FRAME_SIZE = 300;
+  private static final int OPUS_FRAME_DURATION_MS = 20;
+  private static final int OPUS_FRAME_SIZE = 160;
+  private static final int FLAC_BLOCK_SIZE = 4096;
+  private static final int FLAC_FRAME_SIZE = 6000;
+
+  /** An H.264 SPS NAL unit for a 1280x720 stream, excluding its start code. */
+  private static final byte[] H264_SPS = Util.getBytesFromHexString(
+      "6764001facb402802dd80880000003008000001e078c1950");
+  /** An H.264 PPS NAL unit, excluding its start code. */
+  private static final byte[] H264_PPS = Util.getBytesFromHexString("68ee3cb0");
+
+  /** An AVC stsd payload, containing the SPS and PPS above. */
+  private static final byte[] AVC_STSD_PAYLOAD = Util.getBytesFromHexString(
+      "00000000000000010000009961766331000000000000000100000000000000000000000000000000050002d00048"
+      + "000000480000000000000001000000000000000000000000000000000000000000000000000000000000000000"
+      + "18ffff0000002f617663430164001fffe100186764001facb402802dd80880000003008000001e078c19500100"
+      + "0468ee3cb000000014627472740000e35c0042a61000216cb8");
+  /** An AAC-LC stsd payload, for stereo audio at 44.1 kHz. */
+  private static final byte[] AAC_STSD_PAYLOAD = Util.getBytesFromHexString(
+      "0000000000000001000000596d703461000000000000000100000000000000000001001000000000ac4400000000"
+      + "003565736473000000000327000000041f401500023e00024bc000023280051012080000000000000000000000"
+      + "000000060102");
+  /** An mvhd payload with a timescale of 1000. */
+  private static final byte[] MVHD_PAYLOAD = Util.getBytesFromHexString(
+      "00000000cf6c4888cf6c4888000003e800000000000100000100000000000000000000000001000000000000"
+      + "0000000000000000000100000000000000000000000000004000000000000000000000000000000000000000"
+      + "000000000000000000000003");
+  /** The prefix of an mdhd payload, which is followed by the timescale. */
+  private static final byte[] MDHD_PAYLOAD_PREFIX = Util.getBytesFromHexString(
+      "00000000cf6c4888cf6c4888");
+  /** The suffix of an mdhd payload, following the timescale. */
+  private static final byte[] MDHD_PAYLOAD_SUFFIX = Util.getBytesFromHexString("0000000055c40000");
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int TS_PMT_PID = 0x1000;
+  private static final int TS_VIDEO_PID = 0x100;
+  private static final int TS_AUDIO_PID = 0x101;
+
+  private SyntheticMedia() {}
+
+  /**
+   * Builds an MPEG-TS stream containing H.264 video and ADTS AAC audio. The program tables are
+   * repeated before each video keyframe.
+   */
+  public static byte[] buildTs(int durationSeconds) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int[] continuityCounters = new int[0x2000];
+    int videoFrameCount = durationSeconds * VIDEO_FRAME_RATE;
+    int audioFrameCount = getAacFrameCount(durationSeconds);
+    int videoIndex = 0;
+    int audioIndex = 0;
+    while (videoIndex < videoFrameCount || audioIndex < audioFrameCount) {
+      long videoTimeUs = getVideoTimeUs(videoIndex);
+      long audioTimeUs = getAacTimeUs(audioIndex);
+      if (audioIndex == audioFrameCount
+          || (videoIndex < videoFrameCount && videoTimeUs <= audioTimeUs)) {
+        if (isVideoKeyframe(videoIndex)) {
+          writeTsSection(out, 0, continuityCounters, Util.getBytesFromHexString(
+              "00b00d0001c100000001f000" + "00000000"));
+          writeTsSection(out, TS_PMT_PID, continuityCounters, Util.getBytesFromHexString(
+              "02b0170001c10000e100f0001be100f0000fe101f000" + "00000000"));
+        }
+        writeTsPes(out, TS_VIDEO_PID, 0xE0, videoTimeUs, buildAnnexBAccessUnit(videoIndex),
+            continuityCounters);
+        videoIndex++;
+      } else {
+        writeTsPes(out, TS_AUDIO_PID, 0xC0, audioTimeUs, buildAdtsFrame(), continuityCounters);
+        audioIndex++;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Builds a fragmented MP4 stream containing H.264 video and AAC audio, with one fragment per
+   * second.
+   */
+  public static byte[] buildFragmentedMp4(int durationSeconds) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write(out, box("ftyp", Util.getBytesFromHexString("69736f350000000069736f35")));
+    write(out, box("moov",
+        box("mvhd", MVHD_PAYLOAD),
+        buildTrak(1, true, new byte[0]),
+        buildTrak(2, false, new byte[0]),
+        box("mvex",
+            box("trex", ints(0, 1, 1, 0, 0, 0)),
+            box("trex", ints(0, 2, 1, 0, 0, 0)))));
+    for (int second = 0; second < durationSeconds; second++) {
+      int firstVideoIndex = second * VIDEO_FRAME_RATE;
+      int[] videoSizes = new int[VIDEO_FRAME_RATE];
+      for (int i = 0; i < videoSizes.length; i++) {
+        videoSizes[i] = getVideoFrameSize(firstVideoIndex + i);
+      }
+      int firstAudioIndex = getAacFrameCount(second);
+      int[] audioSizes = new int[getAacFrameCount(second + 1) - firstAudioIndex];
+      for (int i = 0; i < audioSizes.length; i++) {
+        audioSizes[i] = AAC_FRAME_SIZE;
+      }
+      int videoDataLength = sum(videoSizes);
+      // The traf sizes don't depend on the data offsets, so build the moof once to measure it.
+      int moofSize = buildMoof(second, firstVideoIndex, videoSizes, firstAudioIndex, audioSizes,
+          0, 0).length;
+      int videoDataOffset = moofSize + 8;
+      write(out, buildMoof(second, firstVideoIndex, videoSizes, firstAudioIndex, audioSizes,
+          videoDataOffset, videoDataOffset + videoDataLength));
+      ByteArrayOutputStream mdat = new ByteArrayOutputStream();
+      for (int i = 0; i < videoSizes.length; i++) {
+        write(mdat, buildLengthPrefixedAccessUnit(firstVideoIndex + i));
+      }
+      for (int i = 0; i < audioSizes.length; i++) {
+        write(mdat, filler(AAC_FRAME_SIZE));
+      }
+      write(out, box("mdat", mdat.toByteArray()));
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Builds an unfragmented MP4 stream containing H.264 video and AAC audio, with the moov atom
+   * before the mdat atom and one chunk per track per second.
+   */
+  public static byte[] buildMp4(int durationSeconds) {
+    int videoFrameCount = durationSeconds * VIDEO_FRAME_RATE;
+    int[] videoSizes = new int[videoFrameCount];
+    for (int i = 0; i < videoFrameCount; i++) {
+      videoSizes[i] = getVideoFrameSize(i);
+    }
+    int[] audioSizes = new int[getAacFrameCount(durationSeconds)];
+    for (int i = 0; i < audioSizes.length; i++) {
+      audioSizes[i] = AAC_FRAME_SIZE;
+    }
+    int[] audioChunkSampleCounts = new int[durationSeconds];
+    for (int i = 0; i < durationSeconds; i++) {
+      audioChunkSampleCounts[i] = getAacFrameCount(i + 1) - getAacFrameCount(i);
+    }
+
+    byte[] ftyp = box("ftyp", Util.getBytesFromHexString("6d703431000000006d70343169736f6d"));
+    // The moov size doesn't depend on the chunk offsets, so build it once to measure it.
+    long[] videoChunkOffsets = new long[durationSeconds];
+    long[] audioChunkOffsets = new long[durationSeconds];
+    int moovSize = buildMoov(videoSizes, videoChunkOffsets, audioSizes, audioChunkSampleCounts,
+        audioChunkOffsets).length;
+    long position = ftyp.length + moovSize + 8;
+    ByteArrayOutputStream mdat = new ByteArrayOutputStream();
+    int audioIndex = 0;
+    for (int chunk = 0; chunk < durationSeconds; chunk++) {
+      videoChunkOffsets[chunk] = position + mdat.size();
+      for (int i = 0; i < VIDEO_FRAME_RATE; i++) {
+        write(mdat, buildLengthPrefixedAccessUnit(chunk * VIDEO_FRAME_RATE + i));
+      }
+      audioChunkOffsets[chunk] = position + mdat.size();
+      for (int i = 0; i < audioChunkSampleCounts[chunk]; i++) {
+        write(mdat, filler(audioSizes[audioIndex++]));
+      }
+    }
+    return concat(ftyp,
+        buildMoov(videoSizes, videoChunkOffsets, audioSizes, audioChunkSampleCounts,
+            audioChunkOffsets),
+        box("mdat", mdat.toByteArray()));
+  }
+
+  /**
+   * Builds a WebM stream containing VP9 video and Opus audio, with one cluster per second.
+   */
+  public static byte[] buildWebm(int durationSeconds) {
+    byte[] opusHead = concat("OpusHead".getBytes(),
+        Util.getBytesFromHexString("0102380180bb0000000000"));
+    byte[] ebmlHeader = ebml(0x1A45DFA3,
+        ebml(0x42F7, uint(1)), // EBMLReadVersion
+        ebml(0x4282, "webm".getBytes()), // DocType
+        ebml(0x4285, uint(2))); // DocTypeReadVersion
+    ByteArrayOutputStream segment = new ByteArrayOutputStream();
+    write(segment, ebml(0x1549A966, // Info
+        ebml(0x2AD7B1, uint(1000000)), // TimecodeScale
+        ebml(0x4489, ByteBuffer.allocate(8).putDouble(durationSeconds * 1000d).array())));
+    write(segment, ebml(0x1654AE6B, // Tracks
+        ebml(0xAE, // TrackEntry
+            ebml(0xD7, uint(1)), // TrackNumber
+            ebml(0x83, uint(1)), // TrackType
+            ebml(0x86, "V_VP9".getBytes()), // CodecID
+            ebml(0xE0, // Video
+                ebml(0xB0, uint(1280)), // PixelWidth
+                ebml(0xBA, uint(720)))), // PixelHeight
+        ebml(0xAE, // TrackEntry
+            ebml(0xD7, uint(2)), // TrackNumber
+            ebml(0x83, uint(2)), // TrackType
+            ebml(0x86, "A_OPUS".getBytes()), // CodecID
+            ebml(0x56AA, uint(6500000)), // CodecDelay
+            ebml(0x56BB, uint(80000000)), // SeekPreRoll
+            ebml(0x63A2, opusHead), // CodecPrivate
+            ebml(0xE1, // Audio
+                ebml(0x9F, uint(2)), // Channels
+                ebml(0xB5, ByteBuffer.allocate(8).putDouble(48000).array())))));
+    int opusFramesPerSecond = 1000 / OPUS_FRAME_DURATION_MS;
+    for (int second = 0; second < durationSeconds; second++) {
+      ByteArrayOutputStream cluster = new ByteArrayOutputStream();
+      write(cluster, ebml(0xE7, uint(second * 1000))); // Timecode
+      int videoIndex = 0;
+      int audioIndex = 0;
+      while (videoIndex < VIDEO_FRAME_RATE || audioIndex < opusFramesPerSecond) {
+        int videoTimeMs = videoIndex * 1000 / VIDEO_FRAME_RATE;
+        int audioTimeMs = audioIndex * OPUS_FRAME_DURATION_MS;
+        if (audioIndex == opusFramesPerSecond
+            || (videoIndex < VIDEO_FRAME_RATE && videoTimeMs <= audioTimeMs)) {
+          int frameIndex = second * VIDEO_FRAME_RATE + videoIndex;
+          write(cluster, buildSimpleBlock(1, videoTimeMs, isVideoKeyframe(frameIndex),
+              filler(getVideoFrameSize(frameIndex))));
+          videoIndex++;
+        } else {
+          write(cluster, buildSimpleBlock(2, audioTimeMs, true, filler(OPUS_FRAME_SIZE)));
+          audioIndex++;
+        }
+      }
+      write(segment, ebml(0x1F43B675, cluster.toByteArray())); // Cluster
+    }
+    return concat(ebmlHeader, ebml(0x18538067, segment.toByteArray())); // Segment
+  }
+
+  /**
+   * Builds an MP3 stream of constant bitrate 128 kbit/s, 44.1 kHz MPEG-1 Layer III frames.
+   */
+  public static byte[] buildMp3(int durationSeconds) {
+    int frameSize = 144 * 128000 / AUDIO_SAMPLE_RATE;
+    int frameCount = durationSeconds * AUDIO_SAMPLE_RATE / 1152;
+    ByteBuffer buffer = ByteBuffer.allocate(frameCount * frameSize);
+    for (int i = 0; i < frameCount; i++) {
+      buffer.position(i * frameSize);
+      buffer.putInt(0xFFFB9044);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Builds an Ogg stream containing FLAC audio, with four frames per page.
+   */
+  public static byte[] buildOggFlac(int durationSeconds) {
+    int frameCount = durationSeconds * AUDIO_SAMPLE_RATE / FLAC_BLOCK_SIZE;
+    ByteBuffer streamInfo = ByteBuffer.allocate(34);
+    streamInfo.putShort((short) FLAC_BLOCK_SIZE);
+    streamInfo.putShort((short) FLAC_BLOCK_SIZE);
+    streamInfo.put(new byte[6]); // Minimum and maximum frame sizes, which are unknown.
+    // Sample rate (20 bits), channel count - 1 (3 bits), bits per sample - 1 (5 bits) and the
+    // most significant 4 bits of the total sample count (36 bits).
+    streamInfo.putInt((AUDIO_SAMPLE_RATE << 12) | (1 << 9) | (15 << 4));
+    streamInfo.putInt(frameCount * FLAC_BLOCK_SIZE);
+    byte[] headerPacket = concat(Util.getBytesFromHexString("7f464c414301000000"),
+        "fLaC".getBytes(), Util.getBytesFromHexString("00000022"), streamInfo.array());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int pageSequenceNumber = 0;
+    write(out, buildOggPage(0x02, 0, pageSequenceNumber++, headerPacket));
+    for (int i = 0; i < frameCount; i += 4) {
+      int pageFrameCount = Math.min(4, frameCount - i);
+      byte[][] packets = new byte[pageFrameCount][];
+      for (int j = 0; j < pageFrameCount; j++) {
+        packets[j] = buildFlacFrame(i + j);
+      }
+      int type = i + pageFrameCount == frameCount ? 0x04 : 0x00;
+      write(out, buildOggPage(type, (long) (i + pageFrameCount) * FLAC_BLOCK_SIZE,
+          pageSequenceNumber++, packets));
+    }
+    return out.toByteArray();
+  }
+
+  // Video.
+
+  private static boolean isVideoKeyframe(int index) {
+    return index % VIDEO_FRAME_RATE == 0;
+  }
+
+  private static int getVideoFrameSize(int index) {
+    return isVideoKeyframe(index) ? VIDEO_KEYFRAME_SIZE : VIDEO_FRAME_SIZE;
+  }
+
+  private static long getVideoTimeUs(int index) {
+    return index * 1000000L / VIDEO_FRAME_RATE;
+  }
+
+  /**
+   * Returns an access unit of length {@link #getVideoFrameSize(int)} consisting of a single slice
+   * NAL unit, preceded by a four byte length field.
+   */
+  private static byte[] buildLengthPrefixedAccessUnit(int index) {
+    byte[] data = filler(getVideoFrameSize(index));
+    ByteBuffer.wrap(data).putInt(data.length - 4)
+        .put((byte) (isVideoKeyframe(index) ? 0x65 : 0x41));
+    return data;
+  }
+
+  /**
+   * Returns an Annex B access unit consisting of an access unit delimiter, the SPS and PPS if the
+   * access unit is a keyframe, and a single slice NAL unit.
+   */
+  private static byte[] buildAnnexBAccessUnit(int index) {
+    byte[] slice = filler(getVideoFrameSize(index));
+    slice[0] = (byte) (isVideoKeyframe(index) ? 0x65 : 0x41);
+    byte[] startCode = new byte[] {0, 0, 0, 1};
+    byte[] accessUnitDelimiter = concat(startCode, new byte[] {0x09, (byte) 0xF0});
+    if (!isVideoKeyframe(index)) {
+      return concat(accessUnitDelimiter, startCode, slice);
+    }
+    return concat(accessUnitDelimiter, startCode, H264_SPS, startCode, H264_PPS, startCode, slice);
+  }
+
+  // Audio.
+
+  private static int getAacFrameCount(int durationSeconds) {
+    return (int) ((long) durationSeconds * AUDIO_SAMPLE_RATE / AAC_FRAME_SAMPLE_COUNT);
+  }
+
+  private static long getAacTimeUs(int index) {
+    return (long) index * AAC_FRAME_SAMPLE_COUNT * 1000000L / AUDIO_SAMPLE_RATE;
+  }
+
+  /**
+   * Returns an ADTS frame containing AAC-LC, stereo audio at 44.1 kHz, without a CRC.
+   */
+  private static byte[] buildAdtsFrame() {
+    byte[] frame = filler(AAC_FRAME_SIZE);
+    int frameLength = frame.length;
+    frame[0] = (byte) 0xFF;
+    frame[1] = (byte) 0xF1;
+    // Profile (2 bits), sampling frequency index (4 bits), private bit and channel configuration
+    // (3 bits).
+    frame[2] = (byte) ((1 << 6) | (4 << 2) | (2 >> 2));
+    frame[3] = (byte) (((2 & 0x3) << 6) | (frameLength >> 11));
+    frame[4] = (byte) (frameLength >> 3);
+    frame[5] = (byte) (((frameLength & 0x7) << 5) | 0x1F);
+    frame[6] = (byte) 0xFC;
+    return frame;
+  }
+
+  private static byte[] buildFlacFrame(int index) {
+    byte[] frame = filler(FLAC_FRAME_SIZE);
+    frame[0] = (byte) 0xFF;
+    frame[1] = (byte) 0xF8;
+    frame[2] = (byte) 0xC9; // Block size of 4096 samples and sample rate of 44.1 kHz.
+    frame[3] = (byte) 0x18; // Two channels, 16 bits per sample.
+    // The frame number, UTF-8 coded.
+    if (index < 0x80) {
+      frame[4] = (byte) index;
+    } else if (index < 0x800) {
+      frame[4] = (byte) (0xC0 | (index >> 6));
+      frame[5] = (byte) (0x80 | (index & 0x3F));
+    } else {
+      frame[4] = (byte) (0xE0 | (index >> 12));
+      frame[5] = (byte) (0x80 | ((index >> 6) & 0x3F));
+      frame[6] = (byte) (0x80 | (index & 0x3F));
+    }
+    return frame;
+  }
+
+  // MPEG-TS.
+
+  private static void writeTsSection(ByteArrayOutputStream out, int pid, int[] continuityCounters,
+      byte[] section) {
+    byte[] packet = new byte[TS_PACKET_SIZE];
+    for (int i = 0; i < packet.length; i++) {
+      packet[i] = (byte) 0xFF;
+    }
+    writeTsHeader(packet, pid, true, false, continuityCounters);
+    packet[4] = 0; // pointer_field
+    System.arraycopy(section, 0, packet, 5, section.length);
+    write(out, packet);
+  }
+
+  private static void writeTsPes(ByteArrayOutputStream out, int pid, int streamId, long timeUs,
+      byte[] payload, int[] continuityCounters) {
+    long pts = timeUs * 90 / 1000;
+    byte[] header = new byte[] {0, 0, 1, (byte) streamId, 0, 0, (byte) 0x80, (byte) 0x80, 5,
+        (byte) (0x21 | ((pts >> 29) & 0x0E)), (byte) (pts >> 22), (byte) (0x01 | (pts >> 14)),
+        (byte) (pts >> 7), (byte) (0x01 | (pts << 1))};
+    byte[] pes = concat(header, payload);
+    int position = 0;
+    while (position < pes.length) {
+      byte[] packet = new byte[TS_PACKET_SIZE];
+      int payloadLength = Math.min(TS_PACKET_SIZE - 4, pes.length - position);
+      boolean hasAdaptationField = payloadLength < TS_PACKET_SIZE - 4;
+      writeTsHeader(packet, pid, position == 0, hasAdaptationField, continuityCounters);
+      if (hasAdaptationField) {
+        // Stuff the adaptation field so that the payload fills the remainder of the packet.
+        int adaptationFieldLength = TS_PACKET_SIZE - 5 - payloadLength;
+        packet[4] = (byte) adaptationFieldLength;
+        if (adaptationFieldLength > 0) {
+          packet[5] = 0; // Flags.
+          for (int i = 6; i < 5 + adaptationFieldLength; i++) {
+            packet[i] = (byte) 0xFF;
+          }
+        }
+      }
+      System.arraycopy(pes, position, packet, TS_PACKET_SIZE - payloadLength, payloadLength);
+      position += payloadLength;
+      write(out, packet);
+    }
+  }
+
+  private static void writeTsHeader(byte[] packet, int pid, boolean payloadUnitStart,
+      boolean hasAdaptationField, int[] continuityCounters) {
+    packet[0] = 0x47;
+    packet[1] = (byte) ((payloadUnitStart ? 0x40 : 0) | (pid >> 8));
+    packet[2] = (byte) pid;
+    packet[3] = (byte) ((hasAdaptationField ? 0x30 : 0x10) | continuityCounters[pid]);
+    continuityCounters[pid] = (continuityCounters[pid] + 1) & 0x0F;
+  }
+
+  // MP4.
+
+  private static byte[] buildTrak(int trackId, boolean isVideo, byte[] sampleTables) {
+    byte[] tkhd = Util.getBytesFromHexString(
+        "00000007cf6c4888cf6c48880000000000000000ffffffff0000000000000000000000000000000000010000"
+        + "00000000000000000000000000010000000000000000000000000000400000000500000002d00000");
+    ByteBuffer.wrap(tkhd).putInt(12, trackId);
+    return box("trak",
+        box("tkhd", tkhd),
+        box("mdia",
+            box("mdhd", concat(MDHD_PAYLOAD_PREFIX,
+                ints(isVideo ? VIDEO_FRAME_RATE : AUDIO_SAMPLE_RATE), MDHD_PAYLOAD_SUFFIX)),
+            box("hdlr", concat(new byte[8], (isVideo ? "vide" : "soun").getBytes())),
+            box("minf",
+                box(isVideo ? "vmhd" : "smhd", new byte[0]),
+                box("stbl",
+                    box("stsd", isVideo ? AVC_STSD_PAYLOAD : AAC_STSD_PAYLOAD),
+                    sampleTables))));
+  }
+
+  private static byte[] buildMoov(int[] videoSizes, long[] videoChunkOffsets, int[] audioSizes,
+      int[] audioChunkSampleCounts, long[] audioChunkOffsets) {
+    int[] videoChunkSampleCounts = new int[videoChunkOffsets.length];
+    for (int i = 0; i < videoChunkSampleCounts.length; i++) {
+      videoChunkSampleCounts[i] = VIDEO_FRAME_RATE;
+    }
+    int[] videoSyncSamples = new int[videoChunkOffsets.length];
+    for (int i = 0; i < videoSyncSamples.length; i++) {
+      videoSyncSamples[i] = i * VIDEO_FRAME_RATE + 1;
+    }
+    return box("moov",
+        box("mvhd", MVHD_PAYLOAD),
+        buildTrak(1, true, concat(
+            box("stts", ints(0, 1, videoSizes.length, 1)),
+            box("stss", concat(ints(0, videoSyncSamples.length), ints(videoSyncSamples))),
+            buildStsc(videoChunkSampleCounts),
+            box("stsz", concat(ints(0, 0, videoSizes.length), ints(videoSizes))),
+            buildStco(videoChunkOffsets))),
+        buildTrak(2, false, concat(
+            box("stts", ints(0, 1, audioSizes.length, AAC_FRAME_SAMPLE_COUNT)),
+            buildStsc(audioChunkSampleCounts),
+            box("stsz", ints(0, AAC_FRAME_SIZE, audioSizes.length)),
+            buildStco(audioChunkOffsets))));
+  }
+
+  private static byte[] buildStsc(int[] chunkSampleCounts) {
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    int entryCount = 0;
+    for (int i = 0; i < chunkSampleCounts.length; i++) {
+      if (i == 0 || chunkSampleCounts[i] != chunkSampleCounts[i - 1]) {
+        write(entries, ints(i + 1, chunkSampleCounts[i], 1));
+        entryCount++;
+      }
+    }
+    return box("stsc", concat(ints(0, entryCount), entries.toByteArray()));
+  }
+
+  private static byte[] buildStco(long[] chunkOffsets) {
+    ByteBuffer buffer = ByteBuffer.allocate(8 + 4 * chunkOffsets.length);
+    buffer.putInt(0);
+    buffer.putInt(chunkOffsets.length);
+    for (long chunkOffset : chunkOffsets) {
+      buffer.putInt((int) chunkOffset);
+    }
+    return box("stco", buffer.array());
+  }
+
+  private static byte[] buildMoof(int sequenceNumber, int firstVideoIndex, int[] videoSizes,
+      int firstAudioIndex, int[] audioSizes, int videoDataOffset, int audioDataOffset) {
+    return box("moof",
+        box("mfhd", ints(0, sequenceNumber + 1)),
+        buildTraf(1, firstVideoIndex, 1, videoSizes, videoDataOffset, true),
+        buildTraf(2, (long) firstAudioIndex * AAC_FRAME_SAMPLE_COUNT, AAC_FRAME_SAMPLE_COUNT,
+            audioSizes, audioDataOffset, false));
+  }
+
+  private static byte[] buildTraf(int trackId, long decodeTime, int sampleDuration,
+      int[] sampleSizes, int dataOffset, boolean isVideo) {
+    // Non-sync samples have sample_is_non_sync_sample set in their flags.
+    int nonSyncSampleFlags = 0x00010000;
+    ByteBuffer trun = ByteBuffer.allocate(12 + (isVideo ? 8 : 4) * sampleSizes.length);
+    // Flags: data_offset_present, sample_size_present and, for video, sample_flags_present.
+    trun.putInt(isVideo ? 0x00000601 : 0x00000201);
+    trun.putInt(sampleSizes.length);
+    trun.putInt(dataOffset);
+    for (int i = 0; i < sampleSizes.length; i++) {
+      trun.putInt(sampleSizes[i]);
+      if (isVideo) {
+        trun.putInt(i == 0 ? 0 : nonSyncSampleFlags);
+      }
+    }
+    return box("traf",
+        // Flags: default_sample_duration_present.
+        box("tfhd", ints(0x00000008, trackId, sampleDuration)),
+        box("tfdt", concat(ints(0x01000000), ByteBuffer.allocate(8).putLong(decodeTime).array())),
+        box("trun", trun.array()));
+  }
+
+  private static byte[] box(String type, byte[]... payloads) {
+    byte[] payload = concat(payloads);
+    ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+    buffer.putInt(8 + payload.length);
+    buffer.putInt(Util.getIntegerCodeForString(type));
+    buffer.put(payload);
+    return buffer.array();
+  }
+
+  // WebM.
+
+  private static byte[] buildSimpleBlock(int trackNumber, int timecode, boolean keyframe,
+      byte[] data) {
+    byte[] header = new byte[] {(byte) (0x80 | trackNumber), (byte) (timecode >> 8),
+        (byte) timecode, (byte) (keyframe ? 0x80 : 0x00)};
+    return ebml(0xA3, concat(header, data));
+  }
+
+  /**
+   * Returns an EBML element with the specified id, whose size is written using eight bytes.
+   */
+  private static byte[] ebml(int id, byte[]... payloads) {
+    byte[] payload = concat(payloads);
+    int idLength = id > 0xFFFFFF ? 4 : id > 0xFFFF ? 3 : id > 0xFF ? 2 : 1;
+    ByteBuffer buffer = ByteBuffer.allocate(idLength + 8 + payload.length);
+    for (int i = idLength - 1; i >= 0; i--) {
+      buffer.put((byte) (id >> (8 * i)));
+    }
+    buffer.putLong(0x0100000000000000L | payload.length);
+    buffer.put(payload);
+    return buffer.array();
+  }
+
+  private static byte[] uint(int value) {
+    return ints(value);
+  }
+
+  // Ogg.
+
+  private static byte[] buildOggPage(int type, long granulePosition, int pageSequenceNumber,
+      byte[]... packets) {
+    ByteArrayOutputStream laces = new ByteArrayOutputStream();
+    for (byte[] packet : packets) {
+      int remaining = packet.length;
+      while (remaining >= 255) {
+        laces.write(255);
+        remaining -= 255;
+      }
+      laces.write(remaining);
+    }
+    ByteBuffer header = ByteBuffer.allocate(27);
+    header.putInt(Util.getIntegerCodeForString("OggS"));
+    header.put((byte) 0); // Stream structure version.
+    header.put((byte) type);
+    header.putLong(Long.reverseBytes(granulePosition));
+    header.putInt(Integer.reverseBytes(1)); // Bitstream serial number.
+    header.putInt(Integer.reverseBytes(pageSequenceNumber));
+    header.putInt(0); // The checksum, which isn't verified.
+    header.put((byte) laces.size());
+    return concat(header.array(), laces.toByteArray(), concat(packets));
+  }
+
+  // Utility methods.
+
+  /**
+   * Returns an array of filler bytes. The filler doesn't contain zero bytes, and so can't contain
+   * NAL unit start codes.
+   */
+  private static byte[] filler(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (0x11 + (i % 0x60));
+    }
+    return data;
+  }
+
+  private static byte[] ints(int... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+    for (int value : values) {
+      buffer.putInt(value);
+    }
+    return buffer.array();
+  }
+
+  private static int sum(int[] values) {
+    int sum = 0;
+    for (int value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      write(out, array);
+    }
+    return out.toByteArray();
+  }
+
+  private static void write(ByteArrayOutputStream out, byte[] data) {
+    out.write(data, 0, data.length);
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TsExtractor} in the steady state, once the program tables have been parsed and
+ * the tracks have been created.
+ * <p>
+ * Each operation demultiplexes the same stream with the same extractor, seeking back to the start
+ * in between. The stream repeats its program tables, as broadcast and HLS streams do, so the
+ * allocation rate reported as {@code gc.alloc.rate.norm} should be close to zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TsExtractorBenchmark {
+
+  private static final int DURATION_SECONDS = 10;
+
+  private ByteArrayExtractorInput input;
+  private DiscardingExtractorOutput output;
+  private TsExtractor extractor;
+  private PositionHolder positionHolder;
+  private int streamLength;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    byte[] data = SyntheticMedia.buildTs(DURATION_SECONDS);
+    streamLength = data.length;
+    input = new ByteArrayExtractorInput(data);
+    output = new DiscardingExtractorOutput();
+    positionHolder = new PositionHolder();
+    extractor = new TsExtractor();
+    extractor.init(output);
+    extract();
+  }
+
+  @Benchmark
+  public int extract(ByteCounter counter) throws IOException, InterruptedException {
+    extract();
+    counter.bytes += streamLength;
+    return output.getAndResetSampleCount();
+  }
+
+  private void extract() throws IOException, InterruptedException {
+    input.rewind();
+    extractor.seek();
+    while (extractor.read(input, positionHolder) != Extractor.RESULT_END_OF_INPUT) {
+      // Continue.
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dalvik.system;
+
+import java.lang.reflect.Array;
+
+/**
+ * Replaces the runtime's native interface when running benchmarks on the JVM. Framework classes
+ * used by the library call it during class initialization ({@code android.os.Build}) and to
+ * allocate arrays ({@code android.util.SparseArray}). Arrays are allocated normally, since the JVM
+ * doesn't pad them or move them in ways that matter to the library.
+ */
+public final class VMRuntime {
+
+  private static final VMRuntime THE_ONE = new VMRuntime();
+
+  private VMRuntime() {}
+
+  public static VMRuntime getRuntime() {
+    return THE_ONE;
+  }
+
+  public boolean is64Bit() {
+    return System.getProperty("os.arch", "").contains("64");
+  }
+
+  public Object newNonMovableArray(Class<?> componentType, int length) {
+    return Array.newInstance(componentType, length);
+  }
+
+  public Object newUnpaddedArray(Class<?> componentType, int length) {
+    return Array.newInstance(componentType, length);
+  }
+
+}
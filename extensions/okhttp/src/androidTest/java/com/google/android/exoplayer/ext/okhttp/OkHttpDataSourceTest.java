@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.ext.okhttp;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link OkHttpDataSource}, run against a local HTTP server.
+ */
+public final class OkHttpDataSourceTest extends TestCase {
+
+  private static final String USER_AGENT = "ExoPlayerTest";
+  private static final byte[] BODY = new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+  private LocalHttpServer server;
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new LocalHttpServer();
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    server.close();
+  }
+
+  public void testSourcesWithSharedConnectionPoolReuseConnection() throws IOException {
+    ConnectionPool connectionPool = new ConnectionPool(5, 1, TimeUnit.MINUTES);
+    // The sources use different clients, but share the specified pool.
+    OkHttpDataSource dataSource = new OkHttpDataSource(new OkHttpClient(), connectionPool, null,
+        USER_AGENT, null, null, null);
+    OkHttpDataSource otherDataSource = new OkHttpDataSource(new OkHttpClient(), connectionPool,
+        null, USER_AGENT, null, null, null);
+    assertSame(connectionPool, dataSource.getClient().connectionPool());
+
+    assertTrue(Arrays.equals(BODY, readFully(dataSource)));
+    assertTrue(Arrays.equals(BODY, readFully(otherDataSource)));
+    assertEquals(1, server.getAcceptedConnectionCount());
+    assertEquals(1, connectionPool.idleConnectionCount());
+  }
+
+  public void testSourcesWithSeparateConnectionPoolsDoNotReuseConnection() throws IOException {
+    OkHttpClient client = new OkHttpClient();
+    OkHttpDataSource dataSource = new OkHttpDataSource(client,
+        new ConnectionPool(5, 1, TimeUnit.MINUTES), null, USER_AGENT, null, null, null);
+    OkHttpDataSource otherDataSource = new OkHttpDataSource(client,
+        new ConnectionPool(5, 1, TimeUnit.MINUTES), null, USER_AGENT, null, null, null);
+
+    readFully(dataSource);
+    readFully(otherDataSource);
+    assertEquals(2, server.getAcceptedConnectionCount());
+  }
+
+  public void testConfiguredProtocolsAreUsed() throws IOException {
+    OkHttpClient client = new OkHttpClient();
+    List<Protocol> protocols = Collections.singletonList(Protocol.HTTP_1_1);
+    OkHttpDataSource dataSource = new OkHttpDataSource(client, null, protocols, USER_AGENT, null,
+        null, null);
+    assertEquals(protocols, dataSource.getClient().protocols());
+    // The client's connection pool is used if none is specified.
+    assertSame(client.connectionPool(), dataSource.getClient().connectionPool());
+    assertTrue(Arrays.equals(BODY, readFully(dataSource)));
+  }
+
+  public void testClientUsedIfNothingConfigured() {
+    OkHttpClient client = new OkHttpClient();
+    OkHttpDataSource dataSource = new OkHttpDataSource(client, USER_AGENT, null);
+    assertSame(client, dataSource.getClient());
+  }
+
+  private byte[] readFully(OkHttpDataSource dataSource) throws IOException {
+    long length = dataSource.open(new DataSpec(server.getUri()));
+    byte[] data = new byte[(int) length];
+    int position = 0;
+    try {
+      while (position < data.length) {
+        int read = dataSource.read(data, position, data.length - position);
+        assertTrue(read != C.RESULT_END_OF_INPUT);
+        position += read;
+      }
+      assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[1], 0, 1));
+    } finally {
+      dataSource.close();
+    }
+    return data;
+  }
+
+  /**
+   * A minimal HTTP/1.1 server that serves {@link #BODY} for every request, keeping connections
+   * alive.
+   */
+  private static final class LocalHttpServer implements Runnable {
+
+    private final ServerSocket serverSocket;
+    private final AtomicInteger acceptedConnectionCount;
+
+    public LocalHttpServer() throws IOException {
+      serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+      acceptedConnectionCount = new AtomicInteger();
+      startDaemonThread(this);
+    }
+
+    public Uri getUri() {
+      return Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + "/media");
+    }
+
+    public int getAcceptedConnectionCount() {
+      return acceptedConnectionCount.get();
+    }
+
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Socket socket = serverSocket.accept();
+          acceptedConnectionCount.incrementAndGet();
+          startDaemonThread(new Runnable() {
+            @Override
+            public void run() {
+              serveConnection(socket);
+            }
+          });
+        }
+      } catch (IOException e) {
+        // The server was closed.
+      }
+    }
+
+    private static void serveConnection(Socket socket) {
+      try {
+        InputStream inputStream = socket.getInputStream();
+        OutputStream outputStream = socket.getOutputStream();
+        while (readRequest(inputStream)) {
+          String headers = "HTTP/1.1 200 OK\r\n"
+              + "Content-Length: " + BODY.length + "\r\n"
+              + "Content-Type: application/octet-stream\r\n\r\n";
+          outputStream.write(headers.getBytes("US-ASCII"));
+          outputStream.write(BODY);
+          outputStream.flush();
+        }
+      } catch (IOException e) {
+        // The connection was closed by the client.
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Do nothing.
+        }
+      }
+    }
+
+    private static void startDaemonThread(Runnable runnable) {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    /**
+     * Reads a request's headers, returning whether a request was read or false if the connection
+     * was closed.
+     */
+    private static boolean readRequest(InputStream inputStream) throws IOException {
+      boolean firstLine = true;
+      while (true) {
+        String line = readLine(inputStream);
+        if (line == null) {
+          return false;
+        } else if (line.isEmpty()) {
+          return !firstLine;
+        }
+        firstLine = false;
+      }
+    }
+
+    private static String readLine(InputStream inputStream) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int b;
+      while ((b = inputStream.read()) != '\n') {
+        if (b == -1) {
+          return null;
+        } else if (b != '\r') {
+          line.append((char) b);
+        }
+      }
+      return line.toString();
+    }
+
+  }
+
+}
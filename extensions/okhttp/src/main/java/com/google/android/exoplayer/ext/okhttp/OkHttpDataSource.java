@@ -19,13 +19,19 @@ import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.upstream.HttpDataSource;
 import com.google.android.exoplayer.upstream.TransferListener;
+import com.google.android.exoplayer.upstream.TransferTimingListener;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Predicate;
 
+import android.os.SystemClock;
+
 import okhttp3.CacheControl;
+import okhttp3.ConnectionPool;
 import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -41,17 +47,40 @@ import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * An {@link HttpDataSource} that delegates to Square's {@link OkHttpClient}.
+ * <p>
+ * Sources that share an {@link OkHttpClient} share its connection pool, so idle connections to an
+ * origin are kept warm between requests, and concurrent requests to an HTTP/2 origin are
+ * multiplexed over a single connection. The connection pool and protocols can also be specified
+ * when constructing a source, in which case they're used instead of those of the client. If the
+ * listener passed to the constructor is a
+ * {@link TransferTimingListener}, the timings of each request are reported to it.
  */
 public class OkHttpDataSource implements HttpDataSource {
 
   private static final AtomicReference<byte[]> skipBufferReference = new AtomicReference<>();
 
+  /**
+   * Records when the connection used by a request became available, in the request's
+   * {@link RequestTimings} tag.
+   */
+  private static final Interceptor TIMING_INTERCEPTOR = new Interceptor() {
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+      Request request = chain.request();
+      if (request.tag() instanceof RequestTimings) {
+        ((RequestTimings) request.tag()).connectionTimeMs = SystemClock.elapsedRealtime();
+      }
+      return chain.proceed(request);
+    }
+  };
+
   private final OkHttpClient okHttpClient;
   private final String userAgent;
   private final Predicate<String> contentTypePredicate;
   private final TransferListener listener;
   private final CacheControl cacheControl;
   private final HashMap<String, String> requestProperties;
+  private final RequestTimings requestTimings;
 
   private DataSpec dataSpec;
   private Response response;
@@ -106,7 +135,46 @@ public class OkHttpDataSource implements HttpDataSource {
   public OkHttpDataSource(OkHttpClient client, String userAgent,
       Predicate<String> contentTypePredicate, TransferListener listener,
       CacheControl cacheControl) {
-    this.okHttpClient = Assertions.checkNotNull(client);
+    this(client, null, null, userAgent, contentTypePredicate, listener, cacheControl);
+  }
+
+  /**
+   * @param client An {@link OkHttpClient} for use by the source.
+   * @param connectionPool An optional {@link ConnectionPool} to use instead of the client's.
+   *     Sources that share a pool reuse each other's idle connections.
+   * @param protocols An optional list of the {@link Protocol}s to negotiate, in order of
+   *     preference, to use instead of the client's. Must contain {@link Protocol#HTTP_1_1}.
+   * @param userAgent The User-Agent string that should be used.
+   * @param contentTypePredicate An optional {@link Predicate}. If a content type is rejected by the
+   *     predicate then a
+   *     {@link com.google.android.exoplayer.upstream.HttpDataSource.InvalidContentTypeException} is
+   *     thrown from {@link #open(DataSpec)}.
+   * @param listener An optional listener.
+   * @param cacheControl An optional {@link CacheControl} which sets all requests' Cache-Control
+   *     header. For example, you could force the network response for all requests.
+   */
+  public OkHttpDataSource(OkHttpClient client, ConnectionPool connectionPool,
+      List<Protocol> protocols, String userAgent, Predicate<String> contentTypePredicate,
+      TransferListener listener, CacheControl cacheControl) {
+    Assertions.checkNotNull(client);
+    boolean reportTimings = listener instanceof TransferTimingListener;
+    if (connectionPool != null || protocols != null || reportTimings) {
+      // The derived client shares the dispatcher of the one provided, and its connection pool
+      // unless another is specified.
+      OkHttpClient.Builder builder = client.newBuilder();
+      if (connectionPool != null) {
+        builder.connectionPool(connectionPool);
+      }
+      if (protocols != null) {
+        builder.protocols(protocols);
+      }
+      if (reportTimings) {
+        builder.addNetworkInterceptor(TIMING_INTERCEPTOR);
+      }
+      client = builder.build();
+    }
+    this.okHttpClient = client;
+    this.requestTimings = reportTimings ? new RequestTimings() : null;
     this.userAgent = Assertions.checkNotEmpty(userAgent);
     this.contentTypePredicate = contentTypePredicate;
     this.listener = listener;
@@ -114,6 +182,13 @@ public class OkHttpDataSource implements HttpDataSource {
     this.requestProperties = new HashMap<>();
   }
 
+  /**
+   * Returns the {@link OkHttpClient} used to make requests.
+   */
+  /* package */ OkHttpClient getClient() {
+    return okHttpClient;
+  }
+
   @Override
   public String getUri() {
     return response == null ? null : response.request().url().toString();
@@ -154,6 +229,10 @@ public class OkHttpDataSource implements HttpDataSource {
     this.bytesRead = 0;
     this.bytesSkipped = 0;
     Request request = makeRequest(dataSpec);
+    if (requestTimings != null) {
+      requestTimings.requestStartTimeMs = SystemClock.elapsedRealtime();
+      requestTimings.connectionTimeMs = requestTimings.requestStartTimeMs;
+    }
     try {
       response = okHttpClient.newCall(request).execute();
       responseByteStream = response.body().byteStream();
@@ -191,6 +270,9 @@ public class OkHttpDataSource implements HttpDataSource {
         : C.LENGTH_UNBOUNDED;
 
     opened = true;
+    if (requestTimings != null) {
+      requestTimings.responseTimeMs = SystemClock.elapsedRealtime();
+    }
     if (listener != null) {
       listener.onTransferStart();
     }
@@ -212,6 +294,13 @@ public class OkHttpDataSource implements HttpDataSource {
   public void close() throws HttpDataSourceException {
     if (opened) {
       opened = false;
+      if (requestTimings != null) {
+        ((TransferTimingListener) listener).onTransferTimings(
+            requestTimings.connectionTimeMs - requestTimings.requestStartTimeMs,
+            requestTimings.responseTimeMs - requestTimings.requestStartTimeMs,
+            SystemClock.elapsedRealtime() - requestTimings.responseTimeMs,
+            bytesSkipped + bytesRead);
+      }
       if (listener != null) {
         listener.onTransferEnd();
       }
@@ -283,6 +372,9 @@ public class OkHttpDataSource implements HttpDataSource {
     if (dataSpec.postBody != null) {
       builder.post(RequestBody.create(null, dataSpec.postBody));
     }
+    if (requestTimings != null) {
+      builder.tag(requestTimings);
+    }
     return builder.build();
   }
 
@@ -371,4 +463,15 @@ public class OkHttpDataSource implements HttpDataSource {
     responseByteStream = null;
   }
 
+  /**
+   * Timings of the current request, in milliseconds since boot.
+   */
+  private static final class RequestTimings {
+
+    public long requestStartTimeMs;
+    public volatile long connectionTimeMs;
+    public long responseTimeMs;
+
+  }
+
 }
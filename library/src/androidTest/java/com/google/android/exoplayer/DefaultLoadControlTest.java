@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DefaultLoadControl}.
+ */
+public final class DefaultLoadControlTest extends TestCase {
+
+  private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
+  private static final int BUFFER_SIZE_CONTRIBUTION = 100 * BUFFER_SEGMENT_SIZE;
+
+  private Object loader;
+  private DefaultAllocator allocator;
+
+  @Override
+  protected void setUp() {
+    loader = new Object();
+    allocator = new DefaultAllocator(BUFFER_SEGMENT_SIZE);
+  }
+
+  public void testFixedThresholds() {
+    DefaultLoadControl loadControl = new DefaultLoadControl(allocator);
+    loadControl.register(loader, BUFFER_SIZE_CONTRIBUTION);
+    playAndLoad(loadControl, 0, 10000000);
+    assertEquals(DefaultLoadControl.DEFAULT_LOW_WATERMARK_MS * 1000L,
+        loadControl.getLowWatermarkUs());
+    assertEquals(DefaultLoadControl.DEFAULT_HIGH_WATERMARK_MS * 1000L,
+        loadControl.getHighWatermarkUs());
+    assertEquals(BUFFER_SIZE_CONTRIBUTION, loadControl.getTargetBufferSize());
+  }
+
+  public void testFastStartWatermarkGrowsWithPlayback() {
+    DefaultLoadControl loadControl = buildAdaptiveLoadControl(null, 0, 5000);
+    loadControl.register(loader, BUFFER_SIZE_CONTRIBUTION);
+    assertTrue(loadControl.update(loader, 0, 0, false));
+    assertEquals(5000000, loadControl.getHighWatermarkUs());
+    assertEquals(2500000, loadControl.getLowWatermarkUs());
+
+    playAndLoad(loadControl, 0, 10000000);
+    assertEquals(15000000, loadControl.getHighWatermarkUs());
+    assertEquals(7500000, loadControl.getLowWatermarkUs());
+
+    // A seek doesn't count as playback.
+    playAndLoad(loadControl, 60000000, 61000000);
+    assertEquals(16000000, loadControl.getHighWatermarkUs());
+
+    playAndLoad(loadControl, 61000000, 100000000);
+    assertEquals(30000000, loadControl.getHighWatermarkUs());
+    assertEquals(15000000, loadControl.getLowWatermarkUs());
+  }
+
+  public void testScalesWithBandwidthVariance() {
+    FakeBandwidthMeter bandwidthMeter = new FakeBandwidthMeter(2000000, 1000000);
+    DefaultLoadControl loadControl = buildAdaptiveLoadControl(bandwidthMeter, 0, 0);
+    loadControl.register(loader, BUFFER_SIZE_CONTRIBUTION);
+    loadControl.update(loader, 0, 0, false);
+    assertEquals(45000000, loadControl.getHighWatermarkUs());
+    assertEquals(22500000, loadControl.getLowWatermarkUs());
+    assertEquals(BUFFER_SIZE_CONTRIBUTION * 3 / 2, loadControl.getTargetBufferSize());
+
+    // The scale is capped.
+    bandwidthMeter.bitrateStandardDeviation = 10000000;
+    loadControl.update(loader, 0, 0, false);
+    assertEquals(60000000, loadControl.getHighWatermarkUs());
+  }
+
+  public void testTargetBufferSizeCappedByMemoryClass() {
+    DefaultLoadControl loadControl = buildAdaptiveLoadControl(null, 16, 0);
+    loadControl.register(loader, BUFFER_SIZE_CONTRIBUTION);
+    assertEquals(4 * 1024 * 1024, loadControl.getTargetBufferSize());
+  }
+
+  public void testScalesAfterStarvation() {
+    DefaultLoadControl loadControl = buildAdaptiveLoadControl(null, 0, 0);
+    loadControl.register(loader, BUFFER_SIZE_CONTRIBUTION);
+    // Load 2 seconds, then play through them without loading any more.
+    loadControl.update(loader, 0, 2000000, false);
+    for (long positionUs = 0; positionUs <= 2000000; positionUs += 100000) {
+      loadControl.update(loader, positionUs, 2000000, false);
+    }
+    assertEquals(37500000, loadControl.getHighWatermarkUs());
+  }
+
+  public void testSeekIsNotStarvation() {
+    DefaultLoadControl loadControl = buildAdaptiveLoadControl(null, 0, 0);
+    loadControl.register(loader, BUFFER_SIZE_CONTRIBUTION);
+    playAndLoad(loadControl, 0, 20000000);
+    // Seek, after which nothing is buffered.
+    loadControl.update(loader, 40000000, 40000000, false);
+    playAndLoad(loadControl, 40000000, 45000000);
+    assertEquals(30000000, loadControl.getHighWatermarkUs());
+  }
+
+  /**
+   * Simulates playback between two positions, during which the loader keeps ten seconds ahead of
+   * the playback position.
+   */
+  private void playAndLoad(DefaultLoadControl loadControl, long startPositionUs,
+      long endPositionUs) {
+    for (long positionUs = startPositionUs; positionUs <= endPositionUs; positionUs += 100000) {
+      loadControl.update(loader, positionUs, positionUs + 10000000, false);
+    }
+  }
+
+  private DefaultLoadControl buildAdaptiveLoadControl(BandwidthMeter bandwidthMeter,
+      int memoryClassMb, int fastStartWatermarkMs) {
+    return new DefaultLoadControl(allocator, null, null,
+        DefaultLoadControl.DEFAULT_LOW_WATERMARK_MS, DefaultLoadControl.DEFAULT_HIGH_WATERMARK_MS, DefaultLoadControl.DEFAULT_LOW_BUFFER_LOAD,
+        DefaultLoadControl.DEFAULT_HIGH_BUFFER_LOAD, bandwidthMeter, memoryClassMb,
+        fastStartWatermarkMs, DefaultLoadControl.DEFAULT_MAX_SCALE);
+  }
+
+  private static final class FakeBandwidthMeter implements BandwidthMeter {
+
+    public long bitrateEstimate;
+    public long bitrateStandardDeviation;
+
+    public FakeBandwidthMeter(long bitrateEstimate, long bitrateStandardDeviation) {
+      this.bitrateEstimate = bitrateEstimate;
+      this.bitrateStandardDeviation = bitrateStandardDeviation;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+    @Override
+    public long getBitrateStandardDeviation() {
+      return bitrateStandardDeviation;
+    }
+
+    @Override
+    public void onTransferStart() {
+      // Do nothing.
+    }
+
+    @Override
+    public void onBytesTransferred(int bytesTransferred) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onTransferEnd() {
+      // Do nothing.
+    }
+
+  }
+
+}
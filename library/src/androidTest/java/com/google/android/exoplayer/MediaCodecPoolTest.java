@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.MediaCodecPool.PooledCodec;
+import com.google.android.exoplayer.util.MimeTypes;
+import com.google.android.exoplayer.util.Util;
+
+import android.graphics.SurfaceTexture;
+import android.media.MediaCodec;
+import android.test.InstrumentationTestCase;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link MediaCodecPool}.
+ */
+public final class MediaCodecPoolTest extends InstrumentationTestCase {
+
+  private static final String CODEC_NAME = "decoder";
+
+  private static final MediaFormat FORMAT_720P = createFormat(1280, 720, MediaFormat.NO_VALUE);
+  private static final MediaFormat FORMAT_1080P = createFormat(1920, 1080, MediaFormat.NO_VALUE);
+
+  private MediaCodecPool pool;
+  private MediaCodecVideoTrackRenderer renderer;
+  private List<MediaCodec> acquiredCodecs;
+  private List<Surface> surfaces;
+
+  @Override
+  protected void setUp() {
+    acquiredCodecs = new ArrayList<>();
+    surfaces = new ArrayList<>();
+    if (Util.SDK_INT >= 16) {
+      pool = new MediaCodecPool(2, Long.MAX_VALUE);
+      renderer = createRenderer(pool);
+    }
+  }
+
+  @Override
+  protected void tearDown() {
+    if (pool != null) {
+      pool.releaseAll();
+    }
+    for (MediaCodec codec : acquiredCodecs) {
+      codec.release();
+    }
+    for (Surface surface : surfaces) {
+      surface.release();
+    }
+  }
+
+  public void testCodecConfiguredForLargerFormatIsReused() throws Exception {
+    if (Util.SDK_INT < 16) {
+      // Test doesn't apply.
+      return;
+    }
+    MediaCodec codec = offer(FORMAT_1080P, null);
+    assertSame(codec, acquire(FORMAT_720P, null).codec);
+    assertEquals(0, pool.getPooledCodecCount());
+  }
+
+  public void testCodecConfiguredForSmallerFormatIsNotReused() throws Exception {
+    if (Util.SDK_INT < 16) {
+      // Test doesn't apply.
+      return;
+    }
+    offer(FORMAT_720P, null);
+    assertNull(acquire(FORMAT_1080P, null));
+    assertEquals(1, pool.getPooledCodecCount());
+    // A codec configured with larger maximum dimensions can be reused.
+    MediaCodec codec = offer(FORMAT_720P.copyWithMaxVideoDimensions(1920, 1080), null);
+    assertSame(codec, acquire(FORMAT_1080P, null).codec);
+  }
+
+  public void testCodecConfiguredWithSmallerMaxInputSizeIsNotReused() throws Exception {
+    if (Util.SDK_INT < 16) {
+      // Test doesn't apply.
+      return;
+    }
+    MediaCodec codec = offer(createFormat(1280, 720, 1000), null);
+    assertNull(acquire(createFormat(1280, 720, 2000), null));
+    assertSame(codec, acquire(createFormat(1280, 720, 500), null).codec);
+  }
+
+  public void testCodecRenderingToSurfaceIsOnlyReusedWithSameSurface() throws Exception {
+    if (Util.SDK_INT < 16) {
+      // Test doesn't apply.
+      return;
+    }
+    Surface surface = createSurface();
+    offer(FORMAT_720P, surface);
+    assertNull(acquire(FORMAT_720P, null));
+    assertNull(acquire(FORMAT_720P, createSurface()));
+    assertEquals(1, pool.getPooledCodecCount());
+    // A codec that can't be reused is released so that the surface can be connected to a new one.
+    assertNull(acquire(FORMAT_1080P, surface));
+    assertEquals(0, pool.getPooledCodecCount());
+
+    MediaCodec codec = offer(FORMAT_720P, surface);
+    assertSame(codec, acquire(FORMAT_720P, surface).codec);
+  }
+
+  public void testCodecRenderingToReleasedSurfaceIsReleased() throws Exception {
+    if (Util.SDK_INT < 16) {
+      // Test doesn't apply.
+      return;
+    }
+    Surface surface = createSurface();
+    offer(FORMAT_720P, surface);
+    assertEquals(1, pool.getPooledCodecCount());
+    surface.release();
+    assertEquals(0, pool.getPooledCodecCount());
+    // A codec offered with a released surface is released immediately.
+    offer(FORMAT_720P, surface);
+    assertEquals(0, pool.getPooledCodecCount());
+  }
+
+  public void testOldestCodecIsEvictedWhenPoolIsFull() throws Exception {
+    if (Util.SDK_INT < 16) {
+      // Test doesn't apply.
+      return;
+    }
+    offer(FORMAT_720P, null);
+    MediaCodec secondCodec = offer(FORMAT_720P, null);
+    MediaCodec thirdCodec = offer(FORMAT_720P, null);
+    assertEquals(2, pool.getPooledCodecCount());
+    // The most recently returned codec is preferred.
+    assertSame(thirdCodec, acquire(FORMAT_720P, null).codec);
+    assertSame(secondCodec, acquire(FORMAT_720P, null).codec);
+    assertNull(acquire(FORMAT_720P, null));
+  }
+
+  public void testIdleCodecIsEvicted() throws Exception {
+    if (Util.SDK_INT < 16) {
+      // Test doesn't apply.
+      return;
+    }
+    pool.releaseAll();
+    pool = new MediaCodecPool(2, 0);
+    renderer = createRenderer(pool);
+    offer(FORMAT_720P, null);
+    Thread.sleep(10);
+    assertEquals(0, pool.getPooledCodecCount());
+  }
+
+  private MediaCodec offer(MediaFormat format, Surface surface) throws Exception {
+    MediaCodec codec = MediaCodec.createDecoderByType(MimeTypes.VIDEO_H264);
+    pool.offer(codec, CODEC_NAME, true, format, renderer.getCodecConfigurationFormat(format, true),
+        null, surface);
+    return codec;
+  }
+
+  private PooledCodec acquire(MediaFormat format, Surface surface) {
+    PooledCodec pooledCodec = pool.acquire(renderer, CODEC_NAME, format,
+        renderer.getCodecConfigurationFormat(format, true), surface);
+    if (pooledCodec != null) {
+      acquiredCodecs.add(pooledCodec.codec);
+    }
+    return pooledCodec;
+  }
+
+  private Surface createSurface() {
+    Surface surface = new Surface(new SurfaceTexture(0));
+    surfaces.add(surface);
+    return surface;
+  }
+
+  private MediaCodecVideoTrackRenderer createRenderer(MediaCodecPool pool) {
+    SampleSource source = new SampleSource() {
+      @Override
+      public SampleSourceReader register() {
+        return null;
+      }
+    };
+    return new MediaCodecVideoTrackRenderer(getInstrumentation().getContext(), source,
+        MediaCodecSelector.DEFAULT, MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 0, null, false,
+        null, null, -1, pool);
+  }
+
+  private static MediaFormat createFormat(int width, int height, int maxInputSize) {
+    return MediaFormat.createVideoFormat(null, MimeTypes.VIDEO_H264, MediaFormat.NO_VALUE,
+        maxInputSize, C.UNKNOWN_TIME_US, width, height, null);
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer.MediaCodecUtil.DecoderQueryException;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import android.media.MediaCodecInfo.CodecCapabilities;
+import android.media.MediaCodecInfo.CodecProfileLevel;
+import android.os.Build;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for the decoder info cache file written by {@link MediaCodecUtil}.
+ */
+public final class MediaCodecUtilTest extends TestCase {
+
+  private static final String FINGERPRINT = "vendor/product/device:6.0/ID/1:user/release-keys";
+
+  private File cacheFile;
+
+  @Override
+  protected void setUp() throws IOException {
+    cacheFile = File.createTempFile("MediaCodecUtilTest", null);
+    assertTrue(cacheFile.delete());
+  }
+
+  @Override
+  protected void tearDown() {
+    cacheFile.delete();
+  }
+
+  public void testReadMissingFile() {
+    assertNull(MediaCodecUtil.readDecoderInfos(cacheFile, FINGERPRINT));
+  }
+
+  public void testWriteAndRead() {
+    Map<CodecKey, List<DecoderInfo>> decoderInfos = new HashMap<>();
+    decoderInfos.put(new CodecKey(MimeTypes.VIDEO_H264, false), Arrays.asList(
+        createDecoderInfo("OMX.vendor.avc.decoder", true, CodecProfileLevel.AVCLevel41),
+        createDecoderInfo("OMX.google.h264.decoder", false, CodecProfileLevel.AVCLevel31)));
+    decoderInfos.put(new CodecKey(MimeTypes.VIDEO_H264, true), Arrays.asList(
+        createDecoderInfo("OMX.vendor.avc.decoder.secure", true, CodecProfileLevel.AVCLevel4)));
+    decoderInfos.put(new CodecKey(MimeTypes.AUDIO_AC3, false),
+        Collections.<DecoderInfo>emptyList());
+    MediaCodecUtil.writeDecoderInfos(cacheFile, FINGERPRINT, decoderInfos);
+
+    Map<CodecKey, List<DecoderInfo>> restoredDecoderInfos =
+        MediaCodecUtil.readDecoderInfos(cacheFile, FINGERPRINT);
+    assertEquals(3, restoredDecoderInfos.size());
+    List<DecoderInfo> h264DecoderInfos =
+        restoredDecoderInfos.get(new CodecKey(MimeTypes.VIDEO_H264, false));
+    assertEquals(2, h264DecoderInfos.size());
+    assertEquals("OMX.vendor.avc.decoder", h264DecoderInfos.get(0).name);
+    assertTrue(h264DecoderInfos.get(0).adaptive);
+    CodecCapabilities capabilities = h264DecoderInfos.get(0).capabilities;
+    assertEquals(1, capabilities.profileLevels.length);
+    assertEquals(CodecProfileLevel.AVCProfileHigh, capabilities.profileLevels[0].profile);
+    assertEquals(CodecProfileLevel.AVCLevel41, capabilities.profileLevels[0].level);
+    assertEquals(1, capabilities.colorFormats.length);
+    assertEquals(CodecCapabilities.COLOR_FormatYUV420Planar, capabilities.colorFormats[0]);
+    assertEquals("OMX.google.h264.decoder", h264DecoderInfos.get(1).name);
+    assertFalse(h264DecoderInfos.get(1).adaptive);
+    assertEquals(CodecProfileLevel.AVCLevel31,
+        h264DecoderInfos.get(1).capabilities.profileLevels[0].level);
+    assertEquals("OMX.vendor.avc.decoder.secure",
+        restoredDecoderInfos.get(new CodecKey(MimeTypes.VIDEO_H264, true)).get(0).name);
+    assertTrue(restoredDecoderInfos.get(new CodecKey(MimeTypes.AUDIO_AC3, false)).isEmpty());
+  }
+
+  public void testReadWithDifferentFingerprint() {
+    Map<CodecKey, List<DecoderInfo>> decoderInfos = new HashMap<>();
+    decoderInfos.put(new CodecKey(MimeTypes.AUDIO_AAC, false),
+        Arrays.asList(new DecoderInfo("OMX.google.aac.decoder", new CodecCapabilities(), false)));
+    MediaCodecUtil.writeDecoderInfos(cacheFile, FINGERPRINT, decoderInfos);
+    assertNull(MediaCodecUtil.readDecoderInfos(cacheFile, FINGERPRINT + ".1"));
+  }
+
+  public void testReadTruncatedFile() throws IOException {
+    FileOutputStream output = new FileOutputStream(cacheFile);
+    output.write(new byte[] {0, 0, 0, 1, 0});
+    output.close();
+    assertNull(MediaCodecUtil.readDecoderInfos(cacheFile, FINGERPRINT));
+  }
+
+  public void testWarmingTrustsRestoredInformation() throws DecoderQueryException {
+    // The device has no decoder for this mime type, so querying it would return none.
+    String mimeType = "video/x-exoplayer-test";
+    Map<CodecKey, List<DecoderInfo>> decoderInfos = new HashMap<>();
+    decoderInfos.put(new CodecKey(mimeType, false),
+        Arrays.asList(new DecoderInfo("OMX.test.decoder", new CodecCapabilities(), false)));
+    MediaCodecUtil.writeDecoderInfos(cacheFile, Build.FINGERPRINT, decoderInfos);
+
+    MediaCodecUtil.warmDecoderInfoCache(cacheFile, mimeType);
+    assertEquals("OMX.test.decoder", MediaCodecUtil.getDecoderInfo(mimeType, false).name);
+    // The restored information is retained in the file.
+    assertEquals("OMX.test.decoder", MediaCodecUtil.readDecoderInfos(cacheFile, Build.FINGERPRINT)
+        .get(new CodecKey(mimeType, false)).get(0).name);
+  }
+
+  private static DecoderInfo createDecoderInfo(String name, boolean adaptive, int level) {
+    CodecProfileLevel profileLevel = new CodecProfileLevel();
+    profileLevel.profile = CodecProfileLevel.AVCProfileHigh;
+    profileLevel.level = level;
+    CodecCapabilities capabilities = new CodecCapabilities();
+    capabilities.profileLevels = new CodecProfileLevel[] {profileLevel};
+    capabilities.colorFormats = new int[] {CodecCapabilities.COLOR_FormatYUV420Planar};
+    return new DecoderInfo(name, capabilities, adaptive);
+  }
+
+}
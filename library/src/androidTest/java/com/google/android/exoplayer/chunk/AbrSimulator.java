@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.chunk;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer.util.Clock;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+
+/**
+ * Deterministically simulates the playback of a stream of fixed duration chunks over a network
+ * whose bandwidth follows a recorded trace, so that {@link FormatEvaluator}s can be compared
+ * offline.
+ * <p>
+ * Chunks are loaded one at a time, as by {@link ChunkSampleSource}, with the format of each chunk
+ * selected by the evaluator. Loading pauses while the buffered duration exceeds a maximum.
+ * Playback starts once a minimum duration is buffered, and stalls if the buffer runs out until the
+ * same duration is buffered again. The {@link BandwidthMeter} used by the evaluator is notified of
+ * the simulated transfers, and measures them using the simulated time.
+ */
+/* package */ final class AbrSimulator {
+
+  /**
+   * Creates the evaluator to simulate.
+   */
+  public interface EvaluatorFactory {
+
+    /**
+     * Creates an evaluator that uses the specified {@link BandwidthMeter}.
+     */
+    FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter);
+
+  }
+
+  /**
+   * The available bandwidth over time. The trace is repeated if the simulation outlasts it.
+   */
+  public static final class BandwidthTrace {
+
+    private final long[] durationsUs;
+    private final long[] bitrates;
+
+    /**
+     * @param durationsMs The durations of the periods of the trace, in milliseconds.
+     * @param bitrates The bandwidth during each period of the trace, in bits per second.
+     */
+    public BandwidthTrace(long[] durationsMs, long[] bitrates) {
+      this.durationsUs = new long[durationsMs.length];
+      for (int i = 0; i < durationsMs.length; i++) {
+        durationsUs[i] = durationsMs[i] * 1000;
+      }
+      this.bitrates = bitrates;
+    }
+
+    /**
+     * Parses a recorded trace, consisting of lines that each contain the duration of a period in
+     * milliseconds and the bandwidth during that period in bits per second, separated by
+     * whitespace. Empty lines and lines starting with # are ignored.
+     */
+    public static BandwidthTrace parse(String trace) {
+      ArrayList<long[]> periods = new ArrayList<>();
+      for (String line : trace.split("\n")) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\\s+");
+        periods.add(new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])});
+      }
+      long[] durationsMs = new long[periods.size()];
+      long[] bitrates = new long[periods.size()];
+      for (int i = 0; i < periods.size(); i++) {
+        durationsMs[i] = periods.get(i)[0];
+        bitrates[i] = periods.get(i)[1];
+      }
+      return new BandwidthTrace(durationsMs, bitrates);
+    }
+
+  }
+
+  /**
+   * The outcome of a simulation.
+   */
+  public static final class Result {
+
+    /**
+     * The time from the start of the simulation until playback started, in milliseconds.
+     */
+    public final long startupDelayMs;
+    /**
+     * The total duration for which playback stalled after it started, in milliseconds.
+     */
+    public final long rebufferDurationMs;
+    /**
+     * The number of times playback stalled after it started.
+     */
+    public final int rebufferCount;
+    /**
+     * The ratio of {@link #rebufferDurationMs} to the total duration of playback including stalls.
+     */
+    public final double rebufferRatio;
+    /**
+     * The average bitrate of the played chunks, in bits per second.
+     */
+    public final long averageBitrate;
+    /**
+     * The number of times the format changed between consecutive played chunks.
+     */
+    public final int switchCount;
+    /**
+     * The total number of bytes loaded, including any chunks that were discarded.
+     */
+    public final long bytesLoaded;
+
+    private Result(long startupDelayMs, long rebufferDurationMs, int rebufferCount,
+        double rebufferRatio, long averageBitrate, int switchCount, long bytesLoaded) {
+      this.startupDelayMs = startupDelayMs;
+      this.rebufferDurationMs = rebufferDurationMs;
+      this.rebufferCount = rebufferCount;
+      this.rebufferRatio = rebufferRatio;
+      this.averageBitrate = averageBitrate;
+      this.switchCount = switchCount;
+      this.bytesLoaded = bytesLoaded;
+    }
+
+    @Override
+    public String toString() {
+      return "startupDelayMs=" + startupDelayMs + ", rebufferDurationMs=" + rebufferDurationMs
+          + ", rebufferCount=" + rebufferCount
+          + ", rebufferRatio=" + String.format("%.4f", rebufferRatio)
+          + ", averageBitrate=" + averageBitrate + ", switchCount=" + switchCount
+          + ", bytesLoaded=" + bytesLoaded;
+    }
+
+  }
+
+  private static final long MAX_TRANSFER_STEP_US = 100000;
+  private static final long BIT_MICROS_PER_BYTE = 8 * C.MICROS_PER_SECOND;
+
+  private final Format[] formats;
+  private final long chunkDurationUs;
+  private final int chunkCount;
+  private final long minBufferUs;
+  private final long maxBufferUs;
+  private final long requestLatencyUs;
+  private final SimulatedClock clock;
+
+  private BandwidthTrace trace;
+  private int tracePeriodIndex;
+  private long tracePeriodRemainingUs;
+  private ArrayList<MediaChunk> queue;
+  private long playbackPositionUs;
+  private long bufferedPositionUs;
+  private boolean started;
+  private boolean playing;
+  private long startupDelayUs;
+  private long rebufferDurationUs;
+  private int rebufferCount;
+
+  /**
+   * @param formats The formats of the stream, ordered by decreasing bandwidth.
+   * @param chunkDurationMs The duration of each chunk, in milliseconds.
+   * @param chunkCount The number of chunks in the stream.
+   * @param minBufferMs The duration that must be buffered for playback to start, or to resume
+   *     after stalling, in milliseconds.
+   * @param maxBufferMs The buffered duration above which loading pauses, in milliseconds.
+   * @param requestLatencyMs The time from requesting each chunk until its data starts to be
+   *     transferred, in milliseconds.
+   */
+  public AbrSimulator(Format[] formats, int chunkDurationMs, int chunkCount, int minBufferMs,
+      int maxBufferMs, int requestLatencyMs) {
+    this.formats = formats;
+    this.chunkDurationUs = chunkDurationMs * 1000L;
+    this.chunkCount = chunkCount;
+    this.minBufferUs = minBufferMs * 1000L;
+    this.maxBufferUs = maxBufferMs * 1000L;
+    this.requestLatencyUs = requestLatencyMs * 1000L;
+    clock = new SimulatedClock();
+  }
+
+  /**
+   * Returns a clock that reports the simulated time, for use by {@link BandwidthMeter}s passed to
+   * {@link #simulate(BandwidthTrace, BandwidthMeter, FormatEvaluator)}.
+   */
+  public Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * Simulates playback using an evaluator created by the factory, which is passed a new
+   * {@link DefaultBandwidthMeter}.
+   */
+  public Result simulate(BandwidthTrace trace, EvaluatorFactory evaluatorFactory) {
+    DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(null, null, clock);
+    return simulate(trace, bandwidthMeter, evaluatorFactory.createEvaluator(bandwidthMeter));
+  }
+
+  /**
+   * Simulates playback using the given evaluator, which should use the given meter. The meter
+   * should use the clock returned by {@link #getClock()}.
+   */
+  public Result simulate(BandwidthTrace trace, BandwidthMeter bandwidthMeter,
+      FormatEvaluator evaluator) {
+    this.trace = trace;
+    tracePeriodIndex = 0;
+    tracePeriodRemainingUs = trace.durationsUs[0];
+    queue = new ArrayList<>();
+    playbackPositionUs = 0;
+    bufferedPositionUs = 0;
+    started = false;
+    playing = false;
+    rebufferDurationUs = 0;
+    rebufferCount = 0;
+    long simulationStartTimeUs = clock.timeUs;
+    Format[] playedFormats = new Format[chunkCount];
+    long bytesLoaded = 0;
+
+    FormatEvaluator.Evaluation evaluation = new FormatEvaluator.Evaluation();
+    evaluator.enable();
+    int nextChunkIndex = 0;
+    while (nextChunkIndex < chunkCount) {
+      long bufferedDurationUs = bufferedPositionUs - playbackPositionUs;
+      if (bufferedDurationUs >= maxBufferUs) {
+        // Wait until there's space in the buffer.
+        advance(bufferedDurationUs - maxBufferUs + 1);
+        continue;
+      }
+      evaluation.queueSize = queue.size();
+      evaluator.evaluate(queue, playbackPositionUs, formats, evaluation);
+      if (evaluation.queueSize < queue.size()) {
+        MediaChunk firstDiscardedChunk = queue.get(evaluation.queueSize);
+        nextChunkIndex = firstDiscardedChunk.chunkIndex;
+        bufferedPositionUs = firstDiscardedChunk.startTimeUs;
+        while (queue.size() > evaluation.queueSize) {
+          queue.remove(queue.size() - 1);
+        }
+      }
+      Format format = evaluation.format;
+      long chunkBytes = (format.bitrate * chunkDurationUs) / BIT_MICROS_PER_BYTE;
+      transfer(bandwidthMeter, chunkBytes);
+      bytesLoaded += chunkBytes;
+      long startTimeUs = nextChunkIndex * chunkDurationUs;
+      queue.add(new SimulatedChunk(format, startTimeUs, startTimeUs + chunkDurationUs,
+          nextChunkIndex));
+      playedFormats[nextChunkIndex] = format;
+      bufferedPositionUs = startTimeUs + chunkDurationUs;
+      nextChunkIndex++;
+      if (!playing && (bufferedPositionUs - playbackPositionUs >= minBufferUs
+          || nextChunkIndex == chunkCount)) {
+        if (!started) {
+          started = true;
+          startupDelayUs = clock.timeUs - simulationStartTimeUs;
+        }
+        playing = true;
+      }
+    }
+    evaluator.disable();
+
+    long totalBitrate = 0;
+    int switchCount = 0;
+    for (int i = 0; i < chunkCount; i++) {
+      totalBitrate += playedFormats[i].bitrate;
+      if (i > 0 && playedFormats[i] != playedFormats[i - 1]) {
+        switchCount++;
+      }
+    }
+    long contentDurationUs = chunkCount * chunkDurationUs;
+    return new Result(startupDelayUs / 1000, rebufferDurationUs / 1000, rebufferCount,
+        (double) rebufferDurationUs / (contentDurationUs + rebufferDurationUs),
+        totalBitrate / chunkCount, switchCount, bytesLoaded);
+  }
+
+  private void transfer(BandwidthMeter bandwidthMeter, long bytes) {
+    bandwidthMeter.onTransferStart();
+    advance(requestLatencyUs);
+    // Track the remaining data in bit microseconds, so that no fraction of a byte is lost.
+    long remainingBitUs = bytes * BIT_MICROS_PER_BYTE;
+    while (remainingBitUs > 0) {
+      long bitrate = trace.bitrates[tracePeriodIndex];
+      long stepUs = Math.min(MAX_TRANSFER_STEP_US, tracePeriodRemainingUs);
+      if (bitrate > 0) {
+        stepUs = Math.min(stepUs, (remainingBitUs + bitrate - 1) / bitrate);
+      }
+      long remainingBytesBefore = remainingBitUs / BIT_MICROS_PER_BYTE;
+      remainingBitUs -= Math.min(remainingBitUs, bitrate * stepUs);
+      advance(stepUs);
+      int stepBytes = (int) (remainingBytesBefore - remainingBitUs / BIT_MICROS_PER_BYTE);
+      if (stepBytes > 0) {
+        bandwidthMeter.onBytesTransferred(stepBytes);
+      }
+    }
+    bandwidthMeter.onTransferEnd();
+  }
+
+  /**
+   * Advances the simulated time, playing buffered media and moving through the trace.
+   */
+  private void advance(long durationUs) {
+    long remainingUs = durationUs;
+    while (remainingUs > 0) {
+      long stepUs = Math.min(remainingUs, tracePeriodRemainingUs);
+      tracePeriodRemainingUs -= stepUs;
+      if (tracePeriodRemainingUs == 0) {
+        tracePeriodIndex = (tracePeriodIndex + 1) % trace.durationsUs.length;
+        tracePeriodRemainingUs = trace.durationsUs[tracePeriodIndex];
+      }
+      remainingUs -= stepUs;
+      clock.timeUs += stepUs;
+      play(stepUs);
+    }
+  }
+
+  private void play(long durationUs) {
+    if (!playing) {
+      if (started) {
+        rebufferDurationUs += durationUs;
+      }
+      return;
+    }
+    long playableUs = Math.min(durationUs, bufferedPositionUs - playbackPositionUs);
+    playbackPositionUs += playableUs;
+    while (!queue.isEmpty() && queue.get(0).endTimeUs <= playbackPositionUs) {
+      queue.remove(0);
+    }
+    if (playableUs < durationUs && playbackPositionUs < chunkCount * chunkDurationUs) {
+      // The buffer ran out.
+      playing = false;
+      rebufferCount++;
+      rebufferDurationUs += durationUs - playableUs;
+    }
+  }
+
+  private static final class SimulatedClock implements Clock {
+
+    public long timeUs;
+
+    @Override
+    public long elapsedRealtime() {
+      return timeUs / 1000;
+    }
+
+  }
+
+  private static final class SimulatedChunk extends MediaChunk {
+
+    private static final DataSource NO_DATA_SOURCE = new DataSource() {
+
+      @Override
+      public long open(DataSpec dataSpec) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int readLength) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void close() {
+        // Do nothing.
+      }
+
+    };
+
+    public SimulatedChunk(Format format, long startTimeUs, long endTimeUs, int chunkIndex) {
+      super(NO_DATA_SOURCE, new DataSpec(Uri.parse("simulated://" + chunkIndex)),
+          Chunk.TRIGGER_UNSPECIFIED, format, startTimeUs, endTimeUs, chunkIndex);
+    }
+
+    @Override
+    public long bytesLoaded() {
+      return 0;
+    }
+
+    @Override
+    public void cancelLoad() {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return false;
+    }
+
+    @Override
+    public void load() {
+      // Do nothing.
+    }
+
+  }
+
+}
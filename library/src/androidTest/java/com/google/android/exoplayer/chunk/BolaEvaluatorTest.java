@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.chunk;
+
+import com.google.android.exoplayer.chunk.AbrSimulator.BandwidthTrace;
+import com.google.android.exoplayer.chunk.AbrSimulator.EvaluatorFactory;
+import com.google.android.exoplayer.chunk.AbrSimulator.Result;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link BolaEvaluator}, which compare it with
+ * {@link FormatEvaluator.AdaptiveEvaluator} using {@link AbrSimulator}.
+ */
+public final class BolaEvaluatorTest extends TestCase {
+
+  private static final Format[] FORMATS = new Format[] {
+      buildFormat(0, 1920, 1080, 4300000),
+      buildFormat(1, 1280, 720, 2350000),
+      buildFormat(2, 854, 480, 1050000),
+      buildFormat(3, 640, 360, 560000),
+      buildFormat(4, 426, 240, 235000)};
+
+  private static final int CHUNK_DURATION_MS = 4000;
+  private static final int CHUNK_COUNT = 150;
+  private static final int MIN_BUFFER_MS = 2500;
+  private static final int MAX_BUFFER_MS = 30000;
+  private static final int REQUEST_LATENCY_MS = 50;
+
+  private static final EvaluatorFactory BOLA_EVALUATOR_FACTORY = new EvaluatorFactory() {
+    @Override
+    public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter) {
+      return new BolaEvaluator(bandwidthMeter);
+    }
+  };
+
+  private static final EvaluatorFactory ADAPTIVE_EVALUATOR_FACTORY = new EvaluatorFactory() {
+    @Override
+    public FormatEvaluator createEvaluator(BandwidthMeter bandwidthMeter) {
+      return new FormatEvaluator.AdaptiveEvaluator(bandwidthMeter);
+    }
+  };
+
+  private AbrSimulator simulator;
+
+  @Override
+  protected void setUp() throws Exception {
+    simulator = new AbrSimulator(FORMATS, CHUNK_DURATION_MS, CHUNK_COUNT, MIN_BUFFER_MS,
+        MAX_BUFFER_MS, REQUEST_LATENCY_MS);
+  }
+
+  public void testSimulationIsDeterministic() {
+    BandwidthTrace trace = buildFluctuatingTrace(0);
+    Result first = simulator.simulate(trace, BOLA_EVALUATOR_FACTORY);
+    Result second = simulator.simulate(trace, BOLA_EVALUATOR_FACTORY);
+    assertEquals(first.toString(), second.toString());
+  }
+
+  public void testParseTrace() {
+    BandwidthTrace trace = BandwidthTrace.parse("# duration bitrate\n1000 5000000\n\n"
+        + "2000\t300000\n");
+    Result result = simulator.simulate(trace, BOLA_EVALUATOR_FACTORY);
+    assertTrue(result.averageBitrate > 0);
+  }
+
+  public void testConstantBandwidth() {
+    BandwidthTrace trace = new BandwidthTrace(new long[] {1000}, new long[] {4000000});
+    Result result = simulator.simulate(trace, BOLA_EVALUATOR_FACTORY);
+    assertEquals(0, result.rebufferCount);
+    // 2350000 is the highest bitrate that can be sustained.
+    assertTrue(result.averageBitrate > 2000000);
+    assertTrue(result.averageBitrate <= 2350000);
+  }
+
+  public void testSwitchesDownWhenBandwidthDrops() {
+    // A minute at 6 Mbit/s, followed by 400 kbit/s.
+    BandwidthTrace trace = new BandwidthTrace(new long[] {60000, 10000000},
+        new long[] {6000000, 400000});
+    Result result = simulator.simulate(trace, BOLA_EVALUATOR_FACTORY);
+    assertEquals(0, result.rebufferCount);
+    // Most of the stream should be played at the lowest bitrate.
+    assertTrue(result.averageBitrate < 1000000);
+  }
+
+  public void testFluctuatingBandwidth() {
+    for (int seed = 0; seed < 5; seed++) {
+      BandwidthTrace trace = buildFluctuatingTrace(seed);
+      Result bolaResult = simulator.simulate(trace, BOLA_EVALUATOR_FACTORY);
+      Result adaptiveResult = simulator.simulate(trace, ADAPTIVE_EVALUATOR_FACTORY);
+      String message = "BOLA: " + bolaResult + "; adaptive: " + adaptiveResult;
+      // Selecting based on the buffer allows higher quality formats to be played, without
+      // significantly increasing rebuffering.
+      assertTrue(message, bolaResult.averageBitrate > adaptiveResult.averageBitrate);
+      assertTrue(message, bolaResult.rebufferRatio < 0.01);
+      assertTrue(message, bolaResult.switchCount <= adaptiveResult.switchCount);
+    }
+  }
+
+  /**
+   * Builds a trace in which the bandwidth changes every few seconds, varying around 2 Mbit/s.
+   */
+  private static BandwidthTrace buildFluctuatingTrace(int seed) {
+    Random random = new Random(seed);
+    int periodCount = 200;
+    long[] durationsMs = new long[periodCount];
+    long[] bitrates = new long[periodCount];
+    for (int i = 0; i < periodCount; i++) {
+      durationsMs[i] = 1000 + random.nextInt(5000);
+      bitrates[i] = 200000 + random.nextInt(3800000);
+    }
+    return new BandwidthTrace(durationsMs, bitrates);
+  }
+
+  private static Format buildFormat(int id, int width, int height, int bitrate) {
+    return new Format(Integer.toString(id), MimeTypes.VIDEO_MP4, width, height, 30, -1, -1,
+        bitrate);
+  }
+
+}
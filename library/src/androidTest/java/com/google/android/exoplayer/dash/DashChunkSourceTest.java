@@ -31,20 +31,27 @@ import com.google.android.exoplayer.dash.mpd.Representation;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.MultiSegmentBase;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentList;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
-import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimelineElement;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SingleSegmentBase;
+import com.google.android.exoplayer.dash.mpd.SegmentTimeline;
 import com.google.android.exoplayer.dash.mpd.UrlTemplate;
 import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
 import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.PrefetchDataSource;
 import com.google.android.exoplayer.util.FakeClock;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.Util;
 
 import android.test.InstrumentationTestCase;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Tests {@link DashChunkSource}.
@@ -187,6 +194,47 @@ public class DashChunkSourceTest extends InstrumentationTestCase {
         availableRangeStartMs, availableRangeEndMs, chunkStartTimeMs, chunkEndTimeMs);
   }
 
+  public void testPrefetchedSegmentIsReadFromMemory() throws Exception {
+    byte[] data = TestUtil.buildTestData((int) LIVE_SEGMENT_COUNT * 500);
+    RecordingDataSource upstream = new RecordingDataSource(data);
+    RecordingDataSource prefetchUpstream = new RecordingDataSource(data);
+    PrefetchDataSource dataSource = new PrefetchDataSource(upstream, prefetchUpstream, 1,
+        PrefetchDataSource.DEFAULT_MAX_PREFETCH_LENGTH);
+    MediaPresentationDescription mpd = buildMpd(LIVE_DURATION_MS,
+        Collections.singletonList(buildSegmentTimelineRepresentation(LIVE_DURATION_MS, 0)), false,
+        false);
+    DashChunkSource chunkSource = new DashChunkSource(mpd,
+        DefaultDashTrackSelector.newVideoInstance(null, false, false), dataSource, null);
+    chunkSource.prepare();
+    chunkSource.enable(0);
+
+    List<MediaChunk> queue = new ArrayList<>();
+    ChunkOperationHolder out = new ChunkOperationHolder();
+    // Requesting the first chunk prefetches the second.
+    chunkSource.getChunkOperation(queue, 0, out);
+    queue.add((MediaChunk) out.chunk);
+    prefetchUpstream.openLatch.await();
+    assertEquals(500, prefetchUpstream.openedDataSpecs.get(0).position);
+
+    // Requesting the second chunk must not cancel its prefetch.
+    out.chunk = null;
+    chunkSource.getChunkOperation(queue, 0, out);
+    DataSpec dataSpec = out.chunk.dataSpec;
+    assertEquals(500, dataSpec.position);
+    assertEquals(500, dataSource.open(dataSpec));
+    byte[] buffer = new byte[500];
+    int bytesRead = 0;
+    while (bytesRead < buffer.length) {
+      bytesRead += dataSource.read(buffer, bytesRead, buffer.length - bytesRead);
+    }
+    dataSource.close();
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 500, 1000), buffer));
+    assertEquals(0, upstream.openedDataSpecs.size());
+
+    chunkSource.disable(queue);
+    dataSource.release();
+  }
+
   // Private methods.
 
   private static Representation buildVodRepresentation(Format format) {
@@ -198,26 +246,26 @@ public class DashChunkSourceTest extends InstrumentationTestCase {
 
   private static Representation buildSegmentTimelineRepresentation(long timelineDurationMs,
       long timelineStartTimeMs) {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    SegmentTimeline.Builder segmentTimeline = new SegmentTimeline.Builder();
     List<RangedUri> mediaSegments = new ArrayList<>();
     long segmentStartTimeMs = timelineStartTimeMs;
     long byteStart = 0;
     // Create all but the last segment with LIVE_SEGMENT_DURATION_MS.
     int segmentCount = (int) Util.ceilDivide(timelineDurationMs, LIVE_SEGMENT_DURATION_MS);
     for (int i = 0; i < segmentCount - 1; i++) {
-      segmentTimeline.add(new SegmentTimelineElement(segmentStartTimeMs, LIVE_SEGMENT_DURATION_MS));
+      segmentTimeline.add(segmentStartTimeMs, LIVE_SEGMENT_DURATION_MS, 1);
       mediaSegments.add(new RangedUri("", "", byteStart, 500L));
       segmentStartTimeMs += LIVE_SEGMENT_DURATION_MS;
       byteStart += 500;
     }
     // The final segment duration is calculated so that the total duration is timelineDurationMs.
     long finalSegmentDurationMs = (timelineStartTimeMs + timelineDurationMs) - segmentStartTimeMs;
-    segmentTimeline.add(new SegmentTimelineElement(segmentStartTimeMs, finalSegmentDurationMs));
+    segmentTimeline.add(segmentStartTimeMs, finalSegmentDurationMs, 1);
     mediaSegments.add(new RangedUri("", "", byteStart, 500L));
     segmentStartTimeMs += finalSegmentDurationMs;
     byteStart += 500;
     // Construct the list.
-    MultiSegmentBase segmentBase = new SegmentList(null, 1000, 0, 0, 0, segmentTimeline,
+    MultiSegmentBase segmentBase = new SegmentList(null, 1000, 0, 0, 0, segmentTimeline.build(),
         mediaSegments);
     return Representation.newInstance(null, 0, REGULAR_VIDEO, segmentBase);
   }
@@ -492,4 +540,39 @@ public class DashChunkSourceTest extends InstrumentationTestCase {
     assertNull(out.chunk);
   }
 
+  /**
+   * A {@link ByteArrayDataSource} that records the requests with which it's opened.
+   */
+  private static final class RecordingDataSource implements DataSource {
+
+    public final List<DataSpec> openedDataSpecs;
+    public final CountDownLatch openLatch;
+
+    private final ByteArrayDataSource dataSource;
+
+    public RecordingDataSource(byte[] data) {
+      openedDataSpecs = new CopyOnWriteArrayList<>();
+      openLatch = new CountDownLatch(1);
+      dataSource = new ByteArrayDataSource(data);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      openedDataSpecs.add(dataSpec);
+      openLatch.countDown();
+      return dataSource.open(dataSpec);
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataSource.close();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      return dataSource.read(buffer, offset, readLength);
+    }
+
+  }
+
 }
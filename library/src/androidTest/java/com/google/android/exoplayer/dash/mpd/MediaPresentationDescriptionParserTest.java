@@ -15,10 +15,15 @@
  */
 package com.google.android.exoplayer.dash.mpd;
 
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.MultiSegmentBase;
+
 import android.test.InstrumentationTestCase;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 
 /**
  * Unit tests for {@link MediaPresentationDescriptionParser}.
@@ -27,6 +32,8 @@ public class MediaPresentationDescriptionParserTest extends InstrumentationTestC
 
   private static final String SAMPLE_MPD_1 = "dash/sample_mpd_1";
 
+  private static final String URL = "https://example.com/test.mpd";
+
   public void testParseMediaPresentationDescription() throws IOException {
     MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
     InputStream inputStream =
@@ -35,4 +42,133 @@ public class MediaPresentationDescriptionParserTest extends InstrumentationTestC
     parser.parse("https://example.com/test.mpd", inputStream);
   }
 
+  public void testParseRefreshedManifestReusesUnchangedObjects() throws IOException {
+    MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
+    MediaPresentationDescription manifest = parse(parser, buildLiveMpd(2, 3), null);
+    MediaPresentationDescription refreshedManifest = parse(parser, buildLiveMpd(2, 4), manifest);
+
+    assertEquals(2, refreshedManifest.getPeriodCount());
+    // The first period is unchanged.
+    assertSame(manifest.getPeriod(0), refreshedManifest.getPeriod(0));
+    // The timeline of the video representations in the last period has been extended, but the
+    // audio adaptation set is unchanged.
+    Period period = manifest.getPeriod(1);
+    Period refreshedPeriod = refreshedManifest.getPeriod(1);
+    assertNotSame(period, refreshedPeriod);
+    AdaptationSet videoAdaptationSet = refreshedPeriod.adaptationSets.get(0);
+    assertNotSame(period.adaptationSets.get(0), videoAdaptationSet);
+    assertNotSame(period.adaptationSets.get(0).representations.get(0),
+        videoAdaptationSet.representations.get(0));
+    assertEquals(4, videoAdaptationSet.representations.get(0).getIndex().getLastSegmentNum(-1));
+    assertSame(period.adaptationSets.get(1), refreshedPeriod.adaptationSets.get(1));
+  }
+
+  public void testParseRefreshedManifestExtendsSegmentTimeline() throws IOException {
+    MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
+    MediaPresentationDescription manifest = parse(parser, buildLiveMpd(2, 3), null);
+    MediaPresentationDescription refreshedManifest = parse(parser, buildLiveMpd(2, 5), manifest);
+    MediaPresentationDescription expectedManifest = parse(parser, buildLiveMpd(2, 5), null);
+
+    SegmentTimeline timeline = getVideoSegmentTimeline(refreshedManifest.getPeriod(1), 0);
+    assertEquals(5, timeline.getSegmentCount());
+    assertEquals(1, timeline.getRunCount());
+    assertEquals(getVideoSegmentTimeline(expectedManifest.getPeriod(1), 0), timeline);
+    // The representations in the adaptation set share the extended timeline.
+    assertSame(timeline, getVideoSegmentTimeline(refreshedManifest.getPeriod(1), 1));
+  }
+
+  public void testParseRefreshedManifestReusesUnchangedSegmentTimeline() throws IOException {
+    MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
+    MediaPresentationDescription manifest = parse(parser, buildLiveMpd(2, 3), null);
+    // The bandwidth of a representation changes, but its timeline doesn't.
+    String refreshedManifestString = buildLiveMpd(2, 3).replace("bandwidth=\"1000000\"",
+        "bandwidth=\"1500000\"");
+    MediaPresentationDescription refreshedManifest =
+        parse(parser, refreshedManifestString, manifest);
+
+    Period period = manifest.getPeriod(1);
+    Period refreshedPeriod = refreshedManifest.getPeriod(1);
+    assertNotSame(period.adaptationSets.get(0).representations.get(0),
+        refreshedPeriod.adaptationSets.get(0).representations.get(0));
+    assertSame(getVideoSegmentTimeline(period, 0), getVideoSegmentTimeline(refreshedPeriod, 0));
+  }
+
+  public void testParseRefreshedManifestWithNewPeriod() throws IOException {
+    MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
+    MediaPresentationDescription manifest = parse(parser, buildLiveMpd(2, 3), null);
+    MediaPresentationDescription refreshedManifest = parse(parser, buildLiveMpd(3, 1), manifest);
+
+    assertEquals(3, refreshedManifest.getPeriodCount());
+    assertSame(manifest.getPeriod(0), refreshedManifest.getPeriod(0));
+    // The second period's timeline is the same length as the new period's.
+    assertNotSame(manifest.getPeriod(1), refreshedManifest.getPeriod(1));
+    assertSame(manifest.getPeriod(1).adaptationSets.get(1),
+        refreshedManifest.getPeriod(1).adaptationSets.get(1));
+  }
+
+  public void testParseUsesLastDynamicManifest() throws IOException {
+    MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
+    MediaPresentationDescription manifest = parser.parse(URL, toInputStream(buildLiveMpd(2, 3)));
+    MediaPresentationDescription refreshedManifest =
+        parser.parse(URL, toInputStream(buildLiveMpd(2, 3)));
+    assertSame(manifest.getPeriod(0), refreshedManifest.getPeriod(0));
+    assertSame(manifest.getPeriod(1), refreshedManifest.getPeriod(1));
+  }
+
+  public void testParseWithoutPreviousManifest() throws IOException {
+    MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
+    MediaPresentationDescription manifest = parse(parser, buildLiveMpd(2, 3), null);
+    MediaPresentationDescription otherManifest = parse(parser, buildLiveMpd(2, 3), null);
+    assertNotSame(manifest.getPeriod(0), otherManifest.getPeriod(0));
+    assertNotSame(manifest.getPeriod(0).adaptationSets.get(1),
+        otherManifest.getPeriod(0).adaptationSets.get(1));
+  }
+
+  private static MediaPresentationDescription parse(MediaPresentationDescriptionParser parser,
+      String manifestString, MediaPresentationDescription previousManifest) throws IOException {
+    return parser.parse(URL, toInputStream(manifestString), previousManifest);
+  }
+
+  private static SegmentTimeline getVideoSegmentTimeline(Period period, int representationIndex) {
+    Representation representation =
+        period.adaptationSets.get(0).representations.get(representationIndex);
+    return ((MultiSegmentBase) representation.getSegmentBase()).segmentTimeline;
+  }
+
+  private static InputStream toInputStream(String manifestString) {
+    return new ByteArrayInputStream(manifestString.getBytes(Charset.forName(C.UTF8_NAME)));
+  }
+
+  /**
+   * Builds a dynamic manifest in which all periods except the last have ten two second segments.
+   */
+  private static String buildLiveMpd(int periodCount, int lastPeriodSegmentCount) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"dynamic\" ")
+        .append("availabilityStartTime=\"2016-01-01T00:00:00Z\" minimumUpdatePeriod=\"PT2S\" ")
+        .append("minBufferTime=\"PT2S\" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n");
+    for (int i = 0; i < periodCount; i++) {
+      int segmentCount = i == periodCount - 1 ? lastPeriodSegmentCount : 10;
+      builder.append("<Period id=\"").append(i).append("\" start=\"PT").append(i * 20)
+          .append("S\">\n")
+          .append("<AdaptationSet id=\"0\" mimeType=\"video/mp4\">\n")
+          .append("<SegmentTemplate timescale=\"1000\" media=\"$RepresentationID$/$Time$.m4s\">\n")
+          .append("<SegmentTimeline><S t=\"0\" d=\"2000\" r=\"").append(segmentCount - 1)
+          .append("\"/></SegmentTimeline>\n")
+          .append("</SegmentTemplate>\n")
+          .append("<Representation id=\"v0\" codecs=\"avc1.4d401e\" bandwidth=\"1000000\"/>\n")
+          .append("<Representation id=\"v1\" codecs=\"avc1.4d401f\" bandwidth=\"2000000\"/>\n")
+          .append("</AdaptationSet>\n")
+          .append("<AdaptationSet id=\"1\" mimeType=\"audio/mp4\">\n")
+          .append("<SegmentTemplate timescale=\"1000\" duration=\"2000\" ")
+          .append("media=\"$RepresentationID$/$Number$.m4s\"/>\n")
+          .append("<Representation id=\"a0\" codecs=\"mp4a.40.2\" bandwidth=\"128000\"/>\n")
+          .append("</AdaptationSet>\n")
+          .append("</Period>\n");
+    }
+    builder.append("</MPD>\n");
+    return builder.toString();
+  }
+
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash.mpd;
+
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link SegmentTimeline}.
+ */
+public class SegmentTimelineTest extends TestCase {
+
+  public void testEqualDurationSegmentsShareRun() {
+    SegmentTimeline timeline = new SegmentTimeline.Builder()
+        .add(1000, 200, 10)
+        .add(3000, 200, 1)
+        .add(3200, 200, 5)
+        .build();
+    assertEquals(16, timeline.getSegmentCount());
+    assertEquals(1, timeline.getRunCount());
+  }
+
+  public void testRunBoundaries() {
+    SegmentTimeline timeline = new SegmentTimeline.Builder()
+        .add(0, 100, 3)
+        .add(300, 50, 2)
+        // A gap in the timeline.
+        .add(500, 50, 2)
+        .add(600, 100, 0)
+        .build();
+    assertEquals(7, timeline.getSegmentCount());
+    assertEquals(3, timeline.getRunCount());
+    long[] expectedStartTimes = new long[] {0, 100, 200, 300, 350, 500, 550};
+    long[] expectedDurations = new long[] {100, 100, 100, 50, 50, 50, 50};
+    for (int i = 0; i < expectedStartTimes.length; i++) {
+      assertEquals(expectedStartTimes[i], timeline.getStartTime(i));
+      assertEquals(expectedDurations[i], timeline.getDuration(i));
+    }
+  }
+
+  public void testGetSegmentIndex() {
+    SegmentTimeline timeline = new SegmentTimeline.Builder()
+        .add(100, 100, 3)
+        .add(400, 50, 2)
+        .add(600, 50, 2)
+        .build();
+    assertEquals(-1, timeline.getSegmentIndex(0));
+    assertEquals(-1, timeline.getSegmentIndex(99));
+    assertEquals(0, timeline.getSegmentIndex(100));
+    assertEquals(0, timeline.getSegmentIndex(199));
+    assertEquals(2, timeline.getSegmentIndex(399));
+    assertEquals(3, timeline.getSegmentIndex(400));
+    assertEquals(4, timeline.getSegmentIndex(450));
+    // Times in a gap map to the preceding segment.
+    assertEquals(4, timeline.getSegmentIndex(599));
+    assertEquals(5, timeline.getSegmentIndex(600));
+    assertEquals(6, timeline.getSegmentIndex(650));
+    // Times after the end of the timeline map to the last segment.
+    assertEquals(6, timeline.getSegmentIndex(10000));
+  }
+
+  public void testGetStartTimeOutOfBounds() {
+    SegmentTimeline timeline = new SegmentTimeline.Builder().add(0, 100, 3).build();
+    try {
+      timeline.getStartTime(3);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected.
+    }
+  }
+
+  public void testAppend() {
+    SegmentTimeline timeline = new SegmentTimeline.Builder()
+        .add(0, 100, 3)
+        .build();
+    SegmentTimeline appendedTimeline = new SegmentTimeline.Builder(timeline)
+        .add(300, 100, 1)
+        .add(400, 80, 1)
+        .build();
+    assertEquals(3, timeline.getSegmentCount());
+    assertEquals(5, appendedTimeline.getSegmentCount());
+    assertEquals(2, appendedTimeline.getRunCount());
+    assertEquals(300, appendedTimeline.getStartTime(3));
+    assertEquals(400, appendedTimeline.getStartTime(4));
+    assertEquals(80, appendedTimeline.getDuration(4));
+  }
+
+  public void testAppendToPrefix() {
+    SegmentTimeline timeline = new SegmentTimeline.Builder()
+        .add(0, 100, 3)
+        .add(300, 80, 2)
+        .build();
+    SegmentTimeline appendedTimeline = new SegmentTimeline.Builder(timeline, 2)
+        .add(200, 100, 2)
+        .build();
+    assertEquals(new SegmentTimeline.Builder().add(0, 100, 4).build(), appendedTimeline);
+    assertEquals(0, new SegmentTimeline.Builder(timeline, 0).build().getSegmentCount());
+  }
+
+  public void testGetMatchingSegmentCount() {
+    SegmentTimeline timeline = new SegmentTimeline.Builder()
+        .add(0, 100, 3)
+        .add(300, 80, 2)
+        .build();
+    assertEquals(3, timeline.getMatchingSegmentCount(0, 0, 100, 3));
+    assertEquals(1, timeline.getMatchingSegmentCount(1, 100, 100, 1));
+    // The segments extend beyond the end of the timeline.
+    assertEquals(2, timeline.getMatchingSegmentCount(3, 300, 80, 5));
+    assertEquals(0, timeline.getMatchingSegmentCount(5, 460, 80, 1));
+    // The segments differ from those of the timeline.
+    assertEquals(-1, timeline.getMatchingSegmentCount(0, 0, 100, 4));
+    assertEquals(-1, timeline.getMatchingSegmentCount(0, 0, 90, 1));
+    assertEquals(-1, timeline.getMatchingSegmentCount(1, 150, 100, 1));
+  }
+
+  public void testEquals() {
+    SegmentTimeline timelineA = new SegmentTimeline.Builder().add(0, 100, 2).add(200, 100, 1)
+        .build();
+    SegmentTimeline timelineB = new SegmentTimeline.Builder().add(0, 100, 3).build();
+    SegmentTimeline timelineC = new SegmentTimeline.Builder().add(0, 100, 4).build();
+    assertEquals(timelineA, timelineB);
+    assertEquals(timelineA.hashCode(), timelineB.hashCode());
+    assertFalse(timelineA.equals(timelineC));
+  }
+
+  public void testSegmentTemplateGetSegmentNum() {
+    // Segments of 2002 units at a timescale of 30000, which aren't a whole number of microseconds.
+    SegmentTimeline timeline = new SegmentTimeline.Builder()
+        .add(60000, 2002, 100)
+        .add(60000 + 2002 * 100, 1001, 10)
+        .build();
+    SegmentTemplate segmentBase = new SegmentTemplate(null, 30000, 60000, 1, 0, timeline, null,
+        UrlTemplate.compile("$Number$"), "http://example.com");
+    assertEquals(110, segmentBase.getLastSegmentNum(-1));
+    for (int segmentNum = 1; segmentNum <= 110; segmentNum++) {
+      long timeUs = segmentBase.getSegmentTimeUs(segmentNum);
+      assertEquals(segmentNum, segmentBase.getSegmentNum(timeUs, -1));
+      assertEquals(segmentNum == 1 ? 1 : segmentNum - 1,
+          segmentBase.getSegmentNum(timeUs - 1, -1));
+    }
+    assertEquals(110, segmentBase.getSegmentNum(1000000000, -1));
+  }
+
+}
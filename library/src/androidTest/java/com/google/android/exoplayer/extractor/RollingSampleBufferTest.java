@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link RollingSampleBuffer}.
+ */
+public class RollingSampleBufferTest extends TestCase {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int SAMPLE_SIZE = 3;
+
+  private RollingSampleBuffer rollingSampleBuffer;
+  private SampleHolder sampleHolder;
+
+  @Override
+  protected void setUp() throws Exception {
+    rollingSampleBuffer = new RollingSampleBuffer(new DefaultAllocator(ALLOCATION_SIZE));
+    sampleHolder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  public void testReadSamplesBeyondInitialCapacity() {
+    int sampleCount = 5000;
+    for (int i = 0; i < sampleCount; i++) {
+      appendSample(i);
+    }
+    for (int i = 0; i < sampleCount; i++) {
+      assertSample(i);
+    }
+    assertFalse(rollingSampleBuffer.readSample(sampleHolder));
+  }
+
+  public void testDiscardUpstreamSamples() {
+    for (int i = 0; i < 10; i++) {
+      appendSample(i);
+    }
+    assertSample(0);
+    rollingSampleBuffer.discardUpstreamSamples(4);
+    assertEquals(4, rollingSampleBuffer.getWriteIndex());
+    assertEquals(4 * SAMPLE_SIZE, rollingSampleBuffer.getWritePosition());
+    appendSample(4);
+    for (int i = 1; i < 5; i++) {
+      assertSample(i);
+    }
+    assertFalse(rollingSampleBuffer.readSample(sampleHolder));
+  }
+
+  public void testSkipToKeyframeBefore() {
+    for (int i = 0; i < 10; i++) {
+      appendSample(i);
+    }
+    assertFalse(rollingSampleBuffer.skipToKeyframeBefore(100));
+    assertTrue(rollingSampleBuffer.skipToKeyframeBefore(7));
+    assertSample(6);
+  }
+
+  public void testConcurrentAppendAndRead() throws Exception {
+    final int sampleCount = 100000;
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    // Append on one thread and read on another, as a loader and playback thread do.
+    Thread loadingThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < sampleCount; i++) {
+            appendSample(i);
+          }
+        } catch (Throwable e) {
+          error.set(e);
+        }
+      }
+    };
+    loadingThread.start();
+    for (int i = 0; i < sampleCount && error.get() == null; i++) {
+      while (!rollingSampleBuffer.peekSample(sampleHolder)) {
+        Thread.yield();
+      }
+      assertSample(i);
+    }
+    loadingThread.join();
+    assertNull(error.get());
+    assertFalse(rollingSampleBuffer.readSample(sampleHolder));
+  }
+
+  /**
+   * Appends a sample whose time is {@code index} and whose data bytes are all equal to the least
+   * significant byte of {@code index}. Samples with even indices are keyframes.
+   */
+  private void appendSample(int index) {
+    long position = rollingSampleBuffer.getWritePosition();
+    byte[] data = new byte[SAMPLE_SIZE];
+    for (int i = 0; i < SAMPLE_SIZE; i++) {
+      data[i] = (byte) index;
+    }
+    rollingSampleBuffer.appendData(new ParsableByteArray(data), SAMPLE_SIZE);
+    rollingSampleBuffer.commitSample(index, index % 2 == 0 ? C.SAMPLE_FLAG_SYNC : 0, position,
+        SAMPLE_SIZE, null);
+  }
+
+  private void assertSample(int index) {
+    sampleHolder.clearData();
+    assertTrue(rollingSampleBuffer.readSample(sampleHolder));
+    assertEquals(index, sampleHolder.timeUs);
+    assertEquals(SAMPLE_SIZE, sampleHolder.size);
+    assertEquals(index % 2 == 0, sampleHolder.isSyncFrame());
+    for (int i = 0; i < SAMPLE_SIZE; i++) {
+      assertEquals((byte) index, sampleHolder.data.get(i));
+    }
+  }
+
+}
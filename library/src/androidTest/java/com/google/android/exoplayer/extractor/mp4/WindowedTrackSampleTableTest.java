@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp4;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import com.google.android.exoplayer.util.Util;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unit tests for {@link WindowedTrackSampleTable}.
+ */
+public final class WindowedTrackSampleTableTest extends TestCase {
+
+  private static final int TIMESCALE = 90000;
+  private static final int SAMPLE_COUNT = 3000;
+  // The first 100 chunks have 5 samples, then there's an empty chunk, then chunks have 10 samples.
+  private static final int CHUNK_COUNT = 100 + 1 + (SAMPLE_COUNT - 500) / 10;
+  // The first 1000 samples have a duration of 3000, and the rest have a duration of 1500.
+  private static final int SAMPLE_COUNT_AT_FIRST_DELTA = 1000;
+  private static final int FIRST_DELTA = 3000;
+  private static final int SECOND_DELTA = 1500;
+  private static final int SYNC_SAMPLE_INTERVAL = 30;
+
+  private long[] expectedOffsets;
+  private int[] expectedSizes;
+  private long[] expectedTimestampsUs;
+  private int[] expectedFlags;
+  private WindowedTrackSampleTable sampleTable;
+
+  @Override
+  protected void setUp() throws Exception {
+    expectedOffsets = new long[SAMPLE_COUNT];
+    expectedSizes = new int[SAMPLE_COUNT];
+    expectedTimestampsUs = new long[SAMPLE_COUNT];
+    expectedFlags = new int[SAMPLE_COUNT];
+    int sampleIndex = 0;
+    for (int chunkIndex = 0; chunkIndex < CHUNK_COUNT; chunkIndex++) {
+      long offset = getChunkOffset(chunkIndex);
+      for (int i = 0; i < getSamplesPerChunk(chunkIndex); i++) {
+        expectedOffsets[sampleIndex] = offset;
+        expectedSizes[sampleIndex] = getSampleSize(sampleIndex);
+        offset += expectedSizes[sampleIndex];
+        sampleIndex++;
+      }
+    }
+    long timestamp = 0;
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      expectedTimestampsUs[i] = Util.scaleLargeTimestamp(timestamp + getTimestampOffset(i),
+          C.MICROS_PER_SECOND, TIMESCALE);
+      expectedFlags[i] = i % SYNC_SAMPLE_INTERVAL == 0 ? C.SAMPLE_FLAG_SYNC : 0;
+      timestamp += i < SAMPLE_COUNT_AT_FIRST_DELTA ? FIRST_DELTA : SECOND_DELTA;
+    }
+    sampleTable = new WindowedTrackSampleTable(SAMPLE_COUNT, 0, buildStsz(), buildStco(),
+        false, buildStsc(), buildStts(), buildCtts(), buildStss(), TIMESCALE, 0);
+  }
+
+  public void testMaximumSize() {
+    assertEquals(SAMPLE_COUNT, sampleTable.sampleCount);
+    // Finding the maximum size of variable size samples would require reading the whole stsz.
+    assertEquals(MediaFormat.NO_VALUE, sampleTable.maximumSize);
+    WindowedTrackSampleTable fixedSizeSampleTable = new WindowedTrackSampleTable(SAMPLE_COUNT, 100,
+        buildStsz(), buildStco(), false, buildStsc(), buildStts(), null, null, TIMESCALE, 0);
+    assertEquals(100, fixedSizeSampleTable.maximumSize);
+    assertEquals(100, fixedSizeSampleTable.getSize(SAMPLE_COUNT - 1));
+  }
+
+  public void testConstructionDoesNotReadPerSampleEntries() {
+    // The atoms claim many more samples than they contain entries for. Only the first window of
+    // samples can be read, but construction and synchronization sample lookups must still succeed.
+    int sampleCount = 100000000;
+    int samplesPerChunk = 1000;
+    int entryCount = 1024;
+    ByteBuffer stsz = newFullAtom(8 + entryCount * 4);
+    stsz.putInt(0);
+    stsz.putInt(sampleCount);
+    for (int i = 0; i < entryCount; i++) {
+      stsz.putInt(getSampleSize(i));
+    }
+    ByteBuffer stco = newFullAtom(4 + 2 * 4);
+    stco.putInt(sampleCount / samplesPerChunk);
+    stco.putInt((int) getChunkOffset(0));
+    stco.putInt((int) getChunkOffset(1));
+    ByteBuffer stsc = newFullAtom(4 + 12);
+    stsc.putInt(1);
+    putStscEntry(stsc, 1, samplesPerChunk);
+    ByteBuffer stts = newFullAtom(4 + 8);
+    stts.putInt(1);
+    stts.putInt(sampleCount);
+    stts.putInt(FIRST_DELTA);
+
+    WindowedTrackSampleTable sampleTable = new WindowedTrackSampleTable(sampleCount, 0,
+        new ParsableByteArray(stsz.array()), new ParsableByteArray(stco.array()), false,
+        new ParsableByteArray(stsc.array()), new ParsableByteArray(stts.array()), null, null,
+        TIMESCALE, 0);
+    assertEquals(sampleCount, sampleTable.sampleCount);
+    assertEquals(getChunkOffset(0), sampleTable.getOffset(0));
+    assertEquals(getSampleSize(0), sampleTable.getSize(0));
+    assertEquals(0, sampleTable.getTimestampUs(0));
+    assertEquals(getChunkOffset(1), sampleTable.getOffset(samplesPerChunk));
+    int sampleIndex = 98765432;
+    long timeUs = Util.scaleLargeTimestamp((long) sampleIndex * FIRST_DELTA, C.MICROS_PER_SECOND,
+        TIMESCALE);
+    assertEquals(sampleIndex, sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs));
+    assertEquals(sampleIndex, sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs));
+  }
+
+  public void testSequentialAccess() {
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      assertSample(i);
+    }
+  }
+
+  public void testRandomAccess() {
+    for (int i = SAMPLE_COUNT - 1; i >= 0; i -= 97) {
+      assertSample(i);
+    }
+    assertSample(SAMPLE_COUNT - 1);
+    assertSample(0);
+    assertSample(1500);
+    assertSample(1501);
+    assertSample(499);
+    assertSample(500);
+  }
+
+  public void testSynchronizationSampleLookup() {
+    long lastTimestampUs = expectedTimestampsUs[SAMPLE_COUNT - 1];
+    for (long timeUs = -1; timeUs <= lastTimestampUs + 1; timeUs += 12345) {
+      assertEquals(getExpectedEarlierOrEqualSyncSample(timeUs),
+          sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs));
+      assertEquals(getExpectedLaterOrEqualSyncSample(timeUs),
+          sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs));
+    }
+    assertEquals(30, sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(
+        expectedTimestampsUs[30]));
+    assertEquals(30, sampleTable.getIndexOfLaterOrEqualSynchronizationSample(
+        expectedTimestampsUs[30]));
+    assertEquals(TrackSampleTable.NO_SAMPLE,
+        sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(-1));
+  }
+
+  public void testSamplesAreInRange() {
+    long endTime = (long) SAMPLE_COUNT_AT_FIRST_DELTA * FIRST_DELTA
+        + (long) (SAMPLE_COUNT - SAMPLE_COUNT_AT_FIRST_DELTA) * SECOND_DELTA;
+    assertTrue(WindowedTrackSampleTable.samplesAreInRange(SAMPLE_COUNT, buildStts(), buildCtts(),
+        0, endTime + 2 * FIRST_DELTA));
+    assertFalse(WindowedTrackSampleTable.samplesAreInRange(SAMPLE_COUNT, buildStts(), buildCtts(),
+        1, endTime + 2 * FIRST_DELTA));
+    assertFalse(WindowedTrackSampleTable.samplesAreInRange(SAMPLE_COUNT, buildStts(), buildCtts(),
+        0, endTime));
+  }
+
+  private void assertSample(int sampleIndex) {
+    assertEquals(expectedOffsets[sampleIndex], sampleTable.getOffset(sampleIndex));
+    assertEquals(expectedSizes[sampleIndex], sampleTable.getSize(sampleIndex));
+    assertEquals(expectedTimestampsUs[sampleIndex], sampleTable.getTimestampUs(sampleIndex));
+    assertEquals(expectedFlags[sampleIndex], sampleTable.getFlags(sampleIndex));
+  }
+
+  private int getExpectedEarlierOrEqualSyncSample(long timeUs) {
+    int syncSampleIndex = TrackSampleTable.NO_SAMPLE;
+    for (int i = 0; i < SAMPLE_COUNT; i += SYNC_SAMPLE_INTERVAL) {
+      if (expectedTimestampsUs[i] <= timeUs) {
+        syncSampleIndex = i;
+      }
+    }
+    return syncSampleIndex;
+  }
+
+  private int getExpectedLaterOrEqualSyncSample(long timeUs) {
+    for (int i = 0; i < SAMPLE_COUNT; i += SYNC_SAMPLE_INTERVAL) {
+      if (expectedTimestampsUs[i] >= timeUs) {
+        return i;
+      }
+    }
+    return TrackSampleTable.NO_SAMPLE;
+  }
+
+  private static int getSampleSize(int sampleIndex) {
+    return 100 + sampleIndex % 7;
+  }
+
+  private static long getChunkOffset(int chunkIndex) {
+    return 1000 + chunkIndex * 10000L;
+  }
+
+  private static int getSamplesPerChunk(int chunkIndex) {
+    return chunkIndex < 100 ? 5 : chunkIndex == 100 ? 0 : 10;
+  }
+
+  private static int getTimestampOffset(int sampleIndex) {
+    return (sampleIndex % 3) * FIRST_DELTA;
+  }
+
+  private static ParsableByteArray buildStsz() {
+    ByteBuffer buffer = newFullAtom(8 + SAMPLE_COUNT * 4);
+    buffer.putInt(0);
+    buffer.putInt(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      buffer.putInt(getSampleSize(i));
+    }
+    return new ParsableByteArray(buffer.array());
+  }
+
+  private static ParsableByteArray buildStco() {
+    ByteBuffer buffer = newFullAtom(4 + CHUNK_COUNT * 4);
+    buffer.putInt(CHUNK_COUNT);
+    for (int i = 0; i < CHUNK_COUNT; i++) {
+      buffer.putInt((int) getChunkOffset(i));
+    }
+    return new ParsableByteArray(buffer.array());
+  }
+
+  private static ParsableByteArray buildStsc() {
+    ByteBuffer buffer = newFullAtom(4 + 3 * 12);
+    buffer.putInt(3);
+    putStscEntry(buffer, 1, 5);
+    putStscEntry(buffer, 101, 0);
+    putStscEntry(buffer, 102, 10);
+    return new ParsableByteArray(buffer.array());
+  }
+
+  private static ParsableByteArray buildStts() {
+    ByteBuffer buffer = newFullAtom(4 + 2 * 8);
+    buffer.putInt(2);
+    buffer.putInt(SAMPLE_COUNT_AT_FIRST_DELTA);
+    buffer.putInt(FIRST_DELTA);
+    buffer.putInt(SAMPLE_COUNT - SAMPLE_COUNT_AT_FIRST_DELTA);
+    buffer.putInt(SECOND_DELTA);
+    return new ParsableByteArray(buffer.array());
+  }
+
+  private static ParsableByteArray buildCtts() {
+    ByteBuffer buffer = newFullAtom(4 + SAMPLE_COUNT * 8);
+    buffer.putInt(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      buffer.putInt(1);
+      buffer.putInt(getTimestampOffset(i));
+    }
+    return new ParsableByteArray(buffer.array());
+  }
+
+  private static ParsableByteArray buildStss() {
+    int syncSampleCount = (SAMPLE_COUNT + SYNC_SAMPLE_INTERVAL - 1) / SYNC_SAMPLE_INTERVAL;
+    ByteBuffer buffer = newFullAtom(4 + syncSampleCount * 4);
+    buffer.putInt(syncSampleCount);
+    for (int i = 0; i < SAMPLE_COUNT; i += SYNC_SAMPLE_INTERVAL) {
+      buffer.putInt(i + 1);
+    }
+    return new ParsableByteArray(buffer.array());
+  }
+
+  private static void putStscEntry(ByteBuffer buffer, int firstChunk, int samplesPerChunk) {
+    buffer.putInt(firstChunk);
+    buffer.putInt(samplesPerChunk);
+    buffer.putInt(1); // sample_description_index
+  }
+
+  private static ByteBuffer newFullAtom(int payloadSize) {
+    ByteBuffer buffer = ByteBuffer.allocate(Atom.FULL_HEADER_SIZE + payloadSize);
+    buffer.putInt(Atom.FULL_HEADER_SIZE + payloadSize);
+    buffer.putInt(0); // Type, which is unused.
+    buffer.putInt(0); // Version and flags.
+    return buffer;
+  }
+
+}
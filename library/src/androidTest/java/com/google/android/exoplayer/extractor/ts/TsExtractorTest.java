@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorInput.SimulatedIOException;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.FakeTrackOutput;
+import com.google.android.exoplayer.testutil.TestUtil;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit test for {@link TsExtractor}.
+ */
+public final class TsExtractorTest extends TestCase {
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int PMT_PID = 0x1000;
+  private static final int ID3_PID = 0x100;
+  private static final int ID3_TRACK_ID = 0x15;
+  private static final int SAMPLE_COUNT = 10;
+
+  private static final byte[] PAT_PAYLOAD = TestUtil.createByteArray(
+      0x00, // pointer_field
+      0x00, 0xB0, 0x0D, 0x00, 0x01, 0xC1, 0x00, 0x00, // Header, section_length = 13.
+      0x00, 0x01, 0xF0, 0x00, // program_number = 1, program_map_PID = 0x1000.
+      0x00, 0x00, 0x00, 0x00); // CRC_32, which isn't checked.
+
+  private static final byte[] PMT_PAYLOAD = TestUtil.createByteArray(
+      0x00, // pointer_field
+      0x02, 0xB0, 0x12, 0x00, 0x01, 0xC1, 0x00, 0x00, // Header, section_length = 18.
+      0xE1, 0x00, 0xF0, 0x00, // PCR_PID = 0x100, program_info_length = 0.
+      0x15, 0xE1, 0x00, 0xF0, 0x00, // stream_type = ID3, elementary_PID = 0x100.
+      0x00, 0x00, 0x00, 0x00); // CRC_32, which isn't checked.
+
+  private static final byte[] ID3_TAG = TestUtil.createByteArray(
+      0x49, 0x44, 0x33, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, 0x0A, // Header, size = 10.
+      0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09);
+
+  private TsExtractor extractor;
+  private FakeExtractorOutput output;
+
+  @Override
+  public void setUp() throws Exception {
+    extractor = new TsExtractor();
+    output = new FakeExtractorOutput();
+    extractor.init(output);
+  }
+
+  public void testReadSamples() throws IOException, InterruptedException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    writeProgramTables(stream);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      writeId3Sample(stream, i);
+    }
+    consume(stream.toByteArray());
+    assertSamples();
+  }
+
+  public void testReadSamplesWithRepeatedProgramTables() throws IOException, InterruptedException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      writeProgramTables(stream);
+      writeId3Sample(stream, i);
+    }
+    consume(stream.toByteArray());
+    assertSamples();
+  }
+
+  public void testReadSamplesSkipsDataBeforeSyncByte() throws IOException, InterruptedException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(0);
+    writeProgramTables(stream);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      // Write some data that isn't part of a packet.
+      stream.write(new byte[i]);
+      writeId3Sample(stream, i);
+    }
+    consume(stream.toByteArray());
+    assertSamples();
+  }
+
+  private void consume(byte[] data) throws IOException, InterruptedException {
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data)
+        .setSimulatePartialReads(true).setSimulateIOErrors(true).setSimulateUnknownLength(true)
+        .build();
+    PositionHolder positionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      try {
+        result = extractor.read(input, positionHolder);
+      } catch (SimulatedIOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+  private void assertSamples() {
+    assertEquals(1, output.numberOfTracks);
+    FakeTrackOutput trackOutput = output.trackOutputs.get(ID3_TRACK_ID);
+    trackOutput.assertSampleCount(SAMPLE_COUNT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      trackOutput.assertSample(i, ID3_TAG, i * C.MICROS_PER_SECOND, C.SAMPLE_FLAG_SYNC, null);
+    }
+  }
+
+  private static void writeProgramTables(ByteArrayOutputStream stream) throws IOException {
+    stream.write(buildPacket(0, PAT_PAYLOAD));
+    stream.write(buildPacket(PMT_PID, PMT_PAYLOAD));
+  }
+
+  private static void writeId3Sample(ByteArrayOutputStream stream, int index) throws IOException {
+    long pts = (index + 1) * 90000L;
+    byte[] pesHeader = TestUtil.createByteArray(
+        0x00, 0x00, 0x01, 0xBD, // packet_start_code_prefix, stream_id = private_stream_1.
+        0x00, 8 + ID3_TAG.length, // PES_packet_length.
+        0x84, 0x80, 0x05, // data_alignment_indicator = 1, PTS_DTS_flags = '10'.
+        (int) (0x21 | ((pts >> 29) & 0x0E)),
+        (int) ((pts >> 22) & 0xFF),
+        (int) (((pts >> 14) & 0xFE) | 0x01),
+        (int) ((pts >> 7) & 0xFF),
+        (int) (((pts << 1) & 0xFE) | 0x01));
+    stream.write(buildPacket(ID3_PID, TestUtil.joinByteArrays(pesHeader, ID3_TAG)));
+  }
+
+  /**
+   * Builds a TS packet that starts a payload unit, padding the payload with stuffing bytes in the
+   * adaptation field.
+   */
+  private static byte[] buildPacket(int pid, byte[] payload) {
+    byte[] packet = new byte[TS_PACKET_SIZE];
+    int adaptationFieldSize = TS_PACKET_SIZE - 4 - payload.length;
+    packet[0] = 0x47;
+    packet[1] = (byte) (0x40 | (pid >> 8));
+    packet[2] = (byte) pid;
+    packet[3] = (byte) (adaptationFieldSize > 0 ? 0x30 : 0x10);
+    if (adaptationFieldSize > 0) {
+      packet[4] = (byte) (adaptationFieldSize - 1);
+      Arrays.fill(packet, 5, 4 + adaptationFieldSize, (byte) 0xFF);
+      if (adaptationFieldSize > 1) {
+        packet[5] = 0; // Adaptation field flags.
+      }
+    }
+    System.arraycopy(payload, 0, packet, 4 + adaptationFieldSize, payload.length);
+    return packet;
+  }
+
+}
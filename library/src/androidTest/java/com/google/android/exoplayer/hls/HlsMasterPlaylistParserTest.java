@@ -95,4 +95,23 @@ public class HlsMasterPlaylistParserTest extends TestCase {
     }
   }
 
+  public void testParseMasterPlaylistAttributeLists() throws IOException {
+    String playlistString = "#EXTM3U\n"
+        + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",LANGUAGE=\"en\",NAME=\"English\"\n"
+        + "#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=1000000, BANDWIDTH=1280000,"
+        + "CODECS=\"mp4a.40.2,avc1.66.30\",RESOLUTION=304x128,NAME=\"low\"\n"
+        + "http://example.com/low.m3u8\n";
+    HlsMasterPlaylist masterPlaylist = (HlsMasterPlaylist) new HlsPlaylistParser().parse(
+        "https://example.com/test.m3u8",
+        new ByteArrayInputStream(playlistString.getBytes(Charset.forName(C.UTF8_NAME))));
+    assertEquals("en", masterPlaylist.muxedAudioLanguage);
+    assertEquals(1, masterPlaylist.variants.size());
+    Variant variant = masterPlaylist.variants.get(0);
+    assertEquals(1280000, variant.format.bitrate);
+    assertEquals("mp4a.40.2,avc1.66.30", variant.format.codecs);
+    assertEquals(304, variant.format.width);
+    assertEquals(128, variant.format.height);
+    assertEquals("low", variant.format.id);
+  }
+
 }
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer.hls;
 
 import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.ParserException;
 
 import junit.framework.TestCase;
 
@@ -133,4 +134,126 @@ public class HlsMediaPlaylistParserTest extends TestCase {
     }
   }
 
+  public void testParseMediaPlaylistWithLongLinesAndCrLf() throws IOException {
+    // Lines longer than the parser's buffer, with Windows line endings and surrounding whitespace.
+    StringBuilder longPath = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      longPath.append((char) ('a' + (i % 26)));
+    }
+    StringBuilder builder = new StringBuilder("#EXTM3U\r\n#EXT-X-TARGETDURATION:10\r\n\r\n");
+    for (int i = 0; i < 3; i++) {
+      builder.append("  #EXTINF:9.97663,title \t\r\n")
+          .append("https://example.com/").append(longPath).append(i).append(".ts\r\n");
+    }
+    HlsMediaPlaylist playlist = parse(builder.append("#EXT-X-ENDLIST").toString(), null);
+    assertFalse(playlist.live);
+    assertEquals(10, playlist.targetDurationSecs);
+    assertEquals(3, playlist.segments.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(9.97663, playlist.segments.get(i).durationSecs);
+      assertEquals("https://example.com/" + longPath + i + ".ts", playlist.segments.get(i).url);
+    }
+  }
+
+  public void testParseMediaPlaylistWithInvalidDuration() throws IOException {
+    try {
+      parse("#EXTM3U\n#EXT-X-TARGETDURATION:10\n#EXTINF:1.2.3,\nseg.ts\n", null);
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    }
+  }
+
+  public void testParseWithPreviousPlaylistReusesUnchangedSegments() throws IOException {
+    HlsMediaPlaylist previousPlaylist = parse(buildLivePlaylist(0, 5, null), null);
+    HlsMediaPlaylist playlist = parse(buildLivePlaylist(0, 7, null), previousPlaylist);
+    assertEquals(7, playlist.segments.size());
+    for (int i = 0; i < 5; i++) {
+      assertSame(previousPlaylist.segments.get(i), playlist.segments.get(i));
+    }
+    assertSegmentsEqual(parse(buildLivePlaylist(0, 7, null), null), playlist);
+  }
+
+  public void testParseWithPreviousPlaylistSlidingWindow() throws IOException {
+    HlsMediaPlaylist previousPlaylist = parse(buildLivePlaylist(10, 6, null), null);
+    HlsMediaPlaylist playlist = parse(buildLivePlaylist(12, 6, null), previousPlaylist);
+    assertEquals(12, playlist.mediaSequence);
+    assertSegmentsEqual(parse(buildLivePlaylist(12, 6, null), null), playlist);
+  }
+
+  public void testParseWithUnrelatedPreviousPlaylist() throws IOException {
+    HlsMediaPlaylist previousPlaylist = parse(buildLivePlaylist(0, 5, null).replace("seg", "old"),
+        null);
+    HlsMediaPlaylist playlist = parse(buildLivePlaylist(0, 5, null), previousPlaylist);
+    assertSegmentsEqual(parse(buildLivePlaylist(0, 5, null), null), playlist);
+  }
+
+  public void testParseDeltaUpdate() throws IOException {
+    HlsMediaPlaylist previousPlaylist = parse(buildLivePlaylist(10, 6, null), null);
+    assertEquals(36000000, previousPlaylist.canSkipUntilUs);
+    HlsMediaPlaylist playlist = parse(buildLivePlaylist(11, 7, 4), previousPlaylist);
+    assertEquals(11, playlist.mediaSequence);
+    assertSegmentsEqual(parse(buildLivePlaylist(11, 7, null), null), playlist);
+  }
+
+  public void testParseDeltaUpdateWithoutPreviousSegmentsFails() throws IOException {
+    HlsMediaPlaylist previousPlaylist = parse(buildLivePlaylist(10, 2, null), null);
+    try {
+      parse(buildLivePlaylist(11, 7, 4), previousPlaylist);
+      fail();
+    } catch (ParserException e) {
+      // Expected.
+    }
+  }
+
+  private static HlsMediaPlaylist parse(String playlistString, HlsMediaPlaylist previousPlaylist)
+      throws IOException {
+    InputStream inputStream = new ByteArrayInputStream(
+        playlistString.getBytes(Charset.forName(C.UTF8_NAME)));
+    return (HlsMediaPlaylist) new HlsPlaylistParser().parse("https://example.com/test.m3u8",
+        inputStream, previousPlaylist);
+  }
+
+  /**
+   * Builds a live playlist with a discontinuity before every third segment. If
+   * {@code skippedSegmentCount} is not null, the playlist is a delta update in which the specified
+   * number of segments are skipped.
+   */
+  private static String buildLivePlaylist(int mediaSequence, int segmentCount,
+      Integer skippedSegmentCount) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("#EXTM3U\n")
+        .append("#EXT-X-TARGETDURATION:6\n")
+        .append("#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=36.0\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:").append(mediaSequence).append('\n')
+        .append("#EXT-X-DISCONTINUITY-SEQUENCE:").append(mediaSequence / 3).append('\n');
+    int firstSegment = mediaSequence;
+    if (skippedSegmentCount != null) {
+      builder.append("#EXT-X-SKIP:SKIPPED-SEGMENTS=").append(skippedSegmentCount).append('\n');
+      firstSegment += skippedSegmentCount;
+    }
+    for (int i = firstSegment; i < mediaSequence + segmentCount; i++) {
+      if (i % 3 == 0 && i != mediaSequence) {
+        builder.append("#EXT-X-DISCONTINUITY\n");
+      }
+      builder.append("#EXTINF:").append(5 + (i % 2)).append(".5,\n")
+          .append("seg").append(i).append(".ts\n");
+    }
+    return builder.toString();
+  }
+
+  private static void assertSegmentsEqual(HlsMediaPlaylist expected, HlsMediaPlaylist actual) {
+    assertEquals(expected.segments.size(), actual.segments.size());
+    for (int i = 0; i < expected.segments.size(); i++) {
+      HlsMediaPlaylist.Segment expectedSegment = expected.segments.get(i);
+      HlsMediaPlaylist.Segment actualSegment = actual.segments.get(i);
+      assertEquals(expectedSegment.url, actualSegment.url);
+      assertEquals(expectedSegment.durationSecs, actualSegment.durationSecs);
+      assertEquals(expectedSegment.discontinuitySequenceNumber,
+          actualSegment.discontinuitySequenceNumber);
+      assertEquals(expectedSegment.startTimeUs, actualSegment.startTimeUs);
+    }
+    assertEquals(expected.durationUs, actual.durationUs);
+  }
+
 }
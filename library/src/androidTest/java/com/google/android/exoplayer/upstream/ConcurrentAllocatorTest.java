@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link ConcurrentAllocator}.
+ */
+public class ConcurrentAllocatorTest extends TestCase {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  public void testReleasedAllocationIsReused() {
+    ConcurrentAllocator allocator = new ConcurrentAllocator(ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+    assertEquals(ALLOCATION_SIZE, allocator.getTotalBytesAllocated());
+    allocator.release(allocation);
+    assertEquals(0, allocator.getTotalBytesAllocated());
+    assertSame(allocation, allocator.allocate());
+    assertEquals(1, allocator.getPoolHitCount());
+    assertEquals(1, allocator.getPoolMissCount());
+    assertEquals(ALLOCATION_SIZE, allocator.getPeakFootprint());
+  }
+
+  public void testAllocationReleasedOnAnotherThreadIsReused() throws Exception {
+    final ConcurrentAllocator allocator = new ConcurrentAllocator(ALLOCATION_SIZE);
+    final Allocation allocation = allocator.allocate();
+    Thread releasingThread = new Thread() {
+      @Override
+      public void run() {
+        allocator.release(allocation);
+      }
+    };
+    releasingThread.start();
+    releasingThread.join();
+    assertSame(allocation, allocator.allocate());
+    assertEquals(1, allocator.getPoolHitCount());
+    assertEquals(1, allocator.getPoolMissCount());
+  }
+
+  public void testTrimDiscardsAllocationsReleasedOnAnotherThread() throws Exception {
+    final ConcurrentAllocator allocator = new ConcurrentAllocator(ALLOCATION_SIZE);
+    final Allocation allocation = allocator.allocate();
+    Thread releasingThread = new Thread() {
+      @Override
+      public void run() {
+        allocator.release(allocation);
+      }
+    };
+    releasingThread.start();
+    releasingThread.join();
+    allocator.trim(0);
+    assertNotSame(allocation, allocator.allocate());
+    assertEquals(0, allocator.getPoolHitCount());
+    assertEquals(2, allocator.getPoolMissCount());
+  }
+
+  public void testSlabAllocationsShareBackingArray() {
+    ConcurrentAllocator allocator = new ConcurrentAllocator(ALLOCATION_SIZE, 4);
+    Allocation[] allocations = new Allocation[4];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    for (int i = 0; i < allocations.length; i++) {
+      assertSame(allocations[0].data, allocations[i].data);
+      for (int j = 0; j < i; j++) {
+        assertTrue(allocations[i].translateOffset(0) != allocations[j].translateOffset(0));
+      }
+    }
+    assertEquals(3, allocator.getPoolHitCount());
+    assertEquals(1, allocator.getPoolMissCount());
+    assertEquals(4 * ALLOCATION_SIZE, allocator.getPeakFootprint());
+  }
+
+  public void testTrimDiscardsAvailableAllocations() {
+    ConcurrentAllocator allocator = new ConcurrentAllocator(ALLOCATION_SIZE);
+    Allocation[] allocations = new Allocation[4];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    for (Allocation allocation : allocations) {
+      allocator.release(allocation);
+    }
+    allocator.trim(ALLOCATION_SIZE);
+    allocator.allocate();
+    allocator.allocate();
+    assertEquals(1, allocator.getPoolHitCount());
+    assertEquals(5, allocator.getPoolMissCount());
+  }
+
+  public void testTrimOnlyFreesWholeSlabs() {
+    ConcurrentAllocator allocator = new ConcurrentAllocator(ALLOCATION_SIZE, 4);
+    Allocation[] allocations = new Allocation[8];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    assertEquals(8 * ALLOCATION_SIZE, allocator.getFootprint());
+    // Release all of the first slab, and one allocation of the second.
+    for (int i = 0; i < 5; i++) {
+      allocator.release(allocations[i]);
+    }
+    allocator.trim(0);
+    assertEquals(4 * ALLOCATION_SIZE, allocator.getFootprint());
+    assertSame(allocations[4], allocator.allocate());
+    // The pool is empty, so a new slab is needed.
+    Allocation allocation = allocator.allocate();
+    assertNotSame(allocations[0].data, allocation.data);
+    assertNotSame(allocations[4].data, allocation.data);
+    assertEquals(8 * ALLOCATION_SIZE, allocator.getFootprint());
+    assertEquals(8 * ALLOCATION_SIZE, allocator.getPeakFootprint());
+  }
+
+  public void testConcurrentAllocateAndRelease() throws Exception {
+    final int allocationCount = 10000;
+    final ConcurrentAllocator allocator = new ConcurrentAllocator(ALLOCATION_SIZE, 4);
+    final ArrayBlockingQueue<Allocation> queue = new ArrayBlockingQueue<>(allocationCount);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    // Allocate on one thread and release on another, as a loader and playback thread do.
+    Thread releasingThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < allocationCount; i++) {
+            Allocation allocation = queue.take();
+            assertEquals(i & 0xFF, allocation.data[allocation.translateOffset(0)] & 0xFF);
+            allocator.release(allocation);
+          }
+        } catch (Throwable e) {
+          error.set(e);
+        }
+      }
+    };
+    releasingThread.start();
+    for (int i = 0; i < allocationCount; i++) {
+      allocator.blockWhileTotalBytesAllocatedExceeds(8 * ALLOCATION_SIZE);
+      Allocation allocation = allocator.allocate();
+      allocation.data[allocation.translateOffset(0)] = (byte) i;
+      queue.put(allocation);
+    }
+    releasingThread.join();
+    assertNull(error.get());
+    assertEquals(0, allocator.getTotalBytesAllocated());
+    assertEquals(allocationCount, allocator.getPoolHitCount() + allocator.getPoolMissCount());
+    // New slabs are only needed when every released allocation is in use, so the footprint is
+    // bounded by the allocated size limit plus the rest of one slab.
+    assertTrue(allocator.getPeakFootprint() <= 12 * ALLOCATION_SIZE);
+  }
+
+}
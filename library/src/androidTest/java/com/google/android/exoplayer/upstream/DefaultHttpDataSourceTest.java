@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link DefaultHttpDataSource}, run against a local HTTP server.
+ */
+public final class DefaultHttpDataSourceTest extends TestCase {
+
+  private static final String USER_AGENT = "ExoPlayerTest";
+  private static final int BODY_LENGTH = 100000;
+
+  private LocalHttpServer server;
+  private FakeTimingListener listener;
+  private DefaultHttpDataSource dataSource;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new LocalHttpServer(BODY_LENGTH);
+    listener = new FakeTimingListener();
+    dataSource = new DefaultHttpDataSource(USER_AGENT, null, listener);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.close();
+  }
+
+  public void testReadFullResponse() throws IOException {
+    byte[] data = readFully(new DataSpec(server.getUri()));
+    assertTrue(Arrays.equals(LocalHttpServer.buildBody(BODY_LENGTH), data));
+  }
+
+  public void testTimingsReportedBeforeTransferEnd() throws IOException {
+    readFully(new DataSpec(server.getUri()));
+    assertEquals(1, listener.transferStartCount);
+    assertEquals(1, listener.transferTimingsCount);
+    assertEquals(1, listener.transferEndCount);
+    assertEquals(BODY_LENGTH, listener.bytesTransferred);
+    assertEquals(BODY_LENGTH, listener.lastTimingsBytesTransferred);
+    assertTrue(listener.lastConnectDurationMs >= 0);
+    assertTrue(listener.lastTimeToFirstByteMs >= listener.lastConnectDurationMs);
+    assertTrue(listener.lastTransferDurationMs >= 0);
+  }
+
+  public void testConnectionReusedAfterResponseConsumed() throws IOException {
+    readFully(new DataSpec(server.getUri()));
+    readFully(new DataSpec(server.getUri()));
+    readFully(new DataSpec(server.getUri(), 1000, 5000, null));
+    assertEquals(1, server.getAcceptedConnectionCount());
+    assertEquals(3, listener.transferTimingsCount);
+  }
+
+  public void testPartialRead() throws IOException {
+    dataSource.open(new DataSpec(server.getUri()));
+    assertEquals(10, dataSource.read(new byte[10], 0, 10));
+    dataSource.close();
+    assertEquals(1, listener.transferTimingsCount);
+    assertEquals(10, listener.lastTimingsBytesTransferred);
+    // The source should still be usable, whether or not the connection was reused.
+    readFully(new DataSpec(server.getUri()));
+    assertEquals(BODY_LENGTH, listener.lastTimingsBytesTransferred);
+  }
+
+  private byte[] readFully(DataSpec dataSpec) throws IOException {
+    long length = dataSource.open(dataSpec);
+    byte[] data = new byte[(int) length];
+    int position = 0;
+    try {
+      while (position < data.length) {
+        int read = dataSource.read(data, position, data.length - position);
+        assertTrue(read != C.RESULT_END_OF_INPUT);
+        position += read;
+      }
+      assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[1], 0, 1));
+    } finally {
+      dataSource.close();
+    }
+    return data;
+  }
+
+  private static final class FakeTimingListener implements TransferTimingListener {
+
+    public int transferStartCount;
+    public int transferTimingsCount;
+    public int transferEndCount;
+    public long bytesTransferred;
+
+    public long lastConnectDurationMs;
+    public long lastTimeToFirstByteMs;
+    public long lastTransferDurationMs;
+    public long lastTimingsBytesTransferred;
+
+    @Override
+    public void onTransferStart() {
+      transferStartCount++;
+    }
+
+    @Override
+    public void onBytesTransferred(int bytesTransferred) {
+      this.bytesTransferred += bytesTransferred;
+    }
+
+    @Override
+    public void onTransferTimings(long connectDurationMs, long timeToFirstByteMs,
+        long transferDurationMs, long bytesTransferred) {
+      assertEquals(transferTimingsCount, transferEndCount);
+      transferTimingsCount++;
+      lastConnectDurationMs = connectDurationMs;
+      lastTimeToFirstByteMs = timeToFirstByteMs;
+      lastTransferDurationMs = transferDurationMs;
+      lastTimingsBytesTransferred = bytesTransferred;
+    }
+
+    @Override
+    public void onTransferEnd() {
+      transferEndCount++;
+    }
+
+  }
+
+  /**
+   * A minimal HTTP/1.1 server that serves the same body for every request, honoring single byte
+   * ranges and keeping connections alive.
+   */
+  private static final class LocalHttpServer implements Runnable {
+
+    private final byte[] body;
+    private final ServerSocket serverSocket;
+    private final AtomicInteger acceptedConnectionCount;
+
+    public LocalHttpServer(int bodyLength) throws IOException {
+      body = buildBody(bodyLength);
+      serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+      acceptedConnectionCount = new AtomicInteger();
+      startDaemonThread(this);
+    }
+
+    public static byte[] buildBody(int length) {
+      byte[] body = new byte[length];
+      for (int i = 0; i < length; i++) {
+        body[i] = (byte) i;
+      }
+      return body;
+    }
+
+    public Uri getUri() {
+      return Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + "/media");
+    }
+
+    public int getAcceptedConnectionCount() {
+      return acceptedConnectionCount.get();
+    }
+
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Socket socket = serverSocket.accept();
+          acceptedConnectionCount.incrementAndGet();
+          startDaemonThread(new Runnable() {
+            @Override
+            public void run() {
+              serveConnection(socket);
+            }
+          });
+        }
+      } catch (IOException e) {
+        // The server was closed.
+      }
+    }
+
+    private void serveConnection(Socket socket) {
+      try {
+        InputStream inputStream = socket.getInputStream();
+        OutputStream outputStream = socket.getOutputStream();
+        String range;
+        while ((range = readRequest(inputStream)) != null) {
+          int start = 0;
+          int end = body.length - 1;
+          String statusLine = "HTTP/1.1 200 OK";
+          String extraHeaders = "";
+          if (range.length() > 0) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            if (bounds.length > 1) {
+              end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            statusLine = "HTTP/1.1 206 Partial Content";
+            extraHeaders = "Content-Range: bytes " + start + "-" + end + "/" + body.length + "\r\n";
+          }
+          String headers = statusLine + "\r\n" + extraHeaders
+              + "Content-Length: " + (end - start + 1) + "\r\n"
+              + "Content-Type: application/octet-stream\r\n\r\n";
+          outputStream.write(headers.getBytes("US-ASCII"));
+          outputStream.write(body, start, end - start + 1);
+          outputStream.flush();
+        }
+      } catch (IOException e) {
+        // The connection was closed by the client.
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Do nothing.
+        }
+      }
+    }
+
+    private static void startDaemonThread(Runnable runnable) {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    /**
+     * Reads a request's headers, returning the value of its Range header, an empty string if it
+     * does not have one, or null if the connection was closed.
+     */
+    private static String readRequest(InputStream inputStream) throws IOException {
+      String range = "";
+      boolean firstLine = true;
+      while (true) {
+        String line = readLine(inputStream);
+        if (line == null) {
+          return null;
+        } else if (line.isEmpty()) {
+          return firstLine ? null : range;
+        } else if (line.toLowerCase().startsWith("range:")) {
+          range = line.substring("range:".length()).trim();
+        }
+        firstLine = false;
+      }
+    }
+
+    private static String readLine(InputStream inputStream) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int b;
+      while ((b = inputStream.read()) != '\n') {
+        if (b == -1) {
+          return null;
+        } else if (b != '\r') {
+          line.append((char) b);
+        }
+      }
+      return line.toString();
+    }
+
+  }
+
+}
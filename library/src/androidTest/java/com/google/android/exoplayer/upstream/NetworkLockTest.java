@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unit tests for {@link NetworkLock}.
+ */
+public final class NetworkLockTest extends TestCase {
+
+  private static final int HIGH_PRIORITY = NetworkLock.STREAMING_PRIORITY;
+  private static final int LOW_PRIORITY = NetworkLock.DOWNLOAD_PRIORITY;
+
+  private NetworkLock networkLock;
+
+  @Override
+  protected void setUp() {
+    networkLock = new NetworkLock();
+  }
+
+  public void testPreemptedTaskPausesUntilHigherPriorityRemoved() throws InterruptedException {
+    networkLock.add(HIGH_PRIORITY);
+    networkLock.add(LOW_PRIORITY);
+    final AtomicBoolean proceeded = new AtomicBoolean();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          networkLock.proceedWithinBudget(LOW_PRIORITY);
+          proceeded.set(true);
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+      }
+    };
+    thread.start();
+    thread.join(200);
+    assertFalse(proceeded.get());
+
+    networkLock.remove(HIGH_PRIORITY);
+    thread.join(1000);
+    assertTrue(proceeded.get());
+    assertTrue(networkLock.getWaitTimeMs(LOW_PRIORITY) >= 150);
+    // The high priority task was never blocked.
+    networkLock.proceedWithinBudget(HIGH_PRIORITY);
+    assertEquals(0, networkLock.getWaitTimeMs(HIGH_PRIORITY));
+  }
+
+  public void testPausedTaskCanBeInterrupted() throws InterruptedException {
+    networkLock.add(HIGH_PRIORITY);
+    final AtomicBoolean interrupted = new AtomicBoolean();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          networkLock.proceedWithinBudget(LOW_PRIORITY);
+        } catch (InterruptedException e) {
+          interrupted.set(true);
+        }
+      }
+    };
+    thread.start();
+    thread.interrupt();
+    thread.join(1000);
+    assertTrue(interrupted.get());
+  }
+
+  public void testRateLimit() throws InterruptedException {
+    networkLock.setMaxBytesPerSecond(LOW_PRIORITY, 100000);
+    long startTimeMs = System.currentTimeMillis();
+    transfer(LOW_PRIORITY, 6, 10000);
+    // The first transfer proceeds immediately, and each subsequent one after 100ms.
+    assertTrue(System.currentTimeMillis() - startTimeMs >= 450);
+    assertEquals(60000, networkLock.getBytesTransferred(LOW_PRIORITY));
+  }
+
+  public void testPreemptedBudget() throws InterruptedException {
+    networkLock.add(HIGH_PRIORITY);
+    networkLock.setPreemptedMaxBytesPerSecond(LOW_PRIORITY, 100000);
+    long startTimeMs = System.currentTimeMillis();
+    transfer(LOW_PRIORITY, 3, 10000);
+    long elapsedTimeMs = System.currentTimeMillis() - startTimeMs;
+    assertTrue(elapsedTimeMs >= 150 && elapsedTimeMs < 1000);
+
+    // Once the higher priority task is removed, the budget no longer applies.
+    networkLock.remove(HIGH_PRIORITY);
+    startTimeMs = System.currentTimeMillis();
+    networkLock.proceedWithinBudget(LOW_PRIORITY);
+    networkLock.onBytesTransferred(LOW_PRIORITY, 10000);
+    networkLock.proceedWithinBudget(LOW_PRIORITY);
+    assertTrue(System.currentTimeMillis() - startTimeMs < 50);
+  }
+
+  public void testCountersPerPriority() throws InterruptedException {
+    networkLock.onBytesTransferred(HIGH_PRIORITY, 1000);
+    networkLock.onBytesTransferred(LOW_PRIORITY, 10);
+    assertEquals(0, networkLock.getBytesPerSecond(HIGH_PRIORITY));
+    Thread.sleep(1000);
+    networkLock.onBytesTransferred(HIGH_PRIORITY, 1000);
+    assertEquals(2000, networkLock.getBytesTransferred(HIGH_PRIORITY));
+    assertEquals(10, networkLock.getBytesTransferred(LOW_PRIORITY));
+    long bytesPerSecond = networkLock.getBytesPerSecond(HIGH_PRIORITY);
+    assertTrue(bytesPerSecond > 1000 && bytesPerSecond <= 2000);
+  }
+
+  private void transfer(int priority, int count, int bytes) throws InterruptedException {
+    for (int i = 0; i < count; i++) {
+      networkLock.proceedWithinBudget(priority);
+      networkLock.onBytesTransferred(priority, bytes);
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.TestUtil;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for {@link ParallelDataSource}.
+ */
+public class ParallelDataSourceTest extends TestCase {
+
+  private static final int MIN_PART_LENGTH = 100;
+
+  private ExecutorService executorService;
+
+  @Override
+  protected void setUp() throws Exception {
+    executorService = Executors.newFixedThreadPool(2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executorService.shutdown();
+  }
+
+  public void testSplitRequestReturnsDataInOrder() throws IOException {
+    byte[] data = TestUtil.buildTestData(1000);
+    ParallelDataSource dataSource = buildDataSource(data, 4);
+    assertEquals(950, dataSource.open(new DataSpec(null, 25, 950, null)));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 25, 975), readToEnd(dataSource)));
+    dataSource.close();
+
+    // The upstream sources can be reused once the source has been closed.
+    assertEquals(500, dataSource.open(new DataSpec(null, 0, 500, null)));
+    assertTrue(Arrays.equals(Arrays.copyOf(data, 500), readToEnd(dataSource)));
+    dataSource.close();
+  }
+
+  public void testUnboundedRequestIsPassedThrough() throws IOException {
+    byte[] data = TestUtil.buildTestData(1000);
+    ParallelDataSource dataSource = buildDataSource(data, 4);
+    assertEquals(900, dataSource.open(new DataSpec(null, 100, C.LENGTH_UNBOUNDED, null)));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, 1000), readToEnd(dataSource)));
+    dataSource.close();
+  }
+
+  public void testPartErrorIsThrownWhenPartIsReached() throws IOException {
+    final byte[] data = TestUtil.buildTestData(1000);
+    DataSource failingSource = new DataSource() {
+      @Override
+      public long open(DataSpec dataSpec) throws IOException {
+        throw new IOException("Failed");
+      }
+
+      @Override
+      public void close() {
+        // Do nothing.
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int readLength) {
+        throw new IllegalStateException();
+      }
+    };
+    ParallelDataSource dataSource = new ParallelDataSource(
+        new DataSource[] {new ByteArrayDataSource(data), failingSource}, executorService,
+        MIN_PART_LENGTH);
+    dataSource.open(new DataSpec(null, 0, 1000, null));
+    byte[] buffer = new byte[1000];
+    int bytesRead = 0;
+    try {
+      while (true) {
+        bytesRead += dataSource.read(buffer, bytesRead, buffer.length - bytesRead);
+      }
+    } catch (IOException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+    assertEquals(500, bytesRead);
+  }
+
+  private ParallelDataSource buildDataSource(byte[] data, int upstreamCount) {
+    DataSource[] upstreams = new DataSource[upstreamCount];
+    for (int i = 0; i < upstreamCount; i++) {
+      upstreams[i] = new ByteArrayDataSource(data);
+    }
+    return new ParallelDataSource(upstreams, executorService, MIN_PART_LENGTH);
+  }
+
+  private static byte[] readToEnd(DataSource dataSource) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[33];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      outputStream.write(buffer, 0, bytesRead);
+    }
+    return outputStream.toByteArray();
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.TestUtil;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Unit tests for {@link PrefetchDataSource}.
+ */
+public class PrefetchDataSourceTest extends TestCase {
+
+  private static final DataSpec DATA_SPEC_1 = new DataSpec(null, 0, 500, null);
+  private static final DataSpec DATA_SPEC_2 = new DataSpec(null, 500, 500, null);
+  private static final DataSpec UNBOUNDED_DATA_SPEC =
+      new DataSpec(null, 500, C.LENGTH_UNBOUNDED, null);
+
+  private byte[] data;
+  private RecordingDataSource upstream;
+  private RecordingDataSource prefetchUpstream;
+
+  @Override
+  protected void setUp() throws Exception {
+    data = TestUtil.buildTestData(1000);
+    upstream = new RecordingDataSource(data);
+    prefetchUpstream = new RecordingDataSource(data);
+  }
+
+  public void testPrefetchedRequestIsReadFromMemory() throws Exception {
+    PrefetchDataSource dataSource = new PrefetchDataSource(upstream, prefetchUpstream);
+    dataSource.prefetch(Collections.singletonList(DATA_SPEC_1));
+    prefetchUpstream.openLatch.await();
+
+    assertEquals(500, dataSource.open(new DataSpec(null, 0, 500, null)));
+    assertTrue(Arrays.equals(Arrays.copyOf(data, 500), readToEnd(dataSource)));
+    dataSource.close();
+    assertEquals(0, upstream.openedDataSpecs.size());
+    dataSource.release();
+  }
+
+  public void testTruncatedPrefetchContinuesFromUpstream() throws Exception {
+    PrefetchDataSource dataSource = new PrefetchDataSource(upstream, prefetchUpstream, 1, 100);
+    dataSource.prefetch(Collections.singletonList(DATA_SPEC_2));
+    prefetchUpstream.openLatch.await();
+
+    assertEquals(500, dataSource.open(new DataSpec(null, 500, 500, null)));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 500, 1000), readToEnd(dataSource)));
+    dataSource.close();
+    assertEquals(1, upstream.openedDataSpecs.size());
+    assertEquals(600, upstream.openedDataSpecs.get(0).position);
+    assertEquals(400, upstream.openedDataSpecs.get(0).length);
+    dataSource.release();
+  }
+
+  public void testRequestNoLongerPrefetchedIsReadFromUpstream() throws Exception {
+    PrefetchDataSource dataSource = new PrefetchDataSource(upstream, prefetchUpstream);
+    dataSource.prefetch(Collections.singletonList(DATA_SPEC_1));
+    dataSource.prefetch(Collections.singletonList(DATA_SPEC_2));
+
+    assertEquals(500, dataSource.open(new DataSpec(null, 0, 500, null)));
+    assertTrue(Arrays.equals(Arrays.copyOf(data, 500), readToEnd(dataSource)));
+    dataSource.close();
+    assertEquals(1, upstream.openedDataSpecs.size());
+    dataSource.release();
+  }
+
+  public void testUnboundedRequestBlocksUntilPrefetchResolvesLength() throws Exception {
+    PrefetchDataSource dataSource = new PrefetchDataSource(upstream, prefetchUpstream);
+    final CountDownLatch openResumeLatch = new CountDownLatch(1);
+    prefetchUpstream.openResumeLatch = openResumeLatch;
+    dataSource.prefetch(Collections.singletonList(UNBOUNDED_DATA_SPEC));
+    // The prefetch has started, but hasn't resolved the length yet.
+    prefetchUpstream.openLatch.await();
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+        openResumeLatch.countDown();
+      }
+    }.start();
+
+    assertEquals(500, dataSource.open(new DataSpec(null, 500, C.LENGTH_UNBOUNDED, null)));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 500, 1000), readToEnd(dataSource)));
+    dataSource.close();
+    assertEquals(0, upstream.openedDataSpecs.size());
+    dataSource.release();
+  }
+
+  public void testUnboundedRequestFallsBackToUpstreamIfPrefetchFailsToOpen() throws Exception {
+    // The prefetch upstream doesn't have the data, so opening the request fails.
+    prefetchUpstream = new RecordingDataSource(new byte[100]);
+    PrefetchDataSource dataSource = new PrefetchDataSource(upstream, prefetchUpstream);
+    dataSource.prefetch(Collections.singletonList(UNBOUNDED_DATA_SPEC));
+    prefetchUpstream.openLatch.await();
+
+    assertEquals(500, dataSource.open(new DataSpec(null, 500, C.LENGTH_UNBOUNDED, null)));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 500, 1000), readToEnd(dataSource)));
+    dataSource.close();
+    assertEquals(1, upstream.openedDataSpecs.size());
+    dataSource.release();
+  }
+
+  private static byte[] readToEnd(DataSource dataSource) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[33];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      outputStream.write(buffer, 0, bytesRead);
+    }
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * A {@link ByteArrayDataSource} that records the requests with which it's opened. If
+   * {@link #openResumeLatch} is set, opening blocks until it's counted down.
+   */
+  private static final class RecordingDataSource implements DataSource {
+
+    public final ArrayList<DataSpec> openedDataSpecs;
+    public final CountDownLatch openLatch;
+
+    public volatile CountDownLatch openResumeLatch;
+
+    private final ByteArrayDataSource dataSource;
+
+    public RecordingDataSource(byte[] data) {
+      openedDataSpecs = new ArrayList<>();
+      openLatch = new CountDownLatch(1);
+      dataSource = new ByteArrayDataSource(data);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      openedDataSpecs.add(dataSpec);
+      openLatch.countDown();
+      if (openResumeLatch != null) {
+        try {
+          openResumeLatch.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+      return dataSource.open(dataSpec);
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataSource.close();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      return dataSource.read(buffer, offset, readLength);
+    }
+
+  }
+
+}
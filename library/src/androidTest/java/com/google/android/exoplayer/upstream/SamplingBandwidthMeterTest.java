@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Clock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link SamplingBandwidthMeter} and the {@link BandwidthStatistic}
+ * implementations.
+ */
+public final class SamplingBandwidthMeterTest extends TestCase {
+
+  private static final int SAMPLE_INTERVAL_MS = 500;
+  // 1 Mbit/s, in bytes per sample interval.
+  private static final int BYTES_PER_SAMPLE_AT_1_MBPS = 62500;
+
+  private FakeClock clock;
+
+  @Override
+  protected void setUp() throws Exception {
+    clock = new FakeClock();
+  }
+
+  public void testEstimateUpdatedDuringTransfer() {
+    SamplingBandwidthMeter meter = buildMeter(new EwmaBandwidthStatistic(), false);
+    meter.onTransferStart();
+    clock.advance(SAMPLE_INTERVAL_MS - 1);
+    meter.onBytesTransferred(BYTES_PER_SAMPLE_AT_1_MBPS);
+    assertEquals(BandwidthMeter.NO_ESTIMATE, meter.getBitrateEstimate());
+    clock.advance(1);
+    meter.onBytesTransferred(0);
+    // The first sample is used directly, with no bias towards an initial value.
+    assertEquals(1000000, meter.getBitrateEstimate());
+    assertEquals(BandwidthMeter.NO_ESTIMATE, meter.getBitrateStandardDeviation());
+    meter.onTransferEnd();
+  }
+
+  public void testAggregateEstimate() {
+    SamplingBandwidthMeter meter = buildMeter(new EwmaBandwidthStatistic(), false);
+    transferConcurrently(meter, 2);
+    assertEquals(2000000, meter.getBitrateEstimate());
+  }
+
+  public void testPerConnectionEstimate() {
+    SamplingBandwidthMeter meter = buildMeter(new EwmaBandwidthStatistic(), true);
+    transferConcurrently(meter, 2);
+    assertEquals(1000000, meter.getBitrateEstimate());
+  }
+
+  public void testSlidingPercentileStatistic() {
+    SamplingBandwidthMeter meter = buildMeter(new SlidingPercentileBandwidthStatistic(), false);
+    transferConcurrently(meter, 1);
+    assertEquals(1000000, meter.getBitrateEstimate());
+    assertEquals(0, meter.getBitrateStandardDeviation());
+  }
+
+  public void testEwmaStatisticTracksChange() {
+    EwmaBandwidthStatistic statistic = new EwmaBandwidthStatistic(1000);
+    statistic.addSample(BYTES_PER_SAMPLE_AT_1_MBPS, SAMPLE_INTERVAL_MS);
+    statistic.addSample(BYTES_PER_SAMPLE_AT_1_MBPS, SAMPLE_INTERVAL_MS);
+    assertEquals(1000000, statistic.getBitrateEstimate());
+    assertEquals(0, statistic.getBitrateStandardDeviation());
+    // After one half life at 3 Mbit/s, the weight of the earlier samples should have halved, so
+    // the recent samples are weighted twice as heavily.
+    statistic.addSample(3 * BYTES_PER_SAMPLE_AT_1_MBPS, SAMPLE_INTERVAL_MS);
+    statistic.addSample(3 * BYTES_PER_SAMPLE_AT_1_MBPS, SAMPLE_INTERVAL_MS);
+    assertEquals((1000000 + 2 * 3000000) / 3, statistic.getBitrateEstimate());
+    assertTrue(statistic.getBitrateStandardDeviation() > 0);
+    statistic.reset();
+    assertEquals(BandwidthMeter.NO_ESTIMATE, statistic.getBitrateEstimate());
+  }
+
+  public void testSlidingPercentileStatisticStandardDeviation() {
+    SlidingPercentileBandwidthStatistic statistic = new SlidingPercentileBandwidthStatistic();
+    assertEquals(BandwidthMeter.NO_ESTIMATE, statistic.getBitrateStandardDeviation());
+    for (int i = 0; i < 10; i++) {
+      statistic.addSample((i % 2 + 1) * BYTES_PER_SAMPLE_AT_1_MBPS, SAMPLE_INTERVAL_MS);
+    }
+    assertTrue(statistic.getBitrateStandardDeviation() > 0);
+  }
+
+  private SamplingBandwidthMeter buildMeter(BandwidthStatistic statistic, boolean perConnection) {
+    return new SamplingBandwidthMeter(null, null, clock, statistic, SAMPLE_INTERVAL_MS,
+        perConnection);
+  }
+
+  /**
+   * Transfers data on the given number of concurrent connections at 1 Mbit/s each, for several
+   * sample intervals.
+   */
+  private void transferConcurrently(SamplingBandwidthMeter meter, int connectionCount) {
+    for (int i = 0; i < connectionCount; i++) {
+      meter.onTransferStart();
+    }
+    for (int sample = 0; sample < 4; sample++) {
+      for (int i = 0; i < connectionCount; i++) {
+        clock.advance(SAMPLE_INTERVAL_MS / connectionCount);
+        meter.onBytesTransferred(BYTES_PER_SAMPLE_AT_1_MBPS);
+      }
+    }
+    for (int i = 0; i < connectionCount; i++) {
+      meter.onTransferEnd();
+    }
+  }
+
+  private static final class FakeClock implements Clock {
+
+    private long timeMs;
+
+    public void advance(long durationMs) {
+      timeMs += durationMs;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+  }
+
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for {@link CacheDownloader}.
+ */
+public class CacheDownloaderTest extends TestCase {
+
+  private static final int REQUEST_COUNT = 10;
+  private static final int REQUEST_LENGTH = 50000;
+
+  private File cacheDir;
+  private SimpleCache cache;
+  private HashMap<String, byte[]> content;
+  private ExecutorService executorService;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("CacheDownloaderTest", null);
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdirs());
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    content = new HashMap<>();
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      byte[] data = new byte[REQUEST_LENGTH];
+      Arrays.fill(data, (byte) i);
+      content.put(getUri(i).toString(), data);
+    }
+    executorService = Executors.newFixedThreadPool(3);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executorService.shutdown();
+    File[] files = cacheDir.listFiles();
+    for (File file : files) {
+      file.delete();
+    }
+    cacheDir.delete();
+  }
+
+  public void testDownloadBoundedRequests() throws Exception {
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>();
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      dataSpecs.add(new DataSpec(getUri(i), 0, REQUEST_LENGTH, null));
+    }
+    CacheDownloader downloader = new CacheDownloader(cache, buildUpstreams(4), executorService,
+        dataSpecs);
+    downloader.load();
+
+    assertEquals(REQUEST_COUNT, downloader.getCompletedRequestCount());
+    assertEquals(REQUEST_COUNT * REQUEST_LENGTH, downloader.getBytesDownloaded());
+    assertCached(dataSpecs);
+  }
+
+  public void testDownloadUnboundedRequests() throws Exception {
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>();
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      dataSpecs.add(new DataSpec(getUri(i), 0, C.LENGTH_UNBOUNDED, "key" + i));
+    }
+    CacheDownloader downloader = new CacheDownloader(cache, buildUpstreams(1), null, dataSpecs);
+    downloader.load();
+
+    assertEquals(REQUEST_COUNT * REQUEST_LENGTH, downloader.getBytesDownloaded());
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      assertTrue(cache.isCached("key" + i, 0, REQUEST_LENGTH));
+    }
+  }
+
+  public void testUnboundedRequestIsReadFromCache() throws Exception {
+    List<DataSpec> dataSpecs = Arrays.asList(
+        new DataSpec(getUri(0), 0, C.LENGTH_UNBOUNDED, null));
+    CacheDownloader downloader = new CacheDownloader(cache, buildUpstreams(1), null, dataSpecs);
+    downloader.load();
+    assertEquals(REQUEST_LENGTH, cache.getContentLength(getUri(0).toString()));
+
+    // Read the data back from the cache, with an upstream that fails any request.
+    CacheDataSource cacheDataSource = new CacheDataSource(cache, new FakeUpstream(null), true,
+        false);
+    assertEquals(REQUEST_LENGTH - 100,
+        cacheDataSource.open(new DataSpec(getUri(0), 100, C.LENGTH_UNBOUNDED, null)));
+    byte[] data = new byte[REQUEST_LENGTH - 100];
+    int position = 0;
+    int bytesRead;
+    while ((bytesRead = cacheDataSource.read(data, position, data.length - position))
+        != C.RESULT_END_OF_INPUT) {
+      position += bytesRead;
+    }
+    cacheDataSource.close();
+    assertEquals(data.length, position);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(content.get(getUri(0).toString()), 100,
+        REQUEST_LENGTH), data));
+
+    // Downloading again doesn't request anything, since the content length is known.
+    downloader = new CacheDownloader(cache, new DataSource[] {new FakeUpstream(null)}, null,
+        dataSpecs);
+    downloader.load();
+    assertEquals(1, downloader.getCompletedRequestCount());
+  }
+
+  public void testRequestOfUnknownLengthIsSkipped() throws Exception {
+    List<DataSpec> dataSpecs = Arrays.asList(
+        new DataSpec(getUri(0), 0, C.LENGTH_UNBOUNDED, null),
+        new DataSpec(getUri(1), 0, REQUEST_LENGTH, null));
+    FakeUpstream upstream = new FakeUpstream(content);
+    upstream.reportLength = false;
+    CacheDownloader downloader = new CacheDownloader(cache, new DataSource[] {upstream}, null,
+        dataSpecs);
+    downloader.load();
+
+    assertEquals(1, downloader.getCompletedRequestCount());
+    assertEquals(1, downloader.getSkippedRequestCount());
+    assertNull(cache.getCachedSpans(getUri(0).toString()));
+    assertTrue(cache.isCached(getUri(1).toString(), 0, REQUEST_LENGTH));
+  }
+
+  public void testDownloadResumesPartiallyCachedRequests() throws Exception {
+    // Cache the middle of the first request, and the end of the second.
+    writeToCache(getUri(0), 10000, 20000);
+    writeToCache(getUri(1), 40000, 10000);
+    List<DataSpec> dataSpecs = Arrays.asList(
+        new DataSpec(getUri(0), 0, REQUEST_LENGTH, null),
+        new DataSpec(getUri(1), 0, C.LENGTH_UNBOUNDED, null));
+    CacheDownloader downloader = new CacheDownloader(cache, buildUpstreams(2), executorService,
+        dataSpecs);
+    downloader.load();
+
+    assertEquals(2 * REQUEST_LENGTH - 30000, downloader.getBytesDownloaded());
+    assertCached(dataSpecs);
+
+    // Loading again should not download anything.
+    downloader.load();
+    assertEquals(2, downloader.getCompletedRequestCount());
+    assertEquals(0, downloader.getBytesDownloaded());
+  }
+
+  public void testCanceledDownloadIsResumed() throws Exception {
+    List<DataSpec> dataSpecs = Arrays.asList(new DataSpec(getUri(0), 0, REQUEST_LENGTH, null));
+    FakeUpstream upstream = new FakeUpstream(content);
+    final CacheDownloader downloader = new CacheDownloader(cache, new DataSource[] {upstream},
+        null, dataSpecs);
+    upstream.readListener = new Runnable() {
+      @Override
+      public void run() {
+        downloader.cancelLoad();
+      }
+    };
+    downloader.load();
+    assertEquals(0, downloader.getCompletedRequestCount());
+    long bytesDownloaded = downloader.getBytesDownloaded();
+    assertTrue(bytesDownloaded > 0 && bytesDownloaded < REQUEST_LENGTH);
+
+    upstream.readListener = null;
+    CacheDownloader resumedDownloader = new CacheDownloader(cache, new DataSource[] {upstream},
+        null, dataSpecs);
+    resumedDownloader.load();
+    assertEquals(REQUEST_LENGTH - bytesDownloaded, resumedDownloader.getBytesDownloaded());
+    assertCached(dataSpecs);
+  }
+
+  public void testFailedLoadWaitsForWorkersToStop() throws Exception {
+    List<DataSpec> dataSpecs = Arrays.asList(new DataSpec(getUri(0), 0, REQUEST_LENGTH, null),
+        new DataSpec(getUri(1), 0, REQUEST_LENGTH, null));
+    final BlockingUpstream blockingUpstream = new BlockingUpstream();
+    // Fails once the worker is blocked in the other upstream.
+    DataSource failingUpstream = new FakeUpstream(null) {
+      @Override
+      public long open(DataSpec dataSpec) throws IOException {
+        try {
+          blockingUpstream.opened.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+        return super.open(dataSpec);
+      }
+    };
+    CacheDownloader downloader = new CacheDownloader(cache,
+        new DataSource[] {failingUpstream, blockingUpstream}, executorService, dataSpecs);
+    try {
+      downloader.load();
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertTrue(blockingUpstream.stopped);
+  }
+
+  public void testBandwidthLimit() throws Exception {
+    List<DataSpec> dataSpecs = Arrays.asList(new DataSpec(getUri(0), 0, REQUEST_LENGTH, null),
+        new DataSpec(getUri(1), 0, REQUEST_LENGTH, null));
+    CacheDownloader downloader = new CacheDownloader(cache, buildUpstreams(2), executorService,
+        dataSpecs, 4 * REQUEST_LENGTH, null, null);
+    long startTimeMs = System.currentTimeMillis();
+    downloader.load();
+    // Downloading two requests at four requests per second should take at least half a second.
+    assertTrue(System.currentTimeMillis() - startTimeMs >= 450);
+    assertCached(dataSpecs);
+  }
+
+  private void assertCached(List<DataSpec> dataSpecs) throws IOException {
+    for (DataSpec dataSpec : dataSpecs) {
+      String key = CacheDataSource.getCacheKey(dataSpec);
+      long length = dataSpec.length == C.LENGTH_UNBOUNDED ? REQUEST_LENGTH : dataSpec.length;
+      assertTrue(cache.isCached(key, dataSpec.position, length));
+      // Read the data back from the cache, with an upstream that fails any request.
+      CacheDataSource cacheDataSource = new CacheDataSource(cache, new FakeUpstream(null), true,
+          false);
+      byte[] data = new byte[(int) length];
+      cacheDataSource.open(new DataSpec(dataSpec.uri, dataSpec.position, length, dataSpec.key));
+      int position = 0;
+      while (position < length) {
+        position += cacheDataSource.read(data, position, data.length - position);
+      }
+      cacheDataSource.close();
+      assertTrue(Arrays.equals(content.get(dataSpec.uri.toString()), data));
+    }
+  }
+
+  private void writeToCache(Uri uri, long position, int length) throws IOException {
+    String key = uri.toString();
+    CacheSpan holeSpan = cache.startReadWriteNonBlocking(key, position);
+    CacheDataSink sink = new CacheDataSink(cache, Long.MAX_VALUE);
+    sink.open(new DataSpec(uri, position, length, key));
+    sink.write(content.get(key), (int) position, length);
+    sink.close();
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  private DataSource[] buildUpstreams(int count) {
+    DataSource[] upstreams = new DataSource[count];
+    for (int i = 0; i < count; i++) {
+      upstreams[i] = new FakeUpstream(content);
+    }
+    return upstreams;
+  }
+
+  private static Uri getUri(int index) {
+    return Uri.parse("http://example.com/segment" + index);
+  }
+
+  /**
+   * A {@link DataSource} that serves in-memory content by URI, reporting the length of every
+   * request unless {@link #reportLength} is false.
+   */
+  private static class FakeUpstream implements DataSource {
+
+    private static final int MAX_READ_LENGTH = 1000;
+
+    private final HashMap<String, byte[]> content;
+
+    public Runnable readListener;
+    public boolean reportLength;
+
+    private byte[] data;
+    private int position;
+    private int endPosition;
+
+    public FakeUpstream(HashMap<String, byte[]> content) {
+      this.content = content;
+      reportLength = true;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      data = content == null ? null : content.get(dataSpec.uri.toString());
+      if (data == null || dataSpec.position > data.length) {
+        throw new IOException("Unsatisfiable request");
+      }
+      position = (int) dataSpec.position;
+      endPosition = dataSpec.length == C.LENGTH_UNBOUNDED ? data.length
+          : (int) (dataSpec.position + dataSpec.length);
+      return reportLength || dataSpec.length != C.LENGTH_UNBOUNDED ? endPosition - position
+          : C.LENGTH_UNBOUNDED;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (readListener != null && position > 0) {
+        readListener.run();
+      }
+      if (position == endPosition) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = Math.min(Math.min(readLength, MAX_READ_LENGTH), endPosition - position);
+      System.arraycopy(data, position, buffer, offset, bytesRead);
+      position += bytesRead;
+      return bytesRead;
+    }
+
+    @Override
+    public void close() {
+      data = null;
+    }
+
+  }
+
+  /**
+   * A {@link DataSource} whose {@link #open(DataSpec)} blocks until the opening thread is
+   * interrupted, and then takes a while to stop.
+   */
+  private static final class BlockingUpstream implements DataSource {
+
+    public final CountDownLatch opened;
+
+    public volatile boolean stopped;
+
+    public BlockingUpstream() {
+      opened = new CountDownLatch(1);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      opened.countDown();
+      try {
+        Thread.sleep(Long.MAX_VALUE);
+      } catch (InterruptedException e) {
+        // Stop, but not straight away.
+      }
+      try {
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        // Do nothing.
+      }
+      stopped = true;
+      throw new InterruptedIOException();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      // Do nothing.
+    }
+
+  }
+
+}
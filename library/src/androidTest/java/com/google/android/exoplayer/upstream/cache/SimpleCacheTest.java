@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link SimpleCache}.
+ */
+public class SimpleCacheTest extends TestCase {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+  // Record length, type, key id and checksum.
+  private static final int WRITE_ENDED_RECORD_LENGTH = 4 + 1 + 4 + 4;
+
+  private File cacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("SimpleCacheTest", null);
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdirs());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] files = cacheDir.listFiles();
+    for (File file : files) {
+      file.delete();
+    }
+    cacheDir.delete();
+  }
+
+  public void testCommittedSpansAreRestoredFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    addSpan(cache, KEY_1, 15, 5);
+    addSpan(cache, KEY_2, 0, 10);
+    assertTrue(new File(cacheDir, CachedContentIndex.FILE_NAME).exists());
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(30, restoredCache.getCacheSpace());
+    assertEquals(2, restoredCache.getKeys().size());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 20));
+    assertTrue(restoredCache.isCached(KEY_2, 0, 10));
+  }
+
+  public void testRemovedSpansAreNotRestoredFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    addSpan(cache, KEY_2, 0, 10);
+    cache.removeSpan(cache.getCachedSpans(KEY_1).first());
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(10, restoredCache.getCacheSpace());
+    assertNull(restoredCache.getCachedSpans(KEY_1));
+    assertTrue(restoredCache.isCached(KEY_2, 0, 10));
+  }
+
+  public void testTouchedSpansAreRestoredFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    // Ensure the touch results in a different last access timestamp.
+    Thread.sleep(10);
+    CacheSpan touchedSpan = cache.startReadWrite(KEY_1, 0);
+    assertTrue(touchedSpan.isCached);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan restoredSpan = restoredCache.getCachedSpans(KEY_1).first();
+    assertEquals(touchedSpan.lastAccessTimestamp, restoredSpan.lastAccessTimestamp);
+    assertEquals(touchedSpan.file, restoredSpan.file);
+    assertTrue(restoredSpan.file.exists());
+  }
+
+  public void testContentLengthIsRestoredFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    cache.setContentLength(KEY_1, 20);
+    // The length isn't recorded for a key without cached spans.
+    assertEquals(C.LENGTH_UNBOUNDED, cache.getContentLength(KEY_1));
+    addSpan(cache, KEY_1, 0, 15);
+    addSpan(cache, KEY_2, 0, 10);
+    cache.setContentLength(KEY_1, 20);
+    cache.setContentLength(KEY_2, 10);
+    cache.removeSpan(cache.getCachedSpans(KEY_2).first());
+    assertEquals(C.LENGTH_UNBOUNDED, cache.getContentLength(KEY_2));
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(20, restoredCache.getContentLength(KEY_1));
+    assertEquals(C.LENGTH_UNBOUNDED, restoredCache.getContentLength(KEY_2));
+  }
+
+  public void testUncommittedFilesAreDeletedWhenIndexIsLoaded() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    // Simulate the process being killed after a file is written, but before it's committed.
+    cache.startReadWrite(KEY_2, 0);
+    File uncommittedFile = cache.startFile(KEY_2, 0, 10);
+    writeFile(uncommittedFile, 10);
+    File unrecognizedFile = new File(cacheDir, "unrecognized");
+    writeFile(unrecognizedFile, 10);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(15, restoredCache.getCacheSpace());
+    assertNull(restoredCache.getCachedSpans(KEY_2));
+    assertFalse(uncommittedFile.exists());
+    assertFalse(unrecognizedFile.exists());
+    assertTrue(restoredCache.getCachedSpans(KEY_1).first().file.exists());
+    assertTrue(new File(cacheDir, CachedContentIndex.FILE_NAME).exists());
+  }
+
+  public void testDirectoryIsNotListedWhenNoWriteWasInProgress() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    // A file that the cache would delete if it listed the directory.
+    File unrecognizedFile = new File(cacheDir, "unrecognized");
+    writeFile(unrecognizedFile, 10);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(15, restoredCache.getCacheSpace());
+    assertTrue(unrecognizedFile.exists());
+  }
+
+  public void testSpansWithMissingFilesAreRemovedWhenAccessed() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    addSpan(cache, KEY_2, 0, 10);
+    assertTrue(cache.getCachedSpans(KEY_2).first().file.delete());
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan span = restoredCache.startReadWrite(KEY_2, 0);
+    assertFalse(span.isCached);
+    restoredCache.releaseHoleSpan(span);
+    assertEquals(15, restoredCache.getCacheSpace());
+    assertNull(restoredCache.getCachedSpans(KEY_2));
+
+    // The removal is recorded in the index.
+    SimpleCache restoredAgainCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(15, restoredAgainCache.getCacheSpace());
+    assertEquals(1, restoredAgainCache.getKeys().size());
+  }
+
+  public void testCorruptIndexFallsBackToDirectoryScan() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    addSpan(cache, KEY_2, 0, 10);
+    // Flip a byte in the middle of the snapshot, invalidating its checksum.
+    RandomAccessFile snapshotFile =
+        new RandomAccessFile(new File(cacheDir, CachedContentIndex.FILE_NAME), "rw");
+    snapshotFile.seek(snapshotFile.length() / 2);
+    int value = snapshotFile.read();
+    snapshotFile.seek(snapshotFile.length() / 2);
+    snapshotFile.write(value ^ 0xFF);
+    snapshotFile.close();
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(25, restoredCache.getCacheSpace());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 15));
+    assertTrue(restoredCache.isCached(KEY_2, 0, 10));
+  }
+
+  public void testTruncatedJournalKeepsCompleteRecords() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addSpan(cache, KEY_1, 0, 15);
+    addSpan(cache, KEY_2, 0, 10);
+    // Simulate a torn write of the record of the last span's addition, by dropping the record of
+    // the end of its write and the last byte of the record before it.
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+    journal.setLength(journal.length() - WRITE_ENDED_RECORD_LENGTH - 1);
+    journal.close();
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    NavigableSet<CacheSpan> spans = restoredCache.getCachedSpans(KEY_1);
+    assertEquals(1, spans.size());
+    assertEquals(15, restoredCache.getCacheSpace());
+
+    // The journal is rewritten, so subsequent records are restored.
+    addSpan(restoredCache, KEY_2, 0, 10);
+    SimpleCache restoredAgainCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(25, restoredAgainCache.getCacheSpace());
+  }
+
+  public void testConcurrentAccessKeepsConsistentView() throws Exception {
+    final int threadCount = 8;
+    final int keysPerThread = 4;
+    final int operationsPerThread = 200;
+    final int spanLength = 16;
+    final long maxBytes = threadCount * keysPerThread * spanLength * 2;
+    final SimpleCache cache =
+        new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(maxBytes));
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      final int threadIndex = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random(threadIndex);
+          try {
+            for (int j = 0; j < operationsPerThread; j++) {
+              // Half of the operations use keys shared between all threads.
+              String key = random.nextBoolean() ? "shared" + random.nextInt(keysPerThread)
+                  : "thread" + threadIndex + "." + random.nextInt(keysPerThread);
+              long position = random.nextInt(8) * spanLength;
+              CacheSpan span = cache.startReadWrite(key, position);
+              if (span.isCached) {
+                if (random.nextInt(4) == 0) {
+                  cache.removeSpan(span);
+                }
+              } else {
+                File file = cache.startFile(key, position, spanLength);
+                writeFile(file, spanLength);
+                cache.commitFile(file);
+                cache.releaseHoleSpan(span);
+              }
+            }
+          } catch (Throwable e) {
+            error.set(e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(error.get());
+
+    long cachedLength = 0;
+    for (String key : cache.getKeys()) {
+      for (CacheSpan span : cache.getCachedSpans(key)) {
+        assertTrue(span.file.exists());
+        assertEquals(span.length, span.file.length());
+        cachedLength += span.length;
+      }
+    }
+    assertEquals(cachedLength, cache.getCacheSpace());
+    assertTrue(cache.getCacheSpace() <= maxBytes);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(cache.getKeys(), restoredCache.getKeys());
+    assertEquals(cache.getCacheSpace(), restoredCache.getCacheSpace());
+  }
+
+  public void testBlockedWriterProceedsWhenLockIsReleased() throws Exception {
+    final SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 0);
+    assertNull(cache.startReadWriteNonBlocking(KEY_1, 0));
+    final AtomicReference<CacheSpan> readSpan = new AtomicReference<>();
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        try {
+          readSpan.set(cache.startReadWrite(KEY_1, 0));
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+      }
+    };
+    reader.start();
+    // Operations on other keys are not blocked by the lock held on KEY_1.
+    addSpan(cache, KEY_2, 0, 10);
+    File file = cache.startFile(KEY_1, 0, 15);
+    writeFile(file, 15);
+    cache.commitFile(file);
+    cache.releaseHoleSpan(holeSpan);
+    reader.join();
+    assertTrue(readSpan.get().isCached);
+  }
+
+  private static void addSpan(SimpleCache cache, String key, long position, int length)
+      throws IOException, InterruptedException {
+    CacheSpan holeSpan = cache.startReadWrite(key, position);
+    assertFalse(holeSpan.isCached);
+    File file = cache.startFile(key, position, length);
+    writeFile(file, length);
+    cache.commitFile(file);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  private static void writeFile(File file, int length) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(new byte[length]);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+}
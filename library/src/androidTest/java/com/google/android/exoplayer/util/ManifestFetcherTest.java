@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.UriLoadable;
+import com.google.android.exoplayer.util.ManifestFetcher.ManifestLoadable;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for {@link ManifestFetcher}.
+ */
+public class ManifestFetcherTest extends TestCase {
+
+  private static final String URL = "http://example.com/manifest";
+
+  private FakeHttpDataSource dataSource;
+  private CountingParser parser;
+
+  @Override
+  public void setUp() {
+    dataSource = new FakeHttpDataSource();
+    parser = new CountingParser();
+  }
+
+  public void testNotModifiedResponseSkipsParsing() throws Exception {
+    dataSource.setResponse("manifest1", "\"1\"");
+    ManifestLoadable<String> loadable = load(null);
+    assertFalse(loadable.unchanged);
+    assertNull(dataSource.lastIfNoneMatch);
+
+    ManifestLoadable<String> refreshLoadable = load(loadable);
+    assertEquals("\"1\"", dataSource.lastIfNoneMatch);
+    assertTrue(refreshLoadable.unchanged);
+    assertEquals(0, refreshLoadable.bytesLoaded);
+    assertEquals(0, refreshLoadable.parseDurationMs);
+    assertSame(loadable.getResult(), refreshLoadable.getResult());
+    assertEquals(1, parser.parseCount);
+    // Conditional request headers are only set for the duration of the load.
+    assertTrue(dataSource.requestProperties.isEmpty());
+  }
+
+  public void testIdenticalDataSkipsParsing() throws Exception {
+    dataSource.setResponse("manifest1", null);
+    ManifestLoadable<String> loadable = load(null);
+    ManifestLoadable<String> refreshLoadable = load(loadable);
+    assertNull(dataSource.lastIfNoneMatch);
+    assertTrue(refreshLoadable.unchanged);
+    assertEquals(9, refreshLoadable.bytesLoaded);
+    assertSame(loadable.getResult(), refreshLoadable.getResult());
+    assertEquals(1, parser.parseCount);
+  }
+
+  public void testChangedDataIsParsed() throws Exception {
+    dataSource.setResponse("manifest1", "\"1\"");
+    ManifestLoadable<String> loadable = load(null);
+    dataSource.setResponse("manifest22", "\"2\"");
+    ManifestLoadable<String> refreshLoadable = load(loadable);
+    assertEquals("\"1\"", dataSource.lastIfNoneMatch);
+    assertFalse(refreshLoadable.unchanged);
+    assertEquals(10, refreshLoadable.bytesLoaded);
+    assertEquals("manifest22", refreshLoadable.getResult());
+    assertEquals(2, parser.parseCount);
+
+    // The next refresh uses the new entity tag.
+    ManifestLoadable<String> nextRefreshLoadable = load(refreshLoadable);
+    assertEquals("\"2\"", dataSource.lastIfNoneMatch);
+    assertTrue(nextRefreshLoadable.unchanged);
+    assertEquals("manifest22", nextRefreshLoadable.getResult());
+  }
+
+  private ManifestLoadable<String> load(ManifestLoadable<String> previousLoadable)
+      throws Exception {
+    ManifestLoadable<String> loadable =
+        new ManifestLoadable<>(URL, dataSource, parser, previousLoadable);
+    loadable.load();
+    return loadable;
+  }
+
+  private static final class CountingParser implements UriLoadable.Parser<String> {
+
+    public int parseCount;
+
+    @Override
+    public String parse(String connectionUrl, InputStream inputStream) throws IOException {
+      parseCount++;
+      return new String(Util.toByteArray(inputStream), Charset.forName(C.UTF8_NAME));
+    }
+
+  }
+
+  /**
+   * A fake {@link HttpDataSource} that responds with 304 (Not Modified) if the request's
+   * If-None-Match header matches the entity tag of the response.
+   */
+  private static final class FakeHttpDataSource implements HttpDataSource {
+
+    public final Map<String, String> requestProperties;
+
+    public String lastIfNoneMatch;
+
+    private byte[] data;
+    private String entityTag;
+    private int position;
+
+    public FakeHttpDataSource() {
+      requestProperties = new HashMap<>();
+    }
+
+    public void setResponse(String data, String entityTag) {
+      this.data = data.getBytes(Charset.forName(C.UTF8_NAME));
+      this.entityTag = entityTag;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws HttpDataSourceException {
+      lastIfNoneMatch = requestProperties.get("If-None-Match");
+      if (lastIfNoneMatch != null && lastIfNoneMatch.equals(entityTag)) {
+        throw new InvalidResponseCodeException(304, getResponseHeaders(), dataSpec);
+      }
+      position = 0;
+      return data.length;
+    }
+
+    @Override
+    public void close() {
+      // Do nothing.
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (position == data.length) {
+        return -1;
+      }
+      int bytesRead = Math.min(readLength, data.length - position);
+      System.arraycopy(data, position, buffer, offset, bytesRead);
+      position += bytesRead;
+      return bytesRead;
+    }
+
+    @Override
+    public String getUri() {
+      return URL;
+    }
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+      requestProperties.put(name, value);
+    }
+
+    @Override
+    public void clearRequestProperty(String name) {
+      requestProperties.remove(name);
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+      requestProperties.clear();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      Map<String, List<String>> headers = new HashMap<>();
+      if (entityTag != null) {
+        headers.put("etag", Collections.singletonList(entityTag));
+      }
+      return headers;
+    }
+
+  }
+
+}
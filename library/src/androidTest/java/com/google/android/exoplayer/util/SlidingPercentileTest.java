@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link SlidingPercentile}.
+ */
+public final class SlidingPercentileTest extends TestCase {
+
+  private static final float[] PERCENTILES = new float[] {0.01f, 0.25f, 0.5f, 0.75f, 0.99f, 1f};
+
+  public void testEmpty() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(100);
+    assertTrue(Float.isNaN(slidingPercentile.getPercentile(0.5f)));
+  }
+
+  public void testSingleSample() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(100);
+    slidingPercentile.addSample(10, 5f);
+    for (float percentile : PERCENTILES) {
+      assertEquals(5f, slidingPercentile.getPercentile(percentile));
+    }
+  }
+
+  public void testOldestSampleReducedInWeight() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(10);
+    slidingPercentile.addSample(6, 1f);
+    slidingPercentile.addSample(6, 2f);
+    // The first sample now has a weight of 4, and the second a weight of 6.
+    assertEquals(1f, slidingPercentile.getPercentile(0.4f));
+    assertEquals(2f, slidingPercentile.getPercentile(0.41f));
+    slidingPercentile.addSample(4, 3f);
+    // The first sample has been removed.
+    assertEquals(2f, slidingPercentile.getPercentile(0.6f));
+    assertEquals(3f, slidingPercentile.getPercentile(0.61f));
+  }
+
+  public void testReset() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(100);
+    slidingPercentile.addSample(10, 5f);
+    slidingPercentile.reset();
+    assertTrue(Float.isNaN(slidingPercentile.getPercentile(0.5f)));
+    slidingPercentile.addSample(10, 7f);
+    assertEquals(7f, slidingPercentile.getPercentile(0.5f));
+  }
+
+  public void testMatchesReferenceImplementation() {
+    Random random = new Random(0);
+    for (int maxWeight : new int[] {1, 50, 2000}) {
+      SlidingPercentile slidingPercentile = new SlidingPercentile(maxWeight);
+      ReferenceSlidingPercentile reference = new ReferenceSlidingPercentile(maxWeight);
+      for (int i = 0; i < 5000; i++) {
+        int weight = random.nextInt(50);
+        // Use a small range of values so that duplicates are common.
+        float value = random.nextInt(100);
+        slidingPercentile.addSample(weight, value);
+        reference.addSample(weight, value);
+        for (float percentile : PERCENTILES) {
+          assertEquals(reference.getPercentile(percentile),
+              slidingPercentile.getPercentile(percentile));
+        }
+      }
+    }
+  }
+
+  /**
+   * A straightforward implementation that sorts the samples for every query.
+   */
+  private static final class ReferenceSlidingPercentile {
+
+    private final int maxWeight;
+    private final ArrayList<float[]> samples;
+
+    private int totalWeight;
+
+    public ReferenceSlidingPercentile(int maxWeight) {
+      this.maxWeight = maxWeight;
+      samples = new ArrayList<>();
+    }
+
+    public void addSample(int weight, float value) {
+      samples.add(new float[] {weight, value});
+      totalWeight += weight;
+      while (totalWeight > maxWeight) {
+        int excessWeight = totalWeight - maxWeight;
+        float[] oldestSample = samples.get(0);
+        if (oldestSample[0] <= excessWeight) {
+          totalWeight -= (int) oldestSample[0];
+          samples.remove(0);
+        } else {
+          oldestSample[0] -= excessWeight;
+          totalWeight -= excessWeight;
+        }
+      }
+    }
+
+    public float getPercentile(float percentile) {
+      ArrayList<float[]> sortedSamples = new ArrayList<>(samples);
+      Collections.sort(sortedSamples, new Comparator<float[]>() {
+        @Override
+        public int compare(float[] a, float[] b) {
+          return Float.compare(a[1], b[1]);
+        }
+      });
+      float desiredWeight = percentile * totalWeight;
+      int accumulatedWeight = 0;
+      for (float[] sample : sortedSamples) {
+        accumulatedWeight += (int) sample[0];
+        if (accumulatedWeight >= desiredWeight) {
+          return sample[1];
+        }
+      }
+      return sortedSamples.isEmpty() ? Float.NaN : sortedSamples.get(sortedSamples.size() - 1)[1];
+    }
+
+  }
+
+}
@@ -26,7 +26,9 @@ public final class CodecCounters {
 
   public int codecInitCount;
   public int codecReleaseCount;
+  public int codecReuseCount;
   public int inputBufferCount;
+  public long inputBufferByteCount;
   public int outputFormatChangedCount;
   public int outputBuffersChangedCount;
   public int renderedOutputBufferCount;
@@ -49,7 +51,9 @@ public final class CodecCounters {
     StringBuilder builder = new StringBuilder();
     builder.append("cic:").append(codecInitCount);
     builder.append(" crc:").append(codecReleaseCount);
+    builder.append(" cuc:").append(codecReuseCount);
     builder.append(" ibc:").append(inputBufferCount);
+    builder.append(" ibb:").append(inputBufferByteCount);
     builder.append(" ofc:").append(outputFormatChangedCount);
     builder.append(" obc:").append(outputBuffersChangedCount);
     builder.append(" ren:").append(renderedOutputBufferCount);
@@ -36,6 +36,11 @@ public final class DecoderInfo {
 
   /**
    * {@link CodecCapabilities} for this decoder.
+   * <p>
+   * If the information was restored from a file by
+   * {@link MediaCodecUtil#warmDecoderInfoCache(java.io.File, String...)}, only
+   * {@link CodecCapabilities#profileLevels} and {@link CodecCapabilities#colorFormats} are
+   * populated.
    */
   public final CodecCapabilities capabilities;
 
@@ -57,6 +62,17 @@ public final class DecoderInfo {
     this.adaptive = isAdaptive(capabilities);
   }
 
+  /**
+   * @param name The name of the decoder.
+   * @param capabilities {@link CodecCapabilities} of the decoder.
+   * @param adaptive Whether the decoder supports seamless resolution switches.
+   */
+  /* package */ DecoderInfo(String name, CodecCapabilities capabilities, boolean adaptive) {
+    this.name = name;
+    this.capabilities = capabilities;
+    this.adaptive = adaptive;
+  }
+
   private static boolean isAdaptive(CodecCapabilities capabilities) {
     return capabilities != null && Util.SDK_INT >= 19 && isAdaptiveV19(capabilities);
   }
@@ -16,12 +16,16 @@
 package com.google.android.exoplayer;
 
 import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.NetworkLock;
+import com.google.android.exoplayer.util.Assertions;
 
 import android.os.Handler;
+import android.os.SystemClock;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -38,6 +42,20 @@ import java.util.List;
  * This implementation of {@link LoadControl} integrates with {@link NetworkLock}, by registering
  * itself as a task with priority {@link NetworkLock#STREAMING_PRIORITY} during loading periods,
  * and unregistering itself during draining periods.
+ * <p>
+ * By default the thresholds are fixed. The control can instead adapt them during playback, by
+ * scaling the duration watermarks and the target buffer size up to a maximum factor:
+ * <ul>
+ * <li>The watermarks are scaled up in proportion to the coefficient of variation of the bandwidth
+ *     estimate (the ratio of its standard deviation to its mean), since a less predictable
+ *     network requires more buffered media to avoid rebuffering.</li>
+ * <li>They are scaled up further for each time that a loader's buffer has been exhausted during
+ *     playback in the recent past.</li>
+ * <li>The target buffer size is capped to a fraction of the application's memory class.</li>
+ * <li>Optionally, the watermarks start at a small fast-start value, and grow as media is played
+ *     until they reach their target values. This avoids buffering media far ahead of the playback
+ *     position before it's known whether playback will continue.</li>
+ * </ul>
  */
 public final class DefaultLoadControl implements LoadControl {
 
@@ -53,6 +71,28 @@ public final class DefaultLoadControl implements LoadControl {
      */
     void onLoadingChanged(boolean loading);
 
+    /**
+     * Invoked periodically, and when the control transitions between the loading and draining
+     * states, to report the state of the buffer.
+     *
+     * @param bufferedDurationMs The duration of media buffered ahead of the playback position by
+     *     the loader that is furthest behind, or -1 if no loader has a next load position.
+     * @param bufferedBytes The number of bytes allocated from the {@link Allocator}.
+     * @param lowWatermarkMs The current low watermark.
+     * @param highWatermarkMs The current high watermark.
+     * @param targetBufferSize The current target buffer size, in bytes.
+     */
+    void onBufferStateSampled(long bufferedDurationMs, int bufferedBytes, long lowWatermarkMs,
+        long highWatermarkMs, int targetBufferSize);
+
+    /**
+     * Invoked when a loader's buffer is exhausted during playback.
+     *
+     * @param recentStarvationCount The number of times that a buffer has been exhausted within the
+     *     recent past, including this time.
+     */
+    void onBufferStarved(int recentStarvationCount);
+
   }
 
   public static final int DEFAULT_LOW_WATERMARK_MS = 15000;
@@ -60,6 +100,45 @@ public final class DefaultLoadControl implements LoadControl {
   public static final float DEFAULT_LOW_BUFFER_LOAD = 0.2f;
   public static final float DEFAULT_HIGH_BUFFER_LOAD = 0.8f;
 
+  /**
+   * The default fast-start watermark used in adaptive mode.
+   */
+  public static final int DEFAULT_FAST_START_WATERMARK_MS = 5000;
+  /**
+   * The default maximum factor by which thresholds are scaled in adaptive mode.
+   */
+  public static final float DEFAULT_MAX_SCALE = 2f;
+
+  /**
+   * The interval at which {@link EventListener#onBufferStateSampled} is invoked.
+   */
+  private static final int BUFFER_STATE_SAMPLE_INTERVAL_MS = 1000;
+  /**
+   * The fraction of the memory class that may be used for buffering in adaptive mode.
+   */
+  private static final float MAX_MEMORY_CLASS_FRACTION = 0.25f;
+  /**
+   * The amount by which the scale factor is increased for each recent starvation.
+   */
+  private static final float STARVATION_SCALE_INCREMENT = 0.25f;
+  /**
+   * The period for which starvations count as recent.
+   */
+  private static final long STARVATION_WINDOW_MS = 5 * 60 * 1000;
+  /**
+   * Starvations of different loaders within this period are counted as one.
+   */
+  private static final long STARVATION_DEDUPLICATION_MS = 2000;
+  /**
+   * A loader is considered to be starved if it has less than this duration buffered.
+   */
+  private static final long STARVATION_THRESHOLD_US = 200000;
+  /**
+   * The maximum increase in the playback position between updates that's counted as playback.
+   * Larger increases are assumed to be seeks.
+   */
+  private static final long MAX_PLAYBACK_INCREMENT_US = 1000000;
+
   private static final int ABOVE_HIGH_WATERMARK = 0;
   private static final int BETWEEN_WATERMARKS = 1;
   private static final int BELOW_LOW_WATERMARK = 2;
@@ -70,12 +149,23 @@ public final class DefaultLoadControl implements LoadControl {
   private final Handler eventHandler;
   private final EventListener eventListener;
 
-  private final long lowWatermarkUs;
-  private final long highWatermarkUs;
+  private final long targetLowWatermarkUs;
+  private final long targetHighWatermarkUs;
   private final float lowBufferLoad;
   private final float highBufferLoad;
+  private final BandwidthMeter bandwidthMeter;
+  private final int maxBufferSize;
+  private final long fastStartWatermarkUs;
+  private final float maxScale;
+  private final LinkedList<Long> starvationTimesMs;
 
+  private int requestedBufferSize;
   private int targetBufferSize;
+  private long lowWatermarkUs;
+  private long highWatermarkUs;
+  private long lastPlaybackPositionUs;
+  private long playedDurationUs;
+  private long lastBufferStateSampleTimeMs;
   private long maxLoadStartPositionUs;
   private int bufferState;
   private boolean fillingBuffers;
@@ -124,29 +214,97 @@ public final class DefaultLoadControl implements LoadControl {
    */
   public DefaultLoadControl(Allocator allocator, Handler eventHandler, EventListener eventListener,
       int lowWatermarkMs, int highWatermarkMs, float lowBufferLoad, float highBufferLoad) {
+    this(allocator, eventHandler, eventListener, lowWatermarkMs, highWatermarkMs, lowBufferLoad,
+        highBufferLoad, null, 0, 0, 1);
+  }
+
+  /**
+   * Constructs a new instance in adaptive mode, using the {@code DEFAULT_*} constants defined in
+   * this class.
+   *
+   * @param allocator The {@link Allocator} used by the loader.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param bandwidthMeter A meter whose estimate's standard deviation is used to scale the
+   *     thresholds. May be null.
+   * @param memoryClassMb The memory class of the application in megabytes, as returned by
+   *     {@link android.app.ActivityManager#getMemoryClass()}, or 0 if the target buffer size should
+   *     not be capped.
+   */
+  public DefaultLoadControl(Allocator allocator, Handler eventHandler, EventListener eventListener,
+      BandwidthMeter bandwidthMeter, int memoryClassMb) {
+    this(allocator, eventHandler, eventListener, DEFAULT_LOW_WATERMARK_MS,
+        DEFAULT_HIGH_WATERMARK_MS, DEFAULT_LOW_BUFFER_LOAD, DEFAULT_HIGH_BUFFER_LOAD,
+        bandwidthMeter, memoryClassMb, DEFAULT_FAST_START_WATERMARK_MS, DEFAULT_MAX_SCALE);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param allocator The {@link Allocator} used by the loader.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param lowWatermarkMs The minimum duration of media that can be buffered for the control to
+   *     be in the draining state, before scaling. If less media is buffered, then the control will
+   *     transition to the filling state.
+   * @param highWatermarkMs The minimum duration of media that can be buffered for the control to
+   *     transition from filling to draining, before scaling.
+   * @param lowBufferLoad The minimum fraction of the buffer that must be utilized for the control
+   *     to be in the draining state. If the utilization is lower, then the control will transition
+   *     to the filling state.
+   * @param highBufferLoad The minimum fraction of the buffer that must be utilized for the control
+   *     to transition from the loading state to the draining state.
+   * @param bandwidthMeter A meter whose estimate's standard deviation is used to scale the
+   *     thresholds. May be null.
+   * @param memoryClassMb The memory class of the application in megabytes, as returned by
+   *     {@link android.app.ActivityManager#getMemoryClass()}, or 0 if the target buffer size should
+   *     not be capped.
+   * @param fastStartWatermarkMs The high watermark when playback starts, which grows with the
+   *     duration of media played until it reaches the scaled high watermark. 0 to disable.
+   * @param maxScale The maximum factor by which the watermarks and target buffer size are scaled.
+   *     1 to disable scaling.
+   */
+  public DefaultLoadControl(Allocator allocator, Handler eventHandler, EventListener eventListener,
+      int lowWatermarkMs, int highWatermarkMs, float lowBufferLoad, float highBufferLoad,
+      BandwidthMeter bandwidthMeter, int memoryClassMb, int fastStartWatermarkMs,
+      float maxScale) {
+    Assertions.checkArgument(maxScale >= 1);
     this.allocator = allocator;
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
     this.loaders = new ArrayList<>();
     this.loaderStates = new HashMap<>();
-    this.lowWatermarkUs = lowWatermarkMs * 1000L;
-    this.highWatermarkUs = highWatermarkMs * 1000L;
+    this.targetLowWatermarkUs = lowWatermarkMs * 1000L;
+    this.targetHighWatermarkUs = highWatermarkMs * 1000L;
     this.lowBufferLoad = lowBufferLoad;
     this.highBufferLoad = highBufferLoad;
+    this.bandwidthMeter = bandwidthMeter;
+    this.maxBufferSize = memoryClassMb <= 0 ? Integer.MAX_VALUE
+        : (int) (memoryClassMb * 1024L * 1024L * MAX_MEMORY_CLASS_FRACTION);
+    this.fastStartWatermarkUs = fastStartWatermarkMs * 1000L;
+    this.maxScale = maxScale;
+    this.starvationTimesMs = new LinkedList<>();
+    lastPlaybackPositionUs = -1;
+    lastBufferStateSampleTimeMs = -1;
+    updateTargets(SystemClock.elapsedRealtime());
   }
 
   @Override
   public void register(Object loader, int bufferSizeContribution) {
     loaders.add(loader);
     loaderStates.put(loader, new LoaderState(bufferSizeContribution));
-    targetBufferSize += bufferSizeContribution;
+    requestedBufferSize += bufferSizeContribution;
+    updateTargets(SystemClock.elapsedRealtime());
   }
 
   @Override
   public void unregister(Object loader) {
     loaders.remove(loader);
     LoaderState state = loaderStates.remove(loader);
-    targetBufferSize -= state.bufferSizeContribution;
+    requestedBufferSize -= state.bufferSizeContribution;
+    updateTargets(SystemClock.elapsedRealtime());
     updateControlState();
   }
 
@@ -163,9 +321,13 @@ public final class DefaultLoadControl implements LoadControl {
   @Override
   public boolean update(Object loader, long playbackPositionUs, long nextLoadPositionUs,
       boolean loading) {
+    long nowMs = SystemClock.elapsedRealtime();
+    LoaderState loaderState = loaderStates.get(loader);
+    updatePlayback(nowMs, loaderState, playbackPositionUs, nextLoadPositionUs);
+    boolean targetsChanged = updateTargets(nowMs);
+
     // Update the loader state.
     int loaderBufferState = getLoaderBufferState(playbackPositionUs, nextLoadPositionUs);
-    LoaderState loaderState = loaderStates.get(loader);
     boolean loaderStateChanged = loaderState.bufferState != loaderBufferState
         || loaderState.nextLoadPositionUs != nextLoadPositionUs || loaderState.loading != loading;
     if (loaderStateChanged) {
@@ -182,15 +344,121 @@ public final class DefaultLoadControl implements LoadControl {
       this.bufferState = bufferState;
     }
 
-    // If either of the individual states have changed, update the shared control state.
-    if (loaderStateChanged || bufferStateChanged) {
+    // If any of the individual states or the targets have changed, update the shared control
+    // state.
+    if (loaderStateChanged || bufferStateChanged || targetsChanged) {
       updateControlState();
     }
 
+    if (lastBufferStateSampleTimeMs == -1
+        || nowMs - lastBufferStateSampleTimeMs >= BUFFER_STATE_SAMPLE_INTERVAL_MS) {
+      sampleBufferState(nowMs, playbackPositionUs);
+    }
+
     return currentBufferSize < targetBufferSize && nextLoadPositionUs != -1
         && nextLoadPositionUs <= maxLoadStartPositionUs;
   }
 
+  /**
+   * Returns the current low watermark, in microseconds.
+   */
+  /* package */ long getLowWatermarkUs() {
+    return lowWatermarkUs;
+  }
+
+  /**
+   * Returns the current high watermark, in microseconds.
+   */
+  /* package */ long getHighWatermarkUs() {
+    return highWatermarkUs;
+  }
+
+  /**
+   * Returns the current target buffer size, in bytes.
+   */
+  /* package */ int getTargetBufferSize() {
+    return targetBufferSize;
+  }
+
+  /**
+   * Tracks the duration of media played, and detects loaders whose buffers are exhausted during
+   * playback.
+   */
+  private void updatePlayback(long nowMs, LoaderState loaderState, long playbackPositionUs,
+      long nextLoadPositionUs) {
+    if (lastPlaybackPositionUs != -1 && playbackPositionUs > lastPlaybackPositionUs
+        && playbackPositionUs - lastPlaybackPositionUs <= MAX_PLAYBACK_INCREMENT_US) {
+      playedDurationUs += playbackPositionUs - lastPlaybackPositionUs;
+    }
+    lastPlaybackPositionUs = playbackPositionUs;
+
+    long bufferedDurationUs = nextLoadPositionUs == -1 ? -1
+        : nextLoadPositionUs - playbackPositionUs;
+    // A buffer is exhausted during playback if it drains gradually below the threshold whilst the
+    // playback position advances. A sudden drop is the result of a seek.
+    if (bufferedDurationUs != -1 && bufferedDurationUs < STARVATION_THRESHOLD_US
+        && loaderState.bufferedDurationUs >= STARVATION_THRESHOLD_US
+        && loaderState.bufferedDurationUs - bufferedDurationUs <= MAX_PLAYBACK_INCREMENT_US
+        && playbackPositionUs > loaderState.playbackPositionUs) {
+      onStarved(nowMs);
+    }
+    loaderState.bufferedDurationUs = bufferedDurationUs;
+    loaderState.playbackPositionUs = playbackPositionUs;
+  }
+
+  private void onStarved(long nowMs) {
+    if (!starvationTimesMs.isEmpty()
+        && nowMs - starvationTimesMs.getLast() < STARVATION_DEDUPLICATION_MS) {
+      return;
+    }
+    starvationTimesMs.add(nowMs);
+    removeExpiredStarvations(nowMs);
+    notifyBufferStarved(starvationTimesMs.size());
+  }
+
+  private void removeExpiredStarvations(long nowMs) {
+    while (!starvationTimesMs.isEmpty()
+        && nowMs - starvationTimesMs.getFirst() > STARVATION_WINDOW_MS) {
+      starvationTimesMs.removeFirst();
+    }
+  }
+
+  /**
+   * Updates the watermarks and target buffer size.
+   *
+   * @return Whether the watermarks or target buffer size changed.
+   */
+  private boolean updateTargets(long nowMs) {
+    float scale = 1;
+    if (maxScale > 1) {
+      if (bandwidthMeter != null) {
+        long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+        long bitrateStandardDeviation = bandwidthMeter.getBitrateStandardDeviation();
+        if (bitrateEstimate > 0 && bitrateStandardDeviation != BandwidthMeter.NO_ESTIMATE) {
+          scale += (float) bitrateStandardDeviation / bitrateEstimate;
+        }
+      }
+      removeExpiredStarvations(nowMs);
+      scale += STARVATION_SCALE_INCREMENT * starvationTimesMs.size();
+      scale = Math.min(scale, maxScale);
+    }
+    long highWatermarkUs = (long) (targetHighWatermarkUs * scale);
+    long lowWatermarkUs = (long) (targetLowWatermarkUs * scale);
+    if (fastStartWatermarkUs > 0 && fastStartWatermarkUs + playedDurationUs < highWatermarkUs) {
+      // Grow the watermarks from the fast-start watermark, preserving their ratio.
+      long grownHighWatermarkUs = fastStartWatermarkUs + playedDurationUs;
+      lowWatermarkUs = lowWatermarkUs * grownHighWatermarkUs / highWatermarkUs;
+      highWatermarkUs = grownHighWatermarkUs;
+    }
+    int targetBufferSize = (int) Math.min(maxBufferSize, (long) (requestedBufferSize * scale));
+    boolean changed = this.lowWatermarkUs != lowWatermarkUs
+        || this.highWatermarkUs != highWatermarkUs || this.targetBufferSize != targetBufferSize;
+    this.lowWatermarkUs = lowWatermarkUs;
+    this.highWatermarkUs = highWatermarkUs;
+    this.targetBufferSize = targetBufferSize;
+    return changed;
+  }
+
   private int getLoaderBufferState(long playbackPositionUs, long nextLoadPositionUs) {
     if (nextLoadPositionUs == -1) {
       return ABOVE_HIGH_WATERMARK;
@@ -227,10 +495,12 @@ public final class DefaultLoadControl implements LoadControl {
       NetworkLock.instance.add(NetworkLock.STREAMING_PRIORITY);
       streamingPrioritySet = true;
       notifyLoadingChanged(true);
+      lastBufferStateSampleTimeMs = -1;
     } else if (!fillingBuffers && streamingPrioritySet && !loading) {
       NetworkLock.instance.remove(NetworkLock.STREAMING_PRIORITY);
       streamingPrioritySet = false;
       notifyLoadingChanged(false);
+      lastBufferStateSampleTimeMs = -1;
     }
 
     maxLoadStartPositionUs = -1;
@@ -247,6 +517,46 @@ public final class DefaultLoadControl implements LoadControl {
     }
   }
 
+  private void sampleBufferState(long nowMs, long playbackPositionUs) {
+    lastBufferStateSampleTimeMs = nowMs;
+    long minNextLoadPositionUs = -1;
+    for (int i = 0; i < loaders.size(); i++) {
+      long nextLoadPositionUs = loaderStates.get(loaders.get(i)).nextLoadPositionUs;
+      if (nextLoadPositionUs != -1
+          && (minNextLoadPositionUs == -1 || nextLoadPositionUs < minNextLoadPositionUs)) {
+        minNextLoadPositionUs = nextLoadPositionUs;
+      }
+    }
+    long bufferedDurationMs = minNextLoadPositionUs == -1 ? -1
+        : Math.max(0, minNextLoadPositionUs - playbackPositionUs) / 1000;
+    notifyBufferStateSampled(bufferedDurationMs, allocator.getTotalBytesAllocated(),
+        lowWatermarkUs / 1000, highWatermarkUs / 1000, targetBufferSize);
+  }
+
+  private void notifyBufferStateSampled(final long bufferedDurationMs, final int bufferedBytes,
+      final long lowWatermarkMs, final long highWatermarkMs, final int targetBufferSize) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable()  {
+        @Override
+        public void run() {
+          eventListener.onBufferStateSampled(bufferedDurationMs, bufferedBytes, lowWatermarkMs,
+              highWatermarkMs, targetBufferSize);
+        }
+      });
+    }
+  }
+
+  private void notifyBufferStarved(final int recentStarvationCount) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable()  {
+        @Override
+        public void run() {
+          eventListener.onBufferStarved(recentStarvationCount);
+        }
+      });
+    }
+  }
+
   private void notifyLoadingChanged(final boolean loading) {
     if (eventHandler != null && eventListener != null) {
       eventHandler.post(new Runnable()  {
@@ -265,12 +575,16 @@ public final class DefaultLoadControl implements LoadControl {
     public int bufferState;
     public boolean loading;
     public long nextLoadPositionUs;
+    public long playbackPositionUs;
+    public long bufferedDurationUs;
 
     public LoaderState(int bufferSizeContribution) {
       this.bufferSizeContribution = bufferSizeContribution;
       bufferState = ABOVE_HIGH_WATERMARK;
       loading = false;
       nextLoadPositionUs = -1;
+      playbackPositionUs = -1;
+      bufferedDurationUs = -1;
     }
 
   }
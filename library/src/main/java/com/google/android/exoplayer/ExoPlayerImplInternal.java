@@ -60,7 +60,7 @@ import java.util.concurrent.atomic.AtomicInteger;
   private static final int MSG_CUSTOM = 9;
 
   private static final int PREPARE_INTERVAL_MS = 10;
-  private static final int RENDERING_INTERVAL_MS = 10;
+  private static final int MAX_RENDERING_INTERVAL_MS = 100;
   private static final int IDLE_INTERVAL_MS = 1000;
 
   private final Handler handler;
@@ -425,13 +425,13 @@ import java.util.concurrent.atomic.AtomicInteger;
         : Long.MAX_VALUE;
     boolean allRenderersEnded = true;
     boolean allRenderersReadyOrEnded = true;
+    long renderingIntervalUs = MAX_RENDERING_INTERVAL_MS * 1000L;
     updatePositionUs();
     for (int i = 0; i < enabledRenderers.size(); i++) {
       TrackRenderer renderer = enabledRenderers.get(i);
-      // TODO: Each renderer should return the maximum delay before which it wishes to be
-      // invoked again. The minimum of these values should then be used as the delay before the next
-      // invocation of this method.
       renderer.doSomeWork(positionUs, elapsedRealtimeUs);
+      // Invoke this method again as soon as the first renderer wishes to be invoked.
+      renderingIntervalUs = Math.min(renderingIntervalUs, renderer.getMaxWorkDelayUs());
       allRenderersEnded = allRenderersEnded && renderer.isEnded();
 
       // Determine whether the renderer is ready (or ended). If it's not, throw an error that's
@@ -479,7 +479,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
     handler.removeMessages(MSG_DO_SOME_WORK);
     if ((playWhenReady && state == ExoPlayer.STATE_READY) || state == ExoPlayer.STATE_BUFFERING) {
-      scheduleNextOperation(MSG_DO_SOME_WORK, operationStartTimeMs, RENDERING_INTERVAL_MS);
+      scheduleNextOperation(MSG_DO_SOME_WORK, operationStartTimeMs,
+          Math.max(0, renderingIntervalUs / 1000));
     } else if (!enabledRenderers.isEmpty()) {
       scheduleNextOperation(MSG_DO_SOME_WORK, operationStartTimeMs, IDLE_INTERVAL_MS);
     }
@@ -30,6 +30,7 @@ import android.os.Handler;
 import android.os.SystemClock;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Decodes and renders audio using {@link MediaCodec} and {@link android.media.AudioTrack}.
@@ -98,6 +99,7 @@ public class MediaCodecAudioTrackRenderer extends MediaCodecTrackRenderer implem
 
   private boolean audioTrackHasData;
   private long lastFeedElapsedRealtimeMs;
+  private long nextFeedDelayUs;
 
   /**
    * @param source The upstream source from which the renderer obtains samples.
@@ -202,8 +204,35 @@ public class MediaCodecAudioTrackRenderer extends MediaCodecTrackRenderer implem
       DrmSessionManager drmSessionManager, boolean playClearSamplesWithoutKeys,
       Handler eventHandler, EventListener eventListener, AudioCapabilities audioCapabilities,
       int streamType) {
+    this(sources, mediaCodecSelector, drmSessionManager, playClearSamplesWithoutKeys, eventHandler,
+        eventListener, audioCapabilities, streamType, null);
+  }
+
+  /**
+   * @param sources The upstream sources from which the renderer obtains samples.
+   * @param mediaCodecSelector A decoder selector.
+   * @param drmSessionManager For use with encrypted content. May be null if support for encrypted
+   *     content is not required.
+   * @param playClearSamplesWithoutKeys Encrypted media may contain clear (un-encrypted) regions.
+   *     For example a media file may start with a short clear region so as to allow playback to
+   *     begin in parallel with key acquisition. This parameter specifies whether the renderer is
+   *     permitted to play clear regions of encrypted media files before {@code drmSessionManager}
+   *     has obtained the keys necessary to decrypt encrypted regions of the media.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param audioCapabilities The audio capabilities for playback on this device. May be null if the
+   *     default capabilities (no encoded audio passthrough support) should be assumed.
+   * @param streamType The type of audio stream for the {@link AudioTrack}.
+   * @param codecPool A pool from which decoders are acquired, and to which they are returned when
+   *     released. May be null if decoders should not be shared with other renderers.
+   */
+  public MediaCodecAudioTrackRenderer(SampleSource[] sources, MediaCodecSelector mediaCodecSelector,
+      DrmSessionManager drmSessionManager, boolean playClearSamplesWithoutKeys,
+      Handler eventHandler, EventListener eventListener, AudioCapabilities audioCapabilities,
+      int streamType, MediaCodecPool codecPool) {
     super(sources, mediaCodecSelector, drmSessionManager, playClearSamplesWithoutKeys, eventHandler,
-        eventListener);
+        eventListener, codecPool);
     this.eventListener = eventListener;
     this.audioSessionId = AudioTrack.SESSION_ID_NOT_SET;
     this.audioTrack = new AudioTrack(audioCapabilities, streamType);
@@ -260,6 +289,27 @@ public class MediaCodecAudioTrackRenderer extends MediaCodecTrackRenderer implem
     }
   }
 
+  @Override
+  protected boolean canReuseCodec(MediaCodec codec, boolean codecIsAdaptive,
+      MediaFormat oldFormat, MediaFormat newFormat) {
+    // A decoder configured for passthrough can't be reused, since configuring it also configures
+    // the passthrough output format. Other decoders can be reused for identical configurations.
+    if (passthroughEnabled || !newFormat.mimeType.equals(oldFormat.mimeType)
+        || newFormat.channelCount != oldFormat.channelCount
+        || newFormat.sampleRate != oldFormat.sampleRate
+        || newFormat.pcmEncoding != oldFormat.pcmEncoding
+        || newFormat.initializationData.size() != oldFormat.initializationData.size()) {
+      return false;
+    }
+    for (int i = 0; i < newFormat.initializationData.size(); i++) {
+      if (!Arrays.equals(newFormat.initializationData.get(i),
+          oldFormat.initializationData.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   protected MediaClock getMediaClock() {
     return this;
@@ -324,6 +374,18 @@ public class MediaCodecAudioTrackRenderer extends MediaCodecTrackRenderer implem
     return audioTrack.hasPendingData() || super.isReady();
   }
 
+  @Override
+  protected void doSomeWork(long positionUs, long elapsedRealtimeUs, boolean sourceIsReady)
+      throws ExoPlaybackException {
+    nextFeedDelayUs = C.UNKNOWN_TIME_US;
+    super.doSomeWork(positionUs, elapsedRealtimeUs, sourceIsReady);
+  }
+
+  @Override
+  protected long getMaxWorkDelayUs() {
+    return nextFeedDelayUs != C.UNKNOWN_TIME_US ? nextFeedDelayUs : super.getMaxWorkDelayUs();
+  }
+
   @Override
   public long getPositionUs() {
     long newCurrentPositionUs = audioTrack.getCurrentPositionUs(isEnded());
@@ -422,6 +484,10 @@ public class MediaCodecAudioTrackRenderer extends MediaCodecTrackRenderer implem
       return true;
     }
 
+    if (getState() == TrackRenderer.STATE_STARTED) {
+      // The audio track is full. Feed it again once half of its pending data has been played.
+      nextFeedDelayUs = audioTrack.getPendingDataDurationUs() / 2;
+    }
     return false;
   }
 
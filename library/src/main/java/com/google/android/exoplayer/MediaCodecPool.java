@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.util.Assertions;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A pool of started {@link MediaCodec} instances that can be shared between
+ * {@link MediaCodecTrackRenderer}s.
+ * <p>
+ * When a renderer that was constructed with a pool releases its codec, the codec is flushed and
+ * returned to the pool rather than being stopped and released. A renderer that subsequently needs
+ * a codec first tries to acquire a matching one from the pool, avoiding the cost of creating,
+ * configuring and starting a new instance. This is useful when one renderer is replaced by another
+ * (e.g. when moving between items in a playlist).
+ * <p>
+ * A pooled codec matches if it has the same name and output {@link Surface}, was configured with a
+ * maximum width, height and input size at least as large as those with which a new codec would be
+ * configured, and the acquiring renderer's {@link MediaCodecTrackRenderer#canReuseCodec} returns
+ * true for the format it was last used to decode. Codecs used to decode encrypted content are never
+ * pooled.
+ * <p>
+ * Pooled codecs are released when the pool exceeds its maximum size, when they have been idle for
+ * longer than the maximum idle time (checked whenever the pool is accessed), and when
+ * {@link #releaseAll()} is called. Applications should call {@link #releaseAll()} when the pool is
+ * no longer needed, and before passing a {@link Surface} that a pooled codec may be rendering to
+ * to a renderer that does not share this pool.
+ */
+@TargetApi(16)
+public final class MediaCodecPool {
+
+  /**
+   * The default maximum number of codecs to keep in the pool.
+   */
+  public static final int DEFAULT_MAX_POOLED_CODECS = 2;
+
+  /**
+   * The default maximum time for which a codec is kept in the pool, in milliseconds.
+   */
+  public static final long DEFAULT_MAX_IDLE_TIME_MS = 10000;
+
+  private static final String TAG = "MediaCodecPool";
+
+  private final int maxPooledCodecs;
+  private final long maxIdleTimeMs;
+  private final LinkedList<PooledCodec> pooledCodecs;
+
+  public MediaCodecPool() {
+    this(DEFAULT_MAX_POOLED_CODECS, DEFAULT_MAX_IDLE_TIME_MS);
+  }
+
+  /**
+   * @param maxPooledCodecs The maximum number of codecs to keep in the pool. If a codec is returned
+   *     to a full pool, the codec that has been in the pool for the longest time is released.
+   * @param maxIdleTimeMs The maximum time for which a codec is kept in the pool, in milliseconds.
+   */
+  public MediaCodecPool(int maxPooledCodecs, long maxIdleTimeMs) {
+    Assertions.checkArgument(maxPooledCodecs > 0);
+    this.maxPooledCodecs = maxPooledCodecs;
+    this.maxIdleTimeMs = maxIdleTimeMs;
+    pooledCodecs = new LinkedList<>();
+  }
+
+  /**
+   * Returns the number of codecs currently held by the pool.
+   */
+  public synchronized int getPooledCodecCount() {
+    releaseIdleCodecs();
+    return pooledCodecs.size();
+  }
+
+  /**
+   * Releases all of the codecs held by the pool.
+   */
+  public synchronized void releaseAll() {
+    while (!pooledCodecs.isEmpty()) {
+      releaseCodec(pooledCodecs.removeFirst());
+    }
+  }
+
+  /**
+   * Removes and returns a pooled codec that {@code renderer} can use to decode {@code format}.
+   * <p>
+   * Any pooled codecs that are rendering to {@code surface} but cannot be reused are released, so
+   * that the surface can be connected to a new codec.
+   *
+   * @param renderer The renderer that will use the codec.
+   * @param codecName The name of the required codec.
+   * @param format The format to be decoded.
+   * @param configurationFormat The framework format with which a new codec would be configured to
+   *     decode {@code format}.
+   * @param surface The surface to which the codec should render, or null.
+   * @return A matching pooled codec, or null if the pool does not contain one.
+   */
+  /* package */ synchronized PooledCodec acquire(MediaCodecTrackRenderer renderer,
+      String codecName, MediaFormat format, android.media.MediaFormat configurationFormat,
+      Surface surface) {
+    releaseIdleCodecs();
+    int maxWidth = getMaxWidth(configurationFormat);
+    int maxHeight = getMaxHeight(configurationFormat);
+    int maxInputSize = getMaxInputSize(configurationFormat);
+    PooledCodec acquiredCodec = null;
+    // Prefer the most recently returned codec.
+    Iterator<PooledCodec> iterator = pooledCodecs.descendingIterator();
+    while (iterator.hasNext()) {
+      PooledCodec pooledCodec = iterator.next();
+      if (acquiredCodec == null && pooledCodec.codecName.equals(codecName)
+          && pooledCodec.surface == surface
+          && pooledCodec.canDecode(maxWidth, maxHeight, maxInputSize)
+          && renderer.canReuseCodec(pooledCodec.codec, pooledCodec.adaptive, pooledCodec.format,
+              format)) {
+        iterator.remove();
+        acquiredCodec = pooledCodec;
+      } else if (surface != null && pooledCodec.surface == surface) {
+        iterator.remove();
+        releaseCodec(pooledCodec);
+      }
+    }
+    return acquiredCodec;
+  }
+
+  /**
+   * Releases any pooled codecs that are rendering to {@code surface}.
+   *
+   * @param surface The surface.
+   */
+  /* package */ synchronized void releaseCodecs(Surface surface) {
+    Iterator<PooledCodec> iterator = pooledCodecs.iterator();
+    while (iterator.hasNext()) {
+      PooledCodec pooledCodec = iterator.next();
+      if (pooledCodec.surface == surface) {
+        iterator.remove();
+        releaseCodec(pooledCodec);
+      }
+    }
+  }
+
+  /**
+   * Returns a flushed codec to the pool.
+   *
+   * @param codec The codec, which must have been started and flushed.
+   * @param codecName The name of the codec.
+   * @param adaptive Whether the codec is adaptive.
+   * @param format The format that the codec was last used to decode.
+   * @param configurationFormat The framework format with which the codec was configured.
+   * @param outputFormat The last output format reported by the codec, or null if the codec has not
+   *     reported an output format.
+   * @param surface The surface to which the codec renders, or null.
+   */
+  /* package */ synchronized void offer(MediaCodec codec, String codecName, boolean adaptive,
+      MediaFormat format, android.media.MediaFormat configurationFormat,
+      android.media.MediaFormat outputFormat, Surface surface) {
+    releaseIdleCodecs();
+    if (surface != null && !surface.isValid()) {
+      // The codec will never be able to render again.
+      releaseCodec(codec);
+      return;
+    }
+    pooledCodecs.addLast(new PooledCodec(codec, codecName, adaptive, format, configurationFormat,
+        outputFormat, surface, SystemClock.elapsedRealtime()));
+    while (pooledCodecs.size() > maxPooledCodecs) {
+      releaseCodec(pooledCodecs.removeFirst());
+    }
+  }
+
+  private void releaseIdleCodecs() {
+    long nowMs = SystemClock.elapsedRealtime();
+    Iterator<PooledCodec> iterator = pooledCodecs.iterator();
+    while (iterator.hasNext()) {
+      PooledCodec pooledCodec = iterator.next();
+      if (nowMs - pooledCodec.pooledTimeMs > maxIdleTimeMs
+          || (pooledCodec.surface != null && !pooledCodec.surface.isValid())) {
+        iterator.remove();
+        releaseCodec(pooledCodec);
+      }
+    }
+  }
+
+  private static void releaseCodec(PooledCodec pooledCodec) {
+    releaseCodec(pooledCodec.codec);
+  }
+
+  private static void releaseCodec(MediaCodec codec) {
+    try {
+      codec.stop();
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Failed to stop pooled codec", e);
+    } finally {
+      try {
+        codec.release();
+      } catch (RuntimeException e) {
+        Log.w(TAG, "Failed to release pooled codec", e);
+      }
+    }
+  }
+
+  /**
+   * Returns the maximum width of the frames that a codec configured with {@code format} can
+   * decode, or {@link MediaFormat#NO_VALUE} if the format doesn't specify a width.
+   */
+  private static int getMaxWidth(android.media.MediaFormat format) {
+    return Math.max(getInteger(format, android.media.MediaFormat.KEY_WIDTH),
+        getInteger(format, android.media.MediaFormat.KEY_MAX_WIDTH));
+  }
+
+  /**
+   * Returns the maximum height of the frames that a codec configured with {@code format} can
+   * decode, or {@link MediaFormat#NO_VALUE} if the format doesn't specify a height.
+   */
+  private static int getMaxHeight(android.media.MediaFormat format) {
+    return Math.max(getInteger(format, android.media.MediaFormat.KEY_HEIGHT),
+        getInteger(format, android.media.MediaFormat.KEY_MAX_HEIGHT));
+  }
+
+  /**
+   * Returns the maximum input size with which a codec is configured by {@code format}, or
+   * {@link MediaFormat#NO_VALUE} if the codec's default input size is used.
+   */
+  private static int getMaxInputSize(android.media.MediaFormat format) {
+    return getInteger(format, android.media.MediaFormat.KEY_MAX_INPUT_SIZE);
+  }
+
+  private static int getInteger(android.media.MediaFormat format, String key) {
+    return format.containsKey(key) ? format.getInteger(key) : MediaFormat.NO_VALUE;
+  }
+
+  /**
+   * A codec held by the pool.
+   */
+  /* package */ static final class PooledCodec {
+
+    public final MediaCodec codec;
+    public final String codecName;
+    public final boolean adaptive;
+    public final MediaFormat format;
+    public final android.media.MediaFormat configurationFormat;
+    public final android.media.MediaFormat outputFormat;
+    public final Surface surface;
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int maxInputSize;
+    private final long pooledTimeMs;
+
+    private PooledCodec(MediaCodec codec, String codecName, boolean adaptive, MediaFormat format,
+        android.media.MediaFormat configurationFormat, android.media.MediaFormat outputFormat,
+        Surface surface, long pooledTimeMs) {
+      this.codec = codec;
+      this.codecName = codecName;
+      this.adaptive = adaptive;
+      this.format = format;
+      this.configurationFormat = configurationFormat;
+      this.outputFormat = outputFormat;
+      this.surface = surface;
+      this.pooledTimeMs = pooledTimeMs;
+      maxWidth = getMaxWidth(configurationFormat);
+      maxHeight = getMaxHeight(configurationFormat);
+      maxInputSize = getMaxInputSize(configurationFormat);
+    }
+
+    /**
+     * Returns whether the codec was configured with limits that are at least as large as those
+     * with which a new codec would be configured. Codecs may allocate their buffers according to
+     * these limits when configured, so a codec with smaller limits may fail to decode the content.
+     * <p>
+     * If either the pooled or the new configuration uses the codec's default input size, the codec
+     * only matches if both do, since the default size is unknown.
+     */
+    private boolean canDecode(int maxWidth, int maxHeight, int maxInputSize) {
+      return maxWidth <= this.maxWidth && maxHeight <= this.maxHeight
+          && (maxInputSize == MediaFormat.NO_VALUE
+              ? this.maxInputSize == MediaFormat.NO_VALUE
+              : this.maxInputSize != MediaFormat.NO_VALUE && maxInputSize <= this.maxInputSize);
+    }
+
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer;
 
+import com.google.android.exoplayer.MediaCodecPool.PooledCodec;
 import com.google.android.exoplayer.MediaCodecUtil.DecoderQueryException;
 import com.google.android.exoplayer.drm.DrmInitData;
 import com.google.android.exoplayer.drm.DrmSessionManager;
@@ -30,6 +31,7 @@ import android.media.MediaCodec.CryptoException;
 import android.media.MediaCrypto;
 import android.os.Handler;
 import android.os.SystemClock;
+import android.view.Surface;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -204,11 +206,18 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
   private final MediaCodec.BufferInfo outputBufferInfo;
   private final EventListener eventListener;
   private final boolean deviceNeedsAutoFrcWorkaround;
+  private final MediaCodecPool codecPool;
   protected final Handler eventHandler;
 
   private MediaFormat format;
   private DrmInitData drmInitData;
   private MediaCodec codec;
+  private String codecName;
+  private MediaFormat codecFormat;
+  private android.media.MediaFormat codecConfigurationFormat;
+  private android.media.MediaFormat codecOutputFormat;
+  private Surface codecSurface;
+  private boolean codecIsPoolable;
   private boolean codecIsAdaptive;
   private boolean codecNeedsDiscardToSpsWorkaround;
   private boolean codecNeedsFlushWorkaround;
@@ -271,6 +280,29 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
   public MediaCodecTrackRenderer(SampleSource[] sources, MediaCodecSelector mediaCodecSelector,
       DrmSessionManager drmSessionManager, boolean playClearSamplesWithoutKeys,
       Handler eventHandler, EventListener eventListener) {
+    this(sources, mediaCodecSelector, drmSessionManager, playClearSamplesWithoutKeys, eventHandler,
+        eventListener, null);
+  }
+
+  /**
+   * @param sources The upstream sources from which the renderer obtains samples.
+   * @param mediaCodecSelector A decoder selector.
+   * @param drmSessionManager For use with encrypted media. May be null if support for encrypted
+   *     media is not required.
+   * @param playClearSamplesWithoutKeys Encrypted media may contain clear (un-encrypted) regions.
+   *     For example a media file may start with a short clear region so as to allow playback to
+   *     begin in parallel with key acquisition. This parameter specifies whether the renderer is
+   *     permitted to play clear regions of encrypted media files before {@code drmSessionManager}
+   *     has obtained the keys necessary to decrypt encrypted regions of the media.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param codecPool A pool from which codecs are acquired, and to which they are returned when
+   *     released. May be null if codecs should not be shared with other renderers.
+   */
+  public MediaCodecTrackRenderer(SampleSource[] sources, MediaCodecSelector mediaCodecSelector,
+      DrmSessionManager drmSessionManager, boolean playClearSamplesWithoutKeys,
+      Handler eventHandler, EventListener eventListener, MediaCodecPool codecPool) {
     super(sources);
     Assertions.checkState(Util.SDK_INT >= 16);
     this.mediaCodecSelector = Assertions.checkNotNull(mediaCodecSelector);
@@ -278,6 +310,7 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
     this.playClearSamplesWithoutKeys = playClearSamplesWithoutKeys;
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
+    this.codecPool = codecPool;
     deviceNeedsAutoFrcWorkaround = deviceNeedsAutoFrcWorkaround();
     codecCounters = new CodecCounters();
     sampleHolder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_DISABLED);
@@ -330,6 +363,29 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
   protected abstract void configureCodec(MediaCodec codec, boolean codecIsAdaptive,
       android.media.MediaFormat format, MediaCrypto crypto);
 
+  /**
+   * Returns the framework {@link android.media.MediaFormat} with which a codec should be configured
+   * to decode a format. The returned format is passed to
+   * {@link #configureCodec(MediaCodec, boolean, android.media.MediaFormat, MediaCrypto)}. If this
+   * renderer was constructed with a {@link MediaCodecPool}, it's also used to check that a pooled
+   * codec was configured with a sufficient maximum width, height and input size.
+   * <p>
+   * The default implementation returns {@link MediaFormat#getFrameworkMediaFormatV16()}, with any
+   * device specific workarounds applied.
+   *
+   * @param format The format to be decoded.
+   * @param codecIsAdaptive Whether the codec is adaptive.
+   * @return The format with which a codec should be configured.
+   */
+  protected android.media.MediaFormat getCodecConfigurationFormat(MediaFormat format,
+      boolean codecIsAdaptive) {
+    android.media.MediaFormat mediaFormat = format.getFrameworkMediaFormatV16();
+    if (deviceNeedsAutoFrcWorkaround) {
+      mediaFormat.setInteger("auto-frc", 0);
+    }
+    return mediaFormat;
+  }
+
   @SuppressWarnings("deprecation")
   protected final void maybeInitCodec() throws ExoPlaybackException {
     if (!shouldInitCodec()) {
@@ -373,24 +429,51 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
           requiresSecureDecoder, DecoderInitializationException.NO_SUITABLE_DECODER_ERROR));
     }
 
-    String codecName = decoderInfo.name;
+    codecName = decoderInfo.name;
     codecIsAdaptive = decoderInfo.adaptive;
+    codecIsPoolable = codecPool != null && mediaCrypto == null;
     codecNeedsDiscardToSpsWorkaround = codecNeedsDiscardToSpsWorkaround(codecName, format);
     codecNeedsFlushWorkaround = codecNeedsFlushWorkaround(codecName);
     codecNeedsEosPropagationWorkaround = codecNeedsEosPropagationWorkaround(codecName);
     codecNeedsEosFlushWorkaround = codecNeedsEosFlushWorkaround(codecName);
     codecNeedsMonoChannelCountWorkaround = codecNeedsMonoChannelCountWorkaround(codecName, format);
+    codecFormat = format;
+    codecSurface = getCodecSurface();
+    codecConfigurationFormat = getCodecConfigurationFormat(format, codecIsAdaptive);
+    PooledCodec pooledCodec = null;
+    if (codecIsPoolable) {
+      pooledCodec = codecPool.acquire(this, codecName, format, codecConfigurationFormat,
+          codecSurface);
+    } else if (codecPool != null && codecSurface != null) {
+      // Make sure that the surface isn't still connected to a pooled codec.
+      codecPool.releaseCodecs(codecSurface);
+    }
     try {
       long codecInitializingTimestamp = SystemClock.elapsedRealtime();
-      TraceUtil.beginSection("createByCodecName(" + codecName + ")");
-      codec = MediaCodec.createByCodecName(codecName);
-      TraceUtil.endSection();
-      TraceUtil.beginSection("configureCodec");
-      configureCodec(codec, decoderInfo.adaptive, getFrameworkMediaFormat(format), mediaCrypto);
-      TraceUtil.endSection();
-      TraceUtil.beginSection("codec.start()");
-      codec.start();
-      TraceUtil.endSection();
+      if (pooledCodec != null) {
+        codec = pooledCodec.codec;
+        codecConfigurationFormat = pooledCodec.configurationFormat;
+        if (canReconfigureCodec(codec, codecIsAdaptive, pooledCodec.format, format)) {
+          codecReconfigured = true;
+          codecReconfigurationState = RECONFIGURATION_STATE_WRITE_PENDING;
+        }
+        if (pooledCodec.outputFormat != null) {
+          // The codec won't report its current output format again, so we do so here.
+          codecOutputFormat = pooledCodec.outputFormat;
+          onOutputFormatChanged(codec, codecOutputFormat);
+        }
+        codecCounters.codecReuseCount++;
+      } else {
+        TraceUtil.beginSection("createByCodecName(" + codecName + ")");
+        codec = MediaCodec.createByCodecName(codecName);
+        TraceUtil.endSection();
+        TraceUtil.beginSection("configureCodec");
+        configureCodec(codec, codecIsAdaptive, codecConfigurationFormat, mediaCrypto);
+        TraceUtil.endSection();
+        TraceUtil.beginSection("codec.start()");
+        codec.start();
+        TraceUtil.endSection();
+      }
       long codecInitializedTimestamp = SystemClock.elapsedRealtime();
       notifyDecoderInitialized(codecName, codecInitializedTimestamp,
           codecInitializedTimestamp - codecInitializingTimestamp);
@@ -418,6 +501,18 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
     return codec == null && format != null;
   }
 
+  /**
+   * Returns the {@link Surface} to which the codec renders its output, if any. Used to ensure that
+   * codecs acquired from a {@link MediaCodecPool} render to the correct surface.
+   * <p>
+   * The default implementation returns null.
+   *
+   * @return The surface to which the codec renders its output, or null.
+   */
+  protected Surface getCodecSurface() {
+    return null;
+  }
+
   protected final boolean codecInitialized() {
     return codec != null;
   }
@@ -455,23 +550,51 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
       outputBuffers = null;
       codecReconfigured = false;
       codecReceivedBuffers = false;
-      codecIsAdaptive = false;
       codecNeedsDiscardToSpsWorkaround = false;
-      codecNeedsFlushWorkaround = false;
       codecNeedsEosPropagationWorkaround = false;
-      codecNeedsEosFlushWorkaround = false;
       codecNeedsMonoChannelCountWorkaround = false;
-      codecReceivedEos = false;
       codecReconfigurationState = RECONFIGURATION_STATE_NONE;
-      codecReinitializationState = REINITIALIZATION_STATE_NONE;
       codecCounters.codecReleaseCount++;
-      try {
-        codec.stop();
-      } finally {
+      // Codecs that need to be released to be flushed, or that have been sent an end of stream
+      // signal so that they can be re-initialized, aren't returned to the pool.
+      boolean returnToPool = codecIsPoolable && !codecNeedsFlushWorkaround
+          && !(codecNeedsEosFlushWorkaround && codecReceivedEos)
+          && codecReinitializationState == REINITIALIZATION_STATE_NONE;
+      String codecName = this.codecName;
+      MediaFormat codecFormat = this.codecFormat;
+      android.media.MediaFormat codecConfigurationFormat = this.codecConfigurationFormat;
+      android.media.MediaFormat codecOutputFormat = this.codecOutputFormat;
+      Surface codecSurface = this.codecSurface;
+      this.codecName = null;
+      this.codecFormat = null;
+      this.codecConfigurationFormat = null;
+      this.codecOutputFormat = null;
+      this.codecSurface = null;
+      codecIsPoolable = false;
+      codecReinitializationState = REINITIALIZATION_STATE_NONE;
+      codecNeedsFlushWorkaround = false;
+      codecNeedsEosFlushWorkaround = false;
+      codecReceivedEos = false;
+      if (returnToPool) {
         try {
-          codec.release();
-        } finally {
+          codec.flush();
+          codecPool.offer(codec, codecName, codecIsAdaptive, codecFormat,
+              codecConfigurationFormat, codecOutputFormat, codecSurface);
           codec = null;
+        } catch (RuntimeException e) {
+          // Fall through to release the codec.
+        }
+      }
+      codecIsAdaptive = false;
+      if (codec != null) {
+        try {
+          codec.stop();
+        } finally {
+          try {
+            codec.release();
+          } finally {
+            codec = null;
+          }
         }
       }
     }
@@ -699,6 +822,7 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
       codecReceivedBuffers = true;
       codecReconfigurationState = RECONFIGURATION_STATE_NONE;
       codecCounters.inputBufferCount++;
+      codecCounters.inputBufferByteCount += bufferSize;
     } catch (CryptoException e) {
       notifyCryptoError(e);
       throw new ExoPlaybackException(e);
@@ -722,14 +846,6 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
     return cryptoInfo;
   }
 
-  private android.media.MediaFormat getFrameworkMediaFormat(MediaFormat format) {
-    android.media.MediaFormat mediaFormat = format.getFrameworkMediaFormatV16();
-    if (deviceNeedsAutoFrcWorkaround) {
-      mediaFormat.setInteger("auto-frc", 0);
-    }
-    return mediaFormat;
-  }
-
   private boolean shouldWaitForKeys(boolean sampleEncrypted) throws ExoPlaybackException {
     if (!openedDrmSession) {
       return false;
@@ -756,6 +872,7 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
     format = formatHolder.format;
     drmInitData = formatHolder.drmInitData;
     if (codec != null && canReconfigureCodec(codec, codecIsAdaptive, oldFormat, format)) {
+      codecFormat = format;
       codecReconfigured = true;
       codecReconfigurationState = RECONFIGURATION_STATE_WRITE_PENDING;
     } else {
@@ -841,6 +958,27 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
     return false;
   }
 
+  /**
+   * Determines whether a {@link MediaCodec} held by a {@link MediaCodecPool}, which was last used
+   * to decode a format by another renderer, can be used to decode a new format. If true is returned
+   * and {@link #canReconfigureCodec(MediaCodec, boolean, MediaFormat, MediaFormat)} also returns
+   * true, the instance will be reconfigured for the new format. If true is returned but the
+   * instance cannot be reconfigured, it will be used without reconfiguration.
+   * <p>
+   * The default implementation returns the result of
+   * {@link #canReconfigureCodec(MediaCodec, boolean, MediaFormat, MediaFormat)}.
+   *
+   * @param codec The pooled {@link MediaCodec} instance.
+   * @param codecIsAdaptive Whether the codec is adaptive.
+   * @param oldFormat The format that the pooled instance was last used to decode.
+   * @param newFormat The new format.
+   * @return True if the pooled instance can be used. False otherwise.
+   */
+  protected boolean canReuseCodec(MediaCodec codec, boolean codecIsAdaptive,
+      MediaFormat oldFormat, MediaFormat newFormat) {
+    return canReconfigureCodec(codec, codecIsAdaptive, oldFormat, newFormat);
+  }
+
   @Override
   protected boolean isEnded() {
     return outputStreamEnded;
@@ -935,6 +1073,7 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
     if (codecNeedsMonoChannelCountWorkaround) {
       format.setInteger(android.media.MediaFormat.KEY_CHANNEL_COUNT, 1);
     }
+    codecOutputFormat = format;
     onOutputFormatChanged(codec, format);
     codecCounters.outputFormatChangedCount++;
   }
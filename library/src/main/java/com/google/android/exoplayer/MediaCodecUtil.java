@@ -24,15 +24,24 @@ import android.media.MediaCodecInfo;
 import android.media.MediaCodecInfo.CodecCapabilities;
 import android.media.MediaCodecInfo.CodecProfileLevel;
 import android.media.MediaCodecList;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A utility class for querying the available codecs.
@@ -58,7 +67,16 @@ public final class MediaCodecUtil {
   private static final DecoderInfo PASSTHROUGH_DECODER_INFO =
       new DecoderInfo("OMX.google.raw.decoder", null);
 
-  private static final Map<CodecKey, List<DecoderInfo>> decoderInfosCache = new HashMap<>();
+  private static final int CACHE_FILE_VERSION = 2;
+  private static final String CACHE_FILE_TEMP_SUFFIX = ".tmp";
+
+  // Written whilst holding the class lock, but read without it.
+  private static final Map<CodecKey, List<DecoderInfo>> decoderInfosCache =
+      new ConcurrentHashMap<>();
+  // Decoder infos restored by warmDecoderInfoCache, whose capabilities only have profile levels and
+  // color formats.
+  private static final Map<CodecKey, List<DecoderInfo>> restoredDecoderInfosCache =
+      new ConcurrentHashMap<>();
 
   // Lazily initialized.
   private static int maxH264DecodableFrameSize = -1;
@@ -83,6 +101,71 @@ public final class MediaCodecUtil {
     }
   }
 
+  /**
+   * Optional call to warm the decoder info cache for a set of mime types, which should be made on
+   * a background thread (e.g. using {@link #warmDecoderInfoCacheAsync(File, String...)}) when the
+   * application starts. Blocks until the cache has been warmed.
+   * <p>
+   * If {@code cacheFile} is not null, information previously written to it is restored first,
+   * provided it was written by a device with the same build fingerprint. Until the device has been
+   * queried, {@link #getDecoderInfo(String, boolean)} returns restored information, whose
+   * {@link DecoderInfo#capabilities} only have profile levels and color formats, and the capability
+   * checks in this class are answered from the restored information where possible. This method
+   * doesn't query the device for mime types whose information was restored, since it's queried
+   * when full capabilities are needed (e.g. by {@link #getDecoderInfos(String, boolean)}). The
+   * information queried for any other mime types is written back to the file.
+   *
+   * @param cacheFile A file in which to persist the cache, or null.
+   * @param mimeTypes The mime types for which to warm the cache.
+   */
+  public static void warmDecoderInfoCache(File cacheFile, String... mimeTypes) {
+    Map<CodecKey, List<DecoderInfo>> restoredDecoderInfos = null;
+    if (cacheFile != null) {
+      restoredDecoderInfos = readDecoderInfos(cacheFile, Build.FINGERPRINT);
+      if (restoredDecoderInfos != null) {
+        restoredDecoderInfosCache.putAll(restoredDecoderInfos);
+      }
+    }
+    for (String mimeType : mimeTypes) {
+      if (restoredDecoderInfos != null
+          && restoredDecoderInfos.containsKey(new CodecKey(mimeType, false))) {
+        // Trust the restored information, so that decoder selection doesn't depend on whether the
+        // device has been queried yet. The device is queried if full capabilities are needed.
+        continue;
+      }
+      warmCodec(mimeType, false);
+    }
+    if (cacheFile != null) {
+      Map<CodecKey, List<DecoderInfo>> decoderInfos = new HashMap<>(decoderInfosCache);
+      if (restoredDecoderInfos != null) {
+        // Retain restored information for any keys that weren't queried.
+        for (Map.Entry<CodecKey, List<DecoderInfo>> entry : restoredDecoderInfos.entrySet()) {
+          if (!decoderInfos.containsKey(entry.getKey())) {
+            decoderInfos.put(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+      if (restoredDecoderInfos == null || !haveSameDecoders(restoredDecoderInfos, decoderInfos)) {
+        writeDecoderInfos(cacheFile, Build.FINGERPRINT, decoderInfos);
+      }
+    }
+  }
+
+  /**
+   * Starts a background thread that calls {@link #warmDecoderInfoCache(File, String...)}.
+   *
+   * @param cacheFile A file in which to persist the cache, or null.
+   * @param mimeTypes The mime types for which to warm the cache.
+   */
+  public static void warmDecoderInfoCacheAsync(final File cacheFile, final String... mimeTypes) {
+    new Thread("MediaCodecUtil.warmDecoderInfoCache()") {
+      @Override
+      public void run() {
+        warmDecoderInfoCache(cacheFile, mimeTypes);
+      }
+    }.start();
+  }
+
   /**
    * Gets information about a decoder suitable for audio passthrough.
    **
@@ -95,6 +178,10 @@ public final class MediaCodecUtil {
 
   /**
    * Get information about the preferred decoder for a given mime type.
+   * <p>
+   * If the information was restored by {@link #warmDecoderInfoCache(File, String...)} and the
+   * device has not yet been queried, the returned {@link DecoderInfo#capabilities} only have
+   * profile levels and color formats.
    *
    * @param mimeType The mime type.
    * @param secure Whether the decoder is required to support secure decryption. Always pass false
@@ -103,7 +190,14 @@ public final class MediaCodecUtil {
    */
   public static DecoderInfo getDecoderInfo(String mimeType, boolean secure)
       throws DecoderQueryException {
-    List<DecoderInfo> decoderInfos = getDecoderInfos(mimeType, secure);
+    CodecKey key = new CodecKey(mimeType, secure);
+    List<DecoderInfo> decoderInfos = decoderInfosCache.get(key);
+    if (decoderInfos == null) {
+      decoderInfos = restoredDecoderInfosCache.get(key);
+    }
+    if (decoderInfos == null) {
+      decoderInfos = getDecoderInfos(mimeType, secure);
+    }
     return decoderInfos.isEmpty() ? null : decoderInfos.get(0);
   }
 
@@ -117,13 +211,22 @@ public final class MediaCodecUtil {
    * @return A list of all @{link DecoderInfo}s for the given mime type. May be empty if no suitable
    *     decoders exist.
    */
-  public static synchronized List<DecoderInfo> getDecoderInfos(String mimeType, boolean secure)
+  public static List<DecoderInfo> getDecoderInfos(String mimeType, boolean secure)
       throws DecoderQueryException {
     CodecKey key = new CodecKey(mimeType, secure);
     List<DecoderInfo> decoderInfos = decoderInfosCache.get(key);
+    return decoderInfos != null ? decoderInfos : queryDecoderInfos(key);
+  }
+
+  private static synchronized List<DecoderInfo> queryDecoderInfos(CodecKey key)
+      throws DecoderQueryException {
+    List<DecoderInfo> decoderInfos = decoderInfosCache.get(key);
     if (decoderInfos != null) {
+      // Another thread queried the device whilst we were waiting for the lock.
       return decoderInfos;
     }
+    String mimeType = key.mimeType;
+    boolean secure = key.secure;
     MediaCodecListCompat mediaCodecList = Util.SDK_INT >= 21
         ? new MediaCodecListCompatV21(secure) : new MediaCodecListCompatV16();
     decoderInfos = getDecoderInfosInternal(key, mediaCodecList);
@@ -259,6 +362,10 @@ public final class MediaCodecUtil {
    * and height.
    * <p>
    * Must not be called if the device SDK version is less than 21.
+   * <p>
+   * If non-secure H.264 decoder information was restored by
+   * {@link #warmDecoderInfoCache(File, String...)} and the device has not yet been queried, support
+   * is estimated from {@link #maxH264DecodableFrameSize()} rather than blocking on the query.
    *
    * @param mimeType The mime type.
    * @param secure Whether the decoder is required to support secure decryption. Always pass false
@@ -271,6 +378,9 @@ public final class MediaCodecUtil {
   public static boolean isSizeSupportedV21(String mimeType, boolean secure, int width,
       int height) throws DecoderQueryException {
     Assertions.checkState(Util.SDK_INT >= 21);
+    if (shouldEstimateH264Support(mimeType, secure)) {
+      return width * height <= maxH264DecodableFrameSize();
+    }
     MediaCodecInfo.VideoCapabilities videoCapabilities = getVideoCapabilitiesV21(mimeType, secure);
     return videoCapabilities != null && videoCapabilities.isSizeSupported(width, height);
   }
@@ -280,6 +390,11 @@ public final class MediaCodecUtil {
    * width, height, and frame rate.
    * <p>
    * Must not be called if the device SDK version is less than 21.
+   * <p>
+   * If non-secure H.264 decoder information was restored by
+   * {@link #warmDecoderInfoCache(File, String...)} and the device has not yet been queried, support
+   * is estimated from {@link #maxH264DecodableFrameSize()} rather than blocking on the query. The
+   * frame rate is not taken into account in this case.
    *
    * @param mimeType The mime type.
    * @param secure Whether the decoder is required to support secure decryption. Always pass false
@@ -293,6 +408,9 @@ public final class MediaCodecUtil {
   public static boolean isSizeAndRateSupportedV21(String mimeType, boolean secure,
       int width, int height, double frameRate) throws DecoderQueryException {
     Assertions.checkState(Util.SDK_INT >= 21);
+    if (shouldEstimateH264Support(mimeType, secure)) {
+      return width * height <= maxH264DecodableFrameSize();
+    }
     MediaCodecInfo.VideoCapabilities videoCapabilities = getVideoCapabilitiesV21(mimeType, secure);
     return videoCapabilities != null
         && videoCapabilities.areSizeAndRateSupported(width, height, frameRate);
@@ -320,6 +438,11 @@ public final class MediaCodecUtil {
   }
 
   /**
+   * Returns the maximum frame size for an H264 stream that can be decoded on the device.
+   * <p>
+   * Information restored by {@link #warmDecoderInfoCache(File, String...)} is used if the device
+   * has not yet been queried.
+   *
    * @return the maximum frame size for an H264 stream that can be decoded on the device.
    */
   public static int maxH264DecodableFrameSize() throws DecoderQueryException {
@@ -341,8 +464,161 @@ public final class MediaCodecUtil {
   @TargetApi(21)
   private static MediaCodecInfo.VideoCapabilities getVideoCapabilitiesV21(String mimeType,
       boolean secure) throws DecoderQueryException {
-    DecoderInfo decoderInfo = getDecoderInfo(mimeType, secure);
-    return decoderInfo == null ? null : decoderInfo.capabilities.getVideoCapabilities();
+    // Restored decoder information doesn't include video capabilities, so the device is queried.
+    List<DecoderInfo> decoderInfos = getDecoderInfos(mimeType, secure);
+    return decoderInfos.isEmpty() ? null : decoderInfos.get(0).capabilities.getVideoCapabilities();
+  }
+
+  /**
+   * Returns whether video support should be estimated from restored decoder information, rather
+   * than by querying the device. This is the case for non-secure H.264 decoders whose information
+   * was restored by {@link #warmDecoderInfoCache(File, String...)}, if the device has not yet been
+   * queried.
+   */
+  private static boolean shouldEstimateH264Support(String mimeType, boolean secure) {
+    CodecKey key = new CodecKey(mimeType, secure);
+    return !secure && MimeTypes.VIDEO_H264.equals(mimeType) && !decoderInfosCache.containsKey(key)
+        && restoredDecoderInfosCache.containsKey(key);
+  }
+
+  /**
+   * Reads decoder information written by {@link #writeDecoderInfos(File, String, Map)}.
+   *
+   * @param file The file to read.
+   * @param fingerprint The build fingerprint of the device.
+   * @return The decoder information, or null if the file could not be read or was written by a
+   *     device with a different build fingerprint.
+   */
+  /* package */ static Map<CodecKey, List<DecoderInfo>> readDecoderInfos(File file,
+      String fingerprint) {
+    if (!file.exists()) {
+      return null;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (input.readInt() != CACHE_FILE_VERSION || !fingerprint.equals(input.readUTF())) {
+        return null;
+      }
+      Map<CodecKey, List<DecoderInfo>> decoderInfos = new HashMap<>();
+      int keyCount = input.readInt();
+      for (int i = 0; i < keyCount; i++) {
+        CodecKey key = new CodecKey(input.readUTF(), input.readBoolean());
+        int decoderCount = input.readInt();
+        List<DecoderInfo> decoderInfosForKey = new ArrayList<>(decoderCount);
+        for (int j = 0; j < decoderCount; j++) {
+          String name = input.readUTF();
+          boolean adaptive = input.readBoolean();
+          CodecCapabilities capabilities = new CodecCapabilities();
+          capabilities.profileLevels = new CodecProfileLevel[input.readInt()];
+          for (int k = 0; k < capabilities.profileLevels.length; k++) {
+            CodecProfileLevel profileLevel = new CodecProfileLevel();
+            profileLevel.profile = input.readInt();
+            profileLevel.level = input.readInt();
+            capabilities.profileLevels[k] = profileLevel;
+          }
+          capabilities.colorFormats = new int[input.readInt()];
+          for (int k = 0; k < capabilities.colorFormats.length; k++) {
+            capabilities.colorFormats[k] = input.readInt();
+          }
+          decoderInfosForKey.add(new DecoderInfo(name, capabilities, adaptive));
+        }
+        decoderInfos.put(key, Collections.unmodifiableList(decoderInfosForKey));
+      }
+      return decoderInfos;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read decoder info cache", e);
+      return null;
+    } finally {
+      if (input != null) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          // Do nothing.
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes decoder information to a file, replacing any existing contents.
+   *
+   * @param file The file to write.
+   * @param fingerprint The build fingerprint of the device.
+   * @param decoderInfos The decoder information to write.
+   */
+  /* package */ static void writeDecoderInfos(File file, String fingerprint,
+      Map<CodecKey, List<DecoderInfo>> decoderInfos) {
+    File tempFile = new File(file.getPath() + CACHE_FILE_TEMP_SUFFIX);
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeInt(CACHE_FILE_VERSION);
+      output.writeUTF(fingerprint);
+      output.writeInt(decoderInfos.size());
+      for (Map.Entry<CodecKey, List<DecoderInfo>> entry : decoderInfos.entrySet()) {
+        output.writeUTF(entry.getKey().mimeType);
+        output.writeBoolean(entry.getKey().secure);
+        output.writeInt(entry.getValue().size());
+        for (DecoderInfo decoderInfo : entry.getValue()) {
+          output.writeUTF(decoderInfo.name);
+          output.writeBoolean(decoderInfo.adaptive);
+          CodecProfileLevel[] profileLevels = decoderInfo.capabilities.profileLevels;
+          if (profileLevels == null) {
+            output.writeInt(0);
+          } else {
+            output.writeInt(profileLevels.length);
+            for (CodecProfileLevel profileLevel : profileLevels) {
+              output.writeInt(profileLevel.profile);
+              output.writeInt(profileLevel.level);
+            }
+          }
+          int[] colorFormats = decoderInfo.capabilities.colorFormats;
+          if (colorFormats == null) {
+            output.writeInt(0);
+          } else {
+            output.writeInt(colorFormats.length);
+            for (int colorFormat : colorFormats) {
+              output.writeInt(colorFormat);
+            }
+          }
+        }
+      }
+      output.close();
+      output = null;
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Failed to rename " + tempFile + " to " + file);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write decoder info cache", e);
+      if (output != null) {
+        Util.closeQuietly(output);
+      }
+      tempFile.delete();
+    }
+  }
+
+  private static boolean haveSameDecoders(Map<CodecKey, List<DecoderInfo>> first,
+      Map<CodecKey, List<DecoderInfo>> second) {
+    if (first.size() != second.size()) {
+      return false;
+    }
+    for (Map.Entry<CodecKey, List<DecoderInfo>> entry : first.entrySet()) {
+      List<DecoderInfo> firstDecoderInfos = entry.getValue();
+      List<DecoderInfo> secondDecoderInfos = second.get(entry.getKey());
+      if (secondDecoderInfos == null || firstDecoderInfos.size() != secondDecoderInfos.size()) {
+        return false;
+      }
+      for (int i = 0; i < firstDecoderInfos.size(); i++) {
+        DecoderInfo firstDecoderInfo = firstDecoderInfos.get(i);
+        DecoderInfo secondDecoderInfo = secondDecoderInfos.get(i);
+        if (!firstDecoderInfo.name.equals(secondDecoderInfo.name)
+            || firstDecoderInfo.adaptive != secondDecoderInfo.adaptive) {
+          return false;
+        }
+      }
+    }
+    return true;
   }
 
   /**
@@ -468,7 +744,7 @@ public final class MediaCodecUtil {
 
   }
 
-  private static final class CodecKey {
+  /* package */ static final class CodecKey {
 
     public final String mimeType;
     public final boolean secure;
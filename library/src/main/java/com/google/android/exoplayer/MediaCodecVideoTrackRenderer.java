@@ -114,6 +114,7 @@ public class MediaCodecVideoTrackRenderer extends MediaCodecTrackRenderer {
   private long droppedFrameAccumulationStartTimeMs;
   private int droppedFrameCount;
   private int consecutiveDroppedFrameCount;
+  private long nextFrameReleaseDelayUs;
 
   private int pendingRotationDegrees;
   private float pendingPixelWidthHeightRatio;
@@ -199,8 +200,41 @@ public class MediaCodecVideoTrackRenderer extends MediaCodecTrackRenderer {
       MediaCodecSelector mediaCodecSelector, int videoScalingMode, long allowedJoiningTimeMs,
       DrmSessionManager drmSessionManager, boolean playClearSamplesWithoutKeys,
       Handler eventHandler, EventListener eventListener, int maxDroppedFrameCountToNotify) {
-    super(source, mediaCodecSelector, drmSessionManager, playClearSamplesWithoutKeys, eventHandler,
-        eventListener);
+    this(context, source, mediaCodecSelector, videoScalingMode, allowedJoiningTimeMs,
+        drmSessionManager, playClearSamplesWithoutKeys, eventHandler, eventListener,
+        maxDroppedFrameCountToNotify, null);
+  }
+
+  /**
+   * @param context A context.
+   * @param source The upstream source from which the renderer obtains samples.
+   * @param mediaCodecSelector A decoder selector.
+   * @param videoScalingMode The scaling mode to pass to
+   *     {@link MediaCodec#setVideoScalingMode(int)}.
+   * @param allowedJoiningTimeMs The maximum duration in milliseconds for which this video renderer
+   *     can attempt to seamlessly join an ongoing playback.
+   * @param drmSessionManager For use with encrypted content. May be null if support for encrypted
+   *     content is not required.
+   * @param playClearSamplesWithoutKeys Encrypted media may contain clear (un-encrypted) regions.
+   *     For example a media file may start with a short clear region so as to allow playback to
+   *     begin in parallel with key acquisision. This parameter specifies whether the renderer is
+   *     permitted to play clear regions of encrypted media files before {@code drmSessionManager}
+   *     has obtained the keys necessary to decrypt encrypted regions of the media.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param maxDroppedFrameCountToNotify The maximum number of frames that can be dropped between
+   *     invocations of {@link EventListener#onDroppedFrames(int, long)}.
+   * @param codecPool A pool from which decoders are acquired, and to which they are returned when
+   *     released. May be null if decoders should not be shared with other renderers.
+   */
+  public MediaCodecVideoTrackRenderer(Context context, SampleSource source,
+      MediaCodecSelector mediaCodecSelector, int videoScalingMode, long allowedJoiningTimeMs,
+      DrmSessionManager drmSessionManager, boolean playClearSamplesWithoutKeys,
+      Handler eventHandler, EventListener eventListener, int maxDroppedFrameCountToNotify,
+      MediaCodecPool codecPool) {
+    super(new SampleSource[] {source}, mediaCodecSelector, drmSessionManager,
+        playClearSamplesWithoutKeys, eventHandler, eventListener, codecPool);
     this.frameReleaseTimeHelper = new VideoFrameReleaseTimeHelper(context);
     this.videoScalingMode = videoScalingMode;
     this.allowedJoiningTimeUs = allowedJoiningTimeMs * 1000;
@@ -234,6 +268,20 @@ public class MediaCodecVideoTrackRenderer extends MediaCodecTrackRenderer {
     frameReleaseTimeHelper.enable();
   }
 
+  @Override
+  protected void doSomeWork(long positionUs, long elapsedRealtimeUs, boolean sourceIsReady)
+      throws ExoPlaybackException {
+    nextFrameReleaseDelayUs = C.UNKNOWN_TIME_US;
+    super.doSomeWork(positionUs, elapsedRealtimeUs, sourceIsReady);
+  }
+
+  @Override
+  protected long getMaxWorkDelayUs() {
+    // If we're holding a frame that's not due to be released yet, there's nothing to do until it is.
+    return nextFrameReleaseDelayUs != C.UNKNOWN_TIME_US ? nextFrameReleaseDelayUs
+        : super.getMaxWorkDelayUs();
+  }
+
   @Override
   protected void onDiscontinuity(long positionUs) throws ExoPlaybackException {
     super.onDiscontinuity(positionUs);
@@ -320,14 +368,27 @@ public class MediaCodecVideoTrackRenderer extends MediaCodecTrackRenderer {
     return super.shouldInitCodec() && surface != null && surface.isValid();
   }
 
+  @Override
+  protected Surface getCodecSurface() {
+    return surface;
+  }
+
   // Override configureCodec to provide the surface.
   @Override
   protected void configureCodec(MediaCodec codec, boolean codecIsAdaptive,
       android.media.MediaFormat format, MediaCrypto crypto) {
-    maybeSetMaxInputSize(format, codecIsAdaptive);
     codec.configure(format, surface, crypto, 0);
   }
 
+  @Override
+  protected android.media.MediaFormat getCodecConfigurationFormat(MediaFormat format,
+      boolean codecIsAdaptive) {
+    android.media.MediaFormat mediaFormat = super.getCodecConfigurationFormat(format,
+        codecIsAdaptive);
+    maybeSetMaxInputSize(mediaFormat, codecIsAdaptive);
+    return mediaFormat;
+  }
+
   @Override
   protected void onInputFormatChanged(MediaFormatHolder holder) throws ExoPlaybackException {
     super.onInputFormatChanged(holder);
@@ -431,6 +492,7 @@ public class MediaCodecVideoTrackRenderer extends MediaCodecTrackRenderer {
         consecutiveDroppedFrameCount = 0;
         return true;
       }
+      nextFrameReleaseDelayUs = earlyUs - 50000;
     } else {
       // We need to time the release ourselves.
       if (earlyUs < 30000) {
@@ -448,9 +510,10 @@ public class MediaCodecVideoTrackRenderer extends MediaCodecTrackRenderer {
         consecutiveDroppedFrameCount = 0;
         return true;
       }
+      nextFrameReleaseDelayUs = earlyUs - 30000;
     }
 
-    // We're either not playing, or it's not time to render the frame yet.
+    // It's not time to render the frame yet.
     return false;
   }
 
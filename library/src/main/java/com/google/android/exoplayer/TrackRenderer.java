@@ -44,6 +44,10 @@ public abstract class TrackRenderer implements ExoPlayerComponent {
    * Represents the time of the end of the track.
    */
   public static final long END_OF_TRACK_US = -3;
+  /**
+   * The default value returned by {@link #getMaxWorkDelayUs()}.
+   */
+  public static final long DEFAULT_MAX_WORK_DELAY_US = 10000;
 
   /**
    * The renderer has been released and should not be used.
@@ -319,6 +323,26 @@ public abstract class TrackRenderer implements ExoPlayerComponent {
   protected abstract void doSomeWork(long positionUs, long elapsedRealtimeUs)
       throws ExoPlaybackException;
 
+  /**
+   * Returns the maximum time that may elapse before {@link #doSomeWork(long, long)} is invoked
+   * again, given the state of the renderer following the most recent invocation.
+   * <p>
+   * The player sleeps until the shortest of the delays returned by its renderers has elapsed, or
+   * until its state changes. Renderers that know when they will next be able to make progress (for
+   * example because the next output buffer is not due to be released yet) should override this
+   * method so that the playback thread isn't woken up unnecessarily. The default implementation
+   * returns {@link #DEFAULT_MAX_WORK_DELAY_US}.
+   * <p>
+   * This method may be called when the renderer is in the following states:
+   * {@link #STATE_ENABLED}, {@link #STATE_STARTED}
+   *
+   * @return The maximum delay before the next invocation of {@link #doSomeWork(long, long)}, in
+   *     microseconds.
+   */
+  protected long getMaxWorkDelayUs() {
+    return DEFAULT_MAX_WORK_DELAY_US;
+  }
+
   /**
    * Throws an error that's preventing the renderer from making progress or buffering more data at
    * this point in time.
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.chunk;
+
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.List;
+
+/**
+ * A {@link FormatEvaluator} that selects formats primarily based on the duration of buffered
+ * media, using the BOLA algorithm, and falls back to selecting based on the estimated bandwidth
+ * when the buffer is short.
+ * <p>
+ * When at least {@code minBufferMs} of media is buffered, each format is given a score that
+ * trades off its utility, defined as the logarithm of its bitrate, against the risk of the buffer
+ * running out, and the format with the highest score is selected. The scores are scaled so that
+ * the highest quality format is selected once {@code targetBufferMs} of media is buffered. This
+ * makes switching down a natural consequence of the buffer draining, and avoids relying on the
+ * bandwidth estimate, which is often noisy.
+ * <p>
+ * Below {@code minBufferMs}, including at the start of playback and after seeking, the format is
+ * selected based on the bandwidth estimate, as for {@link FormatEvaluator.AdaptiveEvaluator}. So
+ * that the selection doesn't drop when the buffer then reaches {@code minBufferMs}, the evaluator
+ * adds a placeholder duration to the buffered duration used for scoring, chosen such that the
+ * format selected based on the bandwidth estimate would also have the highest score. The
+ * placeholder is reduced as the buffer grows, so that it's replaced by real buffer over time. The
+ * bandwidth estimate is also used to prevent switching up to a format that the network cannot
+ * sustain, which would otherwise cause the selection to oscillate.
+ *
+ * @see <a href="http://arxiv.org/abs/1601.06748">BOLA: Near-Optimal Bitrate Adaptation for Online
+ *     Videos</a>
+ */
+public final class BolaEvaluator implements FormatEvaluator {
+
+  public static final int DEFAULT_MAX_INITIAL_BITRATE = 800000;
+  public static final int DEFAULT_MIN_BUFFER_MS = 10000;
+  public static final int DEFAULT_TARGET_BUFFER_MS = 25000;
+  public static final float DEFAULT_BANDWIDTH_FRACTION = 0.75f;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final int maxInitialBitrate;
+  private final long minBufferUs;
+  private final long targetBufferUs;
+  private final float bandwidthFraction;
+
+  private Parameters parameters;
+  private long placeholderBufferUs;
+  private long lastBufferedDurationUs;
+
+  /**
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   */
+  public BolaEvaluator(BandwidthMeter bandwidthMeter) {
+    this(bandwidthMeter, DEFAULT_MAX_INITIAL_BITRATE, DEFAULT_MIN_BUFFER_MS,
+        DEFAULT_TARGET_BUFFER_MS, DEFAULT_BANDWIDTH_FRACTION);
+  }
+
+  /**
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param maxInitialBitrate The maximum bitrate in bits per second that should be assumed
+   *     when bandwidthMeter cannot provide an estimate due to playback having only just started.
+   * @param minBufferMs The duration of buffered media below which formats are selected based on
+   *     the bandwidth estimate rather than the buffer.
+   * @param targetBufferMs The duration of buffered media at which the highest quality format is
+   *     selected. Should be greater than {@code minBufferMs}, and should not exceed the duration
+   *     of media that the {@link com.google.android.exoplayer.LoadControl} allows to be buffered.
+   * @param bandwidthFraction The fraction of the available bandwidth that the evaluator should
+   *     consider available for use.
+   */
+  public BolaEvaluator(BandwidthMeter bandwidthMeter, int maxInitialBitrate, int minBufferMs,
+      int targetBufferMs, float bandwidthFraction) {
+    Assertions.checkArgument(targetBufferMs > minBufferMs);
+    this.bandwidthMeter = bandwidthMeter;
+    this.maxInitialBitrate = maxInitialBitrate;
+    this.minBufferUs = minBufferMs * 1000L;
+    this.targetBufferUs = targetBufferMs * 1000L;
+    this.bandwidthFraction = bandwidthFraction;
+  }
+
+  @Override
+  public void enable() {
+    placeholderBufferUs = 0;
+    lastBufferedDurationUs = 0;
+  }
+
+  @Override
+  public void disable() {
+    parameters = null;
+  }
+
+  @Override
+  public void evaluate(List<? extends MediaChunk> queue, long playbackPositionUs,
+      Format[] formats, Evaluation evaluation) {
+    long bufferedDurationUs = queue.isEmpty() ? 0
+        : queue.get(queue.size() - 1).endTimeUs - playbackPositionUs;
+    Format current = evaluation.format;
+    int throughputIndex = getThroughputFormatIndex(formats);
+    if (parameters == null || parameters.formats != formats) {
+      parameters = new Parameters(formats, minBufferUs, targetBufferUs);
+    }
+    int idealIndex;
+    if (current == null || bufferedDurationUs < minBufferUs) {
+      idealIndex = throughputIndex;
+      placeholderBufferUs = Math.max(0,
+          parameters.getMinBufferedDurationUs(idealIndex) - bufferedDurationUs);
+    } else {
+      if (bufferedDurationUs > lastBufferedDurationUs) {
+        placeholderBufferUs = Math.max(0,
+            placeholderBufferUs - (bufferedDurationUs - lastBufferedDurationUs));
+      }
+      idealIndex = parameters.getBestFormatIndex(bufferedDurationUs + placeholderBufferUs);
+      Format ideal = formats[idealIndex];
+      if (ideal.bitrate > current.bitrate && ideal.bitrate > formats[throughputIndex].bitrate) {
+        // The buffer is long enough to switch up, but the network can't sustain the selected
+        // format. Switch up only as far as the network allows, which avoids repeatedly switching
+        // up and then back down as the buffer drains. Reduce the placeholder accordingly.
+        idealIndex = formats[throughputIndex].bitrate > current.bitrate ? throughputIndex
+            : getFormatIndex(formats, current);
+        placeholderBufferUs = Math.max(0, Math.min(placeholderBufferUs,
+            parameters.getMinBufferedDurationUs(idealIndex) - bufferedDurationUs));
+      }
+    }
+    lastBufferedDurationUs = bufferedDurationUs;
+    Format ideal = formats[idealIndex];
+    if (current != null && ideal != current) {
+      evaluation.trigger = Chunk.TRIGGER_ADAPTIVE;
+    }
+    evaluation.format = ideal;
+  }
+
+  /**
+   * Returns the index of the highest quality format that can be sustained by the estimated
+   * bandwidth.
+   */
+  private int getThroughputFormatIndex(Format[] formats) {
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    long effectiveBitrate = bitrateEstimate == BandwidthMeter.NO_ESTIMATE
+        ? maxInitialBitrate : (long) (bitrateEstimate * bandwidthFraction);
+    for (int i = 0; i < formats.length; i++) {
+      if (formats[i].bitrate <= effectiveBitrate) {
+        return i;
+      }
+    }
+    return formats.length - 1;
+  }
+
+  private static int getFormatIndex(Format[] formats, Format format) {
+    for (int i = 0; i < formats.length; i++) {
+      if (formats[i] == format) {
+        return i;
+      }
+    }
+    // The current format is no longer available. Fall back to the lowest quality.
+    return formats.length - 1;
+  }
+
+  /**
+   * The BOLA parameters for a set of formats.
+   */
+  private static final class Parameters {
+
+    public final Format[] formats;
+
+    private final double[] utilities;
+    private final double gp;
+    private final double v;
+
+    public Parameters(Format[] formats, long minBufferUs, long targetBufferUs) {
+      this.formats = formats;
+      // Utilities are relative to the lowest quality format, which has a utility of 1.
+      double minBitrate = formats[formats.length - 1].bitrate;
+      utilities = new double[formats.length];
+      for (int i = 0; i < formats.length; i++) {
+        utilities[i] = Math.log(formats[i].bitrate / minBitrate) + 1;
+      }
+      // Choose the parameters so that the lowest quality format is selected below minBufferUs and
+      // the highest quality format above targetBufferUs.
+      double minBufferS = minBufferUs / 1000000d;
+      double targetBufferS = targetBufferUs / 1000000d;
+      gp = Math.max(utilities[0] - 1, Double.MIN_VALUE) / (targetBufferS / minBufferS - 1);
+      v = minBufferS / gp;
+    }
+
+    /**
+     * Returns the index of the format with the highest score for the given buffered duration.
+     */
+    public int getBestFormatIndex(long bufferedDurationUs) {
+      double bufferedDurationS = bufferedDurationUs / 1000000d;
+      int bestIndex = formats.length - 1;
+      double bestScore = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < formats.length; i++) {
+        double score = (v * (utilities[i] + gp) - bufferedDurationS) / formats[i].bitrate;
+        if (score > bestScore) {
+          bestScore = score;
+          bestIndex = i;
+        }
+      }
+      return bestIndex;
+    }
+
+    /**
+     * Returns the buffered duration above which the format at the specified index has a higher
+     * score than the next lower quality format.
+     */
+    public long getMinBufferedDurationUs(int index) {
+      if (index == formats.length - 1) {
+        return 0;
+      }
+      double bitrate = formats[index].bitrate;
+      double lowerBitrate = formats[index + 1].bitrate;
+      if (bitrate <= lowerBitrate) {
+        return getMinBufferedDurationUs(index + 1);
+      }
+      double thresholdS = v * (bitrate * (utilities[index + 1] + gp)
+          - lowerBitrate * (utilities[index] + gp)) / (bitrate - lowerBitrate);
+      return (long) (thresholdS * 1000000);
+    }
+
+  }
+
+}
@@ -160,6 +160,7 @@ public interface FormatEvaluator {
     public static final int DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS = 25000;
     public static final int DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS = 25000;
     public static final float DEFAULT_BANDWIDTH_FRACTION = 0.75f;
+    public static final float DEFAULT_UP_SWITCH_STANDARD_DEVIATIONS = 1f;
 
     private final BandwidthMeter bandwidthMeter;
 
@@ -168,6 +169,7 @@ public interface FormatEvaluator {
     private final long maxDurationForQualityDecreaseUs;
     private final long minDurationToRetainAfterDiscardUs;
     private final float bandwidthFraction;
+    private final float upSwitchStandardDeviations;
 
     /**
      * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
@@ -201,12 +203,44 @@ public interface FormatEvaluator {
         int maxDurationForQualityDecreaseMs,
         int minDurationToRetainAfterDiscardMs,
         float bandwidthFraction) {
+      this(bandwidthMeter, maxInitialBitrate, minDurationForQualityIncreaseMs,
+          maxDurationForQualityDecreaseMs, minDurationToRetainAfterDiscardMs, bandwidthFraction,
+          DEFAULT_UP_SWITCH_STANDARD_DEVIATIONS);
+    }
+
+    /**
+     * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+     * @param maxInitialBitrate The maximum bitrate in bits per second that should be assumed
+     *     when bandwidthMeter cannot provide an estimate due to playback having only just started.
+     * @param minDurationForQualityIncreaseMs The minimum duration of buffered data required for
+     *     the evaluator to consider switching to a higher quality format.
+     * @param maxDurationForQualityDecreaseMs The maximum duration of buffered data required for
+     *     the evaluator to consider switching to a lower quality format.
+     * @param minDurationToRetainAfterDiscardMs When switching to a significantly higher quality
+     *     format, the evaluator may discard some of the media that it has already buffered at the
+     *     lower quality, so as to switch up to the higher quality faster. This is the minimum
+     *     duration of media that must be retained at the lower quality.
+     * @param bandwidthFraction The fraction of the available bandwidth that the evaluator should
+     *     consider available for use. Setting to a value less than 1 is recommended to account
+     *     for inaccuracies in the bandwidth estimator.
+     * @param upSwitchStandardDeviations When bandwidthMeter reports the standard deviation of its
+     *     estimate, the evaluator will only switch to a higher quality format if it is sustainable
+     *     at the estimate minus this many standard deviations. Switching down is unaffected.
+     */
+    public AdaptiveEvaluator(BandwidthMeter bandwidthMeter,
+        int maxInitialBitrate,
+        int minDurationForQualityIncreaseMs,
+        int maxDurationForQualityDecreaseMs,
+        int minDurationToRetainAfterDiscardMs,
+        float bandwidthFraction,
+        float upSwitchStandardDeviations) {
       this.bandwidthMeter = bandwidthMeter;
       this.maxInitialBitrate = maxInitialBitrate;
       this.minDurationForQualityIncreaseUs = minDurationForQualityIncreaseMs * 1000L;
       this.maxDurationForQualityDecreaseUs = maxDurationForQualityDecreaseMs * 1000L;
       this.minDurationToRetainAfterDiscardUs = minDurationToRetainAfterDiscardMs * 1000L;
       this.bandwidthFraction = bandwidthFraction;
+      this.upSwitchStandardDeviations = upSwitchStandardDeviations;
     }
 
     @Override
@@ -225,7 +259,11 @@ public interface FormatEvaluator {
       long bufferedDurationUs = queue.isEmpty() ? 0
           : queue.get(queue.size() - 1).endTimeUs - playbackPositionUs;
       Format current = evaluation.format;
-      Format ideal = determineIdealFormat(formats, bandwidthMeter.getBitrateEstimate());
+      long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+      Format ideal = determineIdealFormat(formats, bitrateEstimate);
+      if (ideal != null && current != null && ideal.bitrate > current.bitrate) {
+        ideal = determineSustainableHigherFormat(formats, bitrateEstimate, current, ideal);
+      }
       boolean isHigher = ideal != null && current != null && ideal.bitrate > current.bitrate;
       boolean isLower = ideal != null && current != null && ideal.bitrate < current.bitrate;
       if (isHigher) {
@@ -263,6 +301,25 @@ public interface FormatEvaluator {
       evaluation.format = ideal;
     }
 
+    /**
+     * Given an ideal format of a higher quality than the current one, returns the highest quality
+     * format that would still be sustainable if the available bandwidth were lower than estimated
+     * by {@link #upSwitchStandardDeviations} standard deviations, or the current format if no
+     * higher quality format would be.
+     */
+    private Format determineSustainableHigherFormat(Format[] formats, long bitrateEstimate,
+        Format current, Format ideal) {
+      long standardDeviation = bandwidthMeter.getBitrateStandardDeviation();
+      if (bitrateEstimate == BandwidthMeter.NO_ESTIMATE
+          || standardDeviation == BandwidthMeter.NO_ESTIMATE) {
+        return ideal;
+      }
+      long conservativeEstimate = Math.max(0,
+          bitrateEstimate - (long) (standardDeviation * upSwitchStandardDeviations));
+      Format conservative = determineIdealFormat(formats, conservativeEstimate);
+      return conservative.bitrate > current.bitrate ? conservative : current;
+    }
+
     /**
      * Compute the ideal format ignoring buffer health.
      */
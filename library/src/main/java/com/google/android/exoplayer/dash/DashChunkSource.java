@@ -46,6 +46,7 @@ import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
 import com.google.android.exoplayer.extractor.webm.WebmExtractor;
 import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.PrefetchDataSource;
 import com.google.android.exoplayer.util.Clock;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.MimeTypes;
@@ -497,6 +498,31 @@ public class DashChunkSource implements ChunkSource, Output {
         mediaFormat, enabledTrack, segmentNum, evaluation.trigger);
     lastChunkWasInitialization = false;
     out.chunk = nextMediaChunk;
+    if (dataSource instanceof PrefetchDataSource) {
+      prefetchSegments((PrefetchDataSource) dataSource, representationHolder,
+          nextMediaChunk.dataSpec, segmentNum + 1);
+    }
+  }
+
+  /**
+   * Requests that the segments following a chunk are prefetched, so that the latency of requesting
+   * them overlaps with the loading of the chunk. Segments that are not yet available, and segments
+   * of other representations that were previously prefetched, are not prefetched. A prefetch of
+   * the chunk itself is retained, since the chunk will be opened next.
+   */
+  private void prefetchSegments(PrefetchDataSource prefetchDataSource,
+      RepresentationHolder representationHolder, DataSpec chunkDataSpec, int firstSegmentNum) {
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>();
+    int maxPrefetchCount = prefetchDataSource.getMaxPrefetchCount();
+    for (int segmentNum = firstSegmentNum; dataSpecs.size() < maxPrefetchCount
+        && !representationHolder.isBeyondLastSegment(segmentNum); segmentNum++) {
+      if (currentManifest.dynamic
+          && representationHolder.getSegmentEndTimeUs(segmentNum) > availableRangeValues[1]) {
+        break;
+      }
+      dataSpecs.add(getSegmentDataSpec(representationHolder, segmentNum));
+    }
+    prefetchDataSource.prefetch(chunkDataSpec, dataSpecs);
   }
 
   @Override
@@ -543,6 +569,9 @@ public class DashChunkSource implements ChunkSource, Output {
     if (manifestFetcher != null) {
       manifestFetcher.disable();
     }
+    if (dataSource instanceof PrefetchDataSource) {
+      ((PrefetchDataSource) dataSource).prefetch(Collections.<DataSpec>emptyList());
+    }
     periodHolders.clear();
     evaluation.format = null;
     availableRange = null;
@@ -699,9 +728,7 @@ public class DashChunkSource implements ChunkSource, Output {
     Format format = representation.format;
     long startTimeUs = representationHolder.getSegmentStartTimeUs(segmentNum);
     long endTimeUs = representationHolder.getSegmentEndTimeUs(segmentNum);
-    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
-    DataSpec dataSpec = new DataSpec(segmentUri.getUri(), segmentUri.start, segmentUri.length,
-        representation.getCacheKey());
+    DataSpec dataSpec = getSegmentDataSpec(representationHolder, segmentNum);
 
     long sampleOffsetUs = periodHolder.startTimeUs - representation.presentationTimeOffsetUs;
     if (mimeTypeIsRawText(format.mimeType)) {
@@ -717,6 +744,13 @@ public class DashChunkSource implements ChunkSource, Output {
     }
   }
 
+  private static DataSpec getSegmentDataSpec(RepresentationHolder representationHolder,
+      int segmentNum) {
+    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
+    return new DataSpec(segmentUri.getUri(), segmentUri.start, segmentUri.length,
+        representationHolder.representation.getCacheKey());
+  }
+
   private long getNowUnixTimeUs() {
     if (elapsedRealtimeOffsetUs != 0) {
       return (systemClock.elapsedRealtime() * 1000) + elapsedRealtimeOffsetUs;
@@ -892,6 +926,12 @@ public class DashChunkSource implements ChunkSource, Output {
 
     public void updateRepresentation(long newPeriodDurationUs, Representation newRepresentation)
         throws BehindLiveWindowException{
+      if (newRepresentation == representation) {
+        // The parser reused the representation because it's unchanged, and so is its index.
+        periodDurationUs = newPeriodDurationUs;
+        return;
+      }
+
       DashSegmentIndex oldIndex = representation.getIndex();
       DashSegmentIndex newIndex = newRepresentation.getIndex();
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.RangedUri;
+import com.google.android.exoplayer.dash.mpd.Representation;
+import com.google.android.exoplayer.dash.mpd.Representation.SingleSegmentRepresentation;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CacheDownloader;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility methods for downloading DASH content with a {@link CacheDownloader}.
+ */
+public final class DashDownloadUtil {
+
+  private DashDownloadUtil() {}
+
+  /**
+   * Returns the requests that download the given representations of a static manifest.
+   * <p>
+   * Requests for byte ranges are made under the cache key of their representation, as they are by
+   * {@link DashChunkSource}, so that the downloaded data is read from the cache during playback.
+   * Segments of unknown length are stored under their URI, since each is a separate resource.
+   *
+   * @param manifest The manifest, which must not be dynamic.
+   * @param periodIndex The index of the period to which the representations belong.
+   * @param representations The representations to download.
+   * @return The requests.
+   */
+  public static List<DataSpec> getDataSpecs(MediaPresentationDescription manifest,
+      int periodIndex, List<Representation> representations) {
+    Assertions.checkArgument(!manifest.dynamic);
+    long periodDurationMs = manifest.getPeriodDuration(periodIndex);
+    long periodDurationUs = periodDurationMs == -1 ? C.UNKNOWN_TIME_US : periodDurationMs * 1000;
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>();
+    for (int i = 0; i < representations.size(); i++) {
+      Representation representation = representations.get(i);
+      String cacheKey = representation.getCacheKey();
+      if (representation instanceof SingleSegmentRepresentation) {
+        // The initialization data, index and media are all held in a single resource.
+        SingleSegmentRepresentation singleSegmentRepresentation =
+            (SingleSegmentRepresentation) representation;
+        dataSpecs.add(new DataSpec(singleSegmentRepresentation.uri, 0,
+            singleSegmentRepresentation.contentLength, cacheKey));
+        continue;
+      }
+      RangedUri initializationUri = representation.getInitializationUri();
+      if (initializationUri != null) {
+        dataSpecs.add(buildDataSpec(initializationUri, cacheKey));
+      }
+      DashSegmentIndex segmentIndex = representation.getIndex();
+      int lastSegmentNum = segmentIndex.getLastSegmentNum(periodDurationUs);
+      Assertions.checkState(lastSegmentNum != DashSegmentIndex.INDEX_UNBOUNDED);
+      for (int j = segmentIndex.getFirstSegmentNum(); j <= lastSegmentNum; j++) {
+        dataSpecs.add(buildDataSpec(segmentIndex.getSegmentUrl(j), cacheKey));
+      }
+    }
+    return dataSpecs;
+  }
+
+  private static DataSpec buildDataSpec(RangedUri rangedUri, String cacheKey) {
+    return new DataSpec(rangedUri.getUri(), rangedUri.start, rangedUri.length,
+        rangedUri.length == C.LENGTH_UNBOUNDED ? null : cacheKey);
+  }
+
+}
@@ -17,9 +17,10 @@ package com.google.android.exoplayer.dash.mpd;
 
 import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.dash.mpd.Representation.SingleSegmentRepresentation;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.MultiSegmentBase;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentList;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
-import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimelineElement;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SingleSegmentBase;
 import com.google.android.exoplayer.drm.DrmInitData.SchemeInitData;
 import com.google.android.exoplayer.extractor.mp4.PsshAtomUtil;
@@ -53,6 +54,9 @@ import java.util.regex.Pattern;
 
 /**
  * A parser of media presentation description files.
+ * <p>
+ * Instances hold state between calls to {@code parse} (e.g. the most recently parsed dynamic
+ * manifest), and so must not be used to parse more than one manifest at a time.
  */
 public class MediaPresentationDescriptionParser extends DefaultHandler
     implements UriLoadable.Parser<MediaPresentationDescription> {
@@ -64,6 +68,12 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
   private final String contentId;
   private final XmlPullParserFactory xmlParserFactory;
 
+  private SegmentTimeline lastSegmentTimeline;
+  private MediaPresentationDescription lastDynamicManifest;
+  private MediaPresentationDescription previousManifest;
+  // The segment timelines of previousManifest. Lazily initialized.
+  private List<SegmentTimeline> previousSegmentTimelines;
+
   /**
    * Equivalent to calling {@code new MediaPresentationDescriptionParser(null)}.
    */
@@ -87,9 +97,38 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   // MPD parsing.
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If the most recent manifest parsed by this instance was dynamic, it's used as the previous
+   * manifest, as described in {@link #parse(String, InputStream, MediaPresentationDescription)}.
+   */
   @Override
   public MediaPresentationDescription parse(String connectionUrl, InputStream inputStream)
       throws IOException, ParserException {
+    return parse(connectionUrl, inputStream, lastDynamicManifest);
+  }
+
+  /**
+   * Parses a manifest, reusing unchanged parts of a previously loaded version of it.
+   * <p>
+   * Periods, adaptation sets and representations that are unchanged in the parsed manifest are
+   * replaced by the corresponding instances from {@code previousManifest}. Unchanged parts of the
+   * manifest are then not duplicated in memory each time a dynamic manifest is refreshed, and
+   * users of the manifest can skip updating state derived from them (e.g. segment indices) by
+   * comparing instances. A segment timeline that extends one in {@code previousManifest} is built
+   * by appending the new segments to it.
+   *
+   * @param connectionUrl The url, or if redirection was performed, the redirected url.
+   * @param inputStream An {@link InputStream} from which the manifest data can be read.
+   * @param previousManifest The previously loaded version of the manifest, or null.
+   * @return The parsed manifest.
+   * @throws IOException If an error occurs reading the data.
+   * @throws ParserException If an error occurs parsing the data.
+   */
+  public MediaPresentationDescription parse(String connectionUrl, InputStream inputStream,
+      MediaPresentationDescription previousManifest) throws IOException, ParserException {
+    this.previousManifest = previousManifest;
     try {
       XmlPullParser xpp = xmlParserFactory.newPullParser();
       xpp.setInput(inputStream, null);
@@ -98,11 +137,17 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
         throw new ParserException(
             "inputStream does not contain a valid media presentation description");
       }
-      return parseMediaPresentationDescription(xpp, connectionUrl);
+      MediaPresentationDescription manifest =
+          parseMediaPresentationDescription(xpp, connectionUrl);
+      lastDynamicManifest = manifest.dynamic ? manifest : null;
+      return manifest;
     } catch (XmlPullParserException e) {
       throw new ParserException(e);
     } catch (ParseException e) {
       throw new ParserException(e);
+    } finally {
+      this.previousManifest = null;
+      previousSegmentTimelines = null;
     }
   }
 
@@ -165,6 +210,10 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
       throw new ParserException("No periods found.");
     }
 
+    if (previousManifest != null) {
+      reusePreviousPeriods(periods, previousManifest);
+    }
+
     return buildMediaPresentationDescription(availabilityStartTime, durationMs, minBufferTimeMs,
         dynamic, minUpdateTimeMs, timeShiftBufferDepthMs, utcTiming, location, periods);
   }
@@ -466,7 +515,7 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
     int startNumber = parseInt(xpp, "startNumber", parent != null ? parent.startNumber : 1);
 
     RangedUri initialization = null;
-    List<SegmentTimelineElement> timeline = null;
+    SegmentTimeline timeline = null;
     List<RangedUri> segments = null;
 
     do {
@@ -495,7 +544,7 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   protected SegmentList buildSegmentList(RangedUri initialization, long timescale,
       long presentationTimeOffset, int startNumber, long duration,
-      List<SegmentTimelineElement> timeline, List<RangedUri> segments) {
+      SegmentTimeline timeline, List<RangedUri> segments) {
     return new SegmentList(initialization, timescale, presentationTimeOffset,
         startNumber, duration, timeline, segments);
   }
@@ -514,7 +563,7 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
         parent != null ? parent.initializationTemplate : null);
 
     RangedUri initialization = null;
-    List<SegmentTimelineElement> timeline = null;
+    SegmentTimeline timeline = null;
 
     do {
       xpp.next();
@@ -536,33 +585,98 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   protected SegmentTemplate buildSegmentTemplate(RangedUri initialization, long timescale,
       long presentationTimeOffset, int startNumber, long duration,
-      List<SegmentTimelineElement> timeline, UrlTemplate initializationTemplate,
+      SegmentTimeline timeline, UrlTemplate initializationTemplate,
       UrlTemplate mediaTemplate, String baseUrl) {
     return new SegmentTemplate(initialization, timescale, presentationTimeOffset,
         startNumber, duration, timeline, initializationTemplate, mediaTemplate, baseUrl);
   }
 
-  protected List<SegmentTimelineElement> parseSegmentTimeline(XmlPullParser xpp)
+  protected SegmentTimeline parseSegmentTimeline(XmlPullParser xpp)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    // A timeline from the previous manifest, and the number of its segments that are the same as
+    // those parsed so far. The builder is only created once the parsed segments differ from or
+    // extend beyond those of the previous timeline.
+    SegmentTimeline previousTimeline = null;
+    int matchedSegmentCount = 0;
+    SegmentTimeline.Builder builder = null;
     long elapsedTime = 0;
     do {
       xpp.next();
       if (ParserUtil.isStartTag(xpp, "S")) {
         elapsedTime = parseLong(xpp, "t", elapsedTime);
         long duration = parseLong(xpp, "d");
-        int count = 1 + parseInt(xpp, "r", 0);
-        for (int i = 0; i < count; i++) {
-          segmentTimeline.add(buildSegmentTimelineElement(elapsedTime, duration));
-          elapsedTime += duration;
+        int count = Math.max(0, 1 + parseInt(xpp, "r", 0));
+        int skippedCount = 0;
+        if (builder == null) {
+          if (previousTimeline == null) {
+            previousTimeline = findPreviousSegmentTimeline(elapsedTime, duration, count);
+          }
+          int matchingCount = previousTimeline == null ? -1
+              : previousTimeline.getMatchingSegmentCount(matchedSegmentCount, elapsedTime,
+                  duration, count);
+          if (matchingCount != -1) {
+            matchedSegmentCount += matchingCount;
+            skippedCount = matchingCount;
+          }
+          if (matchingCount != count) {
+            builder = previousTimeline == null ? new SegmentTimeline.Builder()
+                : new SegmentTimeline.Builder(previousTimeline, matchedSegmentCount);
+          }
+        }
+        if (builder != null) {
+          builder.add(elapsedTime + duration * skippedCount, duration, count - skippedCount);
         }
+        elapsedTime += duration * count;
       }
     } while (!ParserUtil.isEndTag(xpp, "SegmentTimeline"));
-    return segmentTimeline;
+    if (builder == null) {
+      if (previousTimeline != null
+          && matchedSegmentCount == previousTimeline.getSegmentCount()) {
+        // The timeline is unchanged.
+        lastSegmentTimeline = previousTimeline;
+        return previousTimeline;
+      }
+      builder = previousTimeline == null ? new SegmentTimeline.Builder()
+          : new SegmentTimeline.Builder(previousTimeline, matchedSegmentCount);
+    }
+    return buildSegmentTimeline(builder);
+  }
+
+  /**
+   * Returns a segment timeline of the previous manifest whose first segments are the same as the
+   * specified segments, or null.
+   */
+  private SegmentTimeline findPreviousSegmentTimeline(long startTime, long duration, int count) {
+    if (previousManifest == null) {
+      return null;
+    }
+    if (previousSegmentTimelines == null) {
+      previousSegmentTimelines = getSegmentTimelines(previousManifest);
+    }
+    // Timelines that are still growing are normally in the last period, so search from the end.
+    for (int i = previousSegmentTimelines.size() - 1; i >= 0; i--) {
+      SegmentTimeline timeline = previousSegmentTimelines.get(i);
+      if (timeline.getMatchingSegmentCount(0, startTime, duration, count) != -1) {
+        return timeline;
+      }
+    }
+    return null;
   }
 
-  protected SegmentTimelineElement buildSegmentTimelineElement(long elapsedTime, long duration) {
-    return new SegmentTimelineElement(elapsedTime, duration);
+  /**
+   * Builds a {@link SegmentTimeline}.
+   * <p>
+   * Representations in an adaptation set often declare identical timelines. If the timeline is
+   * equal to the one most recently built by this parser, the existing instance is returned so that
+   * it's shared rather than duplicated.
+   */
+  protected SegmentTimeline buildSegmentTimeline(SegmentTimeline.Builder builder) {
+    SegmentTimeline segmentTimeline = builder.build();
+    if (segmentTimeline.equals(lastSegmentTimeline)) {
+      return lastSegmentTimeline;
+    }
+    lastSegmentTimeline = segmentTimeline;
+    return segmentTimeline;
   }
 
   protected UrlTemplate parseUrlTemplate(XmlPullParser xpp, String name,
@@ -620,6 +734,156 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
     return audioChannels;
   }
 
+  // Reuse of unchanged objects from the previous manifest.
+
+  /**
+   * Returns whether a representation from the previous manifest can be used in place of a newly
+   * parsed representation with the same format id. Subclasses that build representations holding
+   * additional state should override this method to compare that state.
+   *
+   * @param representation The newly parsed representation.
+   * @param previousRepresentation The representation from the previous manifest.
+   * @return Whether {@code previousRepresentation} is equivalent to {@code representation}.
+   */
+  protected boolean canReuseRepresentation(Representation representation,
+      Representation previousRepresentation) {
+    if (representation.getClass() != previousRepresentation.getClass()
+        || representation.revisionId != previousRepresentation.revisionId
+        || !Util.areEqual(representation.contentId, previousRepresentation.contentId)
+        || !representation.getCacheKey().equals(previousRepresentation.getCacheKey())
+        || !isSameFormat(representation.format, previousRepresentation.format)
+        || !representation.getSegmentBase().equals(previousRepresentation.getSegmentBase())) {
+      return false;
+    }
+    return !(representation instanceof SingleSegmentRepresentation)
+        || ((SingleSegmentRepresentation) representation).contentLength
+            == ((SingleSegmentRepresentation) previousRepresentation).contentLength;
+  }
+
+  private static List<SegmentTimeline> getSegmentTimelines(MediaPresentationDescription manifest) {
+    List<SegmentTimeline> timelines = new ArrayList<>();
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      for (AdaptationSet adaptationSet : manifest.getPeriod(i).adaptationSets) {
+        for (Representation representation : adaptationSet.representations) {
+          SegmentBase segmentBase = representation.getSegmentBase();
+          SegmentTimeline timeline = segmentBase instanceof MultiSegmentBase
+              ? ((MultiSegmentBase) segmentBase).segmentTimeline : null;
+          // Representations in an adaptation set often share a timeline, so it's only added once.
+          if (timeline != null
+              && (timelines.isEmpty() || timelines.get(timelines.size() - 1) != timeline)) {
+            timelines.add(timeline);
+          }
+        }
+      }
+    }
+    return timelines;
+  }
+
+  /**
+   * Replaces periods in {@code periods} with those of {@code previousManifest} where they are
+   * unchanged. Changed periods are rebuilt to reuse any unchanged adaptation sets and
+   * representations.
+   */
+  private void reusePreviousPeriods(List<Period> periods,
+      MediaPresentationDescription previousManifest) {
+    int previousPeriodCount = previousManifest.getPeriodCount();
+    int nextPreviousPeriodIndex = 0;
+    for (int i = 0; i < periods.size(); i++) {
+      Period period = periods.get(i);
+      // Periods are ordered by start time, so the search can resume after the last match.
+      for (int j = nextPreviousPeriodIndex; j < previousPeriodCount; j++) {
+        Period previousPeriod = previousManifest.getPeriod(j);
+        if (period.startMs == previousPeriod.startMs
+            && Util.areEqual(period.id, previousPeriod.id)) {
+          periods.set(i, reusePreviousPeriod(period, previousPeriod));
+          nextPreviousPeriodIndex = j + 1;
+          break;
+        }
+      }
+    }
+  }
+
+  private Period reusePreviousPeriod(Period period, Period previousPeriod) {
+    List<AdaptationSet> adaptationSets = period.adaptationSets;
+    List<AdaptationSet> previousAdaptationSets = previousPeriod.adaptationSets;
+    List<AdaptationSet> mergedAdaptationSets = new ArrayList<>(adaptationSets.size());
+    boolean reusedAll = adaptationSets.size() == previousAdaptationSets.size();
+    boolean reusedAny = false;
+    for (int i = 0; i < adaptationSets.size(); i++) {
+      AdaptationSet adaptationSet = adaptationSets.get(i);
+      AdaptationSet mergedAdaptationSet = adaptationSet;
+      // Adaptation sets are matched by position, which is stable between refreshes.
+      if (i < previousAdaptationSets.size()) {
+        AdaptationSet previousAdaptationSet = previousAdaptationSets.get(i);
+        if (adaptationSet.id == previousAdaptationSet.id
+            && adaptationSet.type == previousAdaptationSet.type) {
+          mergedAdaptationSet = reusePreviousAdaptationSet(adaptationSet, previousAdaptationSet);
+        }
+      }
+      reusedAll = reusedAll && mergedAdaptationSet == previousAdaptationSets.get(i);
+      reusedAny |= mergedAdaptationSet != adaptationSet;
+      mergedAdaptationSets.add(mergedAdaptationSet);
+    }
+    return reusedAll ? previousPeriod : !reusedAny ? period
+        : buildPeriod(period.id, period.startMs, mergedAdaptationSets);
+  }
+
+  private AdaptationSet reusePreviousAdaptationSet(AdaptationSet adaptationSet,
+      AdaptationSet previousAdaptationSet) {
+    List<Representation> representations = adaptationSet.representations;
+    List<Representation> previousRepresentations = previousAdaptationSet.representations;
+    List<Representation> mergedRepresentations = new ArrayList<>(representations.size());
+    boolean reusedAll = representations.size() == previousRepresentations.size()
+        && adaptationSet.contentProtections.equals(previousAdaptationSet.contentProtections);
+    boolean reusedAny = false;
+    for (int i = 0; i < representations.size(); i++) {
+      Representation representation = representations.get(i);
+      Representation mergedRepresentation = representation;
+      Representation previousRepresentation =
+          getRepresentation(previousRepresentations, i, representation.format.id);
+      if (previousRepresentation != null
+          && canReuseRepresentation(representation, previousRepresentation)) {
+        mergedRepresentation = previousRepresentation;
+        reusedAny = true;
+      }
+      reusedAll = reusedAll && mergedRepresentation == previousRepresentations.get(i);
+      mergedRepresentations.add(mergedRepresentation);
+    }
+    return reusedAll ? previousAdaptationSet : !reusedAny ? adaptationSet
+        : buildAdaptationSet(adaptationSet.id, adaptationSet.type, mergedRepresentations,
+            adaptationSet.contentProtections);
+  }
+
+  /**
+   * Returns the representation in {@code representations} with the specified format id, or null.
+   * The representation at {@code expectedIndex} is checked first.
+   */
+  private static Representation getRepresentation(List<Representation> representations,
+      int expectedIndex, String formatId) {
+    if (expectedIndex < representations.size()
+        && representations.get(expectedIndex).format.id.equals(formatId)) {
+      return representations.get(expectedIndex);
+    }
+    for (int i = 0; i < representations.size(); i++) {
+      Representation representation = representations.get(i);
+      if (representation.format.id.equals(formatId)) {
+        return representation;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isSameFormat(Format format, Format otherFormat) {
+    return format.id.equals(otherFormat.id) && format.bitrate == otherFormat.bitrate
+        && format.width == otherFormat.width && format.height == otherFormat.height
+        && format.frameRate == otherFormat.frameRate
+        && format.audioChannels == otherFormat.audioChannels
+        && format.audioSamplingRate == otherFormat.audioSamplingRate
+        && Util.areEqual(format.mimeType, otherFormat.mimeType)
+        && Util.areEqual(format.codecs, otherFormat.codecs)
+        && Util.areEqual(format.language, otherFormat.language);
+  }
+
   // Utility methods.
 
   /**
@@ -146,6 +146,11 @@ public abstract class Representation implements FormatWrapper {
     return cacheKey;
   }
 
+  /**
+   * Gets the {@link SegmentBase} from which the representation was constructed.
+   */
+  /* package */ abstract SegmentBase getSegmentBase();
+
   /**
    * A DASH representation consisting of a single segment.
    */
@@ -161,6 +166,7 @@ public abstract class Representation implements FormatWrapper {
      */
     public final long contentLength;
 
+    private final SingleSegmentBase segmentBase;
     private final RangedUri indexUri;
     private final DashSingleSegmentIndex segmentIndex;
 
@@ -198,6 +204,7 @@ public abstract class Representation implements FormatWrapper {
     public SingleSegmentRepresentation(String contentId, long revisionId, Format format,
         SingleSegmentBase segmentBase, String customCacheKey, long contentLength) {
       super(contentId, revisionId, format, segmentBase, customCacheKey);
+      this.segmentBase = segmentBase;
       this.uri = Uri.parse(segmentBase.uri);
       this.indexUri = segmentBase.getIndex();
       this.contentLength = contentLength;
@@ -217,6 +224,11 @@ public abstract class Representation implements FormatWrapper {
       return segmentIndex;
     }
 
+    @Override
+    /* package */ SegmentBase getSegmentBase() {
+      return segmentBase;
+    }
+
   }
 
   /**
@@ -250,6 +262,11 @@ public abstract class Representation implements FormatWrapper {
       return this;
     }
 
+    @Override
+    /* package */ SegmentBase getSegmentBase() {
+      return segmentBase;
+    }
+
     // DashSegmentIndex implementation.
 
     @Override
@@ -63,6 +63,28 @@ public abstract class SegmentBase {
     return Util.scaleLargeTimestamp(presentationTimeOffset, C.MICROS_PER_SECOND, timescale);
   }
 
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    SegmentBase other = (SegmentBase) obj;
+    return timescale == other.timescale && presentationTimeOffset == other.presentationTimeOffset
+        && Util.areEqual(initialization, other.initialization);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 17;
+    result = 31 * result + (initialization != null ? initialization.hashCode() : 0);
+    result = 31 * result + (int) timescale;
+    result = 31 * result + (int) presentationTimeOffset;
+    return result;
+  }
+
   /**
    * A {@link SegmentBase} that defines a single segment.
    */
@@ -105,6 +127,21 @@ public abstract class SegmentBase {
       return indexLength <= 0 ? null : new RangedUri(uri, null, indexStart, indexLength);
     }
 
+    @Override
+    public boolean equals(Object obj) {
+      if (!super.equals(obj)) {
+        return false;
+      }
+      SingleSegmentBase other = (SingleSegmentBase) obj;
+      return indexStart == other.indexStart && indexLength == other.indexLength
+          && Util.areEqual(uri, other.uri);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * super.hashCode() + (uri != null ? uri.hashCode() : 0);
+    }
+
   }
 
   /**
@@ -114,7 +151,7 @@ public abstract class SegmentBase {
 
     /* package */ final int startNumber;
     /* package */ final long duration;
-    /* package */ final List<SegmentTimelineElement> segmentTimeline;
+    /* package */ final SegmentTimeline segmentTimeline;
 
     /**
      * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
@@ -131,7 +168,7 @@ public abstract class SegmentBase {
      *     parameter.
      */
     public MultiSegmentBase(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline) {
+        int startNumber, long duration, SegmentTimeline segmentTimeline) {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
@@ -154,19 +191,18 @@ public abstract class SegmentBase {
             : highIndex != DashSegmentIndex.INDEX_UNBOUNDED && segmentNum > highIndex ? highIndex
             : segmentNum;
       } else {
-        // The high index cannot be unbounded. Identify the segment using binary search.
-        while (lowIndex <= highIndex) {
-          int midIndex = (lowIndex + highIndex) / 2;
-          long midTimeUs = getSegmentTimeUs(midIndex);
-          if (midTimeUs < timeUs) {
-            lowIndex = midIndex + 1;
-          } else if (midTimeUs > timeUs) {
-            highIndex = midIndex - 1;
-          } else {
-            return midIndex;
-          }
+        // The high index cannot be unbounded. Identify the segment by searching the timeline.
+        long time = Util.scaleLargeTimestamp(timeUs, timescale, C.MICROS_PER_SECOND)
+            + presentationTimeOffset;
+        int segmentNum = startNumber + segmentTimeline.getSegmentIndex(time);
+        // Correct for rounding in the conversion between the timescale and microseconds.
+        while (segmentNum < highIndex && getSegmentTimeUs(segmentNum + 1) <= timeUs) {
+          segmentNum++;
+        }
+        while (segmentNum >= lowIndex && getSegmentTimeUs(segmentNum) > timeUs) {
+          segmentNum--;
         }
-        return lowIndex == firstSegmentNum ? lowIndex : highIndex;
+        return Math.max(lowIndex, Math.min(segmentNum, highIndex));
       }
     }
 
@@ -175,7 +211,7 @@ public abstract class SegmentBase {
      */
     public final long getSegmentDurationUs(int sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get(sequenceNumber - startNumber).duration;
+        long duration = segmentTimeline.getDuration(sequenceNumber - startNumber);
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         return sequenceNumber == getLastSegmentNum(periodDurationUs)
@@ -190,7 +226,7 @@ public abstract class SegmentBase {
     public final long getSegmentTimeUs(int sequenceNumber) {
       long unscaledSegmentTime;
       if (segmentTimeline != null) {
-        unscaledSegmentTime = segmentTimeline.get(sequenceNumber - startNumber).startTime
+        unscaledSegmentTime = segmentTimeline.getStartTime(sequenceNumber - startNumber)
             - presentationTimeOffset;
       } else {
         unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
@@ -225,6 +261,24 @@ public abstract class SegmentBase {
       return segmentTimeline != null;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+      if (!super.equals(obj)) {
+        return false;
+      }
+      MultiSegmentBase other = (MultiSegmentBase) obj;
+      return startNumber == other.startNumber && duration == other.duration
+          && Util.areEqual(segmentTimeline, other.segmentTimeline);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = super.hashCode();
+      result = 31 * result + startNumber;
+      result = 31 * result + (segmentTimeline != null ? segmentTimeline.hashCode() : 0);
+      return result;
+    }
+
   }
 
   /**
@@ -250,7 +304,7 @@ public abstract class SegmentBase {
      * @param mediaSegments A list of {@link RangedUri}s indicating the locations of the segments.
      */
     public SegmentList(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        int startNumber, long duration, SegmentTimeline segmentTimeline,
         List<RangedUri> mediaSegments) {
       super(initialization, timescale, presentationTimeOffset, startNumber, duration,
           segmentTimeline);
@@ -272,6 +326,16 @@ public abstract class SegmentBase {
       return true;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+      return super.equals(obj) && Util.areEqual(mediaSegments, ((SegmentList) obj).mediaSegments);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * super.hashCode() + (mediaSegments != null ? mediaSegments.size() : 0);
+    }
+
   }
 
   /**
@@ -305,7 +369,7 @@ public abstract class SegmentBase {
      * @param baseUrl A url to use as the base for relative urls generated by the templates.
      */
     public SegmentTemplate(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        int startNumber, long duration, SegmentTimeline segmentTimeline,
         UrlTemplate initializationTemplate, UrlTemplate mediaTemplate, String baseUrl) {
       super(initialization, timescale, presentationTimeOffset, startNumber,
           duration, segmentTimeline);
@@ -329,7 +393,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, int sequenceNumber) {
       long time = 0;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get(sequenceNumber - startNumber).startTime;
+        time = segmentTimeline.getStartTime(sequenceNumber - startNumber);
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
@@ -341,7 +405,7 @@ public abstract class SegmentBase {
     @Override
     public int getLastSegmentNum(long periodDurationUs) {
       if (segmentTimeline != null) {
-        return segmentTimeline.size() + startNumber - 1;
+        return segmentTimeline.getSegmentCount() + startNumber - 1;
       } else if (periodDurationUs == C.UNKNOWN_TIME_US) {
         return DashSegmentIndex.INDEX_UNBOUNDED;
       } else {
@@ -350,25 +414,20 @@ public abstract class SegmentBase {
       }
     }
 
-  }
-
-  /**
-   * Represents a timeline segment from the MPD's SegmentTimeline list.
-   */
-  public static class SegmentTimelineElement {
-
-    /* package */ long startTime;
-    /* package */ long duration;
+    @Override
+    public boolean equals(Object obj) {
+      if (!super.equals(obj)) {
+        return false;
+      }
+      SegmentTemplate other = (SegmentTemplate) obj;
+      return Util.areEqual(initializationTemplate, other.initializationTemplate)
+          && Util.areEqual(mediaTemplate, other.mediaTemplate)
+          && Util.areEqual(baseUrl, other.baseUrl);
+    }
 
-    /**
-     * @param startTime The start time of the element. The value in seconds is the division of this
-     *     value and the {@code timescale} of the enclosing element.
-     * @param duration The duration of the element. The value in seconds is the division of this
-     *     value and the {@code timescale} of the enclosing element.
-     */
-    public SegmentTimelineElement(long startTime, long duration) {
-      this.startTime = startTime;
-      this.duration = duration;
+    @Override
+    public int hashCode() {
+      return 31 * super.hashCode() + (mediaTemplate != null ? mediaTemplate.hashCode() : 0);
     }
 
   }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash.mpd;
+
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.Arrays;
+
+/**
+ * A run-length encoded representation of the MPD's SegmentTimeline element.
+ * <p>
+ * Consecutive segments of equal duration are stored as a single run, consisting of the start
+ * time of the first segment, the segment duration and the number of segments. The start time and
+ * duration of a segment, and the segment at a given time, are found by binary search over the
+ * runs. A timeline in which all segments have the same duration is stored as a single run,
+ * however many segments it contains.
+ * <p>
+ * Instances are immutable, and so may be shared between the representations of an adaptation set
+ * and between successive versions of a manifest.
+ */
+public final class SegmentTimeline {
+
+  /**
+   * Builds {@link SegmentTimeline} instances.
+   */
+  public static final class Builder {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] startTimes;
+    private long[] durations;
+    private int[] firstIndices;
+    private int runCount;
+    private int segmentCount;
+
+    public Builder() {
+      startTimes = new long[INITIAL_CAPACITY];
+      durations = new long[INITIAL_CAPACITY];
+      firstIndices = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates a builder whose initial segments are those of {@code timeline}, so that segments
+     * can be appended to it.
+     *
+     * @param timeline The timeline.
+     */
+    public Builder(SegmentTimeline timeline) {
+      this(timeline, timeline.segmentCount);
+    }
+
+    /**
+     * Creates a builder whose initial segments are the first {@code segmentCount} segments of
+     * {@code timeline}, so that segments can be appended to them.
+     *
+     * @param timeline The timeline.
+     * @param segmentCount The number of segments to take from {@code timeline}.
+     */
+    /* package */ Builder(SegmentTimeline timeline, int segmentCount) {
+      Assertions.checkArgument(segmentCount >= 0 && segmentCount <= timeline.segmentCount);
+      int runCount = segmentCount == 0 ? 0 : timeline.getRunIndex(segmentCount - 1) + 1;
+      int capacity = Math.max(INITIAL_CAPACITY, runCount * 2);
+      startTimes = Arrays.copyOf(timeline.startTimes, capacity);
+      durations = Arrays.copyOf(timeline.durations, capacity);
+      firstIndices = Arrays.copyOf(timeline.firstIndices, capacity);
+      this.runCount = runCount;
+      this.segmentCount = segmentCount;
+    }
+
+    /**
+     * Appends segments of equal duration to the timeline.
+     * <p>
+     * If the segments directly follow the last segment of the timeline and have the same
+     * duration, the last run is extended.
+     *
+     * @param startTime The start time of the first segment, in the timescale of the enclosing
+     *     element.
+     * @param duration The duration of each segment, in the timescale of the enclosing element.
+     * @param count The number of segments. If zero, the call has no effect.
+     * @return This builder, for convenience.
+     */
+    public Builder add(long startTime, long duration, int count) {
+      Assertions.checkArgument(count >= 0);
+      if (count == 0) {
+        return this;
+      }
+      if (runCount > 0) {
+        int lastRun = runCount - 1;
+        long lastRunEndTime = startTimes[lastRun]
+            + durations[lastRun] * (segmentCount - firstIndices[lastRun]);
+        if (durations[lastRun] == duration && lastRunEndTime == startTime) {
+          segmentCount += count;
+          return this;
+        }
+      }
+      if (runCount == startTimes.length) {
+        int capacity = runCount * 2;
+        startTimes = Arrays.copyOf(startTimes, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        firstIndices = Arrays.copyOf(firstIndices, capacity);
+      }
+      startTimes[runCount] = startTime;
+      durations[runCount] = duration;
+      firstIndices[runCount] = segmentCount;
+      runCount++;
+      segmentCount += count;
+      return this;
+    }
+
+    /**
+     * Returns the number of segments added so far.
+     */
+    public int getSegmentCount() {
+      return segmentCount;
+    }
+
+    /**
+     * Builds the timeline. The builder may continue to be used.
+     */
+    public SegmentTimeline build() {
+      return new SegmentTimeline(Arrays.copyOf(startTimes, runCount),
+          Arrays.copyOf(durations, runCount), Arrays.copyOf(firstIndices, runCount), runCount,
+          segmentCount);
+    }
+
+  }
+
+  private final long[] startTimes;
+  private final long[] durations;
+  private final int[] firstIndices;
+  private final int runCount;
+  private final int segmentCount;
+
+  private int hashCode;
+
+  private SegmentTimeline(long[] startTimes, long[] durations, int[] firstIndices, int runCount,
+      int segmentCount) {
+    this.startTimes = startTimes;
+    this.durations = durations;
+    this.firstIndices = firstIndices;
+    this.runCount = runCount;
+    this.segmentCount = segmentCount;
+  }
+
+  /**
+   * Returns the number of segments in the timeline.
+   */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /**
+   * Returns the number of runs of consecutive segments of equal duration in the timeline.
+   */
+  public int getRunCount() {
+    return runCount;
+  }
+
+  /**
+   * Returns the start time of a segment.
+   *
+   * @param index The index of the segment.
+   * @return The start time of the segment, in the timescale of the enclosing element.
+   */
+  public long getStartTime(int index) {
+    int run = getRunIndex(index);
+    return startTimes[run] + durations[run] * (index - firstIndices[run]);
+  }
+
+  /**
+   * Returns the duration of a segment.
+   *
+   * @param index The index of the segment.
+   * @return The duration of the segment, in the timescale of the enclosing element.
+   */
+  public long getDuration(int index) {
+    return durations[getRunIndex(index)];
+  }
+
+  /**
+   * Returns the index of the last segment whose start time is less than or equal to
+   * {@code time}.
+   *
+   * @param time The time, in the timescale of the enclosing element.
+   * @return The index of the segment, or -1 if {@code time} is before the start of the first
+   *     segment.
+   */
+  public int getSegmentIndex(long time) {
+    // Find the last run that starts at or before the specified time.
+    int low = 0;
+    int high = runCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (startTimes[mid] <= time) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    int run = high;
+    if (run < 0) {
+      return -1;
+    }
+    int lastOffset = getRunEndIndex(run) - firstIndices[run] - 1;
+    long offset = durations[run] == 0 ? lastOffset : (time - startTimes[run]) / durations[run];
+    return firstIndices[run] + (int) Math.min(offset, lastOffset);
+  }
+
+  /**
+   * Returns how many of {@code count} segments of equal duration, the first of which starts at
+   * {@code startTime}, are the same as the segments of this timeline starting at {@code index}.
+   *
+   * @param index The index of the segment to compare with the first of the segments.
+   * @param startTime The start time of the first segment, in the timescale of the enclosing
+   *     element.
+   * @param duration The duration of each segment, in the timescale of the enclosing element.
+   * @param count The number of segments.
+   * @return The number of segments that are the same, which is less than {@code count} only if
+   *     the timeline ends before the segments do, or -1 if the segments differ from those of the
+   *     timeline.
+   */
+  /* package */ int getMatchingSegmentCount(int index, long startTime, long duration, int count) {
+    if (index == segmentCount) {
+      return 0;
+    }
+    int run = getRunIndex(index);
+    if (durations[run] != duration || getStartTime(index) != startTime) {
+      return -1;
+    }
+    int runEndIndex = getRunEndIndex(run);
+    if (index + count <= runEndIndex) {
+      return count;
+    }
+    // The segments continue beyond the end of the run, which is only the same if the timeline
+    // ends there.
+    return runEndIndex == segmentCount ? segmentCount - index : -1;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    SegmentTimeline other = (SegmentTimeline) obj;
+    return segmentCount == other.segmentCount && runCount == other.runCount
+        && Arrays.equals(startTimes, other.startTimes) && Arrays.equals(durations, other.durations)
+        && Arrays.equals(firstIndices, other.firstIndices);
+  }
+
+  @Override
+  public int hashCode() {
+    if (hashCode == 0) {
+      int result = 17;
+      result = 31 * result + segmentCount;
+      result = 31 * result + Arrays.hashCode(startTimes);
+      result = 31 * result + Arrays.hashCode(durations);
+      hashCode = result;
+    }
+    return hashCode;
+  }
+
+  private int getRunIndex(int index) {
+    if (index < 0 || index >= segmentCount) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + segmentCount);
+    }
+    int run = Arrays.binarySearch(firstIndices, 0, runCount, index);
+    return run >= 0 ? run : -(run + 1) - 1;
+  }
+
+  private int getRunEndIndex(int run) {
+    return run + 1 < runCount ? firstIndices[run + 1] : segmentCount;
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer.dash.mpd;
 
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -98,6 +99,28 @@ public final class UrlTemplate {
     return builder.toString();
   }
 
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    UrlTemplate other = (UrlTemplate) obj;
+    return identifierCount == other.identifierCount && Arrays.equals(urlPieces, other.urlPieces)
+        && Arrays.equals(identifiers, other.identifiers)
+        && Arrays.equals(identifierFormatTags, other.identifierFormatTags);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 17;
+    result = 31 * result + Arrays.hashCode(urlPieces);
+    result = 31 * result + Arrays.hashCode(identifiers);
+    return result;
+  }
+
   /**
    * Parses {@code template}, placing the decomposed components into the provided arrays.
    * <p>
@@ -170,6 +170,9 @@ import java.util.concurrent.LinkedBlockingDeque;
 
   /**
    * Reads the current sample, advancing the read index to the next sample.
+   * <p>
+   * The sample data is copied directly from the allocations that hold it into
+   * {@link SampleHolder#data}, which may be a codec input buffer. No intermediate copy is made.
    *
    * @param sampleHolder The holder into which the current sample should be written.
    * @return True if a sample was read. False if there is no current sample.
@@ -444,31 +447,24 @@ import java.util.concurrent.LinkedBlockingDeque;
 
   /**
    * Holds information about the samples in the rolling buffer.
+   * <p>
+   * The queue is a ring written by a single loading thread and read by a single consuming thread
+   * without locking. Each side publishes its absolute index through a volatile field only after
+   * it has finished writing or reading the corresponding entries. When the ring is full the
+   * loading thread copies the unread entries into a larger ring, which it publishes before writing
+   * any entry into it. The consuming thread reads the write index before the ring, and so always
+   * reads entries from a ring that contains them.
    */
   private static final class InfoQueue {
 
-    private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
-
-    private int capacity;
-
-    private long[] offsets;
-    private int[] sizes;
-    private int[] flags;
-    private long[] timesUs;
-    private byte[][] encryptionKeys;
+    private static final int INITIAL_SAMPLE_CAPACITY = 1024;
 
-    private int queueSize;
-    private int absoluteReadIndex;
-    private int relativeReadIndex;
-    private int relativeWriteIndex;
+    private volatile Ring ring;
+    private volatile int absoluteReadIndex;
+    private volatile int absoluteWriteIndex;
 
     public InfoQueue() {
-      capacity = SAMPLE_CAPACITY_INCREMENT;
-      offsets = new long[capacity];
-      timesUs = new long[capacity];
-      flags = new int[capacity];
-      sizes = new int[capacity];
-      encryptionKeys = new byte[capacity][];
+      ring = new Ring(INITIAL_SAMPLE_CAPACITY);
     }
 
     // Called by the consuming thread, but only when there is no loading thread.
@@ -478,16 +474,14 @@ import java.util.concurrent.LinkedBlockingDeque;
      */
     public void clear() {
       absoluteReadIndex = 0;
-      relativeReadIndex = 0;
-      relativeWriteIndex = 0;
-      queueSize = 0;
+      absoluteWriteIndex = 0;
     }
 
     /**
      * Returns the current absolute write index.
      */
     public int getWriteIndex() {
-      return absoluteReadIndex + queueSize;
+      return absoluteWriteIndex;
     }
 
     /**
@@ -497,21 +491,22 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @return The reduced total number of bytes written, after the samples have been discarded.
      */
     public long discardUpstreamSamples(int discardFromIndex) {
-      int discardCount = getWriteIndex() - discardFromIndex;
-      Assertions.checkArgument(0 <= discardCount && discardCount <= queueSize);
+      int writeIndex = absoluteWriteIndex;
+      int discardCount = writeIndex - discardFromIndex;
+      Assertions.checkArgument(0 <= discardCount && discardCount <= writeIndex - absoluteReadIndex);
 
+      Ring ring = this.ring;
       if (discardCount == 0) {
-        if (absoluteReadIndex == 0) {
-          // queueSize == absoluteReadIndex == 0, so nothing has been written to the queue.
+        if (writeIndex == 0) {
+          // Nothing has been written to the queue.
           return 0;
         }
-        int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-        return offsets[lastWriteIndex] + sizes[lastWriteIndex];
+        int lastWriteIndex = (writeIndex - 1) & ring.mask;
+        return ring.offsets[lastWriteIndex] + ring.sizes[lastWriteIndex];
       }
 
-      queueSize -= discardCount;
-      relativeWriteIndex = (relativeWriteIndex + capacity - discardCount) % capacity;
-      return offsets[relativeWriteIndex];
+      absoluteWriteIndex = discardFromIndex;
+      return ring.offsets[discardFromIndex & ring.mask];
     }
 
     // Called by the consuming thread.
@@ -535,15 +530,18 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @param extrasHolder The holder into which extra sample information should be written.
      * @return True if the holders were filled. False if there is no current sample.
      */
-    public synchronized boolean peekSample(SampleHolder holder, SampleExtrasHolder extrasHolder) {
-      if (queueSize == 0) {
+    public boolean peekSample(SampleHolder holder, SampleExtrasHolder extrasHolder) {
+      int readIndex = absoluteReadIndex;
+      if (readIndex == absoluteWriteIndex) {
         return false;
       }
-      holder.timeUs = timesUs[relativeReadIndex];
-      holder.size = sizes[relativeReadIndex];
-      holder.flags = flags[relativeReadIndex];
-      extrasHolder.offset = offsets[relativeReadIndex];
-      extrasHolder.encryptionKeyId = encryptionKeys[relativeReadIndex];
+      Ring ring = this.ring;
+      int relativeReadIndex = readIndex & ring.mask;
+      holder.timeUs = ring.timesUs[relativeReadIndex];
+      holder.size = ring.sizes[relativeReadIndex];
+      holder.flags = ring.flags[relativeReadIndex];
+      extrasHolder.offset = ring.offsets[relativeReadIndex];
+      extrasHolder.encryptionKeyId = ring.encryptionKeys[relativeReadIndex];
       return true;
     }
 
@@ -553,16 +551,17 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @return The absolute position of the first byte in the rolling buffer that may still be
      *     required after advancing the index. Data prior to this position can be dropped.
      */
-    public synchronized long moveToNextSample() {
-      queueSize--;
-      int lastReadIndex = relativeReadIndex++;
-      absoluteReadIndex++;
-      if (relativeReadIndex == capacity) {
-        // Wrap around.
-        relativeReadIndex = 0;
-      }
-      return queueSize > 0 ? offsets[relativeReadIndex]
-          : (sizes[lastReadIndex] + offsets[lastReadIndex]);
+    public long moveToNextSample() {
+      int readIndex = absoluteReadIndex;
+      int writeIndex = absoluteWriteIndex;
+      Ring ring = this.ring;
+      int lastReadIndex = readIndex & ring.mask;
+      readIndex++;
+      long nextOffset = readIndex != writeIndex ? ring.offsets[readIndex & ring.mask]
+          : (ring.sizes[lastReadIndex] + ring.offsets[lastReadIndex]);
+      // Publish the new read index only once the entries have been read.
+      absoluteReadIndex = readIndex;
+      return nextOffset;
     }
 
     /**
@@ -571,90 +570,110 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @param timeUs The seek time.
      * @return The offset of the keyframe's data if the keyframe was present. -1 otherwise.
      */
-    public synchronized long skipToKeyframeBefore(long timeUs) {
-      if (queueSize == 0 || timeUs < timesUs[relativeReadIndex]) {
+    public long skipToKeyframeBefore(long timeUs) {
+      int readIndex = absoluteReadIndex;
+      int writeIndex = absoluteWriteIndex;
+      Ring ring = this.ring;
+      if (readIndex == writeIndex || timeUs < ring.timesUs[readIndex & ring.mask]) {
         return -1;
       }
 
-      int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-      long lastTimeUs = timesUs[lastWriteIndex];
+      long lastTimeUs = ring.timesUs[(writeIndex - 1) & ring.mask];
       if (timeUs > lastTimeUs) {
         return -1;
       }
 
       // TODO: This can be optimized further using binary search, although the fact that the array
       // is cyclic means we'd need to implement the binary search ourselves.
-      int sampleCount = 0;
-      int sampleCountToKeyframe = -1;
-      int searchIndex = relativeReadIndex;
-      while (searchIndex != relativeWriteIndex) {
-        if (timesUs[searchIndex] > timeUs) {
+      int keyframeIndex = -1;
+      for (int searchIndex = readIndex; searchIndex != writeIndex; searchIndex++) {
+        int relativeSearchIndex = searchIndex & ring.mask;
+        if (ring.timesUs[relativeSearchIndex] > timeUs) {
           // We've gone too far.
           break;
-        } else if ((flags[searchIndex] & C.SAMPLE_FLAG_SYNC) != 0) {
+        } else if ((ring.flags[relativeSearchIndex] & C.SAMPLE_FLAG_SYNC) != 0) {
           // We've found a keyframe, and we're still before the seek position.
-          sampleCountToKeyframe = sampleCount;
+          keyframeIndex = searchIndex;
         }
-        searchIndex = (searchIndex + 1) % capacity;
-        sampleCount++;
       }
 
-      if (sampleCountToKeyframe == -1) {
+      if (keyframeIndex == -1) {
         return -1;
       }
 
-      queueSize -= sampleCountToKeyframe;
-      relativeReadIndex = (relativeReadIndex + sampleCountToKeyframe) % capacity;
-      absoluteReadIndex += sampleCountToKeyframe;
-      return offsets[relativeReadIndex];
+      long keyframeOffset = ring.offsets[keyframeIndex & ring.mask];
+      absoluteReadIndex = keyframeIndex;
+      return keyframeOffset;
     }
 
     // Called by the loading thread.
 
-    public synchronized void commitSample(long timeUs, int sampleFlags, long offset, int size,
+    public void commitSample(long timeUs, int sampleFlags, long offset, int size,
         byte[] encryptionKey) {
-      timesUs[relativeWriteIndex] = timeUs;
-      offsets[relativeWriteIndex] = offset;
-      sizes[relativeWriteIndex] = size;
-      flags[relativeWriteIndex] = sampleFlags;
-      encryptionKeys[relativeWriteIndex] = encryptionKey;
-      // Increment the write index.
-      queueSize++;
-      if (queueSize == capacity) {
-        // Increase the capacity.
-        int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-        long[] newOffsets = new long[newCapacity];
-        long[] newTimesUs = new long[newCapacity];
-        int[] newFlags = new int[newCapacity];
-        int[] newSizes = new int[newCapacity];
-        byte[][] newEncryptionKeys = new byte[newCapacity][];
-        int beforeWrap = capacity - relativeReadIndex;
-        System.arraycopy(offsets, relativeReadIndex, newOffsets, 0, beforeWrap);
-        System.arraycopy(timesUs, relativeReadIndex, newTimesUs, 0, beforeWrap);
-        System.arraycopy(flags, relativeReadIndex, newFlags, 0, beforeWrap);
-        System.arraycopy(sizes, relativeReadIndex, newSizes, 0, beforeWrap);
-        System.arraycopy(encryptionKeys, relativeReadIndex, newEncryptionKeys, 0, beforeWrap);
-        int afterWrap = relativeReadIndex;
-        System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-        System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-        System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-        System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-        System.arraycopy(encryptionKeys, 0, newEncryptionKeys, beforeWrap, afterWrap);
-        offsets = newOffsets;
-        timesUs = newTimesUs;
-        flags = newFlags;
-        sizes = newSizes;
-        encryptionKeys = newEncryptionKeys;
-        relativeReadIndex = 0;
-        relativeWriteIndex = capacity;
-        queueSize = capacity;
-        capacity = newCapacity;
-      } else {
-        relativeWriteIndex++;
-        if (relativeWriteIndex == capacity) {
-          // Wrap around.
-          relativeWriteIndex = 0;
-        }
+      int writeIndex = absoluteWriteIndex;
+      Ring ring = this.ring;
+      if (writeIndex - absoluteReadIndex == ring.capacity) {
+        // Increase the capacity. The new ring is published before any entry is written into it.
+        ring = new Ring(ring, absoluteReadIndex, writeIndex);
+        this.ring = ring;
+      }
+      int relativeWriteIndex = writeIndex & ring.mask;
+      ring.timesUs[relativeWriteIndex] = timeUs;
+      ring.offsets[relativeWriteIndex] = offset;
+      ring.sizes[relativeWriteIndex] = size;
+      ring.flags[relativeWriteIndex] = sampleFlags;
+      ring.encryptionKeys[relativeWriteIndex] = encryptionKey;
+      // Publish the sample only once its entries have been written.
+      absoluteWriteIndex = writeIndex + 1;
+    }
+
+  }
+
+  /**
+   * Fixed capacity storage for sample information, indexed by absolute sample index modulo the
+   * capacity.
+   */
+  private static final class Ring {
+
+    public final int capacity;
+    public final int mask;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final byte[][] encryptionKeys;
+
+    /**
+     * @param capacity The capacity of the ring. Must be a power of two.
+     */
+    public Ring(int capacity) {
+      this.capacity = capacity;
+      mask = capacity - 1;
+      offsets = new long[capacity];
+      sizes = new int[capacity];
+      flags = new int[capacity];
+      timesUs = new long[capacity];
+      encryptionKeys = new byte[capacity][];
+    }
+
+    /**
+     * Creates a ring with twice the capacity of {@code ring}, containing its entries between the
+     * specified absolute indices.
+     *
+     * @param ring The ring to copy.
+     * @param fromIndex The absolute index of the first entry to copy.
+     * @param toIndex The absolute index after the last entry to copy.
+     */
+    public Ring(Ring ring, int fromIndex, int toIndex) {
+      this(ring.capacity * 2);
+      for (int i = fromIndex; i != toIndex; i++) {
+        int oldIndex = i & ring.mask;
+        int newIndex = i & mask;
+        offsets[newIndex] = ring.offsets[oldIndex];
+        sizes[newIndex] = ring.sizes[oldIndex];
+        flags[newIndex] = ring.flags[oldIndex];
+        timesUs[newIndex] = ring.timesUs[oldIndex];
+        encryptionKeys[newIndex] = ring.encryptionKeys[oldIndex];
       }
     }
 
@@ -119,7 +119,7 @@ import java.util.List;
     int fixedSampleSize = stsz.readUnsignedIntToInt();
     int sampleCount = stsz.readUnsignedIntToInt();
     if (sampleCount == 0) {
-      return new TrackSampleTable(new long[0], new int[0], 0, new long[0], new int[0]);
+      return new ArrayTrackSampleTable(new long[0], new int[0], 0, new long[0], new int[0]);
     }
 
     // Prepare to read chunk information.
@@ -156,6 +156,15 @@ import java.util.List;
         && remainingTimestampOffsetChanges == 0
         && remainingSynchronizationSamples == 0;
 
+    if (!isRechunkable && (track.editListDurations == null
+        || (isSingleEditIncludingAllSamples(track, sampleCount, stts, ctts)
+        && (stss == null || remainingSynchronizationSamples > 0)))) {
+      // Expand the sample table lazily, so that its footprint doesn't grow with the track duration.
+      long mediaTimeOffset = track.editListDurations == null ? 0 : track.editListMediaTimes[0];
+      return new WindowedTrackSampleTable(sampleCount, fixedSampleSize, stsz, chunkOffsets,
+          chunkOffsetsAreLongs, stsc, stts, ctts, stss, track.timescale, mediaTimeOffset);
+    }
+
     long[] offsets;
     int[] sizes;
     int maximumSize = 0;
@@ -255,7 +264,7 @@ import java.util.List;
 
     if (track.editListDurations == null) {
       Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
+      return new ArrayTrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
     }
 
     // See the BMFF spec (ISO 14496-12) subsection 8.6.6. Edit lists that truncate audio and
@@ -271,7 +280,7 @@ import java.util.List;
         timestamps[i] = Util.scaleLargeTimestamp(timestamps[i] - track.editListMediaTimes[0],
             C.MICROS_PER_SECOND, track.timescale);
       }
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
+      return new ArrayTrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
     }
 
     // Count the number of samples after applying edits.
@@ -336,8 +345,31 @@ import java.util.List;
       throw new ParserException("The edited sample sequence does not contain a sync sample.");
     }
 
-    return new TrackSampleTable(editedOffsets, editedSizes, editedMaximumSize, editedTimestamps,
-        editedFlags);
+    return new ArrayTrackSampleTable(editedOffsets, editedSizes, editedMaximumSize,
+        editedTimestamps, editedFlags);
+  }
+
+  /**
+   * Returns whether the track has an edit list consisting of a single edit that includes all of the
+   * samples described by the specified atoms, so that editing only offsets their timestamps.
+   */
+  private static boolean isSingleEditIncludingAllSamples(Track track, int sampleCount,
+      ParsableByteArray stts, ParsableByteArray ctts) {
+    if (track.editListDurations.length != 1) {
+      return false;
+    }
+    if (track.editListDurations[0] == 0) {
+      // An edit with zero segment_duration includes all samples (see parseStbl).
+      return true;
+    }
+    long mediaTime = track.editListMediaTimes[0];
+    if (mediaTime == -1) {
+      return false;
+    }
+    long duration = Util.scaleLargeTimestamp(track.editListDurations[0], track.timescale,
+        track.movieTimescale);
+    return WindowedTrackSampleTable.samplesAreInRange(sampleCount, stts, ctts, mediaTime,
+        mediaTime + duration);
   }
 
   /**
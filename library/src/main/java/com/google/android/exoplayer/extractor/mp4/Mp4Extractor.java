@@ -156,7 +156,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       tracks[trackIndex].sampleIndex = sampleIndex;
 
-      long offset = sampleTable.offsets[sampleIndex];
+      long offset = sampleTable.getOffset(sampleIndex);
       if (offset < earliestSamplePosition) {
         earliestSamplePosition = offset;
       }
@@ -315,10 +315,13 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
 
       Mp4Track mp4Track = new Mp4Track(track, trackSampleTable, extractorOutput.track(i));
-      // Each sample has up to three bytes of overhead for the start code that replaces its length.
-      // Allow ten source samples per output sample, like the platform extractor.
-      int maxInputSize = trackSampleTable.maximumSize + 3 * 10;
-      MediaFormat mediaFormat = track.mediaFormat.copyWithMaxInputSize(maxInputSize);
+      MediaFormat mediaFormat = track.mediaFormat;
+      if (trackSampleTable.maximumSize != MediaFormat.NO_VALUE) {
+        // Each sample has up to three bytes of overhead for the start code that replaces its
+        // length. Allow ten source samples per output sample, like the platform extractor.
+        int maxInputSize = trackSampleTable.maximumSize + 3 * 10;
+        mediaFormat = mediaFormat.copyWithMaxInputSize(maxInputSize);
+      }
       if (gaplessInfo != null) {
         mediaFormat =
             mediaFormat.copyWithGaplessInfo(gaplessInfo.encoderDelay, gaplessInfo.encoderPadding);
@@ -326,7 +329,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       mp4Track.trackOutput.format(mediaFormat);
       tracks.add(mp4Track);
 
-      long firstSampleOffset = trackSampleTable.offsets[0];
+      long firstSampleOffset = trackSampleTable.getOffset(0);
       if (firstSampleOffset < earliestSampleOffset) {
         earliestSampleOffset = firstSampleOffset;
       }
@@ -361,14 +364,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = tracks[trackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
     long skipAmount = position - input.getPosition() + sampleBytesWritten;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
       positionHolder.position = position;
       return RESULT_SEEK;
     }
     input.skipFully((int) skipAmount);
-    sampleSize = track.sampleTable.sizes[sampleIndex];
+    sampleSize = track.sampleTable.getSize(sampleIndex);
     if (track.track.nalUnitLengthFieldLength != -1) {
       // Zero the top three bytes of the array that we'll use to parse nal unit lengths, in case
       // they're only 1 or 2 bytes long.
@@ -406,8 +409,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         sampleCurrentNalBytesRemaining -= writtenBytes;
       }
     }
-    trackOutput.sampleMetadata(track.sampleTable.timestampsUs[sampleIndex],
-        track.sampleTable.flags[sampleIndex], sampleSize, 0, null);
+    trackOutput.sampleMetadata(track.sampleTable.getTimestampUs(sampleIndex),
+        track.sampleTable.getFlags(sampleIndex), sampleSize, 0, null);
     track.sampleIndex++;
     sampleBytesWritten = 0;
     sampleCurrentNalBytesRemaining = 0;
@@ -428,7 +431,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         continue;
       }
 
-      long trackSampleOffset = track.sampleTable.offsets[sampleIndex];
+      long trackSampleOffset = track.sampleTable.getOffset(sampleIndex);
       if (trackSampleOffset < earliestSampleOffset) {
         earliestSampleOffset = trackSampleOffset;
         earliestSampleTrackIndex = trackIndex;
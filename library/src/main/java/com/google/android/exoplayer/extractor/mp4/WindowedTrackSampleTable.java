@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp4;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import com.google.android.exoplayer.util.Util;
+
+/**
+ * A {@link TrackSampleTable} that expands sample metadata lazily from the compact stsz, stco/co64,
+ * stsc, stts, ctts and stss atoms.
+ * <p>
+ * Metadata is decoded into a fixed size window of samples when first accessed. Reading samples in
+ * order advances the window without revisiting the atoms from the start, and construction doesn't
+ * read any per-sample entries, so the time taken to start reading samples is independent of the
+ * number of samples in the track. The maximum sample size isn't known unless all samples have the
+ * same size, since finding it would require reading every stsz entry.
+ * <p>
+ * Accessing a sample outside of the window (e.g. after a seek), or looking up a synchronization
+ * sample by time, uses tables of the first sample index of each stsc, stts and ctts entry and the
+ * decoding time of each stts entry. These are built on first use, and are binary searched so that a
+ * timestamp lookup takes time logarithmic in the number of entries.
+ * <p>
+ * Timestamps of synchronization samples are assumed to be increasing, since frames are not
+ * reordered past synchronization samples in practice.
+ */
+/* package */ final class WindowedTrackSampleTable extends TrackSampleTable {
+
+  private static final int WINDOW_SIZE = 1024;
+
+  // Offsets of the first entry in each table, following the full atom header and entry count.
+  private static final int STSZ_ENTRIES_POSITION = Atom.FULL_HEADER_SIZE + 8;
+  private static final int TABLE_ENTRIES_POSITION = Atom.FULL_HEADER_SIZE + 4;
+
+  private final int fixedSampleSize;
+  private final byte[] stsz;
+  private final byte[] chunkOffsets;
+  private final boolean chunkOffsetsAreLongs;
+  private final byte[] stsc;
+  private final byte[] stts;
+  private final byte[] ctts;
+  private final byte[] stss;
+  private final int chunkCount;
+  private final int stscEntryCount;
+  private final int sttsEntryCount;
+  private final int cttsEntryCount;
+  private final int syncSampleCount;
+  private final long timescale;
+  private final long mediaTimeOffset;
+
+  private final long[] offsets;
+  private final int[] sizes;
+  private final long[] timestampsUs;
+  private final int[] flags;
+  private int windowStartIndex;
+  private int windowLength;
+
+  // State for decoding the sample that follows the window.
+  private int chunkIndex;
+  private int remainingSamplesInChunk;
+  private long offset;
+  private int stscEntryIndex;
+  private int samplesPerChunk;
+  private int nextSamplesPerChunkChangeIndex;
+  private int sttsEntryIndex;
+  private int remainingSamplesAtTimestampDelta;
+  private int timestampDelta;
+  private long timestamp;
+  private int cttsEntryIndex;
+  private int remainingSamplesAtTimestampOffset;
+  private int timestampOffset;
+  private int stssEntryIndex;
+  private int nextSynchronizationSampleIndex;
+
+  // Lazily initialized tables of the index of the first sample described by each stsc, stts and
+  // ctts entry, and of the decoding time of the first sample described by each stts entry.
+  private long[] stscFirstSampleIndices;
+  private long[] sttsFirstSampleIndices;
+  private long[] sttsFirstTimestamps;
+  private long[] cttsFirstSampleIndices;
+
+  /**
+   * @param sampleCount The number of samples.
+   * @param fixedSampleSize The size of every sample in bytes, or 0 if sizes are defined by stsz.
+   * @param stsz The stsz (sample size) atom.
+   * @param chunkOffsets The stco or co64 (chunk offset) atom.
+   * @param chunkOffsetsAreLongs Whether {@code chunkOffsets} is a co64 atom.
+   * @param stsc The stsc (sample to chunk) atom.
+   * @param stts The stts (decoding time to sample) atom.
+   * @param ctts The ctts (composition time to sample) atom, or null if not present.
+   * @param stss The stss (sync sample) atom, or null if all samples are synchronization samples.
+   * @param timescale The media timescale of the track.
+   * @param mediaTimeOffset A media time to subtract from every sample timestamp.
+   */
+  public WindowedTrackSampleTable(int sampleCount, int fixedSampleSize, ParsableByteArray stsz,
+      ParsableByteArray chunkOffsets, boolean chunkOffsetsAreLongs, ParsableByteArray stsc,
+      ParsableByteArray stts, ParsableByteArray ctts, ParsableByteArray stss, long timescale,
+      long mediaTimeOffset) {
+    super(sampleCount, fixedSampleSize != 0 ? fixedSampleSize : MediaFormat.NO_VALUE);
+    this.fixedSampleSize = fixedSampleSize;
+    this.stsz = stsz.data;
+    this.chunkOffsets = chunkOffsets.data;
+    this.chunkOffsetsAreLongs = chunkOffsetsAreLongs;
+    this.stsc = stsc.data;
+    this.stts = stts.data;
+    this.ctts = ctts != null ? ctts.data : null;
+    this.stss = stss != null ? stss.data : null;
+    this.timescale = timescale;
+    this.mediaTimeOffset = mediaTimeOffset;
+    chunkCount = readUnsignedIntToInt(this.chunkOffsets, Atom.FULL_HEADER_SIZE);
+    stscEntryCount = readUnsignedIntToInt(this.stsc, Atom.FULL_HEADER_SIZE);
+    sttsEntryCount = readUnsignedIntToInt(this.stts, Atom.FULL_HEADER_SIZE);
+    cttsEntryCount = ctts != null ? readUnsignedIntToInt(this.ctts, Atom.FULL_HEADER_SIZE) : 0;
+    syncSampleCount = stss != null ? readUnsignedIntToInt(this.stss, Atom.FULL_HEADER_SIZE)
+        : sampleCount;
+    Assertions.checkArgument(sttsEntryCount > 0);
+
+    offsets = new long[WINDOW_SIZE];
+    sizes = new int[WINDOW_SIZE];
+    timestampsUs = new long[WINDOW_SIZE];
+    flags = new int[WINDOW_SIZE];
+    seekToSample(0);
+  }
+
+  /**
+   * Returns whether all samples described by the specified atoms have presentation times in the
+   * range from {@code startTime} (inclusive) to {@code endTime} (exclusive), where a sample may
+   * only start the range if it's the first sample.
+   *
+   * @param sampleCount The number of samples.
+   * @param stts The stts (decoding time to sample) atom.
+   * @param ctts The ctts (composition time to sample) atom, or null if not present.
+   * @param startTime The start of the range, in the media timescale.
+   * @param endTime The end of the range, in the media timescale.
+   * @return Whether all samples are in the range.
+   */
+  public static boolean samplesAreInRange(int sampleCount, ParsableByteArray stts,
+      ParsableByteArray ctts, long startTime, long endTime) {
+    int sttsEntryCount = readUnsignedIntToInt(stts.data, Atom.FULL_HEADER_SIZE);
+    int cttsEntryCount = ctts != null ? readUnsignedIntToInt(ctts.data, Atom.FULL_HEADER_SIZE) : 0;
+    int sttsEntryIndex = 0;
+    int remainingSamplesAtTimestampDelta = 0;
+    int timestampDelta = 0;
+    int cttsEntryIndex = 0;
+    int remainingSamplesAtTimestampOffset = 0;
+    int timestampOffset = 0;
+    long timestamp = 0;
+    int sampleIndex = 0;
+    // Walk runs of samples that share both a timestamp delta and a timestamp offset.
+    while (sampleIndex < sampleCount) {
+      while (remainingSamplesAtTimestampDelta == 0 && sttsEntryIndex < sttsEntryCount) {
+        int position = TABLE_ENTRIES_POSITION + sttsEntryIndex++ * 8;
+        remainingSamplesAtTimestampDelta = readUnsignedIntToInt(stts.data, position);
+        timestampDelta = readUnsignedIntToInt(stts.data, position + 4);
+      }
+      while (remainingSamplesAtTimestampOffset == 0 && cttsEntryIndex < cttsEntryCount) {
+        int position = TABLE_ENTRIES_POSITION + cttsEntryIndex++ * 8;
+        remainingSamplesAtTimestampOffset = readUnsignedIntToInt(ctts.data, position);
+        timestampOffset = readInt(ctts.data, position + 4);
+      }
+      if (remainingSamplesAtTimestampDelta == 0) {
+        return false;
+      }
+      int runLength = Math.min(sampleCount - sampleIndex, remainingSamplesAtTimestampDelta);
+      if (remainingSamplesAtTimestampOffset > 0) {
+        runLength = Math.min(runLength, remainingSamplesAtTimestampOffset);
+        remainingSamplesAtTimestampOffset -= runLength;
+      }
+      long firstTimestamp = timestamp + timestampOffset;
+      long lastTimestamp = firstTimestamp + (long) (runLength - 1) * timestampDelta;
+      if (firstTimestamp < startTime || (firstTimestamp == startTime && sampleIndex != 0)
+          || lastTimestamp >= endTime) {
+        return false;
+      }
+      timestamp += (long) runLength * timestampDelta;
+      remainingSamplesAtTimestampDelta -= runLength;
+      sampleIndex += runLength;
+    }
+    return true;
+  }
+
+  @Override
+  public long getOffset(int sampleIndex) {
+    return offsets[getWindowIndex(sampleIndex)];
+  }
+
+  @Override
+  public int getSize(int sampleIndex) {
+    return sizes[getWindowIndex(sampleIndex)];
+  }
+
+  @Override
+  public long getTimestampUs(int sampleIndex) {
+    return timestampsUs[getWindowIndex(sampleIndex)];
+  }
+
+  @Override
+  public int getFlags(int sampleIndex) {
+    return flags[getWindowIndex(sampleIndex)];
+  }
+
+  @Override
+  public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
+    int syncSampleIndex = NO_SAMPLE;
+    int low = 0;
+    int high = syncSampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int sampleIndex = getSynchronizationSampleIndex(mid);
+      if (computeTimestampUs(sampleIndex) <= timeUs) {
+        syncSampleIndex = sampleIndex;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return syncSampleIndex;
+  }
+
+  @Override
+  public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
+    int syncSampleIndex = NO_SAMPLE;
+    int low = 0;
+    int high = syncSampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int sampleIndex = getSynchronizationSampleIndex(mid);
+      if (computeTimestampUs(sampleIndex) >= timeUs) {
+        syncSampleIndex = sampleIndex;
+        high = mid - 1;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return syncSampleIndex;
+  }
+
+  /**
+   * Returns the index of the specified sample in the window, decoding a new window starting at the
+   * sample if it isn't in the current one.
+   */
+  private int getWindowIndex(int sampleIndex) {
+    int windowIndex = sampleIndex - windowStartIndex;
+    if (windowIndex >= 0 && windowIndex < windowLength) {
+      return windowIndex;
+    }
+    if (windowIndex != windowLength) {
+      seekToSample(sampleIndex);
+    }
+    decodeWindow(sampleIndex);
+    return 0;
+  }
+
+  /**
+   * Decodes the window starting at {@code startIndex}, which must be the sample that follows the
+   * current window.
+   */
+  private void decodeWindow(int startIndex) {
+    windowStartIndex = startIndex;
+    windowLength = Math.min(WINDOW_SIZE, sampleCount - startIndex);
+    for (int i = 0; i < windowLength; i++) {
+      int sampleIndex = startIndex + i;
+
+      // Advance to the next chunk if necessary.
+      while (remainingSamplesInChunk == 0) {
+        chunkIndex++;
+        Assertions.checkState(chunkIndex < chunkCount);
+        while (chunkIndex == nextSamplesPerChunkChangeIndex) {
+          stscEntryIndex++;
+          samplesPerChunk = getSamplesPerChunk(stscEntryIndex);
+          nextSamplesPerChunkChangeIndex = getFirstChunkIndex(stscEntryIndex + 1);
+        }
+        offset = getChunkOffset(chunkIndex);
+        remainingSamplesInChunk = samplesPerChunk;
+      }
+
+      // Add on the timestamp offset if ctts is present.
+      if (ctts != null) {
+        while (remainingSamplesAtTimestampOffset == 0 && cttsEntryIndex < cttsEntryCount) {
+          int position = TABLE_ENTRIES_POSITION + cttsEntryIndex * 8;
+          remainingSamplesAtTimestampOffset = readUnsignedIntToInt(ctts, position);
+          timestampOffset = readInt(ctts, position + 4);
+          cttsEntryIndex++;
+        }
+        remainingSamplesAtTimestampOffset--;
+      }
+
+      offsets[i] = offset;
+      sizes[i] = getSampleSize(sampleIndex);
+      timestampsUs[i] = Util.scaleLargeTimestamp(timestamp + timestampOffset - mediaTimeOffset,
+          C.MICROS_PER_SECOND, timescale);
+
+      // All samples are synchronization samples if the stss is not present.
+      flags[i] = stss == null ? C.SAMPLE_FLAG_SYNC : 0;
+      if (sampleIndex == nextSynchronizationSampleIndex) {
+        flags[i] = C.SAMPLE_FLAG_SYNC;
+        nextSynchronizationSampleIndex = ++stssEntryIndex < syncSampleCount
+            ? getSynchronizationSampleIndex(stssEntryIndex) : NO_SAMPLE;
+      }
+
+      // Add on the duration of this sample.
+      timestamp += timestampDelta;
+      remainingSamplesAtTimestampDelta--;
+      while (remainingSamplesAtTimestampDelta == 0 && sttsEntryIndex + 1 < sttsEntryCount) {
+        sttsEntryIndex++;
+        remainingSamplesAtTimestampDelta = getSttsSampleCount(sttsEntryIndex);
+        timestampDelta = getSttsDelta(sttsEntryIndex);
+      }
+
+      offset += sizes[i];
+      remainingSamplesInChunk--;
+    }
+  }
+
+  /**
+   * Sets the decoding state so that the next window starts at the specified sample.
+   */
+  private void seekToSample(int sampleIndex) {
+    windowStartIndex = sampleIndex;
+    windowLength = 0;
+    if (sampleIndex == 0) {
+      seekToFirstSample();
+      return;
+    }
+    maybeBuildEntryTables();
+
+    // Find the chunk that contains the sample.
+    int entryIndex = findEntryIndex(stscFirstSampleIndices, sampleIndex);
+    stscEntryIndex = entryIndex;
+    samplesPerChunk = getSamplesPerChunk(entryIndex);
+    nextSamplesPerChunkChangeIndex = getFirstChunkIndex(entryIndex + 1);
+    int sampleIndexInEntry = (int) (sampleIndex - stscFirstSampleIndices[entryIndex]);
+    chunkIndex = getFirstChunkIndex(entryIndex) + sampleIndexInEntry / samplesPerChunk;
+    int sampleIndexInChunk = sampleIndexInEntry % samplesPerChunk;
+    remainingSamplesInChunk = samplesPerChunk - sampleIndexInChunk;
+    offset = getChunkOffset(chunkIndex);
+    for (int i = sampleIndex - sampleIndexInChunk; i < sampleIndex; i++) {
+      offset += getSampleSize(i);
+    }
+
+    // Find the decoding timestamp of the sample.
+    sttsEntryIndex = findEntryIndex(sttsFirstSampleIndices, sampleIndex);
+    timestampDelta = getSttsDelta(sttsEntryIndex);
+    int sampleIndexInSttsEntry = (int) (sampleIndex - sttsFirstSampleIndices[sttsEntryIndex]);
+    timestamp = sttsFirstTimestamps[sttsEntryIndex]
+        + (long) sampleIndexInSttsEntry * timestampDelta;
+    remainingSamplesAtTimestampDelta = getSttsSampleCount(sttsEntryIndex) - sampleIndexInSttsEntry;
+
+    // Find the composition time offset of the sample.
+    remainingSamplesAtTimestampOffset = 0;
+    timestampOffset = 0;
+    cttsEntryIndex = 0;
+    if (cttsEntryCount > 0) {
+      int entry = findEntryIndex(cttsFirstSampleIndices, sampleIndex);
+      int position = TABLE_ENTRIES_POSITION + entry * 8;
+      long entryEndIndex = cttsFirstSampleIndices[entry] + readUnsignedIntToInt(ctts, position);
+      timestampOffset = readInt(ctts, position + 4);
+      if (entryEndIndex > sampleIndex) {
+        remainingSamplesAtTimestampOffset = (int) (entryEndIndex - sampleIndex);
+        cttsEntryIndex = entry + 1;
+      } else {
+        // The sample is beyond the end of the table, so the last offset continues to apply.
+        cttsEntryIndex = cttsEntryCount;
+      }
+    }
+
+    // Find the next synchronization sample.
+    if (stss == null) {
+      stssEntryIndex = 0;
+      nextSynchronizationSampleIndex = NO_SAMPLE;
+    } else {
+      int low = 0;
+      int high = syncSampleCount;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (getSynchronizationSampleIndex(mid) < sampleIndex) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      stssEntryIndex = low;
+      nextSynchronizationSampleIndex = low < syncSampleCount ? getSynchronizationSampleIndex(low)
+          : NO_SAMPLE;
+    }
+  }
+
+  /**
+   * Sets the decoding state so that the next window starts at the first sample, without building
+   * the entry tables.
+   */
+  private void seekToFirstSample() {
+    // The first chunk is entered when the first sample is decoded.
+    chunkIndex = -1;
+    remainingSamplesInChunk = 0;
+    stscEntryIndex = -1;
+    nextSamplesPerChunkChangeIndex = getFirstChunkIndex(0);
+    sttsEntryIndex = 0;
+    timestamp = 0;
+    timestampDelta = getSttsDelta(0);
+    remainingSamplesAtTimestampDelta = getSttsSampleCount(0);
+    while (remainingSamplesAtTimestampDelta == 0 && sttsEntryIndex + 1 < sttsEntryCount) {
+      sttsEntryIndex++;
+      remainingSamplesAtTimestampDelta = getSttsSampleCount(sttsEntryIndex);
+      timestampDelta = getSttsDelta(sttsEntryIndex);
+    }
+    cttsEntryIndex = 0;
+    remainingSamplesAtTimestampOffset = 0;
+    timestampOffset = 0;
+    stssEntryIndex = 0;
+    nextSynchronizationSampleIndex = stss == null || syncSampleCount == 0 ? NO_SAMPLE
+        : getSynchronizationSampleIndex(0);
+  }
+
+  /**
+   * Computes the timestamp of a sample without changing the window.
+   */
+  private long computeTimestampUs(int sampleIndex) {
+    maybeBuildEntryTables();
+    int entryIndex = findEntryIndex(sttsFirstSampleIndices, sampleIndex);
+    long sampleTimestamp = sttsFirstTimestamps[entryIndex]
+        + (sampleIndex - sttsFirstSampleIndices[entryIndex]) * getSttsDelta(entryIndex);
+    int sampleTimestampOffset = 0;
+    if (cttsEntryCount > 0) {
+      entryIndex = findEntryIndex(cttsFirstSampleIndices, sampleIndex);
+      sampleTimestampOffset = readInt(ctts, TABLE_ENTRIES_POSITION + entryIndex * 8 + 4);
+    }
+    return Util.scaleLargeTimestamp(sampleTimestamp + sampleTimestampOffset - mediaTimeOffset,
+        C.MICROS_PER_SECOND, timescale);
+  }
+
+  /**
+   * Builds the tables of the first sample index of each stsc, stts and ctts entry, and of the
+   * decoding time of each stts entry, if they haven't been built already.
+   */
+  private void maybeBuildEntryTables() {
+    if (sttsFirstSampleIndices != null) {
+      return;
+    }
+    long[] stscFirstSampleIndices = new long[stscEntryCount];
+    long firstSampleIndex = 0;
+    for (int i = 0; i < stscEntryCount; i++) {
+      stscFirstSampleIndices[i] = firstSampleIndex;
+      firstSampleIndex += (long) (getFirstChunkIndex(i + 1) - getFirstChunkIndex(i))
+          * getSamplesPerChunk(i);
+    }
+    // Check that the tables describe the expected number of samples.
+    Assertions.checkState(firstSampleIndex >= sampleCount);
+
+    long[] sttsFirstSampleIndices = new long[sttsEntryCount];
+    long[] sttsFirstTimestamps = new long[sttsEntryCount];
+    firstSampleIndex = 0;
+    long firstTimestamp = 0;
+    for (int i = 0; i < sttsEntryCount; i++) {
+      sttsFirstSampleIndices[i] = firstSampleIndex;
+      sttsFirstTimestamps[i] = firstTimestamp;
+      int entrySampleCount = getSttsSampleCount(i);
+      firstSampleIndex += entrySampleCount;
+      firstTimestamp += (long) entrySampleCount * getSttsDelta(i);
+    }
+    Assertions.checkState(firstSampleIndex == sampleCount);
+
+    long[] cttsFirstSampleIndices = new long[cttsEntryCount];
+    firstSampleIndex = 0;
+    for (int i = 0; i < cttsEntryCount; i++) {
+      cttsFirstSampleIndices[i] = firstSampleIndex;
+      firstSampleIndex += readUnsignedIntToInt(ctts, TABLE_ENTRIES_POSITION + i * 8);
+    }
+
+    this.stscFirstSampleIndices = stscFirstSampleIndices;
+    this.sttsFirstTimestamps = sttsFirstTimestamps;
+    this.cttsFirstSampleIndices = cttsFirstSampleIndices;
+    this.sttsFirstSampleIndices = sttsFirstSampleIndices;
+  }
+
+  /**
+   * Returns the index of the last entry whose first sample index is less than or equal to
+   * {@code sampleIndex}, which is the entry that describes the sample. Entries that describe no
+   * samples share their first sample index with the following entry, and so are never returned
+   * unless they're last.
+   */
+  private static int findEntryIndex(long[] firstSampleIndices, int sampleIndex) {
+    int low = 0;
+    int high = firstSampleIndices.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (firstSampleIndices[mid] <= sampleIndex) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private int getSampleSize(int sampleIndex) {
+    return fixedSampleSize != 0 ? fixedSampleSize
+        : readUnsignedIntToInt(stsz, STSZ_ENTRIES_POSITION + sampleIndex * 4);
+  }
+
+  private long getChunkOffset(int index) {
+    return chunkOffsetsAreLongs
+        ? readUnsignedLong(chunkOffsets, TABLE_ENTRIES_POSITION + index * 8)
+        : readUnsignedInt(chunkOffsets, TABLE_ENTRIES_POSITION + index * 4);
+  }
+
+  /**
+   * Returns the index of the first chunk described by an stsc entry, or the number of chunks if the
+   * entry index is equal to the number of entries.
+   */
+  private int getFirstChunkIndex(int entryIndex) {
+    return entryIndex < stscEntryCount
+        ? readUnsignedIntToInt(stsc, TABLE_ENTRIES_POSITION + entryIndex * 12) - 1
+        : chunkCount;
+  }
+
+  private int getSamplesPerChunk(int entryIndex) {
+    return readUnsignedIntToInt(stsc, TABLE_ENTRIES_POSITION + entryIndex * 12 + 4);
+  }
+
+  private int getSttsSampleCount(int entryIndex) {
+    return readUnsignedIntToInt(stts, TABLE_ENTRIES_POSITION + entryIndex * 8);
+  }
+
+  private int getSttsDelta(int entryIndex) {
+    return readUnsignedIntToInt(stts, TABLE_ENTRIES_POSITION + entryIndex * 8 + 4);
+  }
+
+  private int getSynchronizationSampleIndex(int entryIndex) {
+    return stss == null ? entryIndex
+        : readUnsignedIntToInt(stss, TABLE_ENTRIES_POSITION + entryIndex * 4) - 1;
+  }
+
+  // Reads from the raw atom data directly, so that the positions of the atoms are left unchanged.
+
+  private static int readInt(byte[] data, int position) {
+    return (data[position] & 0xFF) << 24
+        | (data[position + 1] & 0xFF) << 16
+        | (data[position + 2] & 0xFF) << 8
+        | (data[position + 3] & 0xFF);
+  }
+
+  private static long readUnsignedInt(byte[] data, int position) {
+    return readInt(data, position) & 0xFFFFFFFFL;
+  }
+
+  private static int readUnsignedIntToInt(byte[] data, int position) {
+    int result = readInt(data, position);
+    if (result < 0) {
+      throw new IllegalStateException("Top bit not zero: " + result);
+    }
+    return result;
+  }
+
+  private static long readUnsignedLong(byte[] data, int position) {
+    long result = readUnsignedInt(data, position) << 32 | readUnsignedInt(data, position + 4);
+    if (result < 0) {
+      throw new IllegalStateException("Top bit not zero: " + result);
+    }
+    return result;
+  }
+
+}
@@ -27,13 +27,16 @@ import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.Util;
 
 import android.util.Log;
-import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 
 import java.io.IOException;
 
 /**
  * Facilitates the extraction of data from the MPEG-2 TS container format.
+ * <p>
+ * Packets are read from the input in batches, and each call to {@link #read} demultiplexes a
+ * single packet from the batch. Once the program tables have been parsed, the extractor does not
+ * allocate when demultiplexing.
  */
 public final class TsExtractor implements Extractor {
 
@@ -47,6 +50,10 @@ public final class TsExtractor implements Extractor {
   private static final int TS_PACKET_SIZE = 188;
   private static final int TS_SYNC_BYTE = 0x47; // First byte of each TS packet.
   private static final int TS_PAT_PID = 0;
+  private static final int TS_MAX_PID = 0x1FFF;
+
+  private static final int BUFFER_PACKET_COUNT = 50;
+  private static final int BUFFER_SIZE = TS_PACKET_SIZE * BUFFER_PACKET_COUNT;
 
   private static final int TS_STREAM_TYPE_MPA = 0x03;
   private static final int TS_STREAM_TYPE_MPA_LSF = 0x04;
@@ -68,8 +75,7 @@ public final class TsExtractor implements Extractor {
   private final PtsTimestampAdjuster ptsTimestampAdjuster;
   private final int workaroundFlags;
   private final ParsableByteArray tsPacketBuffer;
-  private final ParsableBitArray tsScratch;
-  /* package */ final SparseArray<TsPayloadReader> tsPayloadReaders; // Indexed by pid
+  /* package */ final TsPayloadReader[] tsPayloadReaders; // Indexed by pid
   /* package */ final SparseBooleanArray streamTypes;
 
   // Accessed only by the loading thread.
@@ -87,10 +93,9 @@ public final class TsExtractor implements Extractor {
   public TsExtractor(PtsTimestampAdjuster ptsTimestampAdjuster, int workaroundFlags) {
     this.ptsTimestampAdjuster = ptsTimestampAdjuster;
     this.workaroundFlags = workaroundFlags;
-    tsPacketBuffer = new ParsableByteArray(TS_PACKET_SIZE);
-    tsScratch = new ParsableBitArray(new byte[3]);
-    tsPayloadReaders = new SparseArray<>();
-    tsPayloadReaders.put(TS_PAT_PID, new PatReader());
+    tsPacketBuffer = new ParsableByteArray(new byte[BUFFER_SIZE], 0);
+    tsPayloadReaders = new TsPayloadReader[TS_MAX_PID + 1];
+    tsPayloadReaders[TS_PAT_PID] = new PatReader();
     streamTypes = new SparseBooleanArray();
   }
 
@@ -118,8 +123,11 @@ public final class TsExtractor implements Extractor {
   @Override
   public void seek() {
     ptsTimestampAdjuster.reset();
-    for (int i = 0; i < tsPayloadReaders.size(); i++) {
-      tsPayloadReaders.valueAt(i).seek();
+    tsPacketBuffer.reset();
+    for (TsPayloadReader payloadReader : tsPayloadReaders) {
+      if (payloadReader != null) {
+        payloadReader.seek();
+      }
     }
   }
 
@@ -131,28 +139,49 @@ public final class TsExtractor implements Extractor {
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
-    if (!input.readFully(tsPacketBuffer.data, 0, TS_PACKET_SIZE, true)) {
-      return RESULT_END_OF_INPUT;
+    byte[] data = tsPacketBuffer.data;
+    // Move any remaining data to the start of the buffer if there isn't space for a whole packet
+    // after it.
+    if (BUFFER_SIZE - tsPacketBuffer.getPosition() < TS_PACKET_SIZE) {
+      int bytesLeft = tsPacketBuffer.bytesLeft();
+      if (bytesLeft > 0) {
+        System.arraycopy(data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
+      }
+      tsPacketBuffer.reset(data, bytesLeft);
+    }
+    // Read as much as will fit into the buffer, until it contains at least one whole packet.
+    while (tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE) {
+      int limit = tsPacketBuffer.limit();
+      int bytesRead = input.read(data, limit, BUFFER_SIZE - limit);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return RESULT_END_OF_INPUT;
+      }
+      tsPacketBuffer.setLimit(limit + bytesRead);
     }
 
-    // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
-    // the header.
-    tsPacketBuffer.setPosition(0);
-    tsPacketBuffer.setLimit(TS_PACKET_SIZE);
-    int syncByte = tsPacketBuffer.readUnsignedByte();
-    if (syncByte != TS_SYNC_BYTE) {
+    // Skip any data preceding the next sync byte.
+    int limit = tsPacketBuffer.limit();
+    int position = tsPacketBuffer.getPosition();
+    while (position < limit && data[position] != TS_SYNC_BYTE) {
+      position++;
+    }
+    tsPacketBuffer.setPosition(position);
+    int endOfPacket = position + TS_PACKET_SIZE;
+    if (endOfPacket > limit) {
       return RESULT_CONTINUE;
     }
 
-    tsPacketBuffer.readBytes(tsScratch, 3);
-    tsScratch.skipBits(1); // transport_error_indicator
-    boolean payloadUnitStartIndicator = tsScratch.readBit();
-    tsScratch.skipBits(1); // transport_priority
-    int pid = tsScratch.readBits(13);
-    tsScratch.skipBits(2); // transport_scrambling_control
-    boolean adaptationFieldExists = tsScratch.readBit();
-    boolean payloadExists = tsScratch.readBit();
-    // Last 4 bits of scratch are skipped: continuity_counter
+    // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
+    // the header.
+    int tsPacketHeader = tsPacketBuffer.readInt();
+    // sync_byte (8), transport_error_indicator (1)
+    boolean payloadUnitStartIndicator = (tsPacketHeader & 0x400000) != 0;
+    // transport_priority (1)
+    int pid = (tsPacketHeader & 0x1FFF00) >> 8;
+    // transport_scrambling_control (2)
+    boolean adaptationFieldExists = (tsPacketHeader & 0x20) != 0;
+    boolean payloadExists = (tsPacketHeader & 0x10) != 0;
+    // continuity_counter (4)
 
     // Skip the adaptation field.
     if (adaptationFieldExists) {
@@ -161,13 +190,16 @@ public final class TsExtractor implements Extractor {
     }
 
     // Read the payload.
-    if (payloadExists) {
-      TsPayloadReader payloadReader = tsPayloadReaders.get(pid);
+    if (payloadExists && tsPacketBuffer.getPosition() < endOfPacket) {
+      TsPayloadReader payloadReader = tsPayloadReaders[pid];
       if (payloadReader != null) {
+        tsPacketBuffer.setLimit(endOfPacket);
         payloadReader.consume(tsPacketBuffer, payloadUnitStartIndicator, output);
+        tsPacketBuffer.setLimit(limit);
       }
     }
 
+    tsPacketBuffer.setPosition(endOfPacket);
     return RESULT_CONTINUE;
   }
 
@@ -240,7 +272,10 @@ public final class TsExtractor implements Extractor {
           patScratch.skipBits(13); // network_PID (13)
         } else {
           int pid = patScratch.readBits(13);
-          tsPayloadReaders.put(pid, new PmtReader());
+          // The table is repeated throughout the stream, so only create the reader once.
+          if (tsPayloadReaders[pid] == null) {
+            tsPayloadReaders[pid] = new PmtReader();
+          }
         }
       }
 
@@ -283,6 +318,7 @@ public final class TsExtractor implements Extractor {
         data.readBytes(pmtScratch, 3);
         pmtScratch.skipBits(12); // table_id (8), section_syntax_indicator (1), 0 (1), reserved (2)
         sectionLength = pmtScratch.readBits(12);
+        sectionBytesRead = 0;
 
         if (sectionData.capacity() < sectionLength) {
           sectionData.reset(new byte[sectionLength], sectionLength);
@@ -385,8 +421,7 @@ public final class TsExtractor implements Extractor {
 
         if (pesPayloadReader != null) {
           streamTypes.put(streamType, true);
-          tsPayloadReaders.put(elementaryPid,
-              new PesReader(pesPayloadReader, ptsTimestampAdjuster));
+          tsPayloadReaders[elementaryPid] = new PesReader(pesPayloadReader, ptsTimestampAdjuster);
         }
       }
 
@@ -18,10 +18,13 @@ package com.google.android.exoplayer.hls;
 import com.google.android.exoplayer.BehindLiveWindowException;
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.chunk.Chunk;
 import com.google.android.exoplayer.chunk.ChunkOperationHolder;
 import com.google.android.exoplayer.chunk.DataChunk;
 import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
 import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
 import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
@@ -31,6 +34,7 @@ import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer.upstream.PrefetchDataSource;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.MimeTypes;
 import com.google.android.exoplayer.util.UriUtil;
@@ -128,6 +132,7 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
   private static final String VTT_FILE_EXTENSION = ".vtt";
   private static final String WEBVTT_FILE_EXTENSION = ".webvtt";
   private static final float BANDWIDTH_FRACTION = 0.8f;
+  private static final String SKIP_QUERY_PARAMETER = "_HLS_skip";
 
   private final boolean isMaster;
   private final DataSource dataSource;
@@ -140,6 +145,8 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
   private final String baseUri;
   private final long minBufferDurationToSwitchUpUs;
   private final long maxBufferDurationToSwitchDownUs;
+  private final FormatEvaluator formatEvaluator;
+  private final Evaluation evaluation;
 
   // TODO: Expose tracks.
   private final ArrayList<ExposedTrack> tracks;
@@ -147,15 +154,19 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
   private int selectedTrackIndex;
 
   // A list of variants considered during playback, ordered by decreasing bandwidth. The following
-  // three arrays are of the same length and are ordered in the same way (i.e. variantPlaylists[i],
-  // variantLastPlaylistLoadTimesMs[i] and variantBlacklistTimes[i] all correspond to variants[i]).
+  // four arrays are of the same length and are ordered in the same way (i.e. variantPlaylists[i],
+  // variantLastPlaylistLoadTimesMs[i], variantBlacklistTimes[i] and
+  // variantDeltaUpdatesDisabled[i] all correspond to variants[i]).
   private Variant[] variants;
   private HlsMediaPlaylist[] variantPlaylists;
   private long[] variantLastPlaylistLoadTimesMs;
   private long[] variantBlacklistTimes;
+  private boolean[] variantDeltaUpdatesDisabled;
 
   // The index in variants of the currently selected variant.
   private int selectedVariantIndex;
+  // The formats of the variants that aren't blacklisted, as passed to the formatEvaluator.
+  private Format[] enabledVariantFormats;
 
   private boolean prepareCalled;
   private byte[] scratchSpace;
@@ -248,6 +259,47 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
       PtsTimestampAdjusterProvider timestampAdjusterProvider, int adaptiveMode,
       long minBufferDurationToSwitchUpMs, long maxBufferDurationToSwitchDownMs,
       Handler eventHandler, EventListener eventListener) {
+    this(isMaster, dataSource, playlist, trackSelector, bandwidthMeter, timestampAdjusterProvider,
+        adaptiveMode, minBufferDurationToSwitchUpMs, maxBufferDurationToSwitchDownMs, null,
+        eventHandler, eventListener);
+  }
+
+  /**
+   * @param isMaster True if this is the master source for the playback. False otherwise. Each
+   *     playback must have exactly one master source, which should be the source providing video
+   *     chunks (or audio chunks for audio only playbacks).
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param playlist The HLS playlist.
+   * @param trackSelector Selects tracks to be exposed by this source.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param timestampAdjusterProvider A provider of {@link PtsTimestampAdjuster} instances. If
+   *     multiple {@link HlsChunkSource}s are used for a single playback, they should all share the
+   *     same provider.
+   * @param adaptiveMode The mode for switching from one variant to another. One of
+   *     {@link #ADAPTIVE_MODE_NONE}, {@link #ADAPTIVE_MODE_ABRUPT} and
+   *     {@link #ADAPTIVE_MODE_SPLICE}.
+   * @param formatEvaluator Selects from the variants of adaptive tracks during playback. May be
+   *     null, in which case variants are selected based on the estimated bandwidth and the
+   *     buffered duration, as configured by {@code minBufferDurationToSwitchUpMs} and
+   *     {@code maxBufferDurationToSwitchDownMs}.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public HlsChunkSource(boolean isMaster, DataSource dataSource, HlsPlaylist playlist,
+      HlsTrackSelector trackSelector, BandwidthMeter bandwidthMeter,
+      PtsTimestampAdjusterProvider timestampAdjusterProvider, int adaptiveMode,
+      FormatEvaluator formatEvaluator, Handler eventHandler, EventListener eventListener) {
+    this(isMaster, dataSource, playlist, trackSelector, bandwidthMeter, timestampAdjusterProvider,
+        adaptiveMode, DEFAULT_MIN_BUFFER_TO_SWITCH_UP_MS, DEFAULT_MAX_BUFFER_TO_SWITCH_DOWN_MS,
+        formatEvaluator, eventHandler, eventListener);
+  }
+
+  private HlsChunkSource(boolean isMaster, DataSource dataSource, HlsPlaylist playlist,
+      HlsTrackSelector trackSelector, BandwidthMeter bandwidthMeter,
+      PtsTimestampAdjusterProvider timestampAdjusterProvider, int adaptiveMode,
+      long minBufferDurationToSwitchUpMs, long maxBufferDurationToSwitchDownMs,
+      FormatEvaluator formatEvaluator, Handler eventHandler, EventListener eventListener) {
     this.isMaster = isMaster;
     this.dataSource = dataSource;
     this.trackSelector = trackSelector;
@@ -258,6 +310,8 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     this.eventHandler = eventHandler;
     minBufferDurationToSwitchUpUs = minBufferDurationToSwitchUpMs * 1000;
     maxBufferDurationToSwitchDownUs = maxBufferDurationToSwitchDownMs * 1000;
+    this.formatEvaluator = formatEvaluator;
+    evaluation = new Evaluation();
     baseUri = playlist.baseUri;
     playlistParser = new HlsPlaylistParser();
     tracks = new ArrayList<>();
@@ -395,6 +449,11 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     variantPlaylists = new HlsMediaPlaylist[variants.length];
     variantLastPlaylistLoadTimesMs = new long[variants.length];
     variantBlacklistTimes = new long[variants.length];
+    variantDeltaUpdatesDisabled = new boolean[variants.length];
+    enabledVariantFormats = null;
+    if (formatEvaluator != null && variants.length > 1) {
+      formatEvaluator.enable();
+    }
   }
 
   /**
@@ -415,6 +474,12 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
    */
   public void reset() {
     fatalError = null;
+    if (formatEvaluator != null && variants != null && variants.length > 1) {
+      formatEvaluator.disable();
+    }
+    if (dataSource instanceof PrefetchDataSource) {
+      ((PrefetchDataSource) dataSource).prefetch(Collections.<DataSpec>emptyList());
+    }
   }
 
   /**
@@ -584,6 +649,28 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     out.chunk = new TsChunk(dataSource, dataSpec, trigger, format, startTimeUs, endTimeUs,
         chunkMediaSequence, segment.discontinuitySequenceNumber, extractorWrapper, encryptionKey,
         encryptionIv);
+    if (dataSource instanceof PrefetchDataSource) {
+      prefetchSegments((PrefetchDataSource) dataSource, mediaPlaylist, dataSpec, chunkIndex + 1);
+    }
+  }
+
+  /**
+   * Requests that the segments following a chunk are prefetched, so that the latency of requesting
+   * them overlaps with the loading of the chunk. Segments of other variants that were previously
+   * prefetched are not prefetched. A prefetch of the chunk itself is retained, since the chunk
+   * will be opened next.
+   */
+  private static void prefetchSegments(PrefetchDataSource prefetchDataSource,
+      HlsMediaPlaylist mediaPlaylist, DataSpec chunkDataSpec, int firstChunkIndex) {
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>();
+    int maxPrefetchCount = prefetchDataSource.getMaxPrefetchCount();
+    for (int chunkIndex = firstChunkIndex; dataSpecs.size() < maxPrefetchCount
+        && chunkIndex < mediaPlaylist.segments.size(); chunkIndex++) {
+      HlsMediaPlaylist.Segment segment = mediaPlaylist.segments.get(chunkIndex);
+      Uri chunkUri = UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url);
+      dataSpecs.add(new DataSpec(chunkUri, segment.byterangeOffset, segment.byterangeLength, null));
+    }
+    prefetchDataSource.prefetch(chunkDataSpec, dataSpecs);
   }
 
   /**
@@ -623,6 +710,14 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
    * @return True if the error was handled by the source. False otherwise.
    */
   public boolean onChunkLoadError(Chunk chunk, IOException e) {
+    if (chunk instanceof MediaPlaylistChunk && ((MediaPlaylistChunk) chunk).isDeltaUpdate
+        && e instanceof ParserException) {
+      // The delta update couldn't be applied to the previous playlist. Request the full playlist.
+      MediaPlaylistChunk playlistChunk = (MediaPlaylistChunk) chunk;
+      variantDeltaUpdatesDisabled[playlistChunk.variantIndex] = true;
+      Log.w(TAG, "Disabled playlist delta updates: " + chunk.dataSpec.uri);
+      return true;
+    }
     if (chunk.bytesLoaded() == 0
         && (chunk instanceof TsChunk || chunk instanceof MediaPlaylistChunk
             || chunk instanceof EncryptionKeyChunk)
@@ -719,6 +814,9 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
 
   private int getNextVariantIndex(TsChunk previousTsChunk, long playbackPositionUs) {
     clearStaleBlacklistedVariants();
+    if (formatEvaluator != null) {
+      return evaluateNextVariantIndex(previousTsChunk, playbackPositionUs);
+    }
     long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
     if (variantBlacklistTimes[selectedVariantIndex] != 0) {
       // The current variant has been blacklisted, so we have no choice but to re-evaluate.
@@ -752,6 +850,52 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     return selectedVariantIndex;
   }
 
+  private int evaluateNextVariantIndex(TsChunk previousTsChunk, long playbackPositionUs) {
+    updateEnabledVariantFormats();
+    List<TsChunk> queue = previousTsChunk == null ? Collections.<TsChunk>emptyList()
+        : Collections.singletonList(previousTsChunk);
+    // If the current variant has been blacklisted, the evaluator must select a new one.
+    evaluation.format = variantBlacklistTimes[selectedVariantIndex] != 0 ? null
+        : variants[selectedVariantIndex].format;
+    evaluation.queueSize = queue.size();
+    formatEvaluator.evaluate(queue, playbackPositionUs, enabledVariantFormats, evaluation);
+    for (int i = 0; i < variants.length; i++) {
+      if (variants[i].format == evaluation.format) {
+        return i;
+      }
+    }
+    // Should never happen.
+    throw new IllegalStateException("Invalid format: " + evaluation.format);
+  }
+
+  /**
+   * Updates {@link #enabledVariantFormats} if the set of variants that aren't blacklisted has
+   * changed. The array is reused otherwise, so that evaluators can cache data derived from it.
+   */
+  private void updateEnabledVariantFormats() {
+    int enabledVariantCount = 0;
+    boolean changed = enabledVariantFormats == null;
+    for (int i = 0; i < variants.length; i++) {
+      if (variantBlacklistTimes[i] == 0) {
+        if (!changed && (enabledVariantCount == enabledVariantFormats.length
+            || enabledVariantFormats[enabledVariantCount] != variants[i].format)) {
+          changed = true;
+        }
+        enabledVariantCount++;
+      }
+    }
+    if (!changed && enabledVariantCount == enabledVariantFormats.length) {
+      return;
+    }
+    enabledVariantFormats = new Format[enabledVariantCount];
+    enabledVariantCount = 0;
+    for (int i = 0; i < variants.length; i++) {
+      if (variantBlacklistTimes[i] == 0) {
+        enabledVariantFormats[enabledVariantCount++] = variants[i].format;
+      }
+    }
+  }
+
   private int getVariantIndexForBandwidth(long bitrateEstimate) {
     if (bitrateEstimate == BandwidthMeter.NO_ESTIMATE) {
       // Select the lowest quality.
@@ -789,10 +933,26 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
 
   private MediaPlaylistChunk newMediaPlaylistChunk(int variantIndex) {
     Uri mediaPlaylistUri = UriUtil.resolveToUri(baseUri, variants[variantIndex].url);
-    DataSpec dataSpec = new DataSpec(mediaPlaylistUri, 0, C.LENGTH_UNBOUNDED, null,
+    boolean isDeltaUpdate = canRequestDeltaUpdate(variantIndex);
+    Uri requestUri = !isDeltaUpdate ? mediaPlaylistUri
+        : mediaPlaylistUri.buildUpon().appendQueryParameter(SKIP_QUERY_PARAMETER, "YES").build();
+    DataSpec dataSpec = new DataSpec(requestUri, 0, C.LENGTH_UNBOUNDED, null,
         DataSpec.FLAG_ALLOW_GZIP);
     return new MediaPlaylistChunk(dataSource, dataSpec, scratchSpace, playlistParser, variantIndex,
-        mediaPlaylistUri.toString());
+        mediaPlaylistUri.toString(), variantPlaylists[variantIndex], isDeltaUpdate);
+  }
+
+  private boolean canRequestDeltaUpdate(int variantIndex) {
+    HlsMediaPlaylist mediaPlaylist = variantPlaylists[variantIndex];
+    if (mediaPlaylist == null || !mediaPlaylist.live || mediaPlaylist.canSkipUntilUs == 0
+        || variantDeltaUpdatesDisabled[variantIndex]) {
+      return false;
+    }
+    // The server only guarantees that a delta update can be applied to a playlist that was loaded
+    // less than half of the skip boundary ago.
+    long timeSinceLastMediaPlaylistLoadMs =
+        SystemClock.elapsedRealtime() - variantLastPlaylistLoadTimesMs[variantIndex];
+    return timeSinceLastMediaPlaylistLoadMs * 1000 < mediaPlaylist.canSkipUntilUs / 2;
   }
 
   private EncryptionKeyChunk newEncryptionKeyChunk(Uri keyUri, String iv, int variantIndex) {
@@ -893,27 +1053,32 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
   private static final class MediaPlaylistChunk extends DataChunk {
 
     public final int variantIndex;
+    public final boolean isDeltaUpdate;
 
     private final HlsPlaylistParser playlistParser;
     private final String playlistUrl;
+    private final HlsMediaPlaylist previousPlaylist;
 
     private byte[] rawResponse;
     private HlsMediaPlaylist result;
 
     public MediaPlaylistChunk(DataSource dataSource, DataSpec dataSpec, byte[] scratchSpace,
-        HlsPlaylistParser playlistParser, int variantIndex, String playlistUrl) {
+        HlsPlaylistParser playlistParser, int variantIndex, String playlistUrl,
+        HlsMediaPlaylist previousPlaylist, boolean isDeltaUpdate) {
       super(dataSource, dataSpec, Chunk.TYPE_MANIFEST, Chunk.TRIGGER_UNSPECIFIED, null,
           Chunk.NO_PARENT_ID, scratchSpace);
       this.variantIndex = variantIndex;
       this.playlistParser = playlistParser;
       this.playlistUrl = playlistUrl;
+      this.previousPlaylist = previousPlaylist;
+      this.isDeltaUpdate = isDeltaUpdate;
     }
 
     @Override
     protected void consume(byte[] data, int limit) throws IOException {
       rawResponse = Arrays.copyOf(data, limit);
       result = (HlsMediaPlaylist) playlistParser.parse(playlistUrl,
-          new ByteArrayInputStream(rawResponse));
+          new ByteArrayInputStream(rawResponse), previousPlaylist);
     }
 
     public byte[] getRawResponse() {
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CacheDownloader;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.UriUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility methods for downloading HLS content with a {@link CacheDownloader}.
+ */
+public final class HlsDownloadUtil {
+
+  private HlsDownloadUtil() {}
+
+  /**
+   * Returns the requests that download the segments of a media playlist.
+   * <p>
+   * The requests are the same as those made by {@link HlsChunkSource}, and so are stored under
+   * the URI of each segment. Encryption keys are not included.
+   *
+   * @param mediaPlaylist The media playlist, which must not be live.
+   * @return The requests.
+   */
+  public static List<DataSpec> getDataSpecs(HlsMediaPlaylist mediaPlaylist) {
+    Assertions.checkArgument(!mediaPlaylist.live);
+    List<HlsMediaPlaylist.Segment> segments = mediaPlaylist.segments;
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>(segments.size());
+    for (int i = 0; i < segments.size(); i++) {
+      HlsMediaPlaylist.Segment segment = segments.get(i);
+      dataSpecs.add(new DataSpec(UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url),
+          segment.byterangeOffset, segment.byterangeLength, null));
+    }
+    return dataSpecs;
+  }
+
+}
@@ -68,15 +68,26 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
   public final List<Segment> segments;
   public final boolean live;
   public final long durationUs;
+  /**
+   * The skip boundary advertised by the server for playlist delta updates, in microseconds, or 0
+   * if the server does not support delta updates.
+   */
+  public final long canSkipUntilUs;
 
   public HlsMediaPlaylist(String baseUri, int mediaSequence, int targetDurationSecs, int version,
       boolean live, List<Segment> segments) {
+    this(baseUri, mediaSequence, targetDurationSecs, version, live, segments, 0);
+  }
+
+  public HlsMediaPlaylist(String baseUri, int mediaSequence, int targetDurationSecs, int version,
+      boolean live, List<Segment> segments, long canSkipUntilUs) {
     super(baseUri, HlsPlaylist.TYPE_MEDIA);
     this.mediaSequence = mediaSequence;
     this.targetDurationSecs = targetDurationSecs;
     this.version = version;
     this.live = live;
     this.segments = segments;
+    this.canSkipUntilUs = canSkipUntilUs;
 
     if (!segments.isEmpty()) {
       Segment last = segments.get(segments.size() - 1);
@@ -20,21 +20,24 @@ import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.hls.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer.upstream.UriLoadable;
+import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.MimeTypes;
+import com.google.android.exoplayer.util.Util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.regex.Pattern;
 
 /**
  * HLS playlists parsing logic.
+ * <p>
+ * Playlists are tokenized directly from the bytes read from the input stream. Tags and attribute
+ * values are matched and numeric values are parsed in place, so strings are only allocated for
+ * values that are retained by the parsed playlist, such as URLs.
  */
 public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist> {
 
@@ -49,6 +52,8 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
   private static final String ENDLIST_TAG = "#EXT-X-ENDLIST";
   private static final String KEY_TAG = "#EXT-X-KEY";
   private static final String BYTERANGE_TAG = "#EXT-X-BYTERANGE";
+  private static final String SERVER_CONTROL_TAG = "#EXT-X-SERVER-CONTROL";
+  private static final String SKIP_TAG = "#EXT-X-SKIP";
 
   private static final String BANDWIDTH_ATTR = "BANDWIDTH";
   private static final String CODECS_ATTR = "CODECS";
@@ -60,6 +65,8 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
   private static final String URI_ATTR = "URI";
   private static final String IV_ATTR = "IV";
   private static final String INSTREAM_ID_ATTR = "INSTREAM-ID";
+  private static final String CAN_SKIP_UNTIL_ATTR = "CAN-SKIP-UNTIL";
+  private static final String SKIPPED_SEGMENTS_ATTR = "SKIPPED-SEGMENTS";
 
   private static final String AUDIO_TYPE = "AUDIO";
   private static final String VIDEO_TYPE = "VIDEO";
@@ -69,78 +76,63 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
   private static final String METHOD_NONE = "NONE";
   private static final String METHOD_AES128 = "AES-128";
 
-  private static final Pattern BANDWIDTH_ATTR_REGEX =
-      Pattern.compile(BANDWIDTH_ATTR + "=(\\d+)\\b");
-  private static final Pattern CODECS_ATTR_REGEX =
-      Pattern.compile(CODECS_ATTR + "=\"(.+?)\"");
-  private static final Pattern RESOLUTION_ATTR_REGEX =
-      Pattern.compile(RESOLUTION_ATTR + "=(\\d+x\\d+)");
-  private static final Pattern MEDIA_DURATION_REGEX =
-      Pattern.compile(MEDIA_DURATION_TAG + ":([\\d.]+)\\b");
-  private static final Pattern MEDIA_SEQUENCE_REGEX =
-      Pattern.compile(MEDIA_SEQUENCE_TAG + ":(\\d+)\\b");
-  private static final Pattern TARGET_DURATION_REGEX =
-      Pattern.compile(TARGET_DURATION_TAG + ":(\\d+)\\b");
-  private static final Pattern VERSION_REGEX =
-      Pattern.compile(VERSION_TAG + ":(\\d+)\\b");
-  private static final Pattern BYTERANGE_REGEX =
-      Pattern.compile(BYTERANGE_TAG + ":(\\d+(?:@\\d+)?)\\b");
-
-  private static final Pattern METHOD_ATTR_REGEX =
-      Pattern.compile(METHOD_ATTR + "=(" + METHOD_NONE + "|" + METHOD_AES128 + ")");
-  private static final Pattern URI_ATTR_REGEX =
-      Pattern.compile(URI_ATTR + "=\"(.+?)\"");
-  private static final Pattern IV_ATTR_REGEX =
-      Pattern.compile(IV_ATTR + "=([^,.*]+)");
-  private static final Pattern TYPE_ATTR_REGEX =
-      Pattern.compile(TYPE_ATTR + "=(" + AUDIO_TYPE + "|" + VIDEO_TYPE + "|" + SUBTITLES_TYPE + "|"
-          + CLOSED_CAPTIONS_TYPE + ")");
-  private static final Pattern LANGUAGE_ATTR_REGEX =
-      Pattern.compile(LANGUAGE_ATTR + "=\"(.+?)\"");
-  private static final Pattern NAME_ATTR_REGEX =
-      Pattern.compile(NAME_ATTR + "=\"(.+?)\"");
-  private static final Pattern INSTREAM_ID_ATTR_REGEX =
-      Pattern.compile(INSTREAM_ID_ATTR + "=\"(.+?)\"");
-  // private static final Pattern AUTOSELECT_ATTR_REGEX =
-  //     HlsParserUtil.compileBooleanAttrPattern(AUTOSELECT_ATTR);
-  // private static final Pattern DEFAULT_ATTR_REGEX =
-  //     HlsParserUtil.compileBooleanAttrPattern(DEFAULT_ATTR);
+  private static final String CC1_INSTREAM_ID = "CC1";
+
+  private static final Charset UTF_8 = Charset.forName(C.UTF8_NAME);
 
   @Override
   public HlsPlaylist parse(String connectionUrl, InputStream inputStream)
       throws IOException, ParserException {
-    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-    Queue<String> extraLines = new LinkedList<>();
-    String line;
+    return parse(connectionUrl, inputStream, null);
+  }
+
+  /**
+   * Parses a playlist, reusing the segments of a previously loaded version of the same media
+   * playlist where possible.
+   * <p>
+   * When a live media playlist is refreshed, most of its segments are unchanged. A segment that
+   * has the same media sequence number and URL as a segment of {@code previousPlaylist} is
+   * assumed to be unchanged, so its URL is not decoded again. Its {@link Segment} instance is
+   * reused if the segment's position in the playlist is also unchanged, as is the case when a
+   * playlist grows without its oldest segments being removed. {@code previousPlaylist} is also
+   * used to restore the segments omitted from a playlist delta update by an
+   * {@code #EXT-X-SKIP} tag.
+   *
+   * @param connectionUrl The url of the playlist.
+   * @param inputStream An {@link InputStream} from which the playlist can be read.
+   * @param previousPlaylist The previously loaded version of the media playlist, or null.
+   * @return The parsed playlist.
+   * @throws IOException If an error occurs reading the data.
+   * @throws ParserException If an error occurs parsing the data, or if the playlist is a delta
+   *     update that cannot be applied to {@code previousPlaylist}.
+   */
+  public HlsPlaylist parse(String connectionUrl, InputStream inputStream,
+      HlsMediaPlaylist previousPlaylist) throws IOException, ParserException {
+    LineReader reader = new LineReader(inputStream);
     try {
-      while ((line = reader.readLine()) != null) {
-        line = line.trim();
-        if (line.isEmpty()) {
-          // Do nothing.
-        } else if (line.startsWith(STREAM_INF_TAG)) {
-          extraLines.add(line);
-          return parseMasterPlaylist(new LineIterator(extraLines, reader), connectionUrl);
-        } else if (line.startsWith(TARGET_DURATION_TAG)
-            || line.startsWith(MEDIA_SEQUENCE_TAG)
-            || line.startsWith(MEDIA_DURATION_TAG)
-            || line.startsWith(KEY_TAG)
-            || line.startsWith(BYTERANGE_TAG)
-            || line.equals(DISCONTINUITY_TAG)
-            || line.equals(DISCONTINUITY_SEQUENCE_TAG)
-            || line.equals(ENDLIST_TAG)) {
-          extraLines.add(line);
-          return parseMediaPlaylist(new LineIterator(extraLines, reader), connectionUrl);
-        } else {
-          extraLines.add(line);
+      while (reader.readLine()) {
+        if (reader.startsWith(STREAM_INF_TAG)) {
+          reader.rewind();
+          return parseMasterPlaylist(reader, connectionUrl);
+        } else if (reader.startsWith(TARGET_DURATION_TAG)
+            || reader.startsWith(MEDIA_SEQUENCE_TAG)
+            || reader.startsWith(MEDIA_DURATION_TAG)
+            || reader.startsWith(KEY_TAG)
+            || reader.startsWith(BYTERANGE_TAG)
+            || reader.startsWith(DISCONTINUITY_SEQUENCE_TAG)
+            || reader.lineEquals(DISCONTINUITY_TAG)
+            || reader.lineEquals(ENDLIST_TAG)) {
+          reader.rewind();
+          return parseMediaPlaylist(reader, connectionUrl, previousPlaylist);
         }
       }
     } finally {
-      reader.close();
+      inputStream.close();
     }
     throw new ParserException("Failed to parse the playlist, could not identify any tags.");
   }
 
-  private static HlsMasterPlaylist parseMasterPlaylist(LineIterator iterator, String baseUri)
+  private static HlsMasterPlaylist parseMasterPlaylist(LineReader reader, String baseUri)
       throws IOException {
     ArrayList<Variant> variants = new ArrayList<>();
     ArrayList<Variant> audios = new ArrayList<>();
@@ -154,53 +146,52 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
     String muxedCaptionLanguage = null;
 
     boolean expectingStreamInfUrl = false;
-    String line;
-    while (iterator.hasNext()) {
-      line = iterator.next();
-      if (line.startsWith(MEDIA_TAG)) {
-        String type = HlsParserUtil.parseStringAttr(line, TYPE_ATTR_REGEX, TYPE_ATTR);
-        if (CLOSED_CAPTIONS_TYPE.equals(type)) {
-          String instreamId = HlsParserUtil.parseStringAttr(line, INSTREAM_ID_ATTR_REGEX,
-              INSTREAM_ID_ATTR);
-          if ("CC1".equals(instreamId)) {
-            muxedCaptionLanguage = HlsParserUtil.parseOptionalStringAttr(line, LANGUAGE_ATTR_REGEX);
+    while (reader.readLine()) {
+      if (reader.startsWithTag(MEDIA_TAG)) {
+        requireAttr(reader, TYPE_ATTR, MEDIA_TAG);
+        if (reader.valueEquals(CLOSED_CAPTIONS_TYPE)) {
+          requireAttr(reader, INSTREAM_ID_ATTR, MEDIA_TAG);
+          if (reader.valueEquals(CC1_INSTREAM_ID)) {
+            muxedCaptionLanguage = parseOptionalStringAttr(reader, LANGUAGE_ATTR);
           }
-        } else if (SUBTITLES_TYPE.equals(type)) {
+        } else if (reader.valueEquals(SUBTITLES_TYPE)) {
           // We assume all subtitles belong to the same group.
-          String subtitleName = HlsParserUtil.parseStringAttr(line, NAME_ATTR_REGEX, NAME_ATTR);
-          String uri = HlsParserUtil.parseStringAttr(line, URI_ATTR_REGEX, URI_ATTR);
-          String language = HlsParserUtil.parseOptionalStringAttr(line, LANGUAGE_ATTR_REGEX);
+          String subtitleName = parseStringAttr(reader, NAME_ATTR, MEDIA_TAG);
+          String uri = parseStringAttr(reader, URI_ATTR, MEDIA_TAG);
+          String language = parseOptionalStringAttr(reader, LANGUAGE_ATTR);
           Format format = new Format(subtitleName, MimeTypes.APPLICATION_M3U8, -1, -1, -1, -1, -1,
               -1, language, codecs);
           subtitles.add(new Variant(uri, format));
-        } else if (AUDIO_TYPE.equals(type)) {
+        } else if (reader.valueEquals(AUDIO_TYPE)) {
           // We assume all audios belong to the same group.
-          String language = HlsParserUtil.parseOptionalStringAttr(line, LANGUAGE_ATTR_REGEX);
-          String uri = HlsParserUtil.parseOptionalStringAttr(line, URI_ATTR_REGEX);
+          String language = parseOptionalStringAttr(reader, LANGUAGE_ATTR);
+          String uri = parseOptionalStringAttr(reader, URI_ATTR);
           if (uri != null) {
-            String audioName = HlsParserUtil.parseStringAttr(line, NAME_ATTR_REGEX, NAME_ATTR);
+            String audioName = parseStringAttr(reader, NAME_ATTR, MEDIA_TAG);
             Format format = new Format(audioName, MimeTypes.APPLICATION_M3U8, -1, -1, -1, -1, -1,
                 -1, language, codecs);
             audios.add(new Variant(uri, format));
           } else {
             muxedAudioLanguage = language;
           }
+        } else if (!reader.valueEquals(VIDEO_TYPE)) {
+          throw new ParserException("Couldn't match " + TYPE_ATTR + " in " + reader.getLine());
         }
-      } else if (line.startsWith(STREAM_INF_TAG)) {
-        bitrate = HlsParserUtil.parseIntAttr(line, BANDWIDTH_ATTR_REGEX, BANDWIDTH_ATTR);
-        codecs = HlsParserUtil.parseOptionalStringAttr(line, CODECS_ATTR_REGEX);
-        name = HlsParserUtil.parseOptionalStringAttr(line, NAME_ATTR_REGEX);
-        String resolutionString = HlsParserUtil.parseOptionalStringAttr(line,
-            RESOLUTION_ATTR_REGEX);
-        if (resolutionString != null) {
-          String[] widthAndHeight = resolutionString.split("x");
-          width = Integer.parseInt(widthAndHeight[0]);
-          if (width <= 0) {
+      } else if (reader.startsWith(STREAM_INF_TAG)) {
+        bitrate = parseIntAttr(reader, BANDWIDTH_ATTR, STREAM_INF_TAG);
+        codecs = parseOptionalStringAttr(reader, CODECS_ATTR);
+        name = parseOptionalStringAttr(reader, NAME_ATTR);
+        if (reader.findAttr(RESOLUTION_ATTR)) {
+          int separatorIndex = reader.indexOf('x', reader.valueStart, reader.valueEnd);
+          if (separatorIndex != -1) {
+            width = (int) reader.parseLong(reader.valueStart, separatorIndex);
+            height = (int) reader.parseLong(separatorIndex + 1, reader.valueEnd);
+          }
+          if (separatorIndex == -1 || width <= 0) {
             // Width was invalid.
             width = -1;
           }
-          height = Integer.parseInt(widthAndHeight[1]);
-          if (height <= 0) {
+          if (separatorIndex == -1 || height <= 0) {
             // Height was invalid.
             height = -1;
           }
@@ -209,13 +200,13 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
           height = -1;
         }
         expectingStreamInfUrl = true;
-      } else if (!line.startsWith("#") && expectingStreamInfUrl) {
+      } else if (!reader.isTag() && expectingStreamInfUrl) {
         if (name == null) {
           name = Integer.toString(variants.size());
         }
         Format format = new Format(name, MimeTypes.APPLICATION_M3U8, width, height, -1, -1, -1,
             bitrate, null, codecs);
-        variants.add(new Variant(line, format));
+        variants.add(new Variant(reader.getLine(), format));
         bitrate = 0;
         codecs = null;
         name = null;
@@ -228,12 +219,13 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
         muxedCaptionLanguage);
   }
 
-  private static HlsMediaPlaylist parseMediaPlaylist(LineIterator iterator, String baseUri)
-      throws IOException {
+  private static HlsMediaPlaylist parseMediaPlaylist(LineReader reader, String baseUri,
+      HlsMediaPlaylist previousPlaylist) throws IOException {
     int mediaSequence = 0;
     int targetDurationSecs = 0;
     int version = 1; // Default version == 1.
     boolean live = true;
+    long canSkipUntilUs = 0;
     List<Segment> segments = new ArrayList<>();
 
     double segmentDurationSecs = 0.0;
@@ -247,42 +239,90 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
     String encryptionKeyUri = null;
     String encryptionIV = null;
 
-    String line;
-    while (iterator.hasNext()) {
-      line = iterator.next();
-      if (line.startsWith(TARGET_DURATION_TAG)) {
-        targetDurationSecs = HlsParserUtil.parseIntAttr(line, TARGET_DURATION_REGEX,
-            TARGET_DURATION_TAG);
-      } else if (line.startsWith(MEDIA_SEQUENCE_TAG)) {
-        mediaSequence = HlsParserUtil.parseIntAttr(line, MEDIA_SEQUENCE_REGEX, MEDIA_SEQUENCE_TAG);
+    while (reader.readLine()) {
+      if (reader.startsWith(TARGET_DURATION_TAG)) {
+        targetDurationSecs = parseIntTagValue(reader, TARGET_DURATION_TAG);
+      } else if (reader.startsWith(MEDIA_SEQUENCE_TAG)) {
+        mediaSequence = parseIntTagValue(reader, MEDIA_SEQUENCE_TAG);
         segmentMediaSequence = mediaSequence;
-      } else if (line.startsWith(VERSION_TAG)) {
-        version = HlsParserUtil.parseIntAttr(line, VERSION_REGEX, VERSION_TAG);
-      } else if (line.startsWith(MEDIA_DURATION_TAG)) {
-        segmentDurationSecs = HlsParserUtil.parseDoubleAttr(line, MEDIA_DURATION_REGEX,
-            MEDIA_DURATION_TAG);
-      } else if (line.startsWith(KEY_TAG)) {
-        String method = HlsParserUtil.parseStringAttr(line, METHOD_ATTR_REGEX, METHOD_ATTR);
-        isEncrypted = METHOD_AES128.equals(method);
-        if (isEncrypted) {
-          encryptionKeyUri = HlsParserUtil.parseStringAttr(line, URI_ATTR_REGEX, URI_ATTR);
-          encryptionIV = HlsParserUtil.parseOptionalStringAttr(line, IV_ATTR_REGEX);
-        } else {
+      } else if (reader.startsWith(VERSION_TAG)) {
+        version = parseIntTagValue(reader, VERSION_TAG);
+      } else if (reader.startsWith(MEDIA_DURATION_TAG)) {
+        int start = reader.getTagValueStart(MEDIA_DURATION_TAG);
+        segmentDurationSecs = start == -1 ? Double.NaN
+            : reader.parseDouble(start, reader.skipDecimal(start));
+        if (Double.isNaN(segmentDurationSecs)) {
+          throw newTagParserException(reader, MEDIA_DURATION_TAG);
+        }
+      } else if (reader.startsWith(KEY_TAG)) {
+        requireAttr(reader, METHOD_ATTR, KEY_TAG);
+        if (reader.valueEquals(METHOD_AES128)) {
+          isEncrypted = true;
+          encryptionKeyUri = parseStringAttr(reader, URI_ATTR, KEY_TAG);
+          encryptionIV = parseOptionalStringAttr(reader, IV_ATTR);
+        } else if (reader.valueEquals(METHOD_NONE)) {
+          isEncrypted = false;
           encryptionKeyUri = null;
           encryptionIV = null;
+        } else {
+          throw new ParserException("Couldn't match " + METHOD_ATTR + " in " + reader.getLine());
+        }
+      } else if (reader.startsWith(BYTERANGE_TAG)) {
+        int start = reader.getTagValueStart(BYTERANGE_TAG);
+        int end = start == -1 ? -1 : reader.skipDigits(start);
+        segmentByterangeLength = start == -1 ? -1 : reader.parseLong(start, end);
+        if (segmentByterangeLength == -1) {
+          throw newTagParserException(reader, BYTERANGE_TAG);
         }
-      } else if (line.startsWith(BYTERANGE_TAG)) {
-        String byteRange = HlsParserUtil.parseStringAttr(line, BYTERANGE_REGEX, BYTERANGE_TAG);
-        String[] splitByteRange = byteRange.split("@");
-        segmentByterangeLength = Long.parseLong(splitByteRange[0]);
-        if (splitByteRange.length > 1) {
-          segmentByterangeOffset = Long.parseLong(splitByteRange[1]);
+        if (end < reader.lineEnd && reader.data[end] == '@') {
+          start = end + 1;
+          segmentByterangeOffset = reader.parseLong(start, reader.skipDigits(start));
+          if (segmentByterangeOffset == -1) {
+            throw newTagParserException(reader, BYTERANGE_TAG);
+          }
         }
-      } else if (line.startsWith(DISCONTINUITY_SEQUENCE_TAG)) {
-        discontinuitySequenceNumber = Integer.parseInt(line.substring(line.indexOf(':') + 1));
-      } else if (line.equals(DISCONTINUITY_TAG)) {
+      } else if (reader.startsWith(DISCONTINUITY_SEQUENCE_TAG)) {
+        discontinuitySequenceNumber = parseIntTagValue(reader, DISCONTINUITY_SEQUENCE_TAG);
+      } else if (reader.lineEquals(DISCONTINUITY_TAG)) {
         discontinuitySequenceNumber++;
-      } else if (!line.startsWith("#")) {
+      } else if (reader.startsWith(SERVER_CONTROL_TAG)) {
+        if (reader.findAttr(CAN_SKIP_UNTIL_ATTR)) {
+          double canSkipUntilSecs = reader.parseDouble(reader.valueStart, reader.valueEnd);
+          if (Double.isNaN(canSkipUntilSecs)) {
+            throw newAttrParserException(reader, CAN_SKIP_UNTIL_ATTR);
+          }
+          canSkipUntilUs = (long) (canSkipUntilSecs * C.MICROS_PER_SECOND);
+        }
+      } else if (reader.startsWith(SKIP_TAG)) {
+        int skippedSegmentCount = parseIntAttr(reader, SKIPPED_SEGMENTS_ATTR, SKIP_TAG);
+        int previousIndex = previousPlaylist == null ? -1
+            : segmentMediaSequence - previousPlaylist.mediaSequence;
+        if (previousIndex < 0
+            || previousIndex + skippedSegmentCount > previousPlaylist.segments.size()) {
+          throw new ParserException("Couldn't apply delta update: " + reader.getLine());
+        }
+        // The discontinuity sequence numbers of the skipped segments are relative to the
+        // discontinuity sequence number of the first segment in this playlist.
+        int discontinuitySequenceOffset = skippedSegmentCount == 0 ? 0
+            : discontinuitySequenceNumber
+                - previousPlaylist.segments.get(previousIndex).discontinuitySequenceNumber;
+        for (int i = 0; i < skippedSegmentCount; i++) {
+          Segment skippedSegment = previousPlaylist.segments.get(previousIndex + i);
+          discontinuitySequenceNumber =
+              skippedSegment.discontinuitySequenceNumber + discontinuitySequenceOffset;
+          segments.add(buildSegment(skippedSegment, skippedSegment.url,
+              skippedSegment.durationSecs, discontinuitySequenceNumber, segmentStartTimeUs,
+              skippedSegment.isEncrypted, skippedSegment.encryptionKeyUri,
+              skippedSegment.encryptionIV, skippedSegment.byterangeOffset,
+              skippedSegment.byterangeLength));
+          segmentStartTimeUs += (long) (skippedSegment.durationSecs * C.MICROS_PER_SECOND);
+          if (skippedSegment.byterangeLength != C.LENGTH_UNBOUNDED) {
+            segmentByterangeOffset = skippedSegment.byterangeOffset
+                + skippedSegment.byterangeLength;
+          }
+        }
+        segmentMediaSequence += skippedSegmentCount;
+      } else if (!reader.isTag()) {
         String segmentEncryptionIV;
         if (!isEncrypted) {
           segmentEncryptionIV = null;
@@ -291,63 +331,437 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
         } else {
           segmentEncryptionIV = Integer.toHexString(segmentMediaSequence);
         }
+        Segment previousSegment = getPreviousSegment(previousPlaylist, segmentMediaSequence,
+            reader);
+        String url = previousSegment != null ? previousSegment.url : reader.getLine();
         segmentMediaSequence++;
         if (segmentByterangeLength == C.LENGTH_UNBOUNDED) {
           segmentByterangeOffset = 0;
         }
-        segments.add(new Segment(line, segmentDurationSecs, discontinuitySequenceNumber,
-            segmentStartTimeUs, isEncrypted, encryptionKeyUri, segmentEncryptionIV,
-            segmentByterangeOffset, segmentByterangeLength));
+        segments.add(buildSegment(previousSegment, url, segmentDurationSecs,
+            discontinuitySequenceNumber, segmentStartTimeUs, isEncrypted, encryptionKeyUri,
+            segmentEncryptionIV, segmentByterangeOffset, segmentByterangeLength));
         segmentStartTimeUs += (long) (segmentDurationSecs * C.MICROS_PER_SECOND);
         segmentDurationSecs = 0.0;
         if (segmentByterangeLength != C.LENGTH_UNBOUNDED) {
           segmentByterangeOffset += segmentByterangeLength;
         }
         segmentByterangeLength = C.LENGTH_UNBOUNDED;
-      } else if (line.equals(ENDLIST_TAG)) {
+      } else if (reader.lineEquals(ENDLIST_TAG)) {
         live = false;
       }
     }
     return new HlsMediaPlaylist(baseUri, mediaSequence, targetDurationSecs, version, live,
-        Collections.unmodifiableList(segments));
+        Collections.unmodifiableList(segments), canSkipUntilUs);
   }
 
-  private static class LineIterator {
+  /**
+   * Returns the segment of {@code previousPlaylist} with the specified media sequence number, if
+   * its url is equal to the current line of {@code reader}. Returns null otherwise.
+   */
+  private static Segment getPreviousSegment(HlsMediaPlaylist previousPlaylist,
+      int segmentMediaSequence, LineReader reader) {
+    if (previousPlaylist == null) {
+      return null;
+    }
+    int index = segmentMediaSequence - previousPlaylist.mediaSequence;
+    if (index < 0 || index >= previousPlaylist.segments.size()) {
+      return null;
+    }
+    Segment segment = previousPlaylist.segments.get(index);
+    return reader.lineEquals(segment.url) ? segment : null;
+  }
 
-    private final BufferedReader reader;
-    private final Queue<String> extraLines;
+  /**
+   * Returns {@code previousSegment} if it is equal to the segment described by the other
+   * arguments. Otherwise returns a new segment.
+   */
+  private static Segment buildSegment(Segment previousSegment, String url, double durationSecs,
+      int discontinuitySequenceNumber, long startTimeUs, boolean isEncrypted,
+      String encryptionKeyUri, String encryptionIV, long byterangeOffset, long byterangeLength) {
+    if (previousSegment != null && previousSegment.durationSecs == durationSecs
+        && previousSegment.discontinuitySequenceNumber == discontinuitySequenceNumber
+        && previousSegment.startTimeUs == startTimeUs
+        && previousSegment.isEncrypted == isEncrypted
+        && previousSegment.byterangeOffset == byterangeOffset
+        && previousSegment.byterangeLength == byterangeLength
+        && Util.areEqual(previousSegment.encryptionKeyUri, encryptionKeyUri)
+        && Util.areEqual(previousSegment.encryptionIV, encryptionIV)
+        && previousSegment.url.equals(url)) {
+      return previousSegment;
+    }
+    return new Segment(url, durationSecs, discontinuitySequenceNumber, startTimeUs, isEncrypted,
+        encryptionKeyUri, encryptionIV, byterangeOffset, byterangeLength);
+  }
 
-    private String next;
+  private static int parseIntTagValue(LineReader reader, String tag) throws ParserException {
+    int start = reader.getTagValueStart(tag);
+    long value = start == -1 ? -1 : reader.parseLong(start, reader.skipDigits(start));
+    if (value == -1 || value > Integer.MAX_VALUE) {
+      throw newTagParserException(reader, tag);
+    }
+    return (int) value;
+  }
 
-    public LineIterator(Queue<String> extraLines, BufferedReader reader) {
-      this.extraLines = extraLines;
-      this.reader = reader;
+  private static void requireAttr(LineReader reader, String attr, String tag)
+      throws ParserException {
+    if (!reader.findAttr(attr)) {
+      throw newTagParserException(reader, tag);
     }
+  }
+
+  private static String parseStringAttr(LineReader reader, String attr, String tag)
+      throws ParserException {
+    requireAttr(reader, attr, tag);
+    return reader.getValue();
+  }
 
-    public boolean hasNext() throws IOException {
-      if (next != null) {
-        return true;
+  private static String parseOptionalStringAttr(LineReader reader, String attr) {
+    return reader.findAttr(attr) ? reader.getValue() : null;
+  }
+
+  private static int parseIntAttr(LineReader reader, String attr, String tag)
+      throws ParserException {
+    requireAttr(reader, attr, tag);
+    long value = reader.parseLong(reader.valueStart, reader.valueEnd);
+    if (value == -1 || value > Integer.MAX_VALUE) {
+      throw newAttrParserException(reader, attr);
+    }
+    return (int) value;
+  }
+
+  private static ParserException newTagParserException(LineReader reader, String tag) {
+    return new ParserException("Couldn't match " + tag + " tag in " + reader.getLine());
+  }
+
+  private static ParserException newAttrParserException(LineReader reader, String attr) {
+    return new ParserException("Couldn't parse " + attr + " in " + reader.getLine());
+  }
+
+  /**
+   * Reads trimmed, non-empty lines from an {@link InputStream} into a byte buffer, and tokenizes
+   * the current line in place.
+   * <p>
+   * The buffer is compacted as lines are consumed, except before the first call to
+   * {@link #rewind()}, so that the lines read while identifying the playlist type can be read
+   * again.
+   */
+  private static final class LineReader {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    // The maximum number of digits in a decimal whose significand and power of ten are both
+    // exactly representable as doubles.
+    private static final int MAX_EXACT_DECIMAL_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+        1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private final InputStream inputStream;
+
+    private byte[] data;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private boolean retainInput;
+
+    private int lineStart;
+    private int lineEnd;
+    private int valueStart;
+    private int valueEnd;
+
+    public LineReader(InputStream inputStream) {
+      this.inputStream = inputStream;
+      data = new byte[INITIAL_BUFFER_SIZE];
+      retainInput = true;
+    }
+
+    /**
+     * Advances to the next non-empty line.
+     *
+     * @return True if a line was read. False if the end of the input was reached.
+     * @throws IOException If an error occurs reading from the input.
+     */
+    public boolean readLine() throws IOException {
+      int scanPosition = position;
+      while (true) {
+        while (scanPosition < limit && data[scanPosition] != '\n' && data[scanPosition] != '\r') {
+          scanPosition++;
+        }
+        if (scanPosition == limit && !endOfInput) {
+          int previousPosition = position;
+          fill();
+          scanPosition -= previousPosition - position;
+          continue;
+        }
+        if (position == limit) {
+          return false;
+        }
+        lineStart = position;
+        lineEnd = scanPosition;
+        position = scanPosition < limit ? scanPosition + 1 : limit;
+        while (lineStart < lineEnd && (data[lineStart] & 0xFF) <= ' ') {
+          lineStart++;
+        }
+        while (lineEnd > lineStart && (data[lineEnd - 1] & 0xFF) <= ' ') {
+          lineEnd--;
+        }
+        if (lineStart < lineEnd) {
+          return true;
+        }
+        scanPosition = position;
       }
-      if (!extraLines.isEmpty()) {
-        next = extraLines.poll();
-        return true;
+    }
+
+    /**
+     * Returns to the start of the input. May only be called once.
+     */
+    public void rewind() {
+      Assertions.checkState(retainInput);
+      retainInput = false;
+      position = 0;
+    }
+
+    public boolean isTag() {
+      return data[lineStart] == '#';
+    }
+
+    public boolean startsWith(String prefix) {
+      int length = prefix.length();
+      return lineEnd - lineStart >= length
+          && regionEquals(lineStart, lineStart + length, prefix);
+    }
+
+    /**
+     * Returns whether the line starts with {@code tag}, followed by a colon.
+     */
+    public boolean startsWithTag(String tag) {
+      return getTagValueStart(tag) != -1;
+    }
+
+    public boolean lineEquals(String string) {
+      return regionEquals(lineStart, lineEnd, string);
+    }
+
+    public String getLine() {
+      return new String(data, lineStart, lineEnd - lineStart, UTF_8);
+    }
+
+    /**
+     * Returns the position at which the value of {@code tag} starts, or -1 if the line does not
+     * start with {@code tag} followed by a colon.
+     */
+    public int getTagValueStart(String tag) {
+      int colonPosition = lineStart + tag.length();
+      return colonPosition < lineEnd && data[colonPosition] == ':' && startsWith(tag)
+          ? colonPosition + 1 : -1;
+    }
+
+    /**
+     * Finds an attribute in the attribute list that follows the tag on the current line. If found,
+     * the position of its value is stored in {@link #valueStart} and {@link #valueEnd}, excluding
+     * the quotes of a quoted string.
+     *
+     * @param name The name of the attribute.
+     * @return Whether the attribute was found.
+     */
+    public boolean findAttr(String name) {
+      int position = indexOf(':', lineStart, lineEnd);
+      if (position == -1) {
+        return false;
       }
-      while ((next = reader.readLine()) != null) {
-        next = next.trim();
-        if (!next.isEmpty()) {
+      position++;
+      while (position < lineEnd) {
+        while (position < lineEnd && data[position] == ' ') {
+          position++;
+        }
+        int nameStart = position;
+        while (position < lineEnd && data[position] != '=' && data[position] != ',') {
+          position++;
+        }
+        int nameEnd = position;
+        if (position == lineEnd || data[position] == ',') {
+          // An attribute without a value.
+          position++;
+          continue;
+        }
+        position++;
+        int start;
+        int end;
+        if (position < lineEnd && data[position] == '"') {
+          start = position + 1;
+          end = indexOf('"', start, lineEnd);
+          if (end == -1) {
+            end = lineEnd;
+          }
+          position = indexOf(',', end, lineEnd);
+        } else {
+          start = position;
+          position = indexOf(',', start, lineEnd);
+          end = position == -1 ? lineEnd : position;
+          while (end > start && data[end - 1] == ' ') {
+            end--;
+          }
+        }
+        if (regionEquals(nameStart, nameEnd, name)) {
+          valueStart = start;
+          valueEnd = end;
           return true;
         }
+        if (position == -1) {
+          return false;
+        }
+        position++;
       }
       return false;
     }
 
-    public String next() throws IOException {
-      String result = null;
-      if (hasNext()) {
-        result = next;
-        next = null;
+    /**
+     * Returns whether the value of the last attribute found by {@link #findAttr(String)} is
+     * equal to {@code string}.
+     */
+    public boolean valueEquals(String string) {
+      return regionEquals(valueStart, valueEnd, string);
+    }
+
+    /**
+     * Returns the value of the last attribute found by {@link #findAttr(String)}.
+     */
+    public String getValue() {
+      return new String(data, valueStart, valueEnd - valueStart, UTF_8);
+    }
+
+    public int indexOf(char c, int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (data[i] == c) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Returns the position of the first non-digit at or after {@code position} in the line.
+     */
+    public int skipDigits(int position) {
+      while (position < lineEnd && isDigit(data[position])) {
+        position++;
       }
-      return result;
+      return position;
+    }
+
+    /**
+     * Returns the position of the first byte at or after {@code position} in the line that is
+     * neither a digit nor a decimal point.
+     */
+    public int skipDecimal(int position) {
+      while (position < lineEnd && (isDigit(data[position]) || data[position] == '.')) {
+        position++;
+      }
+      return position;
+    }
+
+    /**
+     * Parses a non-negative decimal integer.
+     *
+     * @return The parsed value, or -1 if the range is empty, contains a non-digit, or the value
+     *     does not fit in a long.
+     */
+    public long parseLong(int start, int end) {
+      if (start >= end) {
+        return -1;
+      }
+      long value = 0;
+      for (int i = start; i < end; i++) {
+        if (!isDigit(data[i])) {
+          return -1;
+        }
+        int digit = data[i] - '0';
+        if (value > (Long.MAX_VALUE - digit) / 10) {
+          return -1;
+        }
+        value = value * 10 + digit;
+      }
+      return value;
+    }
+
+    /**
+     * Parses a non-negative decimal number, consisting of digits and an optional decimal point.
+     * The result is identical to that of {@link Double#parseDouble(String)}.
+     *
+     * @return The parsed value, or {@link Double#NaN} if the range is not a valid decimal number.
+     */
+    public double parseDouble(int start, int end) {
+      long significand = 0;
+      int digitCount = 0;
+      int fractionDigitCount = 0;
+      boolean seenDecimalPoint = false;
+      for (int i = start; i < end; i++) {
+        byte b = data[i];
+        if (b == '.') {
+          if (seenDecimalPoint) {
+            return Double.NaN;
+          }
+          seenDecimalPoint = true;
+        } else if (isDigit(b)) {
+          significand = significand * 10 + (b - '0');
+          digitCount++;
+          if (seenDecimalPoint) {
+            fractionDigitCount++;
+          }
+          if (digitCount > MAX_EXACT_DECIMAL_DIGITS) {
+            // The significand may not be exact. Fall back to the slow path.
+            return parseDoubleSlow(start, end);
+          }
+        } else {
+          return Double.NaN;
+        }
+      }
+      if (digitCount == 0) {
+        return Double.NaN;
+      }
+      // The significand and the power of ten are both exact, so the quotient is correctly rounded.
+      return significand / POWERS_OF_TEN[fractionDigitCount];
+    }
+
+    private double parseDoubleSlow(int start, int end) {
+      try {
+        return Double.parseDouble(new String(data, start, end - start, UTF_8));
+      } catch (NumberFormatException e) {
+        return Double.NaN;
+      }
+    }
+
+    private boolean regionEquals(int start, int end, String string) {
+      int length = string.length();
+      if (end - start != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (data[start + i] != string.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void fill() throws IOException {
+      if (!retainInput && position > 0) {
+        System.arraycopy(data, position, data, 0, limit - position);
+        limit -= position;
+        position = 0;
+      }
+      if (limit == data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      int bytesRead = inputStream.read(data, limit, data.length - limit);
+      if (bytesRead == -1) {
+        endOfInput = true;
+      } else {
+        limit += bytesRead;
+      }
+    }
+
+    private static boolean isDigit(byte b) {
+      return b >= '0' && b <= '9';
     }
 
   }
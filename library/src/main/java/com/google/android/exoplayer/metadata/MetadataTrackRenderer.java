@@ -56,6 +56,8 @@ public final class MetadataTrackRenderer<T> extends SampleSourceTrackRenderer im
 
   private static final int MSG_INVOKE_RENDERER = 0;
 
+  private static final long SOURCE_POLL_INTERVAL_US = 100000;
+
   private final MetadataParser<T> metadataParser;
   private final MetadataRenderer<T> metadataRenderer;
   private final Handler metadataHandler;
@@ -65,6 +67,7 @@ public final class MetadataTrackRenderer<T> extends SampleSourceTrackRenderer im
   private boolean inputStreamEnded;
   private long pendingMetadataTimestamp;
   private T pendingMetadata;
+  private long nextWorkDelayUs;
 
   /**
    * @param source A source from which samples containing metadata can be read.
@@ -120,6 +123,21 @@ public final class MetadataTrackRenderer<T> extends SampleSourceTrackRenderer im
       invokeRenderer(pendingMetadata);
       pendingMetadata = null;
     }
+
+    if (pendingMetadata != null) {
+      nextWorkDelayUs = pendingMetadataTimestamp - positionUs;
+    } else if (inputStreamEnded) {
+      nextWorkDelayUs = Long.MAX_VALUE;
+    } else {
+      // Metadata samples are sparse and are usually buffered well ahead of the playback position,
+      // so there's no need to check for the next one as often as the default.
+      nextWorkDelayUs = SOURCE_POLL_INTERVAL_US;
+    }
+  }
+
+  @Override
+  protected long getMaxWorkDelayUs() {
+    return nextWorkDelayUs;
   }
 
   @Override
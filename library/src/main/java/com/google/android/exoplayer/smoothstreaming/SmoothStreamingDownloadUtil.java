@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.smoothstreaming;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifest.StreamElement;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CacheDownloader;
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility methods for downloading SmoothStreaming content with a {@link CacheDownloader}.
+ */
+public final class SmoothStreamingDownloadUtil {
+
+  private SmoothStreamingDownloadUtil() {}
+
+  /**
+   * Returns the requests that download the chunks of the given tracks of a stream element.
+   * <p>
+   * The requests are the same as those made by {@link SmoothStreamingChunkSource}, and so are
+   * stored under the URI of each chunk.
+   *
+   * @param manifest The manifest, which must not be live.
+   * @param elementIndex The index of the stream element.
+   * @param trackIndices The indices of the tracks to download within the stream element.
+   * @return The requests.
+   */
+  public static List<DataSpec> getDataSpecs(SmoothStreamingManifest manifest, int elementIndex,
+      int[] trackIndices) {
+    Assertions.checkArgument(!manifest.isLive);
+    StreamElement streamElement = manifest.streamElements[elementIndex];
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>(trackIndices.length * streamElement.chunkCount);
+    for (int trackIndex : trackIndices) {
+      for (int chunkIndex = 0; chunkIndex < streamElement.chunkCount; chunkIndex++) {
+        dataSpecs.add(new DataSpec(streamElement.buildRequestUri(trackIndex, chunkIndex), 0,
+            C.LENGTH_UNBOUNDED, null));
+      }
+    }
+    return dataSpecs;
+  }
+
+}
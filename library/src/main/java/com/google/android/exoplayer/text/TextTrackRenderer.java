@@ -63,6 +63,8 @@ public final class TextTrackRenderer extends SampleSourceTrackRenderer implement
 
   private static final int MSG_UPDATE_OVERLAY = 0;
 
+  private static final long SOURCE_POLL_INTERVAL_US = 100000;
+
   /**
    * Default parser classes in priority order. They are referred to indirectly so that it is
    * possible to remove unused parsers.
@@ -122,6 +124,7 @@ public final class TextTrackRenderer extends SampleSourceTrackRenderer implement
   private SubtitleParserHelper parserHelper;
   private HandlerThread parserThread;
   private int nextSubtitleEventIndex;
+  private long nextWorkDelayUs;
 
   /**
    * @param source A source from which samples containing subtitle data can be read.
@@ -201,6 +204,7 @@ public final class TextTrackRenderer extends SampleSourceTrackRenderer implement
   @Override
   protected void doSomeWork(long positionUs, long elapsedRealtimeUs, boolean sourceIsReady)
       throws ExoPlaybackException {
+    nextWorkDelayUs = DEFAULT_MAX_WORK_DELAY_US;
     if (nextSubtitle == null) {
       try {
         nextSubtitle = parserHelper.getAndClearResult();
@@ -252,6 +256,27 @@ public final class TextTrackRenderer extends SampleSourceTrackRenderer implement
         inputStreamEnded = true;
       }
     }
+
+    if (parserHelper.isParsing()) {
+      // Check for the result of the parse operation at the default interval.
+    } else if (nextSubtitle != null || inputStreamEnded) {
+      // Nothing needs to be read, so there's nothing to do until the next event.
+      long nextEventTimeUs = subtitle != null ? getNextEventTime() : Long.MAX_VALUE;
+      if (nextSubtitle != null) {
+        nextEventTimeUs = Math.min(nextEventTimeUs, nextSubtitle.startTimeUs);
+      }
+      nextWorkDelayUs = nextEventTimeUs == Long.MAX_VALUE ? Long.MAX_VALUE
+          : nextEventTimeUs - positionUs;
+    } else {
+      // Subtitle samples are buffered ahead of the playback position and usually span several
+      // seconds, so the source can be polled less often than for audio and video.
+      nextWorkDelayUs = SOURCE_POLL_INTERVAL_US;
+    }
+  }
+
+  @Override
+  protected long getMaxWorkDelayUs() {
+    return nextWorkDelayUs;
   }
 
   @Override
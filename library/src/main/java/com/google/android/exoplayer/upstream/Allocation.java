@@ -31,6 +31,11 @@ public final class Allocation {
 
   private final int offset;
 
+  // The index of the allocation in the ConcurrentAllocator that created it, and the index of the
+  // allocation below it on that allocator's stack of available allocations.
+  /* package */ int poolIndex;
+  /* package */ int nextAvailablePoolIndex;
+
   /**
    * @param data The array containing the allocated space.
    * @param offset The offset of the allocated space within the array.
@@ -49,4 +49,13 @@ public interface BandwidthMeter extends TransferListener {
    */
   long getBitrateEstimate();
 
+  /**
+   * Gets the standard deviation of the bandwidth samples from which the estimate is derived, in
+   * bits/sec. A high value relative to the estimate indicates that the available bandwidth is
+   * unstable, and that the estimate should be used with caution.
+   *
+   * @return The standard deviation in bits/sec, or {@link #NO_ESTIMATE} if it is unavailable.
+   */
+  long getBitrateStandardDeviation();
+
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * Derives a bandwidth estimate from a sequence of throughput samples.
+ */
+public interface BandwidthStatistic {
+
+  /**
+   * Adds a throughput sample.
+   *
+   * @param bytes The number of bytes transferred during the sample.
+   * @param elapsedMs The duration of the sample, in milliseconds. Must be positive.
+   */
+  void addSample(long bytes, long elapsedMs);
+
+  /**
+   * Gets the estimated bandwidth, in bits/sec.
+   *
+   * @return Estimated bandwidth in bits/sec, or {@link BandwidthMeter#NO_ESTIMATE} if no estimate
+   *     is available.
+   */
+  long getBitrateEstimate();
+
+  /**
+   * Gets the standard deviation of the sampled bandwidth, in bits/sec.
+   *
+   * @return The standard deviation in bits/sec, or {@link BandwidthMeter#NO_ESTIMATE} if it cannot
+   *     be estimated yet.
+   */
+  long getBitrateStandardDeviation();
+
+  /**
+   * Discards all samples.
+   */
+  void reset();
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link Allocator} that does not lock when allocating and releasing {@link Allocation}s, other
+ * than when new memory is allocated.
+ * <p>
+ * {@link DefaultAllocator} synchronizes every call, so a loading thread appending to a sample
+ * buffer contends with the playback thread releasing data that it has read. This implementation
+ * instead keeps released {@link Allocation}s on a lock-free stack that is shared between threads,
+ * so that an {@link Allocation} released by one thread can be reused by another. The most recently
+ * released {@link Allocation} is reused first, since its memory is the most likely to be cached.
+ * The stack is linked through indices held by the {@link Allocation}s themselves, so releasing an
+ * {@link Allocation} does not allocate. New allocations are optionally made in slabs, where several
+ * {@link Allocation}s share a single backing array.
+ */
+public final class ConcurrentAllocator implements Allocator {
+
+  private static final int NO_INDEX = -1;
+
+  private final int individualAllocationSize;
+  private final int allocationsPerSlab;
+  private final AtomicInteger allocatedCount;
+  private final AtomicInteger blockedThreadCount;
+  private final AtomicLong poolHitCount;
+  private final AtomicLong poolMissCount;
+  // The low 32 bits hold the index of the top of the stack of available allocations, or NO_INDEX
+  // if the stack is empty. The high 32 bits are incremented by every change, so that a pop fails if
+  // the stack changed after the top was read, even if the same allocation is back on top.
+  private final AtomicLong availableStackTop;
+
+  // Allocations by index. The allocations of each slab have consecutive indices, starting at the
+  // slab index multiplied by allocationsPerSlab. Only replaced or grown while holding the lock.
+  private volatile Allocation[] allocations;
+
+  // Guarded by this.
+  private int slabCount;
+  private int[] freeSlabIndices;
+  private int freeSlabIndexCount;
+  private int footprintCount;
+  private int peakFootprintCount;
+
+  /**
+   * Constructs an initially empty pool, in which each {@link Allocation} has its own backing
+   * array.
+   *
+   * @param individualAllocationSize The length of each individual allocation.
+   */
+  public ConcurrentAllocator(int individualAllocationSize) {
+    this(individualAllocationSize, 1);
+  }
+
+  /**
+   * Constructs an initially empty pool.
+   *
+   * @param individualAllocationSize The length of each individual allocation.
+   * @param allocationsPerSlab The number of {@link Allocation}s created together when the pool is
+   *     empty, sharing a single backing array. Memory backing a slab is only freed by
+   *     {@link #trim(int)} once all of its {@link Allocation}s have been released.
+   */
+  public ConcurrentAllocator(int individualAllocationSize, int allocationsPerSlab) {
+    Assertions.checkArgument(individualAllocationSize > 0);
+    Assertions.checkArgument(allocationsPerSlab > 0);
+    this.individualAllocationSize = individualAllocationSize;
+    this.allocationsPerSlab = allocationsPerSlab;
+    allocatedCount = new AtomicInteger();
+    blockedThreadCount = new AtomicInteger();
+    poolHitCount = new AtomicLong();
+    poolMissCount = new AtomicLong();
+    availableStackTop = new AtomicLong(NO_INDEX & 0xFFFFFFFFL);
+    allocations = new Allocation[0];
+    freeSlabIndices = new int[0];
+  }
+
+  @Override
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    Allocation allocation = popAvailable();
+    if (allocation != null) {
+      poolHitCount.incrementAndGet();
+      return allocation;
+    }
+    poolMissCount.incrementAndGet();
+    return allocateSlab();
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    Allocation[] allocations = this.allocations;
+    // Check that the allocation originated from this pool.
+    Assertions.checkArgument(allocation.poolIndex < allocations.length
+        && allocations[allocation.poolIndex] == allocation);
+    pushAvailable(allocation);
+    allocatedCount.decrementAndGet();
+    if (blockedThreadCount.get() > 0) {
+      // Wake up threads waiting for the allocated size to drop.
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void trim(int targetSize) {
+    int targetAllocationCount = Util.ceilDivide(targetSize, individualAllocationSize);
+    if (footprintCount <= targetAllocationCount) {
+      return;
+    }
+    // Take every available allocation, so that slabs whose allocations are all available can be
+    // found. Allocations taken from another thread meanwhile just miss the pool.
+    Allocation[] allocations = this.allocations;
+    int firstIndex = takeAllAvailable();
+    int[] availableCounts = new int[slabCount];
+    for (int i = firstIndex; i != NO_INDEX; i = allocations[i].nextAvailablePoolIndex) {
+      availableCounts[i / allocationsPerSlab]++;
+    }
+    // Free whole slabs until the target is met, marking them with a count of -1.
+    for (int i = 0; i < slabCount && footprintCount > targetAllocationCount; i++) {
+      if (availableCounts[i] == allocationsPerSlab) {
+        availableCounts[i] = -1;
+        footprintCount -= allocationsPerSlab;
+      }
+    }
+    // Return the allocations of the slabs that are kept.
+    int index = firstIndex;
+    while (index != NO_INDEX) {
+      Allocation allocation = allocations[index];
+      int nextIndex = allocation.nextAvailablePoolIndex;
+      if (availableCounts[index / allocationsPerSlab] != -1) {
+        pushAvailable(allocation);
+      }
+      index = nextIndex;
+    }
+    for (int i = 0; i < slabCount; i++) {
+      if (availableCounts[i] == -1) {
+        Arrays.fill(allocations, i * allocationsPerSlab, (i + 1) * allocationsPerSlab, null);
+        if (freeSlabIndexCount == freeSlabIndices.length) {
+          freeSlabIndices = Arrays.copyOf(freeSlabIndices, Math.max(1, freeSlabIndexCount * 2));
+        }
+        freeSlabIndices[freeSlabIndexCount++] = i;
+      }
+    }
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
+  }
+
+  @Override
+  public void blockWhileTotalBytesAllocatedExceeds(int limit) throws InterruptedException {
+    blockedThreadCount.incrementAndGet();
+    try {
+      synchronized (this) {
+        while (getTotalBytesAllocated() > limit) {
+          wait();
+        }
+      }
+    } finally {
+      blockedThreadCount.decrementAndGet();
+    }
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  /**
+   * Returns the number of calls to {@link #allocate()} that were satisfied by reusing an
+   * {@link Allocation} that was previously released.
+   */
+  public long getPoolHitCount() {
+    return poolHitCount.get();
+  }
+
+  /**
+   * Returns the number of calls to {@link #allocate()} that required new memory to be allocated.
+   */
+  public long getPoolMissCount() {
+    return poolMissCount.get();
+  }
+
+  /**
+   * Returns the number of bytes held by the allocator, including both allocated
+   * {@link Allocation}s and those available for reuse.
+   */
+  public synchronized int getFootprint() {
+    return footprintCount * individualAllocationSize;
+  }
+
+  /**
+   * Returns the peak number of bytes held by the allocator, including both allocated
+   * {@link Allocation}s and those available for reuse.
+   */
+  public synchronized int getPeakFootprint() {
+    return peakFootprintCount * individualAllocationSize;
+  }
+
+  /**
+   * Creates a new slab, returning its first {@link Allocation} and making the others available.
+   */
+  private synchronized Allocation allocateSlab() {
+    int slabIndex = freeSlabIndexCount > 0 ? freeSlabIndices[--freeSlabIndexCount] : slabCount++;
+    int firstIndex = slabIndex * allocationsPerSlab;
+    Allocation[] allocations = this.allocations;
+    if (firstIndex + allocationsPerSlab > allocations.length) {
+      allocations = Arrays.copyOf(allocations,
+          Math.max(allocations.length * 2, firstIndex + allocationsPerSlab));
+    }
+    byte[] slab = new byte[allocationsPerSlab * individualAllocationSize];
+    for (int i = 0; i < allocationsPerSlab; i++) {
+      Allocation allocation = new Allocation(slab, i * individualAllocationSize);
+      allocation.poolIndex = firstIndex + i;
+      allocations[firstIndex + i] = allocation;
+    }
+    // Publish the new allocations before any of them can be pushed.
+    this.allocations = allocations;
+    footprintCount += allocationsPerSlab;
+    peakFootprintCount = Math.max(peakFootprintCount, footprintCount);
+    for (int i = 1; i < allocationsPerSlab; i++) {
+      pushAvailable(allocations[firstIndex + i]);
+    }
+    return allocations[firstIndex];
+  }
+
+  private void pushAvailable(Allocation allocation) {
+    long top;
+    do {
+      top = availableStackTop.get();
+      allocation.nextAvailablePoolIndex = (int) top;
+    } while (!availableStackTop.compareAndSet(top, nextStackTop(top, allocation.poolIndex)));
+  }
+
+  private Allocation popAvailable() {
+    while (true) {
+      long top = availableStackTop.get();
+      int index = (int) top;
+      if (index == NO_INDEX) {
+        return null;
+      }
+      // The allocation may have been taken and its slab freed since the top was read, in which case
+      // the compare and set fails.
+      Allocation allocation = allocations[index];
+      int nextIndex = allocation != null ? allocation.nextAvailablePoolIndex : NO_INDEX;
+      if (availableStackTop.compareAndSet(top, nextStackTop(top, nextIndex))) {
+        return allocation;
+      }
+    }
+  }
+
+  /**
+   * Empties the stack of available allocations, returning the index of the one that was on top, or
+   * {@link #NO_INDEX} if it was already empty. The rest are linked from it.
+   */
+  private int takeAllAvailable() {
+    long top;
+    do {
+      top = availableStackTop.get();
+    } while (!availableStackTop.compareAndSet(top, nextStackTop(top, NO_INDEX)));
+    return (int) top;
+  }
+
+  private static long nextStackTop(long top, int index) {
+    return (((top >>> 32) + 1) << 32) | (index & 0xFFFFFFFFL);
+  }
+
+}
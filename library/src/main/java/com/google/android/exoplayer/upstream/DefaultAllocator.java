@@ -33,6 +33,9 @@ public final class DefaultAllocator implements Allocator {
   private int allocatedCount;
   private int availableCount;
   private Allocation[] availableAllocations;
+  private long poolHitCount;
+  private long poolMissCount;
+  private int peakAllocationCount;
 
   /**
    * Constructs an initially empty pool.
@@ -66,6 +69,7 @@ public final class DefaultAllocator implements Allocator {
     } else {
       initialAllocationBlock = null;
     }
+    peakAllocationCount = initialAllocationCount;
   }
 
   @Override
@@ -75,8 +79,11 @@ public final class DefaultAllocator implements Allocator {
     if (availableCount > 0) {
       allocation = availableAllocations[--availableCount];
       availableAllocations[availableCount] = null;
+      poolHitCount++;
     } else {
       allocation = new Allocation(new byte[individualAllocationSize], 0);
+      poolMissCount++;
+      peakAllocationCount = Math.max(peakAllocationCount, allocatedCount + availableCount);
     }
     return allocation;
   }
@@ -155,4 +162,27 @@ public final class DefaultAllocator implements Allocator {
     return individualAllocationSize;
   }
 
+  /**
+   * Returns the number of calls to {@link #allocate()} that were satisfied by reusing an
+   * {@link Allocation} that was previously released.
+   */
+  public synchronized long getPoolHitCount() {
+    return poolHitCount;
+  }
+
+  /**
+   * Returns the number of calls to {@link #allocate()} that required new memory to be allocated.
+   */
+  public synchronized long getPoolMissCount() {
+    return poolMissCount;
+  }
+
+  /**
+   * Returns the peak number of bytes held by the allocator, including both allocated
+   * {@link Allocation}s and those available for reuse.
+   */
+  public synchronized int getPeakFootprint() {
+    return peakAllocationCount * individualAllocationSize;
+  }
+
 }
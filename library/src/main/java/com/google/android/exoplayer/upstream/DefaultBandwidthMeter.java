@@ -25,6 +25,8 @@ import android.os.Handler;
 /**
  * Counts transferred bytes while transfers are open and creates a bandwidth sample and updated
  * bandwidth estimate each time a transfer ends.
+ *
+ * @see SamplingBandwidthMeter
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter {
 
@@ -70,6 +72,11 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
     return bitrateEstimate;
   }
 
+  @Override
+  public long getBitrateStandardDeviation() {
+    return NO_ESTIMATE;
+  }
+
   @Override
   public synchronized void onTransferStart() {
     if (streamCount == 0) {
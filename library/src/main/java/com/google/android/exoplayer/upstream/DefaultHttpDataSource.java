@@ -20,6 +20,7 @@ import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Predicate;
 import com.google.android.exoplayer.util.Util;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -46,6 +47,10 @@ import java.util.regex.Pattern;
  * HTTP to HTTPS or vice versa). Cross-protocol redirects can be enabled by using the
  * {@link #DefaultHttpDataSource(String, Predicate, TransferListener, int, int, boolean)}
  * constructor and passing {@code true} as the final argument.
+ * <p>
+ * The platform keeps idle connections alive, so a connection whose response was read in full is
+ * reused by subsequent requests to the same origin. If the listener passed to the constructor is a
+ * {@link TransferTimingListener}, the timings of each request are reported to it.
  */
 public class DefaultHttpDataSource implements HttpDataSource {
 
@@ -83,6 +88,10 @@ public class DefaultHttpDataSource implements HttpDataSource {
   private long bytesSkipped;
   private long bytesRead;
 
+  private long requestStartTimeMs;
+  private long connectionTimeMs;
+  private long responseTimeMs;
+
   /**
    * @param userAgent The User-Agent string that should be used.
    * @param contentTypePredicate An optional {@link Predicate}. If a content type is
@@ -187,16 +196,19 @@ public class DefaultHttpDataSource implements HttpDataSource {
     this.dataSpec = dataSpec;
     this.bytesRead = 0;
     this.bytesSkipped = 0;
+    requestStartTimeMs = SystemClock.elapsedRealtime();
     try {
       connection = makeConnection(dataSpec);
     } catch (IOException e) {
       throw new HttpDataSourceException("Unable to connect to " + dataSpec.uri.toString(), e,
           dataSpec, HttpDataSourceException.TYPE_OPEN);
     }
+    connectionTimeMs = SystemClock.elapsedRealtime();
 
     int responseCode;
     try {
       responseCode = connection.getResponseCode();
+      responseTimeMs = SystemClock.elapsedRealtime();
     } catch (IOException e) {
       closeConnectionQuietly();
       throw new HttpDataSourceException("Unable to connect to " + dataSpec.uri.toString(), e,
@@ -277,6 +289,11 @@ public class DefaultHttpDataSource implements HttpDataSource {
       closeConnectionQuietly();
       if (opened) {
         opened = false;
+        if (listener instanceof TransferTimingListener) {
+          ((TransferTimingListener) listener).onTransferTimings(
+              connectionTimeMs - requestStartTimeMs, responseTimeMs - requestStartTimeMs,
+              SystemClock.elapsedRealtime() - responseTimeMs, bytesSkipped + bytesRead);
+        }
         if (listener != null) {
           listener.onTransferEnd();
         }
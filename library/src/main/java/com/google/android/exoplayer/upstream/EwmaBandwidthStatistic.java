@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+
+/**
+ * A {@link BandwidthStatistic} that computes an exponentially weighted moving average of the
+ * sampled bitrate.
+ * <p>
+ * Samples are weighted by their duration, so that the weight of past samples halves every
+ * {@code halfLifeMs} of transfer time regardless of how often samples are added. The average is
+ * normalized by the total weight of the samples added so far, which means the first sample is
+ * used as the estimate directly rather than being averaged against an arbitrary initial value.
+ * This allows the estimate to converge quickly at the start of playback.
+ */
+public final class EwmaBandwidthStatistic implements BandwidthStatistic {
+
+  public static final int DEFAULT_HALF_LIFE_MS = 3000;
+
+  private final double halfLifeMs;
+
+  private double weightedBitrateSum;
+  private double weightedSquaredBitrateSum;
+  private double totalWeight;
+  private int sampleCount;
+
+  public EwmaBandwidthStatistic() {
+    this(DEFAULT_HALF_LIFE_MS);
+  }
+
+  /**
+   * @param halfLifeMs The duration of transfer time after which the weight of a sample is halved,
+   *     in milliseconds.
+   */
+  public EwmaBandwidthStatistic(int halfLifeMs) {
+    Assertions.checkArgument(halfLifeMs > 0);
+    this.halfLifeMs = halfLifeMs;
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    Assertions.checkArgument(elapsedMs > 0);
+    double bitrate = (bytes * 8000d) / elapsedMs;
+    // The fraction of the existing weight that remains after elapsedMs. The new sample takes the
+    // weight that was lost, so that a single long sample has the same effect as many short ones.
+    double decay = Math.pow(0.5, elapsedMs / halfLifeMs);
+    double sampleWeight = 1 - decay;
+    weightedBitrateSum = weightedBitrateSum * decay + bitrate * sampleWeight;
+    weightedSquaredBitrateSum = weightedSquaredBitrateSum * decay
+        + bitrate * bitrate * sampleWeight;
+    totalWeight = totalWeight * decay + sampleWeight;
+    sampleCount++;
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return totalWeight == 0 ? BandwidthMeter.NO_ESTIMATE
+        : Math.round(weightedBitrateSum / totalWeight);
+  }
+
+  @Override
+  public long getBitrateStandardDeviation() {
+    if (sampleCount < 2) {
+      return BandwidthMeter.NO_ESTIMATE;
+    }
+    double mean = weightedBitrateSum / totalWeight;
+    double variance = weightedSquaredBitrateSum / totalWeight - mean * mean;
+    return variance <= 0 ? 0 : Math.round(Math.sqrt(variance));
+  }
+
+  @Override
+  public void reset() {
+    weightedBitrateSum = 0;
+    weightedSquaredBitrateSum = 0;
+    totalWeight = 0;
+    sampleCount = 0;
+  }
+
+}
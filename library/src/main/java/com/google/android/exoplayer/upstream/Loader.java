@@ -104,6 +104,9 @@ public final class Loader {
   private static final int MSG_FATAL_ERROR = 2;
 
   private final ExecutorService downloadExecutorService;
+  private final boolean releaseExecutorService;
+  private final boolean registerPriority;
+  private final int priority;
 
   private LoadTask currentTask;
   private boolean loading;
@@ -113,6 +116,45 @@ public final class Loader {
    */
   public Loader(String threadName) {
     this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    this.releaseExecutorService = true;
+    this.registerPriority = false;
+    this.priority = 0;
+  }
+
+  /**
+   * Constructs a loader that registers a task with the {@link NetworkLock} for the duration of
+   * each load.
+   * <p>
+   * Registering causes lower priority tasks to be preempted whilst loads are in progress. If the
+   * loaded {@link Loadable}s read from a {@link PriorityDataSource} with the same priority that
+   * blocks when preempted, then their loads are paused mid-transfer whilst a higher priority task is
+   * registered, rather than failing.
+   *
+   * @param threadName A name for the loader's thread.
+   * @param priority The {@link NetworkLock} priority of the loads.
+   */
+  public Loader(String threadName, int priority) {
+    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    this.releaseExecutorService = true;
+    this.registerPriority = true;
+    this.priority = priority;
+  }
+
+  /**
+   * Constructs a loader that performs loads on the provided {@link ExecutorService}.
+   * <p>
+   * The {@link ExecutorService} may be shared between loaders, for example to bound the total
+   * number of concurrent loads performed by all of the renderers of a player. A load that cannot
+   * start immediately is queued until a thread becomes available. The {@link ExecutorService} is
+   * not shut down when the loader is released.
+   *
+   * @param executorService The {@link ExecutorService} on which loads should be performed.
+   */
+  public Loader(ExecutorService executorService) {
+    this.downloadExecutorService = Assertions.checkNotNull(executorService);
+    this.releaseExecutorService = false;
+    this.registerPriority = false;
+    this.priority = 0;
   }
 
   /**
@@ -174,7 +216,9 @@ public final class Loader {
     if (loading) {
       cancelLoading();
     }
-    downloadExecutorService.shutdown();
+    if (releaseExecutorService) {
+      downloadExecutorService.shutdown();
+    }
   }
 
   @SuppressLint("HandlerLeak")
@@ -206,7 +250,16 @@ public final class Loader {
         executorThread = Thread.currentThread();
         if (!loadable.isLoadCanceled()) {
           TraceUtil.beginSection(loadable.getClass().getSimpleName() + ".load()");
-          loadable.load();
+          if (registerPriority) {
+            NetworkLock.instance.add(priority);
+          }
+          try {
+            loadable.load();
+          } finally {
+            if (registerPriority) {
+              NetworkLock.instance.remove(priority);
+            }
+          }
           TraceUtil.endSection();
         }
         sendEmptyMessage(MSG_END_OF_SOURCE);
@@ -15,7 +15,10 @@
  */
 package com.google.android.exoplayer.upstream;
 
+import android.os.SystemClock;
+
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.PriorityQueue;
 
 /**
@@ -27,6 +30,12 @@ import java.util.PriorityQueue;
  * during execution, so as to ensure that it continues only if it is the highest (or equally
  * highest) priority task.
  * <p>
+ * Tasks that should pause rather than fail when preempted can instead call
+ * {@link #proceedWithinBudget(int)} before each transfer, and {@link #onBytesTransferred(int, int)}
+ * after it. In addition to waiting for higher priority tasks, these methods allocate a bandwidth
+ * budget to each priority, as configured by {@link #setMaxBytesPerSecond(int, long)} and
+ * {@link #setPreemptedMaxBytesPerSecond(int, long)}, and maintain per-priority counters.
+ * <p>
  * Note that lower integer values correspond to higher priorities.
  */
 public final class NetworkLock {
@@ -53,16 +62,29 @@ public final class NetworkLock {
    */
   public static final int DOWNLOAD_PRIORITY = 10;
 
+  /**
+   * Value of a maximum number of bytes per second indicating that transfers are not limited.
+   */
+  public static final long NO_LIMIT = -1;
+
+  /**
+   * The window over which {@link #getBytesPerSecond(int)} is measured.
+   */
+  private static final int THROUGHPUT_WINDOW_MS = 1000;
+
   private final Object lock = new Object();
 
   /** Guarded by {@link #lock}. */
   private final PriorityQueue<Integer> queue;
+  /** Guarded by {@link #lock}. */
+  private final HashMap<Integer, PriorityState> priorityStates;
 
   /** Guarded by {@link #lock}. */
   private int highestPriority;
 
-  private NetworkLock() {
+  /* package */ NetworkLock() {
     queue = new PriorityQueue<>();
+    priorityStates = new HashMap<>();
     highestPriority = Integer.MAX_VALUE;
   }
 
@@ -105,6 +127,133 @@ public final class NetworkLock {
     }
   }
 
+  /**
+   * Sets the maximum rate at which tasks with the specified priority may transfer data, when not
+   * preempted by a higher priority task. The default is {@link #NO_LIMIT}.
+   *
+   * @param priority The priority.
+   * @param maxBytesPerSecond The maximum rate, or {@link #NO_LIMIT}.
+   */
+  public void setMaxBytesPerSecond(int priority, long maxBytesPerSecond) {
+    synchronized (lock) {
+      getPriorityState(priority).maxBytesPerSecond = maxBytesPerSecond;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Sets the maximum rate at which tasks with the specified priority may transfer data whilst a
+   * higher priority task is registered. The default is 0, meaning that such tasks are paused.
+   *
+   * @param priority The priority.
+   * @param maxBytesPerSecond The maximum rate, or {@link #NO_LIMIT}.
+   */
+  public void setPreemptedMaxBytesPerSecond(int priority, long maxBytesPerSecond) {
+    synchronized (lock) {
+      getPriorityState(priority).preemptedMaxBytesPerSecond = maxBytesPerSecond;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Blocks until a task with the passed priority is allowed to transfer data. This is the case if
+   * the budget for the priority, which depends on whether a higher priority task is registered, is
+   * not exhausted.
+   *
+   * @param priority The priority of the task that would like to proceed.
+   * @throws InterruptedException If the thread was interrupted whilst waiting.
+   */
+  public void proceedWithinBudget(int priority) throws InterruptedException {
+    synchronized (lock) {
+      PriorityState priorityState = getPriorityState(priority);
+      long waitStartTimeMs = SystemClock.elapsedRealtime();
+      try {
+        while (true) {
+          long maxBytesPerSecond = getCurrentMaxBytesPerSecond(priorityState, priority);
+          if (maxBytesPerSecond == NO_LIMIT) {
+            return;
+          } else if (maxBytesPerSecond == 0) {
+            // Paused until the registered tasks or the budget change.
+            lock.wait();
+          } else {
+            long delayMs = priorityState.nextTransferTimeMs - SystemClock.elapsedRealtime();
+            if (delayMs <= 0) {
+              return;
+            }
+            lock.wait(delayMs);
+          }
+        }
+      } finally {
+        priorityState.waitTimeMs += SystemClock.elapsedRealtime() - waitStartTimeMs;
+      }
+    }
+  }
+
+  /**
+   * Records a transfer by a task with the passed priority, charging it to the priority's budget.
+   *
+   * @param priority The priority of the task that transferred the data.
+   * @param bytes The number of bytes transferred.
+   */
+  public void onBytesTransferred(int priority, int bytes) {
+    synchronized (lock) {
+      PriorityState priorityState = getPriorityState(priority);
+      long nowMs = SystemClock.elapsedRealtime();
+      priorityState.bytesTransferred += bytes;
+      priorityState.windowBytes += bytes;
+      long windowDurationMs = nowMs - priorityState.windowStartTimeMs;
+      if (windowDurationMs >= THROUGHPUT_WINDOW_MS) {
+        priorityState.bytesPerSecond = priorityState.windowBytes * 1000 / windowDurationMs;
+        priorityState.windowStartTimeMs = nowMs;
+        priorityState.windowBytes = 0;
+      }
+      long maxBytesPerSecond = getCurrentMaxBytesPerSecond(priorityState, priority);
+      if (maxBytesPerSecond > 0) {
+        priorityState.nextTransferTimeMs = Math.max(priorityState.nextTransferTimeMs, nowMs)
+            + bytes * 1000L / maxBytesPerSecond;
+      }
+    }
+  }
+
+  /**
+   * Returns the total number of bytes recorded by {@link #onBytesTransferred(int, int)} for the
+   * specified priority.
+   *
+   * @param priority The priority.
+   * @return The number of bytes transferred.
+   */
+  public long getBytesTransferred(int priority) {
+    synchronized (lock) {
+      return getPriorityState(priority).bytesTransferred;
+    }
+  }
+
+  /**
+   * Returns the rate at which tasks with the specified priority transferred data, measured over the
+   * most recently completed window of approximately one second.
+   *
+   * @param priority The priority.
+   * @return The rate in bytes per second, or 0 if a window has yet to be completed.
+   */
+  public long getBytesPerSecond(int priority) {
+    synchronized (lock) {
+      return getPriorityState(priority).bytesPerSecond;
+    }
+  }
+
+  /**
+   * Returns the total time for which tasks with the specified priority have been blocked in
+   * {@link #proceedWithinBudget(int)}.
+   *
+   * @param priority The priority.
+   * @return The total wait time in milliseconds.
+   */
+  public long getWaitTimeMs(int priority) {
+    synchronized (lock) {
+      return getPriorityState(priority).waitTimeMs;
+    }
+  }
+
   /**
    * Register a new task.
    * <p>
@@ -132,4 +281,43 @@ public final class NetworkLock {
     }
   }
 
+  /** Must be called whilst holding {@link #lock}. */
+  private long getCurrentMaxBytesPerSecond(PriorityState priorityState, int priority) {
+    return highestPriority < priority ? priorityState.preemptedMaxBytesPerSecond
+        : priorityState.maxBytesPerSecond;
+  }
+
+  /** Must be called whilst holding {@link #lock}. */
+  private PriorityState getPriorityState(int priority) {
+    PriorityState priorityState = priorityStates.get(priority);
+    if (priorityState == null) {
+      priorityState = new PriorityState();
+      priorityStates.put(priority, priorityState);
+    }
+    return priorityState;
+  }
+
+  /**
+   * The budget and counters for a priority.
+   */
+  private static final class PriorityState {
+
+    public long maxBytesPerSecond;
+    public long preemptedMaxBytesPerSecond;
+    public long nextTransferTimeMs;
+
+    public long bytesTransferred;
+    public long waitTimeMs;
+    public long windowStartTimeMs;
+    public long windowBytes;
+    public long bytesPerSecond;
+
+    public PriorityState() {
+      maxBytesPerSecond = NO_LIMIT;
+      preemptedMaxBytesPerSecond = 0;
+      windowStartTimeMs = SystemClock.elapsedRealtime();
+    }
+
+  }
+
 }
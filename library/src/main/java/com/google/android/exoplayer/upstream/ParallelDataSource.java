@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link DataSource} that splits requests of known length into byte ranges, which are loaded
+ * concurrently using multiple upstream {@link DataSource}s. Data is returned in order.
+ * <p>
+ * The first range is read directly from the first upstream source. The remaining ranges are
+ * loaded into memory on the provided {@link ExecutorService}, and so this source should only be
+ * used for requests of moderate length, such as media segments. Requests of unknown length, and
+ * requests too short to be split, are passed through to the first upstream source.
+ * <p>
+ * The {@link ExecutorService} should not be the one on which this source is read, since reads
+ * block until the corresponding range has been loaded. It may be shared between sources to bound
+ * the total number of concurrent connections.
+ */
+public final class ParallelDataSource implements DataSource {
+
+  /**
+   * The default minimum length of each range into which a request is split.
+   */
+  public static final int DEFAULT_MIN_PART_LENGTH = 256 * 1024;
+
+  private final DataSource[] upstreams;
+  private final ExecutorService executorService;
+  private final int minPartLength;
+
+  private PartLoader[] partLoaders;
+  private Future<?>[] partFutures;
+  private int partIndex;
+
+  /**
+   * @param upstreams The upstream {@link DataSource}s. The number of sources is the maximum number
+   *     of ranges into which a request is split.
+   * @param executorService The {@link ExecutorService} on which ranges are loaded.
+   */
+  public ParallelDataSource(DataSource[] upstreams, ExecutorService executorService) {
+    this(upstreams, executorService, DEFAULT_MIN_PART_LENGTH);
+  }
+
+  /**
+   * @param upstreams The upstream {@link DataSource}s. The number of sources is the maximum number
+   *     of ranges into which a request is split.
+   * @param executorService The {@link ExecutorService} on which ranges are loaded.
+   * @param minPartLength The minimum length of each range into which a request is split.
+   */
+  public ParallelDataSource(DataSource[] upstreams, ExecutorService executorService,
+      int minPartLength) {
+    Assertions.checkArgument(upstreams.length > 0);
+    Assertions.checkArgument(minPartLength > 0);
+    this.upstreams = upstreams;
+    this.executorService = Assertions.checkNotNull(executorService);
+    this.minPartLength = minPartLength;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    long length = dataSpec.length;
+    int partCount = length == C.LENGTH_UNBOUNDED ? 1
+        : (int) Math.min(upstreams.length, length / minPartLength);
+    long partLength = partCount > 1 ? length / partCount : length;
+    if (partCount <= 1 || partLength > Integer.MAX_VALUE) {
+      return upstreams[0].open(dataSpec);
+    }
+
+    partLoaders = new PartLoader[partCount];
+    partFutures = new Future<?>[partCount];
+    partIndex = 0;
+    for (int i = 1; i < partCount; i++) {
+      long partOffset = i * partLength;
+      long thisPartLength = i == partCount - 1 ? length - partOffset : partLength;
+      partLoaders[i] = new PartLoader(upstreams[i],
+          getPartDataSpec(dataSpec, partOffset, (int) thisPartLength));
+      partFutures[i] = executorService.submit(partLoaders[i]);
+    }
+    upstreams[0].open(getPartDataSpec(dataSpec, 0, (int) partLength));
+    return length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (partLoaders == null || partIndex == 0) {
+      int bytesRead = upstreams[0].read(buffer, offset, readLength);
+      if (partLoaders == null || bytesRead != C.RESULT_END_OF_INPUT) {
+        return bytesRead;
+      }
+      partIndex++;
+    }
+    while (partIndex < partLoaders.length) {
+      int bytesRead = partLoaders[partIndex].read(buffer, offset, readLength);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        return bytesRead;
+      }
+      partIndex++;
+    }
+    return C.RESULT_END_OF_INPUT;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (partLoaders != null) {
+      for (int i = 1; i < partLoaders.length; i++) {
+        partLoaders[i].cancel();
+      }
+      // Wait for the loads to finish, so that their upstream sources can be reused.
+      boolean interrupted = false;
+      for (int i = 1; i < partLoaders.length; i++) {
+        if (!partFutures[i].cancel(false)) {
+          interrupted |= partLoaders[i].blockUntilFinished();
+        }
+      }
+      partLoaders = null;
+      partFutures = null;
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    upstreams[0].close();
+  }
+
+  private static DataSpec getPartDataSpec(DataSpec dataSpec, long partOffset, int partLength) {
+    return new DataSpec(dataSpec.uri, dataSpec.postBody,
+        dataSpec.absoluteStreamPosition + partOffset, dataSpec.position + partOffset, partLength,
+        dataSpec.key, dataSpec.flags);
+  }
+
+  /**
+   * Loads a single range into memory, allowing the loaded data to be read as it arrives.
+   */
+  private static final class PartLoader implements Runnable {
+
+    private final DataSource upstream;
+    private final DataSpec dataSpec;
+    private final byte[] data;
+
+    private volatile boolean canceled;
+
+    // Guarded by this.
+    private int bytesLoaded;
+    private IOException exception;
+    private boolean finished;
+
+    // Accessed only by the reading thread.
+    private int readPosition;
+
+    public PartLoader(DataSource upstream, DataSpec dataSpec) {
+      this.upstream = upstream;
+      this.dataSpec = dataSpec;
+      this.data = new byte[(int) dataSpec.length];
+    }
+
+    public void cancel() {
+      canceled = true;
+    }
+
+    @Override
+    public void run() {
+      if (canceled) {
+        synchronized (this) {
+          finished = true;
+          notifyAll();
+        }
+        return;
+      }
+      try {
+        upstream.open(dataSpec);
+        int loaded = 0;
+        while (loaded < data.length && !canceled) {
+          int bytesRead = upstream.read(data, loaded, data.length - loaded);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            throw new EOFException();
+          }
+          loaded += bytesRead;
+          synchronized (this) {
+            bytesLoaded = loaded;
+            notifyAll();
+          }
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          exception = e;
+        }
+      } finally {
+        Util.closeQuietly(upstream);
+        synchronized (this) {
+          finished = true;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Reads loaded data, blocking until at least one byte is available, the whole range has been
+     * read or the load fails.
+     */
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      if (readPosition == data.length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int available;
+      synchronized (this) {
+        while (readPosition == bytesLoaded && exception == null && !finished) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+        if (readPosition == bytesLoaded) {
+          throw exception != null ? exception : new EOFException();
+        }
+        available = bytesLoaded - readPosition;
+      }
+      int bytesRead = Math.min(readLength, available);
+      System.arraycopy(data, readPosition, buffer, offset, bytesRead);
+      readPosition += bytesRead;
+      return bytesRead;
+    }
+
+    /**
+     * Blocks until the load has finished.
+     *
+     * @return Whether the calling thread was interrupted while blocked.
+     */
+    public synchronized boolean blockUntilFinished() {
+      boolean interrupted = false;
+      while (!finished) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      return interrupted;
+    }
+
+  }
+
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link DataSource} that speculatively loads requests that are expected to be opened soon, so
+ * that the latency of each request overlaps with the loading of the one before it.
+ * <p>
+ * Chunk sources that are given an instance of this class pass the requests for the segments
+ * following each chunk to {@link #prefetch(List)}. Prefetched requests are loaded in order, one at
+ * a time, using a dedicated upstream {@link DataSource} and a dedicated thread. When a request is
+ * opened that matches a prefetched request, data is read from memory as it arrives. If the
+ * prefetch fails, or if its data exceeds the maximum length buffered per request, reading
+ * continues from the primary upstream {@link DataSource} at the corresponding position.
+ * <p>
+ * {@link #release()} should be called when the source is no longer required.
+ */
+public final class PrefetchDataSource implements DataSource {
+
+  /**
+   * The default maximum number of requests that are prefetched.
+   */
+  public static final int DEFAULT_MAX_PREFETCH_COUNT = 2;
+
+  /**
+   * The default maximum number of bytes buffered for each prefetched request.
+   */
+  public static final int DEFAULT_MAX_PREFETCH_LENGTH = 4 * 1024 * 1024;
+
+  private static final int INITIAL_BUFFER_LENGTH = 64 * 1024;
+
+  private final DataSource upstream;
+  private final DataSource prefetchUpstream;
+  private final int maxPrefetchCount;
+  private final int maxPrefetchLength;
+  private final LinkedList<Prefetch> prefetches;
+
+  private ExecutorService executorService;
+
+  private DataSpec dataSpec;
+  private Prefetch openedPrefetch;
+  private int prefetchReadPosition;
+  private boolean upstreamOpened;
+
+  /**
+   * @param upstream The upstream {@link DataSource} used for requests that have not been
+   *     prefetched.
+   * @param prefetchUpstream The upstream {@link DataSource} used for prefetching.
+   */
+  public PrefetchDataSource(DataSource upstream, DataSource prefetchUpstream) {
+    this(upstream, prefetchUpstream, DEFAULT_MAX_PREFETCH_COUNT, DEFAULT_MAX_PREFETCH_LENGTH);
+  }
+
+  /**
+   * @param upstream The upstream {@link DataSource} used for requests that have not been
+   *     prefetched.
+   * @param prefetchUpstream The upstream {@link DataSource} used for prefetching.
+   * @param maxPrefetchCount The maximum number of requests that are prefetched.
+   * @param maxPrefetchLength The maximum number of bytes buffered for each prefetched request.
+   */
+  public PrefetchDataSource(DataSource upstream, DataSource prefetchUpstream,
+      int maxPrefetchCount, int maxPrefetchLength) {
+    Assertions.checkArgument(maxPrefetchCount >= 0);
+    Assertions.checkArgument(maxPrefetchLength > 0);
+    this.upstream = Assertions.checkNotNull(upstream);
+    this.prefetchUpstream = Assertions.checkNotNull(prefetchUpstream);
+    this.maxPrefetchCount = maxPrefetchCount;
+    this.maxPrefetchLength = maxPrefetchLength;
+    prefetches = new LinkedList<>();
+  }
+
+  /**
+   * Returns the maximum number of requests that are prefetched.
+   */
+  public int getMaxPrefetchCount() {
+    return maxPrefetchCount;
+  }
+
+  /**
+   * Sets the requests that should be prefetched, in the order in which they are expected to be
+   * opened. Requests beyond the maximum prefetch count are ignored. Prefetches of requests that
+   * are not in the list are canceled.
+   *
+   * @param dataSpecs The requests to prefetch.
+   */
+  public void prefetch(List<DataSpec> dataSpecs) {
+    prefetch(null, dataSpecs);
+  }
+
+  /**
+   * Equivalent to {@link #prefetch(List)}, except that if {@code nextDataSpec} is being
+   * prefetched then its prefetch is retained, and does not count towards the maximum prefetch
+   * count. If it is not being prefetched, it is not prefetched.
+   * <p>
+   * Chunk sources pass the request of the chunk that they have just returned, which will be
+   * opened next, so that the prefetch issued for it when the previous chunk was returned is used.
+   *
+   * @param nextDataSpec The request that will be opened next, or null.
+   * @param dataSpecs The requests to prefetch.
+   */
+  public synchronized void prefetch(DataSpec nextDataSpec, List<DataSpec> dataSpecs) {
+    int maxCount = maxPrefetchCount;
+    Iterator<Prefetch> iterator = prefetches.iterator();
+    while (iterator.hasNext()) {
+      Prefetch prefetch = iterator.next();
+      if (nextDataSpec != null && matches(nextDataSpec, prefetch.dataSpec)) {
+        maxCount++;
+      } else if (indexOf(dataSpecs, prefetch.dataSpec) == -1) {
+        prefetch.cancel();
+        iterator.remove();
+      }
+    }
+    for (int i = 0; i < dataSpecs.size() && prefetches.size() < maxCount; i++) {
+      DataSpec dataSpec = dataSpecs.get(i);
+      if (getPrefetch(dataSpec) == null) {
+        Prefetch prefetch = new Prefetch(dataSpec);
+        prefetches.add(prefetch);
+        if (executorService == null) {
+          executorService = Util.newSingleThreadExecutor("PrefetchDataSource");
+        }
+        executorService.submit(prefetch);
+      }
+    }
+  }
+
+  /**
+   * Cancels all prefetches and releases the thread used for prefetching.
+   */
+  public synchronized void release() {
+    for (Prefetch prefetch : prefetches) {
+      prefetch.cancel();
+    }
+    prefetches.clear();
+    if (executorService != null) {
+      executorService.shutdown();
+      executorService = null;
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Prefetch prefetch;
+    synchronized (this) {
+      prefetch = getPrefetch(dataSpec);
+      if (prefetch != null) {
+        prefetches.remove(prefetch);
+      }
+    }
+    if (prefetch != null && !prefetch.hasStarted()) {
+      // The prefetch would delay the request rather than speed it up.
+      prefetch.cancel();
+      prefetch = null;
+    } else if (prefetch != null && dataSpec.length == C.LENGTH_UNBOUNDED
+        && !prefetch.blockUntilOpened()) {
+      // The prefetch failed to open, so the length of the request is unknown.
+      prefetch.cancel();
+      prefetch = null;
+    }
+    this.dataSpec = dataSpec;
+    if (prefetch == null) {
+      upstreamOpened = true;
+      return upstream.open(dataSpec);
+    }
+    openedPrefetch = prefetch;
+    prefetchReadPosition = 0;
+    return dataSpec.length != C.LENGTH_UNBOUNDED ? dataSpec.length : prefetch.resolvedLength;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (!upstreamOpened) {
+      int bytesRead = openedPrefetch.read(prefetchReadPosition, buffer, offset, readLength);
+      if (bytesRead != Prefetch.RESULT_INCOMPLETE) {
+        if (bytesRead > 0) {
+          prefetchReadPosition += bytesRead;
+        }
+        return bytesRead;
+      }
+      // The prefetch ended before loading all of the data. Continue from the primary upstream.
+      upstreamOpened = true;
+      long remainingLength = dataSpec.length == C.LENGTH_UNBOUNDED ? C.LENGTH_UNBOUNDED
+          : dataSpec.length - prefetchReadPosition;
+      upstream.open(new DataSpec(dataSpec.uri, dataSpec.postBody,
+          dataSpec.absoluteStreamPosition + prefetchReadPosition,
+          dataSpec.position + prefetchReadPosition, remainingLength, dataSpec.key,
+          dataSpec.flags));
+    }
+    return upstream.read(buffer, offset, readLength);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (openedPrefetch != null) {
+      openedPrefetch.cancel();
+      openedPrefetch = null;
+    }
+    dataSpec = null;
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+
+  private Prefetch getPrefetch(DataSpec dataSpec) {
+    for (Prefetch prefetch : prefetches) {
+      if (matches(prefetch.dataSpec, dataSpec)) {
+        return prefetch;
+      }
+    }
+    return null;
+  }
+
+  private static int indexOf(List<DataSpec> dataSpecs, DataSpec dataSpec) {
+    for (int i = 0; i < dataSpecs.size(); i++) {
+      if (matches(dataSpecs.get(i), dataSpec)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean matches(DataSpec a, DataSpec b) {
+    return a.postBody == null && b.postBody == null && Util.areEqual(a.uri, b.uri)
+        && a.absoluteStreamPosition == b.absoluteStreamPosition && a.position == b.position
+        && a.length == b.length && Util.areEqual(a.key, b.key) && a.flags == b.flags;
+  }
+
+  /**
+   * Loads a single request into memory, allowing the loaded data to be read as it arrives.
+   */
+  private final class Prefetch implements Runnable {
+
+    /**
+     * Returned by {@link #read(int, byte[], int, int)} if the prefetch ended before all of the
+     * requested data was loaded.
+     */
+    public static final int RESULT_INCOMPLETE = -2;
+
+    public final DataSpec dataSpec;
+
+    public volatile long resolvedLength;
+
+    private volatile boolean canceled;
+
+    // Guarded by this.
+    private byte[] data;
+    private int bytesLoaded;
+    private boolean started;
+    private boolean opened;
+    private boolean finished;
+    private boolean completed;
+
+    public Prefetch(DataSpec dataSpec) {
+      this.dataSpec = dataSpec;
+      resolvedLength = C.LENGTH_UNBOUNDED;
+    }
+
+    public void cancel() {
+      canceled = true;
+    }
+
+    public synchronized boolean hasStarted() {
+      return started;
+    }
+
+    /**
+     * Blocks until the prefetch has opened its request, or finished without doing so.
+     *
+     * @return Whether the request was opened, in which case {@link #resolvedLength} is set.
+     */
+    public synchronized boolean blockUntilOpened() throws InterruptedIOException {
+      while (!opened && !finished) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+      return opened;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (canceled) {
+          finished = true;
+          notifyAll();
+          return;
+        }
+        started = true;
+      }
+      boolean completed = false;
+      try {
+        long length = prefetchUpstream.open(dataSpec);
+        resolvedLength = length;
+        synchronized (this) {
+          opened = true;
+          notifyAll();
+        }
+        byte[] data = new byte[(int) (length == C.LENGTH_UNBOUNDED
+            ? Math.min(INITIAL_BUFFER_LENGTH, maxPrefetchLength)
+            : Math.min(length, maxPrefetchLength))];
+        int loaded = 0;
+        while (!canceled) {
+          if (loaded == data.length) {
+            if (loaded == maxPrefetchLength) {
+              break;
+            }
+            data = Arrays.copyOf(data, Math.min(data.length * 2, maxPrefetchLength));
+          }
+          int bytesRead = prefetchUpstream.read(data, loaded, data.length - loaded);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            completed = true;
+            break;
+          }
+          loaded += bytesRead;
+          synchronized (this) {
+            this.data = data;
+            bytesLoaded = loaded;
+            notifyAll();
+          }
+          if (loaded == length) {
+            completed = true;
+            break;
+          }
+        }
+      } catch (IOException e) {
+        // Do nothing. The remaining data will be requested from the primary upstream.
+      } finally {
+        Util.closeQuietly(prefetchUpstream);
+        synchronized (this) {
+          this.completed = completed;
+          finished = true;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Reads loaded data, blocking until data at the specified position has been loaded or the
+     * prefetch has finished.
+     *
+     * @return The number of bytes read, {@link C#RESULT_END_OF_INPUT} if all of the data has been
+     *     read, or {@link #RESULT_INCOMPLETE} if the prefetch ended before loading the requested
+     *     position.
+     */
+    public int read(int position, byte[] buffer, int offset, int readLength) throws IOException {
+      byte[] data;
+      int available;
+      synchronized (this) {
+        while (position == bytesLoaded && !finished) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+        if (position == bytesLoaded) {
+          return completed ? C.RESULT_END_OF_INPUT : RESULT_INCOMPLETE;
+        }
+        data = this.data;
+        available = bytesLoaded - position;
+      }
+      int bytesRead = Math.min(readLength, available);
+      System.arraycopy(data, position, buffer, offset, bytesRead);
+      return bytesRead;
+    }
+
+  }
+
+}
@@ -18,36 +18,57 @@ package com.google.android.exoplayer.upstream;
 import com.google.android.exoplayer.util.Assertions;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 /**
  * Allows {@link #open(DataSpec)} and {@link #read(byte[], int, int)} calls only if the specified
- * priority is the highest priority of any task. {@link NetworkLock.PriorityTooLowException} is
- * thrown when this condition does not hold.
+ * priority is the highest priority of any task. By default
+ * {@link NetworkLock.PriorityTooLowException} is thrown when this condition does not hold.
+ * Alternatively the source can be configured to block until it's allowed to proceed, using
+ * {@link NetworkLock#proceedWithinBudget(int)}, in which case reads are also charged to the
+ * priority's bandwidth budget.
  */
 public final class PriorityDataSource implements DataSource {
 
   private final DataSource upstream;
   private final int priority;
+  private final boolean blockWhenPreempted;
 
   /**
    * @param priority The priority of the source.
    * @param upstream The upstream {@link DataSource}.
    */
   public PriorityDataSource(int priority, DataSource upstream) {
+    this(priority, upstream, false);
+  }
+
+  /**
+   * @param priority The priority of the source.
+   * @param upstream The upstream {@link DataSource}.
+   * @param blockWhenPreempted Whether calls should block, rather than throw, when the priority is
+   *     not allowed to proceed. Blocked calls throw {@link InterruptedIOException} if the calling
+   *     thread is interrupted, as it is when a {@link Loader} load is canceled.
+   */
+  public PriorityDataSource(int priority, DataSource upstream, boolean blockWhenPreempted) {
     this.priority = priority;
     this.upstream = Assertions.checkNotNull(upstream);
+    this.blockWhenPreempted = blockWhenPreempted;
   }
 
   @Override
   public long open(DataSpec dataSpec) throws IOException {
-    NetworkLock.instance.proceedOrThrow(priority);
+    proceed();
     return upstream.open(dataSpec);
   }
 
   @Override
   public int read(byte[] buffer, int offset, int max) throws IOException {
-    NetworkLock.instance.proceedOrThrow(priority);
-    return upstream.read(buffer, offset, max);
+    proceed();
+    int bytesRead = upstream.read(buffer, offset, max);
+    if (blockWhenPreempted && bytesRead > 0) {
+      NetworkLock.instance.onBytesTransferred(priority, bytesRead);
+    }
+    return bytesRead;
   }
 
   @Override
@@ -55,4 +76,17 @@ public final class PriorityDataSource implements DataSource {
     upstream.close();
   }
 
+  private void proceed() throws IOException {
+    if (!blockWhenPreempted) {
+      NetworkLock.instance.proceedOrThrow(priority);
+      return;
+    }
+    try {
+      NetworkLock.instance.proceedWithinBudget(priority);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
 }
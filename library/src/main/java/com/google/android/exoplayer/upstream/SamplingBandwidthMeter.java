@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import android.os.Handler;
+
+/**
+ * A {@link BandwidthMeter} that samples the throughput at a fixed interval while transfers are
+ * open, feeding the samples to a pluggable {@link BandwidthStatistic}.
+ * <p>
+ * Unlike {@link DefaultBandwidthMeter}, which only samples when a transfer ends, this meter
+ * updates its estimate while long transfers are still in progress. This allows the estimate to
+ * converge quickly at the start of playback, and to react to a drop in throughput before the
+ * current chunk has finished loading.
+ * <p>
+ * By default the meter estimates the aggregate throughput of all open transfers. If constructed
+ * to estimate the throughput per connection, the bytes transferred during each sample are
+ * divided by the average number of transfers that were open during the sample.
+ */
+public final class SamplingBandwidthMeter implements BandwidthMeter {
+
+  public static final int DEFAULT_SAMPLE_INTERVAL_MS = 500;
+
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final Clock clock;
+  private final BandwidthStatistic statistic;
+  private final int sampleIntervalMs;
+  private final boolean perConnection;
+
+  private int streamCount;
+  private long sampleStartTimeMs;
+  private long sampleBytes;
+  private long streamCountChangeTimeMs;
+  private long sampleStreamTimeMs;
+  private long bitrateEstimate;
+  private long bitrateStandardDeviation;
+
+  /**
+   * @param statistic The statistic used to derive the estimate from the samples.
+   */
+  public SamplingBandwidthMeter(BandwidthStatistic statistic) {
+    this(null, null, statistic);
+  }
+
+  /**
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param statistic The statistic used to derive the estimate from the samples.
+   */
+  public SamplingBandwidthMeter(Handler eventHandler, EventListener eventListener,
+      BandwidthStatistic statistic) {
+    this(eventHandler, eventListener, new SystemClock(), statistic, DEFAULT_SAMPLE_INTERVAL_MS,
+        false);
+  }
+
+  /**
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param clock The clock used to time the samples.
+   * @param statistic The statistic used to derive the estimate from the samples.
+   * @param sampleIntervalMs The minimum duration of a sample taken while transfers are open, in
+   *     milliseconds. A sample is also taken whenever a transfer ends.
+   * @param perConnection Whether to estimate the throughput of a single connection, rather than
+   *     the aggregate throughput of all open transfers.
+   */
+  public SamplingBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
+      BandwidthStatistic statistic, int sampleIntervalMs, boolean perConnection) {
+    Assertions.checkArgument(sampleIntervalMs > 0);
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    this.clock = clock;
+    this.statistic = statistic;
+    this.sampleIntervalMs = sampleIntervalMs;
+    this.perConnection = perConnection;
+    bitrateEstimate = NO_ESTIMATE;
+    bitrateStandardDeviation = NO_ESTIMATE;
+  }
+
+  @Override
+  public synchronized long getBitrateEstimate() {
+    return bitrateEstimate;
+  }
+
+  @Override
+  public synchronized long getBitrateStandardDeviation() {
+    return bitrateStandardDeviation;
+  }
+
+  @Override
+  public synchronized void onTransferStart() {
+    long nowMs = clock.elapsedRealtime();
+    if (streamCount == 0) {
+      sampleStartTimeMs = nowMs;
+      streamCountChangeTimeMs = nowMs;
+      sampleStreamTimeMs = 0;
+    } else {
+      updateStreamTime(nowMs);
+    }
+    streamCount++;
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(int bytes) {
+    sampleBytes += bytes;
+    long nowMs = clock.elapsedRealtime();
+    if (nowMs - sampleStartTimeMs >= sampleIntervalMs) {
+      endSample(nowMs);
+    }
+  }
+
+  @Override
+  public synchronized void onTransferEnd() {
+    Assertions.checkState(streamCount > 0);
+    endSample(clock.elapsedRealtime());
+    streamCount--;
+  }
+
+  /**
+   * Resets the meter, discarding the current estimate. Should not be called while transfers are
+   * open.
+   */
+  public synchronized void reset() {
+    statistic.reset();
+    bitrateEstimate = NO_ESTIMATE;
+    bitrateStandardDeviation = NO_ESTIMATE;
+  }
+
+  private void endSample(long nowMs) {
+    updateStreamTime(nowMs);
+    long elapsedMs = nowMs - sampleStartTimeMs;
+    if (elapsedMs > 0) {
+      long bytes = sampleBytes;
+      if (perConnection && sampleStreamTimeMs > elapsedMs) {
+        // Divide by the average number of open transfers during the sample.
+        bytes = (bytes * elapsedMs) / sampleStreamTimeMs;
+      }
+      statistic.addSample(bytes, elapsedMs);
+      bitrateEstimate = statistic.getBitrateEstimate();
+      bitrateStandardDeviation = statistic.getBitrateStandardDeviation();
+      notifyBandwidthSample((int) elapsedMs, sampleBytes, bitrateEstimate);
+      sampleStartTimeMs = nowMs;
+      sampleBytes = 0;
+      sampleStreamTimeMs = 0;
+    }
+  }
+
+  private void updateStreamTime(long nowMs) {
+    sampleStreamTimeMs += streamCount * (nowMs - streamCountChangeTimeMs);
+    streamCountChangeTimeMs = nowMs;
+  }
+
+  private void notifyBandwidthSample(final int elapsedMs, final long bytes, final long bitrate) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable()  {
+        @Override
+        public void run() {
+          eventListener.onBandwidthSample(elapsedMs, bytes, bitrate);
+        }
+      });
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.SlidingPercentile;
+
+/**
+ * A {@link BandwidthStatistic} that estimates the bandwidth as a percentile of the sampled
+ * bitrates over a sliding window, weighting each sample by the square root of its size. This is
+ * the statistic used by {@link DefaultBandwidthMeter}.
+ * <p>
+ * The standard deviation is derived from the interquartile range of the window, which makes it
+ * robust to outliers in the same way as the estimate itself.
+ */
+public final class SlidingPercentileBandwidthStatistic implements BandwidthStatistic {
+
+  public static final int DEFAULT_MAX_WEIGHT = 2000;
+  public static final float DEFAULT_PERCENTILE = 0.5f;
+
+  /**
+   * The ratio between the interquartile range and the standard deviation of a normal distribution.
+   */
+  private static final float INTERQUARTILE_RANGE_PER_STANDARD_DEVIATION = 1.349f;
+
+  private final float percentile;
+  private final SlidingPercentile slidingPercentile;
+
+  public SlidingPercentileBandwidthStatistic() {
+    this(DEFAULT_MAX_WEIGHT, DEFAULT_PERCENTILE);
+  }
+
+  /**
+   * @param maxWeight The maximum total weight of the samples in the sliding window.
+   * @param percentile The percentile of the sampled bitrates to use as the estimate, expressed as
+   *     a fraction in the range (0,1].
+   */
+  public SlidingPercentileBandwidthStatistic(int maxWeight, float percentile) {
+    this.percentile = percentile;
+    slidingPercentile = new SlidingPercentile(maxWeight);
+  }
+
+  @Override
+  public void addSample(long bytes, long elapsedMs) {
+    float bitsPerSecond = (bytes * 8000) / elapsedMs;
+    slidingPercentile.addSample((int) Math.sqrt(bytes), bitsPerSecond);
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    float estimate = slidingPercentile.getPercentile(percentile);
+    return Float.isNaN(estimate) ? BandwidthMeter.NO_ESTIMATE : (long) estimate;
+  }
+
+  @Override
+  public long getBitrateStandardDeviation() {
+    float lowerQuartile = slidingPercentile.getPercentile(0.25f);
+    float upperQuartile = slidingPercentile.getPercentile(0.75f);
+    if (Float.isNaN(lowerQuartile) || Float.isNaN(upperQuartile)) {
+      return BandwidthMeter.NO_ESTIMATE;
+    }
+    return (long) ((upperQuartile - lowerQuartile) / INTERQUARTILE_RANGE_PER_STANDARD_DEVIATION);
+  }
+
+  @Override
+  public void reset() {
+    slidingPercentile.reset();
+  }
+
+}
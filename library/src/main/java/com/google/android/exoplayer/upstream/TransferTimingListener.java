@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link TransferListener} that is also notified of the timings of each request.
+ * <p>
+ * Network {@link DataSource}s that support timings report them when passed a listener
+ * implementing this interface. Other sources treat it as a plain {@link TransferListener}.
+ */
+public interface TransferTimingListener extends TransferListener {
+
+  /**
+   * Invoked when a request completes, immediately before {@link #onTransferEnd()}.
+   *
+   * @param connectDurationMs The time spent obtaining a connection, in milliseconds. Close to zero
+   *     if an idle connection to the same origin was reused.
+   * @param timeToFirstByteMs The time from the start of the request until the response headers
+   *     were received, in milliseconds. Includes {@code connectDurationMs}.
+   * @param transferDurationMs The time from receiving the response headers until the request
+   *     completed, in milliseconds.
+   * @param bytesTransferred The number of bytes of the response body that were transferred.
+   */
+  void onTransferTimings(long connectDurationMs, long timeToFirstByteMs, long transferDurationMs,
+      long bytesTransferred);
+
+}
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer.upstream.cache;
 
+import com.google.android.exoplayer.C;
+
 import java.io.File;
 import java.util.NavigableSet;
 import java.util.Set;
@@ -182,4 +184,23 @@ public interface Cache {
   */
   boolean isCached(String key, long position, long length);
 
+  /**
+   * Returns the length of the content for a given key, if it has been recorded by a call to
+   * {@link #setContentLength(String, long)}.
+   *
+   * @param key The cache key for the data.
+   * @return The length of the content, or {@link C#LENGTH_UNBOUNDED} if it is unknown.
+   */
+  long getContentLength(String key);
+
+  /**
+   * Records the length of the content for a given key, so that requests of unbounded length for
+   * the key can be served from the cache. The length is discarded when the key no longer has any
+   * cached spans.
+   *
+   * @param key The cache key for the data.
+   * @param length The length of the content.
+   */
+  void setContentLength(String key, long length);
+
 }
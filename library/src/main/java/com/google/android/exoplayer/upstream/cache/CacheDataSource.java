@@ -33,6 +33,11 @@ import java.io.InterruptedIOException;
  * A {@link DataSource} that reads and writes a {@link Cache}. Requests are fulfilled from the cache
  * when possible. When data is not cached it is requested from an upstream {@link DataSource} and
  * written into the cache.
+ * <p>
+ * Requests of unbounded length are served from the cache if the length of the content has been
+ * recorded in the cache (see {@link Cache#setContentLength(String, long)}), for example by a
+ * {@link CacheDownloader}. Otherwise they bypass the cache, and the length of the content is
+ * recorded if they are read to the end.
  */
 public final class CacheDataSource implements DataSource {
 
@@ -129,11 +134,17 @@ public final class CacheDataSource implements DataSource {
     try {
       uri = dataSpec.uri;
       flags = dataSpec.flags;
-      key = dataSpec.key;
+      key = getCacheKey(dataSpec);
       readPosition = dataSpec.position;
       bytesRemaining = dataSpec.length;
+      if (bytesRemaining == C.LENGTH_UNBOUNDED && !ignoreCache) {
+        long contentLength = cache.getContentLength(key);
+        if (contentLength != C.LENGTH_UNBOUNDED && contentLength > readPosition) {
+          bytesRemaining = contentLength - readPosition;
+        }
+      }
       openNextSource();
-      return dataSpec.length;
+      return bytesRemaining;
     } catch (IOException e) {
       handleBeforeThrow(e);
       throw e;
@@ -153,6 +164,11 @@ public final class CacheDataSource implements DataSource {
           bytesRemaining -= bytesRead;
         }
       } else {
+        if (bytesRemaining == C.LENGTH_UNBOUNDED && currentDataSource == upstreamDataSource
+            && !ignoreCache) {
+          // The request was read to the end of the content.
+          cache.setContentLength(key, readPosition);
+        }
         closeCurrentSource();
         if (bytesRemaining > 0 && bytesRemaining != C.LENGTH_UNBOUNDED) {
           openNextSource();
@@ -177,6 +193,17 @@ public final class CacheDataSource implements DataSource {
     }
   }
 
+  /**
+   * Returns the key under which the data for a request is cached. This is the request's
+   * {@link DataSpec#key} if it has one, or its URI otherwise.
+   *
+   * @param dataSpec The request.
+   * @return The cache key.
+   */
+  /* package */ static String getCacheKey(DataSpec dataSpec) {
+    return dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString();
+  }
+
   /**
    * Opens the next source. If the cache contains data spanning the current read position then
    * {@link #cacheReadDataSource} is opened to read from it. Else {@link #upstreamDataSource} is
@@ -188,8 +215,7 @@ public final class CacheDataSource implements DataSource {
     if (ignoreCache) {
       span = null;
     } else if (bytesRemaining == C.LENGTH_UNBOUNDED) {
-      // TODO: Support caching for unbounded requests. This requires storing the source length
-      // into the cache (the simplest approach is to incorporate it into each cache file's name).
+      // The length of the content isn't known, so it can't be written into the cache.
       Log.w(TAG, "Cache bypassed due to unbounded length.");
       span = null;
     } else if (blockOnCache) {
@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.util.Assertions;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Loadable} that downloads a list of requests into a {@link Cache}, for example to
+ * prefetch content ahead of playback or to make it available offline.
+ * <p>
+ * Requests are downloaded concurrently, one per upstream {@link DataSource}. Data that is already
+ * cached is not downloaded again, so a download that is canceled or fails resumes from where it
+ * stopped when it is next loaded. Requests are stored under the same keys as those used by
+ * {@link CacheDataSource}, so that the downloaded data is read from the cache during playback.
+ * <p>
+ * Data can only be written into the cache if its length is known. Requests of unknown length are
+ * resolved by opening them, and are skipped if the upstream source does not report a length.
+ * Skipped requests are not counted as completed. When a request of unknown length is downloaded to
+ * the end of the content, the length of the content is recorded in the cache, so that
+ * {@link CacheDataSource} can serve requests of unbounded length for it from the cache.
+ */
+public final class CacheDownloader implements Loadable {
+
+  /**
+   * Interface definition for a callback to be notified of {@link CacheDownloader} events.
+   */
+  public interface EventListener {
+
+    /**
+     * Invoked each time a request has been downloaded in full.
+     *
+     * @param completedRequestCount The number of requests that have been downloaded in full.
+     * @param requestCount The total number of requests.
+     * @param bytesDownloaded The number of bytes downloaded from upstream since the start of the
+     *     current load.
+     */
+    void onDownloadProgress(int completedRequestCount, int requestCount, long bytesDownloaded);
+
+    /**
+     * Invoked when a request is skipped because its length could not be resolved.
+     *
+     * @param dataSpec The skipped request.
+     */
+    void onRequestSkipped(DataSpec dataSpec);
+
+  }
+
+  /**
+   * Value of {@code maxBytesPerSecond} indicating that the download should not be throttled.
+   */
+  public static final long NO_BANDWIDTH_LIMIT = -1;
+
+  private static final String TAG = "CacheDownloader";
+
+  private static final int BUFFER_LENGTH = 32 * 1024;
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  private final Cache cache;
+  private final DataSource[] upstreams;
+  private final ExecutorService executorService;
+  private final List<DataSpec> dataSpecs;
+  private final long maxBytesPerSecond;
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final AtomicInteger nextRequestIndex;
+  private final AtomicInteger completedRequestCount;
+  private final AtomicInteger skippedRequestCount;
+  private final AtomicLong bytesDownloaded;
+
+  private volatile boolean loadCanceled;
+  private volatile boolean workerFailed;
+
+  private long throttleStartTimeMs;
+  private long throttledBytes;
+
+  /**
+   * @param cache The cache into which data is downloaded.
+   * @param upstreams The upstream {@link DataSource}s. The number of sources is the number of
+   *     requests that are downloaded concurrently.
+   * @param executorService The {@link ExecutorService} on which requests are downloaded, other
+   *     than those downloaded on the loading thread.
+   * @param dataSpecs The requests to download.
+   */
+  public CacheDownloader(Cache cache, DataSource[] upstreams, ExecutorService executorService,
+      List<DataSpec> dataSpecs) {
+    this(cache, upstreams, executorService, dataSpecs, NO_BANDWIDTH_LIMIT, null, null);
+  }
+
+  /**
+   * @param cache The cache into which data is downloaded.
+   * @param upstreams The upstream {@link DataSource}s. The number of sources is the number of
+   *     requests that are downloaded concurrently.
+   * @param executorService The {@link ExecutorService} on which requests are downloaded, other
+   *     than those downloaded on the loading thread. May be null if there is only one upstream.
+   * @param dataSpecs The requests to download.
+   * @param maxBytesPerSecond The maximum rate at which data is downloaded, summed over all of the
+   *     upstream sources, or {@link #NO_BANDWIDTH_LIMIT}.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public CacheDownloader(Cache cache, DataSource[] upstreams, ExecutorService executorService,
+      List<DataSpec> dataSpecs, long maxBytesPerSecond, Handler eventHandler,
+      EventListener eventListener) {
+    Assertions.checkArgument(upstreams.length > 0);
+    Assertions.checkArgument(upstreams.length == 1 || executorService != null);
+    Assertions.checkArgument(maxBytesPerSecond > 0 || maxBytesPerSecond == NO_BANDWIDTH_LIMIT);
+    this.cache = Assertions.checkNotNull(cache);
+    this.upstreams = upstreams;
+    this.executorService = executorService;
+    this.dataSpecs = dataSpecs;
+    this.maxBytesPerSecond = maxBytesPerSecond;
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    nextRequestIndex = new AtomicInteger();
+    completedRequestCount = new AtomicInteger();
+    skippedRequestCount = new AtomicInteger();
+    bytesDownloaded = new AtomicLong();
+  }
+
+  /**
+   * Returns the total number of requests.
+   */
+  public int getRequestCount() {
+    return dataSpecs.size();
+  }
+
+  /**
+   * Returns the number of requests that have been downloaded in full by the current or most recent
+   * load.
+   */
+  public int getCompletedRequestCount() {
+    return completedRequestCount.get();
+  }
+
+  /**
+   * Returns the number of requests that have been skipped by the current or most recent load,
+   * because their length could not be resolved.
+   */
+  public int getSkippedRequestCount() {
+    return skippedRequestCount.get();
+  }
+
+  /**
+   * Returns the number of bytes downloaded from upstream by the current or most recent load.
+   */
+  public long getBytesDownloaded() {
+    return bytesDownloaded.get();
+  }
+
+  // Loadable implementation.
+
+  @Override
+  public void cancelLoad() {
+    loadCanceled = true;
+  }
+
+  @Override
+  public boolean isLoadCanceled() {
+    return loadCanceled;
+  }
+
+  @Override
+  public void load() throws IOException, InterruptedException {
+    nextRequestIndex.set(0);
+    completedRequestCount.set(0);
+    skippedRequestCount.set(0);
+    bytesDownloaded.set(0);
+    workerFailed = false;
+    synchronized (this) {
+      throttleStartTimeMs = SystemClock.elapsedRealtime();
+      throttledBytes = 0;
+    }
+
+    Worker[] workers = new Worker[upstreams.length - 1];
+    Future<?>[] workerFutures = new Future<?>[workers.length];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Worker(upstreams[i + 1]);
+      workerFutures[i] = executorService.submit(workers[i]);
+    }
+
+    Throwable error = null;
+    try {
+      downloadRequests(upstreams[0]);
+    } catch (IOException e) {
+      error = e;
+    } catch (InterruptedException e) {
+      error = e;
+    } catch (RuntimeException e) {
+      error = e;
+    }
+    // Wait for every worker to finish, so that none is still writing into the cache when the load
+    // returns.
+    for (int i = 0; i < workers.length; i++) {
+      while (true) {
+        if (error != null || loadCanceled) {
+          workerFailed |= error != null;
+          // Workers may be blocked waiting for a lock on a cache key, so interrupt them.
+          for (int j = i; j < workers.length; j++) {
+            workers[j].interrupt();
+          }
+        }
+        try {
+          workerFutures[i].get();
+          break;
+        } catch (ExecutionException e) {
+          if (error == null && !loadCanceled) {
+            error = e.getCause();
+          }
+          break;
+        } catch (InterruptedException e) {
+          if (error == null && !loadCanceled) {
+            error = e;
+          }
+        }
+      }
+    }
+
+    if (error instanceof IOException) {
+      throw (IOException) error;
+    } else if (error instanceof InterruptedException) {
+      throw (InterruptedException) error;
+    } else if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    } else if (error != null) {
+      throw (Error) error;
+    }
+  }
+
+  // Internal methods.
+
+  private boolean isStopped() {
+    return loadCanceled || workerFailed;
+  }
+
+  private void downloadRequests(DataSource upstream) throws IOException, InterruptedException {
+    byte[] buffer = new byte[BUFFER_LENGTH];
+    try {
+      int requestIndex;
+      while (!isStopped() && (requestIndex = nextRequestIndex.getAndIncrement())
+          < dataSpecs.size()) {
+        if (download(upstream, dataSpecs.get(requestIndex), buffer)) {
+          notifyDownloadProgress(completedRequestCount.incrementAndGet(), bytesDownloaded.get());
+        }
+      }
+    } catch (IOException e) {
+      workerFailed = true;
+      throw e;
+    } catch (InterruptedException e) {
+      workerFailed = true;
+      throw e;
+    }
+  }
+
+  /**
+   * Downloads the parts of a request that are not already cached.
+   *
+   * @return True if the request was downloaded in full. False if the download was stopped, or if
+   *     the request was skipped.
+   */
+  private boolean download(DataSource upstream, DataSpec dataSpec, byte[] buffer)
+      throws IOException, InterruptedException {
+    String key = CacheDataSource.getCacheKey(dataSpec);
+    long position = dataSpec.position;
+    long endPosition = dataSpec.length == C.LENGTH_UNBOUNDED ? cache.getContentLength(key)
+        : position + dataSpec.length;
+    while (endPosition == C.LENGTH_UNBOUNDED || position < endPosition) {
+      if (isStopped()) {
+        return false;
+      }
+      CacheSpan span = cache.startReadWrite(key, position);
+      if (span.isCached) {
+        position = span.position + span.length;
+        continue;
+      }
+      // The span is a hole that we hold the lock for.
+      long length;
+      if (span.isOpenEnded()) {
+        length = endPosition == C.LENGTH_UNBOUNDED ? C.LENGTH_UNBOUNDED : endPosition - position;
+      } else {
+        length = endPosition == C.LENGTH_UNBOUNDED ? span.length
+            : Math.min(span.length, endPosition - position);
+      }
+      long bytesWritten;
+      try {
+        bytesWritten = downloadRange(upstream, dataSpec, key, position, length, buffer);
+      } finally {
+        cache.releaseHoleSpan(span);
+      }
+      if (bytesWritten == C.LENGTH_UNBOUNDED) {
+        Log.w(TAG, "Skipped request of unknown length: " + dataSpec.uri);
+        skippedRequestCount.incrementAndGet();
+        notifyRequestSkipped(dataSpec);
+        return false;
+      }
+      position += bytesWritten;
+      if (length == C.LENGTH_UNBOUNDED && !isStopped()) {
+        // The range was read to the end of the content.
+        endPosition = position;
+        cache.setContentLength(key, endPosition);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Downloads a range of a request into the cache.
+   *
+   * @return The number of bytes written into the cache, or {@link C#LENGTH_UNBOUNDED} if the range
+   *     could not be cached because its length is unknown.
+   */
+  private long downloadRange(DataSource upstream, DataSpec dataSpec, String key, long position,
+      long length, byte[] buffer) throws IOException, InterruptedException {
+    DataSpec rangeDataSpec = new DataSpec(dataSpec.uri, position, length, key, dataSpec.flags);
+    CacheDataSink cacheSink = null;
+    long bytesWritten = 0;
+    try {
+      long resolvedLength;
+      try {
+        resolvedLength = upstream.open(rangeDataSpec);
+      } catch (InvalidResponseCodeException e) {
+        if (length == C.LENGTH_UNBOUNDED && position > dataSpec.position
+            && e.responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+          // The data cached for the request already extends to the end of the content.
+          return 0;
+        }
+        throw e;
+      }
+      if (resolvedLength == C.LENGTH_UNBOUNDED) {
+        return C.LENGTH_UNBOUNDED;
+      } else if (resolvedLength == 0) {
+        return 0;
+      }
+      cacheSink = new CacheDataSink(cache, Long.MAX_VALUE);
+      cacheSink.open(new DataSpec(dataSpec.uri, position, resolvedLength, key, dataSpec.flags));
+      int bytesRead;
+      while (!isStopped()
+          && (bytesRead = upstream.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        cacheSink.write(buffer, 0, bytesRead);
+        bytesWritten += bytesRead;
+        bytesDownloaded.addAndGet(bytesRead);
+        throttle(bytesRead);
+      }
+      return bytesWritten;
+    } finally {
+      try {
+        if (cacheSink != null) {
+          // Commits the data written so far, so that it's kept if the download was interrupted.
+          cacheSink.close();
+        }
+      } finally {
+        upstream.close();
+      }
+    }
+  }
+
+  /**
+   * Blocks until the given number of bytes can be downloaded without exceeding the bandwidth
+   * limit, averaged over the current load.
+   */
+  private void throttle(int bytes) throws InterruptedException {
+    if (maxBytesPerSecond == NO_BANDWIDTH_LIMIT) {
+      return;
+    }
+    long releaseTimeMs;
+    synchronized (this) {
+      throttledBytes += bytes;
+      releaseTimeMs = throttleStartTimeMs + (throttledBytes * 1000) / maxBytesPerSecond;
+    }
+    long delayMs = releaseTimeMs - SystemClock.elapsedRealtime();
+    if (delayMs > 0) {
+      Thread.sleep(delayMs);
+    }
+  }
+
+  private void notifyRequestSkipped(final DataSpec dataSpec) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onRequestSkipped(dataSpec);
+        }
+      });
+    }
+  }
+
+  private void notifyDownloadProgress(final int completedRequestCount,
+      final long bytesDownloaded) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onDownloadProgress(completedRequestCount, dataSpecs.size(),
+              bytesDownloaded);
+        }
+      });
+    }
+  }
+
+  /**
+   * Downloads requests with one of the upstream sources other than the first, on a thread of the
+   * {@link ExecutorService}.
+   */
+  private final class Worker implements Callable<Void> {
+
+    private final DataSource upstream;
+
+    private Thread thread;
+
+    public Worker(DataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    /**
+     * Interrupts the worker if it is running. Does nothing if it has not started or has finished,
+     * since the thread may then be running another task.
+     */
+    public synchronized void interrupt() {
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+
+    @Override
+    public Void call() throws IOException, InterruptedException {
+      synchronized (this) {
+        thread = Thread.currentThread();
+      }
+      try {
+        downloadRequests(upstream);
+        return null;
+      } finally {
+        synchronized (this) {
+          thread = null;
+        }
+      }
+    }
+
+  }
+
+}
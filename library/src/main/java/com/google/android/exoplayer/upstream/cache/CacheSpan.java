@@ -91,6 +91,23 @@ public final class CacheSpan implements Comparable<CacheSpan> {
         key, Long.parseLong(matcher.group(2)), Long.parseLong(matcher.group(3)), file);
   }
 
+  /**
+   * Creates a cache span for a cache file whose length and last access timestamp are already
+   * known, without accessing the file system.
+   *
+   * @param cacheDir The cache directory.
+   * @param key The cache key.
+   * @param position The position of the span in the original stream.
+   * @param length The length of the span.
+   * @param lastAccessTimestamp The last access timestamp.
+   * @return The span.
+   */
+  /* package */ static CacheSpan createCacheEntry(File cacheDir, String key, long position,
+      long length, long lastAccessTimestamp) {
+    File file = getCacheFileName(cacheDir, key, position, lastAccessTimestamp);
+    return new CacheSpan(key, position, length, true, lastAccessTimestamp, file);
+  }
+
   static File upgradeIfNeeded(File file) {
     Matcher matcher = CACHE_FILE_PATTERN_V1.matcher(file.getName());
     if (!matcher.matches()) {
@@ -0,0 +1,637 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent index of the {@link CacheSpan}s held by a {@link SimpleCache}.
+ * <p>
+ * The index consists of a checksummed snapshot file holding a key table with the content length
+ * and span list of each key, and a journal file to which individual span additions, removals and
+ * touches, and content length changes, are appended as they occur. Loading the index requires one
+ * sequential read of each file, which avoids having to list and parse the name of every file in
+ * the cache directory. The journal is folded into a new snapshot once it grows larger than the
+ * snapshot it applies to.
+ * <p>
+ * Files that are written into the cache directory but never committed (e.g. because the process
+ * was killed mid-write) are not referenced by the index. The start and end of each write are
+ * recorded in the journal, so that {@link SimpleCache} only has to list the cache directory to find
+ * and delete such files when {@link #hasUnfinishedWrites()} reports that a write was in progress
+ * when the index was last written to.
+ */
+/* package */ final class CachedContentIndex {
+
+  /**
+   * The name of the snapshot file.
+   */
+  public static final String FILE_NAME = "cached_content_index.exi";
+  /**
+   * The name of the journal file.
+   */
+  public static final String JOURNAL_FILE_NAME = "cached_content_index.exj";
+
+  private static final String TAG = "CachedContentIndex";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  private static final int VERSION = 2;
+
+  private static final int RECORD_TYPE_KEY = 0;
+  private static final int RECORD_TYPE_ADD = 1;
+  private static final int RECORD_TYPE_REMOVE = 2;
+  private static final int RECORD_TYPE_TOUCH = 3;
+  private static final int RECORD_TYPE_CONTENT_LENGTH = 4;
+  private static final int RECORD_TYPE_WRITE_STARTED = 5;
+  private static final int RECORD_TYPE_WRITE_ENDED = 6;
+
+  private static final int MAX_RECORD_LENGTH = 128 * 1024;
+  private static final int MIN_RECORDS_FOR_COMPACTION = 1024;
+
+  private final File cacheDir;
+  private final File snapshotFile;
+  private final File journalFile;
+  private final HashMap<String, Integer> keyIds;
+  private final HashSet<String> writingKeys;
+  private final CRC32 crc;
+  private final ByteArrayOutputStream recordBuffer;
+  private final DataOutputStream recordOutput;
+
+  private long generation;
+  private int nextKeyId;
+  private int spanCount;
+  private int journalRecordCount;
+  private boolean journalCorrupt;
+  private boolean unfinishedWrites;
+  private boolean disabled;
+  private DataOutputStream journalOutput;
+
+  /**
+   * @param cacheDir The cache directory in which the index files are stored.
+   */
+  public CachedContentIndex(File cacheDir) {
+    this.cacheDir = cacheDir;
+    snapshotFile = new File(cacheDir, FILE_NAME);
+    journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+    keyIds = new HashMap<>();
+    writingKeys = new HashSet<>();
+    crc = new CRC32();
+    recordBuffer = new ByteArrayOutputStream();
+    recordOutput = new DataOutputStream(recordBuffer);
+  }
+
+  /**
+   * Returns whether the given file is one of the files used to store the index.
+   *
+   * @param file The file.
+   * @return True if the file is used to store the index. False otherwise.
+   */
+  public static boolean isIndexFile(File file) {
+    String name = file.getName();
+    return name.startsWith(FILE_NAME) || name.startsWith(JOURNAL_FILE_NAME);
+  }
+
+  /**
+   * Loads the index.
+   *
+   * @param contentLengths A map into which the known content lengths of keys with cached spans
+   *     are loaded.
+   * @return The cached spans for each key, or null if the index is missing or corrupt, in which
+   *     case the caller should rebuild it by scanning the cache directory and calling
+   *     {@link #store(Collection, Map)}.
+   */
+  public HashMap<String, TreeSet<CacheSpan>> load(HashMap<String, Long> contentLengths) {
+    HashMap<String, TreeSet<CacheSpan>> spans = new HashMap<>();
+    String[] keys;
+    try {
+      keys = readSnapshot(spans, contentLengths);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read cache index", e);
+      keys = null;
+    }
+    if (keys == null) {
+      contentLengths.clear();
+      delete();
+      return null;
+    }
+    try {
+      readJournal(keys, spans, contentLengths);
+    } catch (IOException e) {
+      // Records up to the point of failure have been applied. The remainder of the journal is
+      // discarded when the index is compacted below.
+      journalCorrupt = true;
+    }
+    // If the journal is incomplete then the start of a write may have been lost along with it.
+    unfinishedWrites = journalCorrupt || !writingKeys.isEmpty();
+    writingKeys.clear();
+    Iterator<String> contentLengthKeys = contentLengths.keySet().iterator();
+    while (contentLengthKeys.hasNext()) {
+      if (!spans.containsKey(contentLengthKeys.next())) {
+        contentLengthKeys.remove();
+      }
+    }
+    spanCount = 0;
+    for (TreeSet<CacheSpan> spansForKey : spans.values()) {
+      spanCount += spansForKey.size();
+    }
+    if (shouldCompact()) {
+      store(spans.values(), contentLengths);
+    } else {
+      try {
+        journalOutput = new DataOutputStream(new FileOutputStream(journalFile, true));
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to open cache index journal", e);
+        disable();
+      }
+    }
+    return spans;
+  }
+
+  /**
+   * Returns whether the last load found that a write was in progress when the index was last
+   * written to, or that the journal was incomplete. If so then files that were written but never
+   * committed may have been left in the cache directory.
+   */
+  public boolean hasUnfinishedWrites() {
+    return unfinishedWrites;
+  }
+
+  /**
+   * Writes a new snapshot containing the given spans, and resets the journal.
+   *
+   * @param spans The cached spans, grouped by key.
+   * @param contentLengths The known content lengths, by key.
+   */
+  public void store(Collection<TreeSet<CacheSpan>> spans, Map<String, Long> contentLengths) {
+    if (disabled) {
+      return;
+    }
+    closeJournal();
+    keyIds.clear();
+    nextKeyId = 0;
+    spanCount = 0;
+    generation++;
+    File tempFile = new File(cacheDir, FILE_NAME + TEMP_FILE_SUFFIX);
+    try {
+      int keyCount = 0;
+      for (TreeSet<CacheSpan> spansForKey : spans) {
+        if (!spansForKey.isEmpty()) {
+          keyCount++;
+        }
+      }
+      recordBuffer.reset();
+      recordOutput.writeInt(VERSION);
+      recordOutput.writeLong(generation);
+      recordOutput.writeInt(keyCount);
+      for (TreeSet<CacheSpan> spansForKey : spans) {
+        if (spansForKey.isEmpty()) {
+          continue;
+        }
+        String key = spansForKey.first().key;
+        keyIds.put(key, nextKeyId++);
+        Long contentLength = contentLengths.get(key);
+        recordOutput.writeUTF(key);
+        recordOutput.writeLong(contentLength != null ? contentLength : C.LENGTH_UNBOUNDED);
+        recordOutput.writeInt(spansForKey.size());
+        for (CacheSpan span : spansForKey) {
+          recordOutput.writeLong(span.position);
+          recordOutput.writeLong(span.length);
+          recordOutput.writeLong(span.lastAccessTimestamp);
+        }
+        spanCount += spansForKey.size();
+      }
+      writeSnapshot(tempFile);
+      if (!tempFile.renameTo(snapshotFile)) {
+        throw new IOException("Failed to rename " + tempFile + " to " + snapshotFile);
+      }
+      // The journal starts with a header record carrying the generation of the snapshot to which
+      // it applies, so that a journal left over from a previous snapshot is ignored if the process
+      // dies before it is replaced.
+      journalOutput = new DataOutputStream(new FileOutputStream(journalFile, false));
+      recordBuffer.reset();
+      recordOutput.writeInt(VERSION);
+      recordOutput.writeLong(generation);
+      appendRecord();
+      journalRecordCount = 0;
+      journalCorrupt = false;
+      // Writes in progress carry over to the new journal.
+      for (String key : writingKeys) {
+        appendWriteRecord(RECORD_TYPE_WRITE_STARTED, key);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write cache index", e);
+      tempFile.delete();
+      disable();
+    }
+  }
+
+  /**
+   * Returns whether the journal has grown to the point where the caller should write a new
+   * snapshot by calling {@link #store(Collection, Map)}.
+   */
+  public boolean shouldCompact() {
+    return !disabled && (journalCorrupt
+        || journalRecordCount > Math.max(MIN_RECORDS_FOR_COMPACTION, spanCount));
+  }
+
+  /**
+   * Records the addition of a span.
+   *
+   * @param span The added span.
+   */
+  public void onSpanAdded(CacheSpan span) {
+    spanCount++;
+    int keyId = getOrAddKeyId(span.key);
+    beginRecord(RECORD_TYPE_ADD, keyId);
+    try {
+      recordOutput.writeLong(span.position);
+      recordOutput.writeLong(span.length);
+      recordOutput.writeLong(span.lastAccessTimestamp);
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+    }
+    appendRecord();
+  }
+
+  /**
+   * Records the removal of a span.
+   *
+   * @param span The removed span.
+   */
+  public void onSpanRemoved(CacheSpan span) {
+    spanCount--;
+    int keyId = getOrAddKeyId(span.key);
+    beginRecord(RECORD_TYPE_REMOVE, keyId);
+    try {
+      recordOutput.writeLong(span.position);
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+    }
+    appendRecord();
+  }
+
+  /**
+   * Records that a span has been touched.
+   *
+   * @param newSpan The span that replaced the touched span.
+   */
+  public void onSpanTouched(CacheSpan newSpan) {
+    int keyId = getOrAddKeyId(newSpan.key);
+    beginRecord(RECORD_TYPE_TOUCH, keyId);
+    try {
+      recordOutput.writeLong(newSpan.position);
+      recordOutput.writeLong(newSpan.lastAccessTimestamp);
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+    }
+    appendRecord();
+  }
+
+  /**
+   * Records that the content length of a key has been set.
+   *
+   * @param key The key.
+   * @param length The content length.
+   */
+  public void onContentLengthSet(String key, long length) {
+    int keyId = getOrAddKeyId(key);
+    beginRecord(RECORD_TYPE_CONTENT_LENGTH, keyId);
+    try {
+      recordOutput.writeLong(length);
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+    }
+    appendRecord();
+  }
+
+  /**
+   * Records that a file is about to be written for a key.
+   *
+   * @param key The key.
+   */
+  public void onWriteStarted(String key) {
+    writingKeys.add(key);
+    appendWriteRecord(RECORD_TYPE_WRITE_STARTED, key);
+  }
+
+  /**
+   * Records that the files written for a key since {@link #onWriteStarted(String)} have been either
+   * committed or deleted.
+   *
+   * @param key The key.
+   */
+  public void onWriteEnded(String key) {
+    writingKeys.remove(key);
+    appendWriteRecord(RECORD_TYPE_WRITE_ENDED, key);
+  }
+
+  /**
+   * Deletes the index files, so that the next load falls back to scanning the cache directory.
+   */
+  public void delete() {
+    closeJournal();
+    snapshotFile.delete();
+    journalFile.delete();
+  }
+
+  // Reading.
+
+  private String[] readSnapshot(HashMap<String, TreeSet<CacheSpan>> spans,
+      HashMap<String, Long> contentLengths) throws IOException {
+    if (!snapshotFile.exists()) {
+      return null;
+    }
+    long fileLength = snapshotFile.length();
+    if (fileLength < 4 || fileLength > Integer.MAX_VALUE) {
+      return null;
+    }
+    byte[] data = new byte[(int) fileLength];
+    InputStream inputStream = new FileInputStream(snapshotFile);
+    try {
+      new DataInputStream(inputStream).readFully(data);
+    } finally {
+      inputStream.close();
+    }
+    int dataLength = data.length - 4;
+    crc.reset();
+    crc.update(data, 0, dataLength);
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+    input.skipBytes(dataLength);
+    if ((int) crc.getValue() != input.readInt()) {
+      return null;
+    }
+    input = new DataInputStream(new ByteArrayInputStream(data, 0, dataLength));
+    if (input.readInt() != VERSION) {
+      return null;
+    }
+    generation = input.readLong();
+    int keyCount = input.readInt();
+    String[] keys = new String[keyCount];
+    for (int i = 0; i < keyCount; i++) {
+      String key = input.readUTF();
+      keys[i] = key;
+      keyIds.put(key, i);
+      long contentLength = input.readLong();
+      if (contentLength != C.LENGTH_UNBOUNDED) {
+        contentLengths.put(key, contentLength);
+      }
+      int spanCountForKey = input.readInt();
+      TreeSet<CacheSpan> spansForKey = new TreeSet<>();
+      for (int j = 0; j < spanCountForKey; j++) {
+        long position = input.readLong();
+        long length = input.readLong();
+        long lastAccessTimestamp = input.readLong();
+        spansForKey.add(CacheSpan.createCacheEntry(cacheDir, key, position, length,
+            lastAccessTimestamp));
+      }
+      spans.put(key, spansForKey);
+    }
+    nextKeyId = keyCount;
+    return keys;
+  }
+
+  private void readJournal(String[] snapshotKeys, HashMap<String, TreeSet<CacheSpan>> spans,
+      HashMap<String, Long> contentLengths) throws IOException {
+    if (!journalFile.exists()) {
+      journalCorrupt = true;
+      return;
+    }
+    HashMap<Integer, String> keys = new HashMap<>();
+    for (int i = 0; i < snapshotKeys.length; i++) {
+      keys.put(i, snapshotKeys[i]);
+    }
+    DataInputStream input = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(journalFile)));
+    try {
+      DataInputStream header = readRecord(input);
+      if (header == null || header.readInt() != VERSION || header.readLong() != generation) {
+        journalCorrupt = true;
+        return;
+      }
+      DataInputStream record;
+      while ((record = readRecord(input)) != null) {
+        applyRecord(record, keys, spans, contentLengths);
+        journalRecordCount++;
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Reads the next record from the journal.
+   *
+   * @return The record payload, or null if the end of the journal has been reached.
+   * @throws IOException If the record is truncated or its checksum is invalid.
+   */
+  private DataInputStream readRecord(DataInputStream input) throws IOException {
+    int recordLength;
+    try {
+      recordLength = input.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    if (recordLength <= 0 || recordLength > MAX_RECORD_LENGTH) {
+      throw new IOException("Invalid journal record length: " + recordLength);
+    }
+    byte[] record = new byte[recordLength];
+    input.readFully(record);
+    crc.reset();
+    crc.update(record, 0, recordLength);
+    if ((int) crc.getValue() != input.readInt()) {
+      throw new IOException("Journal record checksum mismatch");
+    }
+    return new DataInputStream(new ByteArrayInputStream(record));
+  }
+
+  private void applyRecord(DataInputStream record, HashMap<Integer, String> keys,
+      HashMap<String, TreeSet<CacheSpan>> spans, HashMap<String, Long> contentLengths)
+      throws IOException {
+    int type = record.readUnsignedByte();
+    int keyId = record.readInt();
+    if (type == RECORD_TYPE_KEY) {
+      String key = record.readUTF();
+      keys.put(keyId, key);
+      keyIds.put(key, keyId);
+      nextKeyId = Math.max(nextKeyId, keyId + 1);
+      return;
+    }
+    String key = keys.get(keyId);
+    if (key == null) {
+      throw new IOException("Unknown key id: " + keyId);
+    }
+    if (type == RECORD_TYPE_CONTENT_LENGTH) {
+      contentLengths.put(key, record.readLong());
+      return;
+    } else if (type == RECORD_TYPE_WRITE_STARTED) {
+      writingKeys.add(key);
+      return;
+    } else if (type == RECORD_TYPE_WRITE_ENDED) {
+      writingKeys.remove(key);
+      return;
+    }
+    TreeSet<CacheSpan> spansForKey = spans.get(key);
+    long position = record.readLong();
+    CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
+    switch (type) {
+      case RECORD_TYPE_ADD:
+        long length = record.readLong();
+        long lastAccessTimestamp = record.readLong();
+        if (spansForKey == null) {
+          spansForKey = new TreeSet<>();
+          spans.put(key, spansForKey);
+        }
+        spansForKey.remove(lookupSpan);
+        spansForKey.add(CacheSpan.createCacheEntry(cacheDir, key, position, length,
+            lastAccessTimestamp));
+        break;
+      case RECORD_TYPE_REMOVE:
+        if (spansForKey != null) {
+          spansForKey.remove(lookupSpan);
+          if (spansForKey.isEmpty()) {
+            spans.remove(key);
+            // The content length is discarded along with the last span, as it is in memory.
+            contentLengths.remove(key);
+          }
+        }
+        break;
+      case RECORD_TYPE_TOUCH:
+        long newLastAccessTimestamp = record.readLong();
+        CacheSpan oldSpan = spansForKey == null ? null : spansForKey.floor(lookupSpan);
+        if (oldSpan != null && oldSpan.position == position) {
+          spansForKey.remove(oldSpan);
+          spansForKey.add(CacheSpan.createCacheEntry(cacheDir, key, position, oldSpan.length,
+              newLastAccessTimestamp));
+        }
+        break;
+      default:
+        throw new IOException("Unknown journal record type: " + type);
+    }
+  }
+
+  // Writing.
+
+  private int getOrAddKeyId(String key) {
+    Integer keyId = keyIds.get(key);
+    if (keyId != null) {
+      return keyId;
+    }
+    int newKeyId = nextKeyId++;
+    keyIds.put(key, newKeyId);
+    beginRecord(RECORD_TYPE_KEY, newKeyId);
+    try {
+      recordOutput.writeUTF(key);
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+    }
+    appendRecord();
+    return newKeyId;
+  }
+
+  private void appendWriteRecord(int type, String key) {
+    beginRecord(type, getOrAddKeyId(key));
+    appendRecord();
+  }
+
+  private void beginRecord(int type, int keyId) {
+    recordBuffer.reset();
+    try {
+      recordOutput.writeByte(type);
+      recordOutput.writeInt(keyId);
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+    }
+  }
+
+  private void appendRecord() {
+    if (journalOutput == null) {
+      return;
+    }
+    byte[] record = recordBuffer.toByteArray();
+    crc.reset();
+    crc.update(record, 0, record.length);
+    try {
+      // Build the whole record in memory so that it reaches the file in a single write.
+      recordBuffer.reset();
+      recordOutput.writeInt(record.length);
+      recordOutput.write(record);
+      recordOutput.writeInt((int) crc.getValue());
+      recordBuffer.writeTo(journalOutput);
+      journalOutput.flush();
+      journalRecordCount++;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to append to cache index journal", e);
+      disable();
+    }
+  }
+
+  private void writeSnapshot(File file) throws IOException {
+    byte[] data = recordBuffer.toByteArray();
+    crc.reset();
+    crc.update(data, 0, data.length);
+    OutputStream outputStream = new FileOutputStream(file);
+    try {
+      DataOutputStream output = new DataOutputStream(outputStream);
+      output.write(data);
+      output.writeInt((int) crc.getValue());
+      output.flush();
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private void closeJournal() {
+    if (journalOutput != null) {
+      try {
+        journalOutput.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+      journalOutput = null;
+    }
+  }
+
+  /**
+   * Stops maintaining the index for the remainder of the session and deletes it, so that the next
+   * load falls back to scanning the cache directory.
+   */
+  private void disable() {
+    disabled = true;
+    delete();
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer.upstream.cache;
 
+import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.util.Assertions;
 
 import android.os.ConditionVariable;
@@ -24,130 +25,201 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
+ * <p>
+ * The in-memory representation is locked per cache key, so that operations on different keys
+ * proceed in parallel. Span additions, removals and touches are recorded in a queue as they occur,
+ * and are delivered to the {@link CacheEvictor}, registered {@link Cache.Listener}s and the
+ * persistent index one at a time and in order. A thread that modifies the cache delivers pending
+ * events before returning, unless another thread is already delivering them.
  */
 public final class SimpleCache implements Cache {
 
   private final File cacheDir;
   private final CacheEvictor evictor;
-  private final HashMap<String, CacheSpan> lockedSpans;
-  private final HashMap<String, TreeSet<CacheSpan>> cachedSpans;
-  private final HashMap<String, ArrayList<Listener>> listeners;
-  private long totalSpace = 0;
+  private final CachedContentIndex index;
+  private final ConcurrentHashMap<String, CachedContent> contents;
+  private final ConcurrentLinkedQueue<SpanEvent> pendingEvents;
+  private final ReentrantLock eventLock;
+  private final ConditionVariable initializationCondition;
+  private final AtomicLong totalSpace;
+
+  private volatile boolean initialized;
+  private volatile boolean staleSpansDetected;
 
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
    * the directory cannot be used to store other files.
+   * <p>
+   * The cache maintains a persistent index of its contents in the directory, so that it can be
+   * initialized without listing the directory or parsing the name of every file. The directory is
+   * only listed if the index shows that a file was being written when the process stopped, in which
+   * case files that the index doesn't reference are deleted. File names are only parsed if the
+   * index is missing or corrupt.
    *
    * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
    */
   public SimpleCache(File cacheDir, CacheEvictor evictor) {
     this.cacheDir = cacheDir;
     this.evictor = evictor;
-    this.lockedSpans = new HashMap<>();
-    this.cachedSpans = new HashMap<>();
-    this.listeners = new HashMap<>();
-    // Start cache initialization.
-    final ConditionVariable conditionVariable = new ConditionVariable();
+    this.index = new CachedContentIndex(cacheDir);
+    this.contents = new ConcurrentHashMap<>();
+    this.pendingEvents = new ConcurrentLinkedQueue<>();
+    this.eventLock = new ReentrantLock();
+    this.initializationCondition = new ConditionVariable();
+    this.totalSpace = new AtomicLong();
+    // Start cache initialization. Calls into the cache block until it completes.
     new Thread("SimpleCache.initialize()") {
       @Override
       public void run() {
-        synchronized (SimpleCache.this) {
-          conditionVariable.open();
+        eventLock.lock();
+        try {
           initialize();
+        } finally {
+          initialized = true;
+          eventLock.unlock();
+          initializationCondition.open();
         }
       }
     }.start();
-    conditionVariable.block();
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    blockUntilInitialized();
+    while (true) {
+      CachedContent content = getOrAddContent(key);
+      synchronized (content) {
+        if (!content.removed) {
+          content.listeners.add(listener);
+          return content.spans.isEmpty() ? null : new TreeSet<>(content.spans);
+        }
+      }
     }
-    listenersForKey.add(listener);
-    return getCachedSpans(key);
   }
 
   @Override
-  public synchronized void removeListener(String key, Listener listener) {
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey != null) {
-      listenersForKey.remove(listener);
-      if (listenersForKey.isEmpty()) {
-        listeners.remove(key);
-      }
+  public void removeListener(String key, Listener listener) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    if (content == null) {
+      return;
+    }
+    synchronized (content) {
+      content.listeners.remove(listener);
+      maybeRemoveContent(content);
     }
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
-    TreeSet<CacheSpan> spansForKey = cachedSpans.get(key);
-    return spansForKey == null ? null : new TreeSet<>(spansForKey);
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    if (content == null) {
+      return null;
+    }
+    synchronized (content) {
+      return content.spans.isEmpty() ? null : new TreeSet<>(content.spans);
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
-    return new HashSet<>(cachedSpans.keySet());
+  public Set<String> getKeys() {
+    blockUntilInitialized();
+    HashSet<String> keys = new HashSet<>();
+    for (CachedContent content : contents.values()) {
+      synchronized (content) {
+        if (!content.spans.isEmpty()) {
+          keys.add(content.key);
+        }
+      }
+    }
+    return keys;
   }
 
   @Override
-  public synchronized long getCacheSpace() {
-    return totalSpace;
+  public long getCacheSpace() {
+    blockUntilInitialized();
+    return totalSpace.get();
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position)
-      throws InterruptedException {
+  public CacheSpan startReadWrite(String key, long position) throws InterruptedException {
+    blockUntilInitialized();
     CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
     while (true) {
-      CacheSpan span = startReadWriteNonBlocking(lookupSpan);
-      if (span != null) {
-        return span;
-      } else {
-        // Write case, lock not available. We'll be woken up when a locked span is released (if the
-        // released lock is for the requested key then we'll be able to make progress) or when a
-        // span is added to the cache (if the span is for the requested key and covers the requested
-        // position, then we'll become a read and be able to make progress).
-        wait();
+      CachedContent content = getOrAddContent(key);
+      CacheSpan span;
+      synchronized (content) {
+        if (content.removed) {
+          continue;
+        }
+        span = startReadWriteNonBlocking(content, lookupSpan);
+        if (span == null) {
+          // Write case, lock not available. We'll be woken up when the locked span is released
+          // (in which case we'll be able to acquire the lock) or when a span is added for the key
+          // (if the span covers the requested position, then we'll become a read and be able to
+          // make progress).
+          content.wait();
+          continue;
+        }
       }
+      onContentUnlocked();
+      return span;
     }
   }
 
   @Override
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position) {
-    return startReadWriteNonBlocking(CacheSpan.createLookup(key, position));
+  public CacheSpan startReadWriteNonBlocking(String key, long position) {
+    blockUntilInitialized();
+    CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
+    while (true) {
+      CachedContent content = getOrAddContent(key);
+      CacheSpan span;
+      synchronized (content) {
+        if (content.removed) {
+          continue;
+        }
+        span = startReadWriteNonBlocking(content, lookupSpan);
+      }
+      onContentUnlocked();
+      return span;
+    }
   }
 
-  private synchronized CacheSpan startReadWriteNonBlocking(CacheSpan lookupSpan) {
-    CacheSpan spanningRegion = getSpan(lookupSpan);
+  /**
+   * Must be called with the lock on {@code content} held.
+   */
+  private CacheSpan startReadWriteNonBlocking(CachedContent content, CacheSpan lookupSpan) {
+    CacheSpan spanningRegion = getSpan(content, lookupSpan);
 
     // Read case.
     if (spanningRegion.isCached) {
       CacheSpan oldCacheSpan = spanningRegion;
       // Remove the old span from the in-memory representation.
-      TreeSet<CacheSpan> spansForKey = cachedSpans.get(oldCacheSpan.key);
-      Assertions.checkState(spansForKey.remove(oldCacheSpan));
+      Assertions.checkState(content.spans.remove(oldCacheSpan));
       // Obtain a new span with updated last access timestamp.
       spanningRegion = oldCacheSpan.touch();
       // Add the updated span back into the in-memory representation.
-      spansForKey.add(spanningRegion);
-      notifySpanTouched(oldCacheSpan, spanningRegion);
+      content.spans.add(spanningRegion);
+      enqueueEvent(content, SpanEvent.TYPE_TOUCHED, oldCacheSpan, spanningRegion, true);
       return spanningRegion;
     }
 
     // Write case, lock available.
-    if (!lockedSpans.containsKey(lookupSpan.key)) {
-      lockedSpans.put(lookupSpan.key, spanningRegion);
+    if (content.lockedSpan == null) {
+      content.lockedSpan = spanningRegion;
       return spanningRegion;
     }
 
@@ -156,40 +228,81 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized File startFile(String key, long position, long length) {
-    Assertions.checkState(lockedSpans.containsKey(key));
-    if (!cacheDir.exists()) {
-      // For some reason the cache directory doesn't exist. Make a best effort to create it.
-      removeStaleSpans();
-      cacheDir.mkdirs();
+  public File startFile(String key, long position, long length) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    Assertions.checkState(content != null);
+    synchronized (content) {
+      Assertions.checkState(content.lockedSpan != null);
+      if (!content.writeStarted) {
+        // Record the write before the file is created, so that the file is found and deleted if the
+        // process is killed before it's committed.
+        content.writeStarted = true;
+        pendingEvents.add(new SpanEvent(SpanEvent.TYPE_WRITE_STARTED, key, C.LENGTH_UNBOUNDED));
+      }
+    }
+    // Evicting to make space requires a consistent view of the cache, so wait for any thread that
+    // is delivering events to finish.
+    eventLock.lock();
+    try {
+      if (!cacheDir.exists()) {
+        // For some reason the cache directory doesn't exist. Make a best effort to create it.
+        removeStaleSpans();
+        cacheDir.mkdirs();
+        // The index was deleted along with the directory.
+        index.store(getAllSpans(), getContentLengths());
+      }
+      deliverPendingEvents();
+      evictor.onStartFile(this, key, position, length);
+    } finally {
+      eventLock.unlock();
     }
-    evictor.onStartFile(this, key, position, length);
+    deliverPendingEvents();
     return CacheSpan.getCacheFileName(cacheDir, key, position, System.currentTimeMillis());
   }
 
   @Override
-  public synchronized void commitFile(File file) {
+  public void commitFile(File file) {
+    blockUntilInitialized();
     CacheSpan span = CacheSpan.createCacheEntry(file);
     Assertions.checkState(span != null);
-    Assertions.checkState(lockedSpans.containsKey(span.key));
-    // If the file doesn't exist, don't add it to the in-memory representation.
-    if (!file.exists()) {
-      return;
-    }
-    // If the file has length 0, delete it and don't add it to the in-memory representation.
-    long length = file.length();
-    if (length == 0) {
-      file.delete();
-      return;
+    CachedContent content = contents.get(span.key);
+    Assertions.checkState(content != null);
+    synchronized (content) {
+      Assertions.checkState(content.lockedSpan != null);
+      // If the file doesn't exist, don't add it to the in-memory representation.
+      if (!file.exists()) {
+        return;
+      }
+      // If the file has length 0, delete it and don't add it to the in-memory representation.
+      long length = file.length();
+      if (length == 0) {
+        file.delete();
+        return;
+      }
+      addSpan(content, span, true);
+      content.notifyAll();
     }
-    addSpan(span);
-    notifyAll();
+    onContentUnlocked();
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
-    Assertions.checkState(holeSpan == lockedSpans.remove(holeSpan.key));
-    notifyAll();
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(holeSpan.key);
+    Assertions.checkState(content != null);
+    synchronized (content) {
+      Assertions.checkState(holeSpan == content.lockedSpan);
+      content.lockedSpan = null;
+      if (content.writeStarted) {
+        content.writeStarted = false;
+        pendingEvents.add(new SpanEvent(SpanEvent.TYPE_WRITE_ENDED, holeSpan.key,
+            C.LENGTH_UNBOUNDED));
+      }
+      content.notifyAll();
+      maybeRemoveContent(content);
+    }
+    deliverPendingEvents();
   }
 
   /**
@@ -199,17 +312,17 @@ public final class SimpleCache implements Cache {
    * {@link CacheSpan} defines the file in which the data is stored. If the lookup position is not
    * contained by an existing entry, then the returned {@link CacheSpan} defines the maximum extents
    * of the hole in the cache.
+   * <p>
+   * Must be called with the lock on {@code content} held.
    *
+   * @param content The content for the key of the lookup {@link CacheSpan}.
    * @param lookupSpan A lookup {@link CacheSpan} specifying a key and position.
    * @return The corresponding cache {@link CacheSpan}.
    */
-  private CacheSpan getSpan(CacheSpan lookupSpan) {
+  private CacheSpan getSpan(CachedContent content, CacheSpan lookupSpan) {
     String key = lookupSpan.key;
     long offset = lookupSpan.position;
-    TreeSet<CacheSpan> entries = cachedSpans.get(key);
-    if (entries == null) {
-      return CacheSpan.createOpenHole(key, lookupSpan.position);
-    }
+    TreeSet<CacheSpan> entries = content.spans;
     CacheSpan floorSpan = entries.floor(lookupSpan);
     if (floorSpan != null &&
         floorSpan.position <= offset && offset < floorSpan.position + floorSpan.length) {
@@ -218,9 +331,11 @@ public final class SimpleCache implements Cache {
         return floorSpan;
       } else {
         // The file has been deleted from under us. It's likely that other files will have been
-        // deleted too, so scan the whole in-memory representation.
-        removeStaleSpans();
-        return getSpan(lookupSpan);
+        // deleted too, so the whole in-memory representation is scanned once the lock on this
+        // content has been released. For now, scan the spans for this key only.
+        staleSpansDetected = true;
+        removeStaleSpans(content);
+        return getSpan(content, lookupSpan);
       }
     }
     CacheSpan ceilEntry = entries.ceiling(lookupSpan);
@@ -231,18 +346,96 @@ public final class SimpleCache implements Cache {
 
   /**
    * Ensures that the cache's in-memory representation has been initialized.
+   * <p>
+   * Must be called with {@link #eventLock} held.
    */
   private void initialize() {
     if (!cacheDir.exists()) {
       cacheDir.mkdirs();
     }
+    HashMap<String, Long> contentLengths = new HashMap<>();
+    HashMap<String, TreeSet<CacheSpan>> indexedSpans = index.load(contentLengths);
+    if (indexedSpans != null) {
+      initializeFromIndex(indexedSpans, index.hasUnfinishedWrites());
+      for (Map.Entry<String, Long> contentLength : contentLengths.entrySet()) {
+        CachedContent content = contents.get(contentLength.getKey());
+        if (content != null) {
+          content.contentLength = contentLength.getValue();
+        }
+      }
+      deliverPendingEvents();
+    } else {
+      initializeFromDirectory();
+      deliverPendingEvents();
+      index.store(getAllSpans(), getContentLengths());
+    }
+    evictor.onCacheInitialized();
+  }
+
+  /**
+   * Initializes the cache's in-memory representation from the spans loaded from the index.
+   * <p>
+   * If {@code deleteUnreferencedFiles} is true then the cache directory is listed. Files that
+   * aren't referenced by the index are deleted, and indexed spans whose files no longer exist are
+   * removed. Otherwise the directory isn't listed, and spans whose files no longer exist (e.g.
+   * because the process was killed before the removal of a span was recorded in the index) are
+   * removed when they are next accessed.
+   *
+   * @param indexedSpans The cached spans for each key, as loaded from the index.
+   * @param deleteUnreferencedFiles Whether files may have been written but never committed, in
+   *     which case they should be found and deleted.
+   */
+  private void initializeFromIndex(HashMap<String, TreeSet<CacheSpan>> indexedSpans,
+      boolean deleteUnreferencedFiles) {
+    if (!deleteUnreferencedFiles) {
+      for (TreeSet<CacheSpan> spansForKey : indexedSpans.values()) {
+        for (CacheSpan span : spansForKey) {
+          addSpan(span);
+        }
+      }
+      return;
+    }
+    File[] files = cacheDir.listFiles();
+    HashSet<String> unreferencedFileNames = new HashSet<>();
+    if (files != null) {
+      for (File file : files) {
+        if (!CachedContentIndex.isIndexFile(file)) {
+          unreferencedFileNames.add(file.getName());
+        }
+      }
+    }
+    for (TreeSet<CacheSpan> spansForKey : indexedSpans.values()) {
+      for (CacheSpan span : spansForKey) {
+        if (unreferencedFileNames.remove(span.file.getName())) {
+          addSpan(span);
+        } else {
+          // The file has been deleted from under us.
+          index.onSpanRemoved(span);
+        }
+      }
+    }
+    if (files != null && !unreferencedFileNames.isEmpty()) {
+      for (File file : files) {
+        if (unreferencedFileNames.contains(file.getName())) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Initializes the cache's in-memory representation by scanning the cache directory.
+   */
+  private void initializeFromDirectory() {
     File[] files = cacheDir.listFiles();
     if (files == null) {
       return;
     }
     for (int i = 0; i < files.length; i++) {
       File file = files[i];
-      if (file.length() == 0) {
+      if (CachedContentIndex.isIndexFile(file)) {
+        continue;
+      } else if (file.length() == 0) {
         file.delete();
       } else {
         file = CacheSpan.upgradeIfNeeded(file);
@@ -254,35 +447,55 @@ public final class SimpleCache implements Cache {
         }
       }
     }
-    evictor.onCacheInitialized();
   }
 
   /**
-   * Adds a cached span to the in-memory representation.
+   * Adds a span read during initialization to the in-memory representation.
    *
    * @param span The span to be added.
    */
   private void addSpan(CacheSpan span) {
-    TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
-    if (spansForKey == null) {
-      spansForKey = new TreeSet<>();
-      cachedSpans.put(span.key, spansForKey);
+    CachedContent content = getOrAddContent(span.key);
+    synchronized (content) {
+      addSpan(content, span, false);
     }
-    spansForKey.add(span);
-    totalSpace += span.length;
-    notifySpanAdded(span);
+  }
+
+  /**
+   * Adds a cached span to the in-memory representation. Must be called with the lock on
+   * {@code content} held.
+   *
+   * @param content The content for the key of the span.
+   * @param span The span to be added.
+   * @param journal Whether the addition should be recorded in the persistent index.
+   */
+  private void addSpan(CachedContent content, CacheSpan span, boolean journal) {
+    content.spans.add(span);
+    totalSpace.addAndGet(span.length);
+    enqueueEvent(content, SpanEvent.TYPE_ADDED, span, null, journal);
   }
 
   @Override
-  public synchronized void removeSpan(CacheSpan span) {
-    TreeSet<CacheSpan> spansForKey = cachedSpans.get(span.key);
-    totalSpace -= span.length;
-    Assertions.checkState(spansForKey.remove(span));
-    span.file.delete();
-    if (spansForKey.isEmpty()) {
-      cachedSpans.remove(span.key);
+  public void removeSpan(CacheSpan span) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(span.key);
+    if (content != null) {
+      synchronized (content) {
+        // The span may have been touched since the caller obtained it, in which case the span that
+        // replaced it is removed.
+        CacheSpan cachedSpan = content.spans.floor(span);
+        if (cachedSpan != null && cachedSpan.position == span.position) {
+          content.spans.remove(cachedSpan);
+          totalSpace.addAndGet(-cachedSpan.length);
+          cachedSpan.file.delete();
+          enqueueEvent(content, SpanEvent.TYPE_REMOVED, cachedSpan, null, true);
+          maybeRemoveContent(content);
+        }
+      }
     }
-    notifySpanRemoved(span);
+    // If the span was already removed then the event reporting its removal may still be pending.
+    // Delivering it before returning ensures that the evictor makes progress when evicting.
+    onContentUnlocked();
   }
 
   /**
@@ -290,65 +503,46 @@ public final class SimpleCache implements Cache {
    * no longer exist.
    */
   private void removeStaleSpans() {
-    Iterator<Entry<String, TreeSet<CacheSpan>>> iterator = cachedSpans.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Entry<String, TreeSet<CacheSpan>> next = iterator.next();
-      Iterator<CacheSpan> spanIterator = next.getValue().iterator();
-      boolean isEmpty = true;
-      while (spanIterator.hasNext()) {
-        CacheSpan span = spanIterator.next();
-        if (!span.file.exists()) {
-          spanIterator.remove();
-          if (span.isCached) {
-            totalSpace -= span.length;
-          }
-          notifySpanRemoved(span);
-        } else {
-          isEmpty = false;
-        }
-      }
-      if (isEmpty) {
-        iterator.remove();
+    for (CachedContent content : contents.values()) {
+      synchronized (content) {
+        removeStaleSpans(content);
+        maybeRemoveContent(content);
       }
     }
   }
 
-  private void notifySpanRemoved(CacheSpan span) {
-    ArrayList<Listener> keyListeners = listeners.get(span.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanRemoved(this, span);
+  /**
+   * Removes the cached spans of {@code content} for which files no longer exist. Must be called
+   * with the lock on {@code content} held.
+   */
+  private void removeStaleSpans(CachedContent content) {
+    Iterator<CacheSpan> spanIterator = content.spans.iterator();
+    while (spanIterator.hasNext()) {
+      CacheSpan span = spanIterator.next();
+      if (!span.file.exists()) {
+        spanIterator.remove();
+        if (span.isCached) {
+          totalSpace.addAndGet(-span.length);
+        }
+        enqueueEvent(content, SpanEvent.TYPE_REMOVED, span, null, true);
       }
     }
-    evictor.onSpanRemoved(this, span);
   }
 
-  private void notifySpanAdded(CacheSpan span) {
-    ArrayList<Listener> keyListeners = listeners.get(span.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanAdded(this, span);
-      }
+  @Override
+  public boolean isCached(String key, long position, long length) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    if (content == null) {
+      return false;
     }
-    evictor.onSpanAdded(this, span);
-  }
-
-  private void notifySpanTouched(CacheSpan oldSpan, CacheSpan newSpan) {
-    ArrayList<Listener> keyListeners = listeners.get(oldSpan.key);
-    if (keyListeners != null) {
-      for (int i = keyListeners.size() - 1; i >= 0; i--) {
-        keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
-      }
+    synchronized (content) {
+      return isCached(content.spans, key, position, length);
     }
-    evictor.onSpanTouched(this, oldSpan, newSpan);
   }
 
-  @Override
-  public synchronized boolean isCached(String key, long position, long length) {
-    TreeSet<CacheSpan> entries = cachedSpans.get(key);
-    if (entries == null) {
-      return false;
-    }
+  private static boolean isCached(TreeSet<CacheSpan> entries, String key, long position,
+      long length) {
     CacheSpan lookupSpan = CacheSpan.createLookup(key, position);
     CacheSpan floorSpan = entries.floor(lookupSpan);
     if (floorSpan == null || floorSpan.position + floorSpan.length <= position) {
@@ -380,4 +574,279 @@ public final class SimpleCache implements Cache {
     return false;
   }
 
+  @Override
+  public long getContentLength(String key) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    if (content == null) {
+      return C.LENGTH_UNBOUNDED;
+    }
+    synchronized (content) {
+      return content.contentLength;
+    }
+  }
+
+  @Override
+  public void setContentLength(String key, long length) {
+    blockUntilInitialized();
+    Assertions.checkArgument(length >= 0);
+    while (true) {
+      CachedContent content = getOrAddContent(key);
+      synchronized (content) {
+        if (content.removed) {
+          continue;
+        }
+        if (content.spans.isEmpty()) {
+          // Nothing is cached for the key, so the length would be discarded straight away.
+          maybeRemoveContent(content);
+          return;
+        }
+        if (content.contentLength == length) {
+          return;
+        }
+        content.contentLength = length;
+        pendingEvents.add(new SpanEvent(SpanEvent.TYPE_CONTENT_LENGTH_SET, key, length));
+      }
+      onContentUnlocked();
+      return;
+    }
+  }
+
+  // Content management.
+
+  private CachedContent getOrAddContent(String key) {
+    CachedContent content = contents.get(key);
+    if (content == null) {
+      CachedContent newContent = new CachedContent(key);
+      content = contents.putIfAbsent(key, newContent);
+      if (content == null) {
+        content = newContent;
+      }
+    }
+    return content;
+  }
+
+  /**
+   * Removes {@code content} from {@link #contents} if it no longer holds any state. Must be called
+   * with the lock on {@code content} held.
+   */
+  private void maybeRemoveContent(CachedContent content) {
+    if (content.spans.isEmpty() && content.lockedSpan == null && content.listeners.isEmpty()) {
+      content.removed = true;
+      contents.remove(content.key, content);
+    }
+  }
+
+  /**
+   * Blocks until the cache has been initialized, unless called from the initialization thread.
+   */
+  private void blockUntilInitialized() {
+    if (!initialized && !eventLock.isHeldByCurrentThread()) {
+      initializationCondition.block();
+    }
+  }
+
+  /**
+   * Must be called after releasing the lock on a content that may have been modified.
+   */
+  private void onContentUnlocked() {
+    if (staleSpansDetected) {
+      staleSpansDetected = false;
+      removeStaleSpans();
+    }
+    deliverPendingEvents();
+  }
+
+  // Event delivery.
+
+  /**
+   * Records an event for delivery. Must be called with the lock on {@code content} held, so that
+   * events for each key are delivered in the order in which they occurred.
+   */
+  private void enqueueEvent(CachedContent content, int type, CacheSpan span, CacheSpan newSpan,
+      boolean journal) {
+    Listener[] listeners = content.listeners.isEmpty() ? null
+        : content.listeners.toArray(new Listener[content.listeners.size()]);
+    pendingEvents.add(new SpanEvent(type, span, newSpan, listeners, journal));
+  }
+
+  /**
+   * Delivers pending events, unless another thread is already delivering them. The lock on
+   * {@link #eventLock} is reentrant, so that events caused by the evictor removing spans are
+   * delivered before its call to {@link #removeSpan(CacheSpan)} returns.
+   */
+  private void deliverPendingEvents() {
+    // If another thread holds the lock it will deliver any event we've added before releasing it,
+    // or we'll see the event when we check the queue again after it has done so.
+    while (!pendingEvents.isEmpty() && eventLock.tryLock()) {
+      try {
+        SpanEvent event;
+        while ((event = pendingEvents.poll()) != null) {
+          deliverEvent(event);
+        }
+        if (initialized && index.shouldCompact()) {
+          index.store(getAllSpans(), getContentLengths());
+        }
+      } finally {
+        eventLock.unlock();
+      }
+    }
+  }
+
+  private void deliverEvent(SpanEvent event) {
+    Listener[] listeners = event.listeners;
+    switch (event.type) {
+      case SpanEvent.TYPE_ADDED:
+        if (event.journal) {
+          index.onSpanAdded(event.span);
+        }
+        if (listeners != null) {
+          for (int i = listeners.length - 1; i >= 0; i--) {
+            listeners[i].onSpanAdded(this, event.span);
+          }
+        }
+        evictor.onSpanAdded(this, event.span);
+        break;
+      case SpanEvent.TYPE_REMOVED:
+        index.onSpanRemoved(event.span);
+        if (listeners != null) {
+          for (int i = listeners.length - 1; i >= 0; i--) {
+            listeners[i].onSpanRemoved(this, event.span);
+          }
+        }
+        evictor.onSpanRemoved(this, event.span);
+        break;
+      case SpanEvent.TYPE_TOUCHED:
+        index.onSpanTouched(event.newSpan);
+        if (listeners != null) {
+          for (int i = listeners.length - 1; i >= 0; i--) {
+            listeners[i].onSpanTouched(this, event.span, event.newSpan);
+          }
+        }
+        evictor.onSpanTouched(this, event.span, event.newSpan);
+        break;
+      case SpanEvent.TYPE_CONTENT_LENGTH_SET:
+        index.onContentLengthSet(event.key, event.contentLength);
+        break;
+      case SpanEvent.TYPE_WRITE_STARTED:
+        index.onWriteStarted(event.key);
+        break;
+      case SpanEvent.TYPE_WRITE_ENDED:
+        index.onWriteEnded(event.key);
+        break;
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  /**
+   * Returns a copy of the cached spans for every key.
+   */
+  private ArrayList<TreeSet<CacheSpan>> getAllSpans() {
+    ArrayList<TreeSet<CacheSpan>> spans = new ArrayList<>();
+    for (CachedContent content : contents.values()) {
+      synchronized (content) {
+        if (!content.spans.isEmpty()) {
+          spans.add(new TreeSet<>(content.spans));
+        }
+      }
+    }
+    return spans;
+  }
+
+  /**
+   * Returns the known content lengths, by key.
+   */
+  private HashMap<String, Long> getContentLengths() {
+    HashMap<String, Long> contentLengths = new HashMap<>();
+    for (CachedContent content : contents.values()) {
+      synchronized (content) {
+        if (content.contentLength != C.LENGTH_UNBOUNDED) {
+          contentLengths.put(content.key, content.contentLength);
+        }
+      }
+    }
+    return contentLengths;
+  }
+
+  /**
+   * The in-memory state for a single cache key. Guarded by its own monitor.
+   */
+  private static final class CachedContent {
+
+    public final String key;
+    public final TreeSet<CacheSpan> spans;
+    public final ArrayList<Listener> listeners;
+
+    /**
+     * The hole span held by the writer for this key, or null if the write lock is not held.
+     */
+    public CacheSpan lockedSpan;
+    /**
+     * The length of the content, or {@link C#LENGTH_UNBOUNDED} if it is unknown.
+     */
+    public long contentLength;
+    /**
+     * Whether this instance has been removed from {@link SimpleCache#contents}. An operation that
+     * finds this to be true after acquiring the lock must look the key up again.
+     */
+    public boolean removed;
+    /**
+     * Whether a file has been started under the current write lock, and the start of the write
+     * recorded in the index.
+     */
+    public boolean writeStarted;
+
+    public CachedContent(String key) {
+      this.key = key;
+      this.spans = new TreeSet<>();
+      this.listeners = new ArrayList<>();
+      this.contentLength = C.LENGTH_UNBOUNDED;
+    }
+
+  }
+
+  /**
+   * A change to the cached spans or content length of a key, pending delivery.
+   */
+  private static final class SpanEvent {
+
+    public static final int TYPE_ADDED = 0;
+    public static final int TYPE_REMOVED = 1;
+    public static final int TYPE_TOUCHED = 2;
+    public static final int TYPE_CONTENT_LENGTH_SET = 3;
+    public static final int TYPE_WRITE_STARTED = 4;
+    public static final int TYPE_WRITE_ENDED = 5;
+
+    public final int type;
+    public final CacheSpan span;
+    public final CacheSpan newSpan;
+    public final Listener[] listeners;
+    public final boolean journal;
+    public final String key;
+    public final long contentLength;
+
+    public SpanEvent(int type, String key, long contentLength) {
+      this.type = type;
+      this.key = key;
+      this.contentLength = contentLength;
+      this.span = null;
+      this.newSpan = null;
+      this.listeners = null;
+      this.journal = true;
+    }
+
+    public SpanEvent(int type, CacheSpan span, CacheSpan newSpan, Listener[] listeners,
+        boolean journal) {
+      this.type = type;
+      this.span = span;
+      this.newSpan = newSpan;
+      this.listeners = listeners;
+      this.journal = journal;
+      this.key = span.key;
+      this.contentLength = C.LENGTH_UNBOUNDED;
+    }
+
+  }
+
 }
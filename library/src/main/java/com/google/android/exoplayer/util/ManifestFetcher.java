@@ -15,18 +15,29 @@
  */
 package com.google.android.exoplayer.util;
 
+import com.google.android.exoplayer.upstream.DataSourceInputStream;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
 import com.google.android.exoplayer.upstream.UriDataSource;
 import com.google.android.exoplayer.upstream.UriLoadable;
 
+import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Pair;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
 
 /**
@@ -43,6 +54,13 @@ import java.util.concurrent.CancellationException;
  *     components that require it. These components will call {@link #requestRefresh()} on the
  *     loader whenever a refresh is required.</li>
  * </ol>
+ * <p>
+ * Refreshes skip parsing if the manifest is unchanged, in which case {@link #getManifest()}
+ * continues to return the previously loaded instance. If the {@link UriDataSource} is an
+ * {@link HttpDataSource}, refreshes are conditional requests, using the entity tag and last
+ * modification time of the previous response, and a 304 (Not Modified) response is treated as an
+ * unchanged manifest. For other sources, and for servers that don't support conditional requests,
+ * the manifest is unchanged if its data is identical to that of the previous load.
  *
  * @param <T> The type of manifest.
  */
@@ -65,6 +83,19 @@ public class ManifestFetcher<T> implements Loader.Callback {
 
     public void onManifestRefreshed();
 
+    /**
+     * Invoked when a refresh completes successfully, before {@link #onManifestRefreshed()}.
+     *
+     * @param loadDurationMs The time taken to request and read the manifest data, in milliseconds.
+     * @param parseDurationMs The time taken to parse the manifest data, in milliseconds. Zero if
+     *     the manifest was unchanged.
+     * @param bytesLoaded The size of the manifest data, in bytes. Zero if the server responded that
+     *     the manifest was not modified.
+     * @param unchanged Whether the manifest was unchanged, in which case it wasn't parsed.
+     */
+    public void onManifestRefreshTimings(long loadDurationMs, long parseDurationMs,
+        int bytesLoaded, boolean unchanged);
+
     public void onManifestError(IOException e);
 
   }
@@ -115,7 +146,7 @@ public class ManifestFetcher<T> implements Loader.Callback {
 
   private int enabledCount;
   private Loader loader;
-  private UriLoadable<T> currentLoadable;
+  private ManifestLoadable<T> currentLoadable;
   private long currentLoadStartTimestamp;
 
   private int loadExceptionCount;
@@ -123,6 +154,7 @@ public class ManifestFetcher<T> implements Loader.Callback {
   private ManifestIOException loadException;
 
   private volatile T manifest;
+  private volatile ManifestLoadable<T> manifestLoadable;
   private volatile long manifestLoadStartTimestamp;
   private volatile long manifestLoadCompleteTimestamp;
 
@@ -171,7 +203,7 @@ public class ManifestFetcher<T> implements Loader.Callback {
    */
   public void singleLoad(Looper callbackLooper, final ManifestCallback<T> callback) {
     SingleFetchHelper fetchHelper = new SingleFetchHelper(
-        new UriLoadable<>(manifestUri, uriDataSource, parser), callbackLooper, callback);
+        new ManifestLoadable<>(manifestUri, uriDataSource, parser, null), callbackLooper, callback);
     fetchHelper.startLoading();
   }
 
@@ -255,7 +287,8 @@ public class ManifestFetcher<T> implements Loader.Callback {
       loader = new Loader("manifestLoader");
     }
     if (!loader.isLoading()) {
-      currentLoadable = new UriLoadable<>(manifestUri, uriDataSource, parser);
+      currentLoadable = new ManifestLoadable<>(manifestUri, uriDataSource, parser,
+          manifestLoadable);
       currentLoadStartTimestamp = SystemClock.elapsedRealtime();
       loader.startLoading(currentLoadable, this);
       notifyManifestRefreshStarted();
@@ -269,6 +302,7 @@ public class ManifestFetcher<T> implements Loader.Callback {
       return;
     }
 
+    manifestLoadable = currentLoadable;
     manifest = currentLoadable.getResult();
     manifestLoadStartTimestamp = currentLoadStartTimestamp;
     manifestLoadCompleteTimestamp = SystemClock.elapsedRealtime();
@@ -283,6 +317,8 @@ public class ManifestFetcher<T> implements Loader.Callback {
       }
     }
 
+    notifyManifestRefreshTimings(currentLoadable.loadDurationMs, currentLoadable.parseDurationMs,
+        currentLoadable.bytesLoaded, currentLoadable.unchanged);
     notifyManifestRefreshed();
   }
 
@@ -305,8 +341,10 @@ public class ManifestFetcher<T> implements Loader.Callback {
     notifyManifestError(loadException);
   }
 
-  /* package */ void onSingleFetchCompleted(T result, long loadStartTimestamp) {
-    manifest = result;
+  /* package */ void onSingleFetchCompleted(ManifestLoadable<T> loadable,
+      long loadStartTimestamp) {
+    manifestLoadable = loadable;
+    manifest = loadable.getResult();
     manifestLoadStartTimestamp = loadStartTimestamp;
     manifestLoadCompleteTimestamp = SystemClock.elapsedRealtime();
   }
@@ -337,6 +375,19 @@ public class ManifestFetcher<T> implements Loader.Callback {
     }
   }
 
+  private void notifyManifestRefreshTimings(final long loadDurationMs,
+      final long parseDurationMs, final int bytesLoaded, final boolean unchanged) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable()  {
+        @Override
+        public void run() {
+          eventListener.onManifestRefreshTimings(loadDurationMs, parseDurationMs, bytesLoaded,
+              unchanged);
+        }
+      });
+    }
+  }
+
   private void notifyManifestError(final IOException e) {
     if (eventHandler != null && eventListener != null) {
       eventHandler.post(new Runnable()  {
@@ -350,14 +401,14 @@ public class ManifestFetcher<T> implements Loader.Callback {
 
   private class SingleFetchHelper implements Loader.Callback {
 
-    private final UriLoadable<T> singleUseLoadable;
+    private final ManifestLoadable<T> singleUseLoadable;
     private final Looper callbackLooper;
     private final ManifestCallback<T> wrappedCallback;
     private final Loader singleUseLoader;
 
     private long loadStartTimestamp;
 
-    public SingleFetchHelper(UriLoadable<T> singleUseLoadable, Looper callbackLooper,
+    public SingleFetchHelper(ManifestLoadable<T> singleUseLoadable, Looper callbackLooper,
         ManifestCallback<T> wrappedCallback) {
       this.singleUseLoadable = singleUseLoadable;
       this.callbackLooper = callbackLooper;
@@ -373,9 +424,8 @@ public class ManifestFetcher<T> implements Loader.Callback {
     @Override
     public void onLoadCompleted(Loadable loadable) {
       try {
-        T result = singleUseLoadable.getResult();
-        onSingleFetchCompleted(result, loadStartTimestamp);
-        wrappedCallback.onSingleManifest(result);
+        onSingleFetchCompleted(singleUseLoadable, loadStartTimestamp);
+        wrappedCallback.onSingleManifest(singleUseLoadable.getResult());
       } finally {
         releaseLoader();
       }
@@ -407,4 +457,182 @@ public class ManifestFetcher<T> implements Loader.Callback {
 
   }
 
+  /**
+   * A {@link Loadable} for loading a manifest.
+   * <p>
+   * The manifest data is read in full before it's parsed, so that loading and parsing can be timed
+   * separately, and so that parsing can be skipped if the data is unchanged from that of the
+   * previous load.
+   *
+   * @param <T> The type of manifest.
+   */
+  /* package */ static final class ManifestLoadable<T> implements Loadable {
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final int RESPONSE_CODE_NOT_MODIFIED = 304;
+
+    private final String url;
+    private final DataSpec dataSpec;
+    private final UriDataSource uriDataSource;
+    private final UriLoadable.Parser<T> parser;
+
+    // Released when the load ends, so that loadables don't retain each other's manifests.
+    private ManifestLoadable<T> previousLoadable;
+
+    private String connectionUrl;
+    private String entityTag;
+    private String lastModified;
+    private byte[] digest;
+
+    /* package */ boolean unchanged;
+    /* package */ int bytesLoaded;
+    /* package */ long loadDurationMs;
+    /* package */ long parseDurationMs;
+
+    private volatile T result;
+    private volatile boolean isCanceled;
+
+    /**
+     * @param url The url from which the manifest should be loaded.
+     * @param uriDataSource A {@link UriDataSource} to use when loading the data.
+     * @param parser Parses the manifest from the response.
+     * @param previousLoadable The loadable that loaded the current manifest, or null.
+     */
+    public ManifestLoadable(String url, UriDataSource uriDataSource, UriLoadable.Parser<T> parser,
+        ManifestLoadable<T> previousLoadable) {
+      this.url = url;
+      this.uriDataSource = uriDataSource;
+      this.parser = parser;
+      this.previousLoadable = previousLoadable;
+      dataSpec = new DataSpec(Uri.parse(url), DataSpec.FLAG_ALLOW_GZIP);
+    }
+
+    /**
+     * Returns the loaded manifest, or null if a manifest has not been loaded. If the manifest was
+     * unchanged, the manifest loaded by the previous loadable is returned.
+     */
+    public T getResult() {
+      return result;
+    }
+
+    @Override
+    public void cancelLoad() {
+      // We don't actually cancel anything, but we need to record the cancellation so that
+      // isLoadCanceled can return the correct value.
+      isCanceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return isCanceled;
+    }
+
+    @Override
+    public void load() throws IOException, InterruptedException {
+      try {
+        long loadStartTimeMs = SystemClock.elapsedRealtime();
+        byte[] data = loadData();
+        long parseStartTimeMs = SystemClock.elapsedRealtime();
+        loadDurationMs = parseStartTimeMs - loadStartTimeMs;
+        if (data != null) {
+          bytesLoaded = data.length;
+          digest = getDigest(data);
+          unchanged = previousLoadable != null
+              && Util.areEqual(connectionUrl, previousLoadable.connectionUrl)
+              && Arrays.equals(digest, previousLoadable.digest);
+        }
+        if (unchanged) {
+          result = previousLoadable.result;
+        } else {
+          result = parser.parse(connectionUrl, new ByteArrayInputStream(data));
+          parseDurationMs = SystemClock.elapsedRealtime() - parseStartTimeMs;
+        }
+      } finally {
+        previousLoadable = null;
+      }
+    }
+
+    /**
+     * Loads the manifest data.
+     *
+     * @return The manifest data, or null if the server responded that the manifest was not
+     *     modified.
+     * @throws IOException If an error occurs loading the data.
+     */
+    private byte[] loadData() throws IOException {
+      HttpDataSource httpDataSource = uriDataSource instanceof HttpDataSource
+          ? (HttpDataSource) uriDataSource : null;
+      boolean isConditionalRequest = false;
+      if (httpDataSource != null && previousLoadable != null
+          && url.equals(previousLoadable.url)) {
+        isConditionalRequest = setRequestProperty(httpDataSource, HEADER_IF_NONE_MATCH,
+            previousLoadable.entityTag);
+        isConditionalRequest |= setRequestProperty(httpDataSource, HEADER_IF_MODIFIED_SINCE,
+            previousLoadable.lastModified);
+      }
+      DataSourceInputStream inputStream = new DataSourceInputStream(uriDataSource, dataSpec);
+      try {
+        inputStream.open();
+        connectionUrl = uriDataSource.getUri();
+        if (httpDataSource != null) {
+          Map<String, List<String>> headers = httpDataSource.getResponseHeaders();
+          entityTag = getHeaderValue(headers, HEADER_ETAG);
+          lastModified = getHeaderValue(headers, HEADER_LAST_MODIFIED);
+        }
+        return Util.toByteArray(inputStream);
+      } catch (InvalidResponseCodeException e) {
+        if (!isConditionalRequest || e.responseCode != RESPONSE_CODE_NOT_MODIFIED) {
+          throw e;
+        }
+        // The manifest is unchanged, and so are the values describing it.
+        unchanged = true;
+        connectionUrl = previousLoadable.connectionUrl;
+        entityTag = previousLoadable.entityTag;
+        lastModified = previousLoadable.lastModified;
+        digest = previousLoadable.digest;
+        return null;
+      } finally {
+        inputStream.close();
+        if (isConditionalRequest) {
+          httpDataSource.clearRequestProperty(HEADER_IF_NONE_MATCH);
+          httpDataSource.clearRequestProperty(HEADER_IF_MODIFIED_SINCE);
+        }
+      }
+    }
+
+    private static boolean setRequestProperty(HttpDataSource httpDataSource, String name,
+        String value) {
+      if (value == null) {
+        return false;
+      }
+      httpDataSource.setRequestProperty(name, value);
+      return true;
+    }
+
+    private static String getHeaderValue(Map<String, List<String>> headers, String name) {
+      if (headers == null) {
+        return null;
+      }
+      // Header names are case insensitive.
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+          return header.getValue().get(0);
+        }
+      }
+      return null;
+    }
+
+    private static byte[] getDigest(byte[] data) {
+      try {
+        return MessageDigest.getInstance("MD5").digest(data);
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException("Couldn't create MD5 digest", e);
+      }
+    }
+
+  }
+
 }
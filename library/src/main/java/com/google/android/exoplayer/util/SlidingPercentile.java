@@ -15,9 +15,7 @@
  */
 package com.google.android.exoplayer.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 
 /**
  * Calculate any percentile over a sliding window of weighted values. A maximum total weight is
@@ -27,48 +25,75 @@ import java.util.Comparator;
  * SlidingPercentile can be used for bandwidth estimation based on a sliding window of past
  * download rate observations. This is an alternative to sliding mean and exponential averaging
  * which suffer from susceptibility to outliers and slow adaptation to step functions.
+ * <p>
+ * The samples are held in a treap ordered by value, in which each node also stores the total
+ * weight of its subtree, and in a queue ordered by age. Adding a sample and computing a percentile
+ * both take logarithmic time in the number of samples. The nodes are stored in primitive arrays,
+ * which only grow when the number of samples in the window exceeds its previous maximum, so no
+ * allocation occurs at steady state.
  *
  * @see <a href="http://en.wikipedia.org/wiki/Moving_average">Wiki: Moving average</a>
- * @see <a href="http://en.wikipedia.org/wiki/Selection_algorithm">Wiki: Selection algorithm</a>
+ * @see <a href="http://en.wikipedia.org/wiki/Treap">Wiki: Treap</a>
  */
 public final class SlidingPercentile {
 
-  // Orderings.
-  private static final Comparator<Sample> INDEX_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.index - b.index;
-    }
-  };
+  private static final int INITIAL_CAPACITY = 16;
 
-  private static final Comparator<Sample> VALUE_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.value < b.value ? -1 : b.value < a.value ? 1 : 0;
-    }
-  };
+  /**
+   * The index of the sentinel node, which represents an empty subtree.
+   */
+  private static final int NIL = 0;
 
-  private static final int SORT_ORDER_NONE = -1;
-  private static final int SORT_ORDER_BY_VALUE = 0;
-  private static final int SORT_ORDER_BY_INDEX = 1;
+  private final int maxWeight;
 
-  private static final int MAX_RECYCLED_SAMPLES = 5;
+  // Node storage. Index 0 is the sentinel, whose subtree weight is always zero.
+  private float[] values;
+  private int[] weights;
+  private int[] subtreeWeights;
+  private int[] sequenceNumbers;
+  private int[] priorities;
+  private int[] lefts;
+  private int[] rights;
 
-  private final int maxWeight;
-  private final ArrayList<Sample> samples;
+  // Unused node indices.
+  private int[] freeNodes;
+  private int freeNodeCount;
 
-  private final Sample[] recycledSamples;
+  // Node indices in the order in which they were added, as a circular buffer.
+  private int[] ageQueue;
+  private int ageQueueStart;
+  private int sampleCount;
 
-  private int currentSortOrder;
-  private int nextSampleIndex;
-  private int totalWeight;
-  private int recycledSampleCount;
+  private int root;
+  private int nextSequenceNumber;
+  private int randomState;
 
   public SlidingPercentile(int maxWeight) {
     this.maxWeight = maxWeight;
-    recycledSamples = new Sample[MAX_RECYCLED_SAMPLES];
-    samples = new ArrayList<>();
-    currentSortOrder = SORT_ORDER_NONE;
+    values = new float[INITIAL_CAPACITY];
+    weights = new int[INITIAL_CAPACITY];
+    subtreeWeights = new int[INITIAL_CAPACITY];
+    sequenceNumbers = new int[INITIAL_CAPACITY];
+    priorities = new int[INITIAL_CAPACITY];
+    lefts = new int[INITIAL_CAPACITY];
+    rights = new int[INITIAL_CAPACITY];
+    freeNodes = new int[INITIAL_CAPACITY];
+    ageQueue = new int[INITIAL_CAPACITY];
+    randomState = 0x2545F491;
+    reset();
+  }
+
+  /**
+   * Removes all observations.
+   */
+  public void reset() {
+    root = NIL;
+    sampleCount = 0;
+    ageQueueStart = 0;
+    freeNodeCount = 0;
+    for (int i = values.length - 1; i > NIL; i--) {
+      freeNodes[freeNodeCount++] = i;
+    }
   }
 
   /**
@@ -79,28 +104,31 @@ public final class SlidingPercentile {
    * @param value The value of the new observation.
    */
   public void addSample(int weight, float value) {
-    ensureSortedByIndex();
-
-    Sample newSample = recycledSampleCount > 0 ? recycledSamples[--recycledSampleCount]
-        : new Sample();
-    newSample.index = nextSampleIndex++;
-    newSample.weight = weight;
-    newSample.value = value;
-    samples.add(newSample);
-    totalWeight += weight;
-
-    while (totalWeight > maxWeight) {
-      int excessWeight = totalWeight - maxWeight;
-      Sample oldestSample = samples.get(0);
-      if (oldestSample.weight <= excessWeight) {
-        totalWeight -= oldestSample.weight;
-        samples.remove(0);
-        if (recycledSampleCount < MAX_RECYCLED_SAMPLES) {
-          recycledSamples[recycledSampleCount++] = oldestSample;
-        }
+    if (freeNodeCount == 0) {
+      grow();
+    }
+    int node = freeNodes[--freeNodeCount];
+    values[node] = value;
+    weights[node] = weight;
+    subtreeWeights[node] = weight;
+    sequenceNumbers[node] = nextSequenceNumber++;
+    priorities[node] = nextRandom();
+    lefts[node] = NIL;
+    rights[node] = NIL;
+    root = insert(root, node);
+    ageQueue[(ageQueueStart + sampleCount) % ageQueue.length] = node;
+    sampleCount++;
+
+    while (subtreeWeights[root] > maxWeight) {
+      int excessWeight = subtreeWeights[root] - maxWeight;
+      int oldestNode = ageQueue[ageQueueStart];
+      if (weights[oldestNode] <= excessWeight) {
+        root = remove(root, oldestNode);
+        ageQueueStart = (ageQueueStart + 1) % ageQueue.length;
+        sampleCount--;
+        freeNodes[freeNodeCount++] = oldestNode;
       } else {
-        oldestSample.weight -= excessWeight;
-        totalWeight -= excessWeight;
+        reduceWeight(oldestNode, excessWeight);
       }
     }
   }
@@ -112,46 +140,147 @@ public final class SlidingPercentile {
    * @return The requested percentile value or Float.NaN.
    */
   public float getPercentile(float percentile) {
-    ensureSortedByValue();
-    float desiredWeight = percentile * totalWeight;
+    if (root == NIL) {
+      return Float.NaN;
+    }
+    float desiredWeight = percentile * subtreeWeights[root];
     int accumulatedWeight = 0;
-    for (int i = 0; i < samples.size(); i++) {
-      Sample currentSample = samples.get(i);
-      accumulatedWeight += currentSample.weight;
-      if (accumulatedWeight >= desiredWeight) {
-        return currentSample.value;
+    int node = root;
+    while (true) {
+      int left = lefts[node];
+      int weightBeforeNode = accumulatedWeight + subtreeWeights[left];
+      if (left != NIL && weightBeforeNode >= desiredWeight) {
+        node = left;
+      } else if (weightBeforeNode + weights[node] >= desiredWeight || rights[node] == NIL) {
+        // Clamp to maximum value if the desired weight is never reached.
+        return values[node];
+      } else {
+        accumulatedWeight = weightBeforeNode + weights[node];
+        node = rights[node];
       }
     }
-    // Clamp to maximum value or NaN if no values.
-    return samples.isEmpty() ? Float.NaN : samples.get(samples.size() - 1).value;
   }
 
-  /**
-   * Sort the samples by index, if not already.
-   */
-  private void ensureSortedByIndex() {
-    if (currentSortOrder != SORT_ORDER_BY_INDEX) {
-      Collections.sort(samples, INDEX_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_INDEX;
+  private int insert(int subtree, int node) {
+    if (subtree == NIL) {
+      return node;
     }
+    subtreeWeights[subtree] += weights[node];
+    if (isLess(node, subtree)) {
+      lefts[subtree] = insert(lefts[subtree], node);
+      if (priorities[lefts[subtree]] > priorities[subtree]) {
+        subtree = rotateRight(subtree);
+      }
+    } else {
+      rights[subtree] = insert(rights[subtree], node);
+      if (priorities[rights[subtree]] > priorities[subtree]) {
+        subtree = rotateLeft(subtree);
+      }
+    }
+    return subtree;
   }
 
-  /**
-   * Sort the samples by value, if not already.
-   */
-  private void ensureSortedByValue() {
-    if (currentSortOrder != SORT_ORDER_BY_VALUE) {
-      Collections.sort(samples, VALUE_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_VALUE;
+  private int remove(int subtree, int node) {
+    if (subtree == node) {
+      return merge(lefts[node], rights[node]);
+    }
+    subtreeWeights[subtree] -= weights[node];
+    if (isLess(node, subtree)) {
+      lefts[subtree] = remove(lefts[subtree], node);
+    } else {
+      rights[subtree] = remove(rights[subtree], node);
     }
+    return subtree;
   }
 
-  private static class Sample {
+  private int merge(int left, int right) {
+    if (left == NIL) {
+      return right;
+    } else if (right == NIL) {
+      return left;
+    } else if (priorities[left] > priorities[right]) {
+      rights[left] = merge(rights[left], right);
+      updateSubtreeWeight(left);
+      return left;
+    } else {
+      lefts[right] = merge(left, lefts[right]);
+      updateSubtreeWeight(right);
+      return right;
+    }
+  }
 
-    public int index;
-    public int weight;
-    public float value;
+  private void reduceWeight(int node, int weightReduction) {
+    int subtree = root;
+    while (true) {
+      subtreeWeights[subtree] -= weightReduction;
+      if (subtree == node) {
+        weights[node] -= weightReduction;
+        return;
+      }
+      subtree = isLess(node, subtree) ? lefts[subtree] : rights[subtree];
+    }
+  }
+
+  private int rotateRight(int node) {
+    int left = lefts[node];
+    lefts[node] = rights[left];
+    rights[left] = node;
+    subtreeWeights[left] = subtreeWeights[node];
+    updateSubtreeWeight(node);
+    return left;
+  }
+
+  private int rotateLeft(int node) {
+    int right = rights[node];
+    rights[node] = lefts[right];
+    lefts[right] = node;
+    subtreeWeights[right] = subtreeWeights[node];
+    updateSubtreeWeight(node);
+    return right;
+  }
 
+  private void updateSubtreeWeight(int node) {
+    subtreeWeights[node] = weights[node] + subtreeWeights[lefts[node]]
+        + subtreeWeights[rights[node]];
+  }
+
+  /**
+   * Orders nodes by value, and then by age so that every node has a distinct position.
+   */
+  private boolean isLess(int a, int b) {
+    return values[a] < values[b]
+        || (values[a] == values[b] && sequenceNumbers[a] - sequenceNumbers[b] < 0);
+  }
+
+  private int nextRandom() {
+    // Xorshift, which is sufficient for balancing the treap.
+    randomState ^= randomState << 13;
+    randomState ^= randomState >>> 17;
+    randomState ^= randomState << 5;
+    return randomState;
+  }
+
+  private void grow() {
+    int oldCapacity = values.length;
+    int newCapacity = oldCapacity * 2;
+    values = Arrays.copyOf(values, newCapacity);
+    weights = Arrays.copyOf(weights, newCapacity);
+    subtreeWeights = Arrays.copyOf(subtreeWeights, newCapacity);
+    sequenceNumbers = Arrays.copyOf(sequenceNumbers, newCapacity);
+    priorities = Arrays.copyOf(priorities, newCapacity);
+    lefts = Arrays.copyOf(lefts, newCapacity);
+    rights = Arrays.copyOf(rights, newCapacity);
+    freeNodes = Arrays.copyOf(freeNodes, newCapacity);
+    // Unwrap the age queue into the larger buffer.
+    int[] newAgeQueue = new int[newCapacity];
+    for (int i = 0; i < sampleCount; i++) {
+      newAgeQueue[i] = ageQueue[(ageQueueStart + i) % oldCapacity];
+    }
+    ageQueue = newAgeQueue;
+    ageQueueStart = 0;
+    for (int i = newCapacity - 1; i >= oldCapacity; i--) {
+      freeNodes[freeNodeCount++] = i;
+    }
   }
 
 }
@@ -220,6 +220,23 @@ public final class Util {
     });
   }
 
+  /**
+   * Instantiates a new executor with a fixed number of threads, each of which has the specified
+   * name.
+   *
+   * @param threadName The name of the threads.
+   * @param threadCount The number of threads.
+   * @return The executor.
+   */
+  public static ExecutorService newFixedThreadPool(final String threadName, int threadCount) {
+    return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        return new Thread(r, threadName);
+      }
+    });
+  }
+
   /**
    * Closes a {@link DataSource}, suppressing any {@link IOException} that may occur.
    *
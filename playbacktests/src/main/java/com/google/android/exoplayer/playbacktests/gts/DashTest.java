@@ -552,6 +552,14 @@ public final class DashTest extends ActivityInstrumentationTestCase2<HostActivit
           videoCounters.skippedOutputBufferCount);
       metricsLogger.logMetric(MetricsLogger.KEY_FRAMES_RENDERED_COUNT,
           videoCounters.renderedOutputBufferCount);
+      long playingTimeMs = getTotalPlayingTimeMs();
+      if (playingTimeMs > 0) {
+        double playingTimeMinutes = playingTimeMs / 60000d;
+        metricsLogger.logMetric(MetricsLogger.KEY_PLAYBACK_THREAD_WAKEUPS_PER_MINUTE,
+            getPlaybackThreadWakeupCount() / playingTimeMinutes);
+        metricsLogger.logMetric(MetricsLogger.KEY_PLAYBACK_THREAD_CPU_TIME_MS_PER_MINUTE,
+            getPlaybackThreadCpuTimeMs() / playingTimeMinutes);
+      }
       metricsLogger.close();
     }
 
@@ -23,6 +23,7 @@ import com.google.android.exoplayer.playbacktests.util.HostActivity.HostedTest;
 
 import android.os.Handler;
 import android.os.SystemClock;
+import android.util.Printer;
 import android.view.Surface;
 
 /**
@@ -43,6 +44,7 @@ public abstract class ExoHostedTest implements HostedTest, ExoPlayer.Listener {
   private ActionSchedule pendingSchedule;
   private Handler actionHandler;
   private ExoPlayer player;
+  private PlaybackThreadMonitor playbackThreadMonitor;
   private ExoPlaybackException playerError;
   private boolean playerWasPrepared;
   private boolean playerFinished;
@@ -89,6 +91,8 @@ public abstract class ExoHostedTest implements HostedTest, ExoPlayer.Listener {
     // Build the player.
     player = ExoPlayer.Factory.newInstance(rendererCount);
     player.addListener(this);
+    playbackThreadMonitor = new PlaybackThreadMonitor();
+    player.getPlaybackLooper().setMessageLogging(playbackThreadMonitor);
     player.prepare(buildRenderers(host, player, surface));
     player.setPlayWhenReady(true);
     actionHandler = new Handler();
@@ -102,6 +106,7 @@ public abstract class ExoHostedTest implements HostedTest, ExoPlayer.Listener {
   @Override
   public final void onStop() {
     actionHandler.removeCallbacksAndMessages(null);
+    player.getPlaybackLooper().setMessageLogging(null);
     player.release();
     player = null;
   }
@@ -179,4 +184,43 @@ public abstract class ExoHostedTest implements HostedTest, ExoPlayer.Listener {
     return playerError;
   }
 
+  /**
+   * Returns the number of messages handled by the player's playback thread, each of which wakes
+   * the thread up.
+   */
+  protected final int getPlaybackThreadWakeupCount() {
+    return playbackThreadMonitor.wakeupCount;
+  }
+
+  /**
+   * Returns the CPU time used by the player's playback thread while handling messages, in
+   * milliseconds.
+   */
+  protected final long getPlaybackThreadCpuTimeMs() {
+    return playbackThreadMonitor.cpuTimeMs;
+  }
+
+  /**
+   * Measures the work done by the playback thread, using the logging performed by its
+   * {@link android.os.Looper} before and after each message is handled.
+   */
+  private static final class PlaybackThreadMonitor implements Printer {
+
+    public volatile int wakeupCount;
+    public volatile long cpuTimeMs;
+
+    private long messageStartCpuTimeMs;
+
+    @Override
+    public void println(String x) {
+      if (x.startsWith(">>>>>")) {
+        messageStartCpuTimeMs = SystemClock.currentThreadTimeMillis();
+      } else if (x.startsWith("<<<<<")) {
+        cpuTimeMs += SystemClock.currentThreadTimeMillis() - messageStartCpuTimeMs;
+        wakeupCount++;
+      }
+    }
+
+  }
+
 }
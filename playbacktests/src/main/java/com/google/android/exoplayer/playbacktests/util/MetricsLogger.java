@@ -26,6 +26,8 @@ public interface MetricsLogger {
   String KEY_FRAMES_RENDERED_COUNT = "frames_rendered_count";
   String KEY_FRAMES_SKIPPED_COUNT = "frames_skipped_count";
   String KEY_MAX_CONSECUTIVE_FRAMES_DROPPED_COUNT = "maximum_consecutive_frames_dropped_count";
+  String KEY_PLAYBACK_THREAD_WAKEUPS_PER_MINUTE = "playback_thread_wakeups_per_minute";
+  String KEY_PLAYBACK_THREAD_CPU_TIME_MS_PER_MINUTE = "playback_thread_cpu_time_ms_per_minute";
   String KEY_TEST_NAME = "test_name";
 
   /**